@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.command.stream;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Wraps an {@link IndexReader} so that only the documents that match the given
+ * {@link Query} are live. This allows a {@link StreamFunction} to stream only
+ * the matching documents of a shard without changing how the function walks
+ * the index.
+ */
+public class QueryFilteredIndexReader {
+
+  public static IndexReader wrap(IndexReader reader, Query query) throws IOException {
+    QueryWrapperFilter filter = new QueryWrapperFilter(query);
+    List<AtomicReaderContext> leaves = reader.leaves();
+    AtomicReader[] subReaders = new AtomicReader[leaves.size()];
+    for (int i = 0; i < subReaders.length; i++) {
+      AtomicReaderContext context = leaves.get(i);
+      AtomicReader atomicReader = context.reader();
+      subReaders[i] = new QueryFilteredAtomicReader(atomicReader, getMatchingDocs(filter, context));
+    }
+    return new MultiReader(subReaders, false);
+  }
+
+  private static FixedBitSet getMatchingDocs(QueryWrapperFilter filter, AtomicReaderContext context)
+      throws IOException {
+    AtomicReader reader = context.reader();
+    FixedBitSet bits = new FixedBitSet(reader.maxDoc());
+    DocIdSet docIdSet = filter.getDocIdSet(context, reader.getLiveDocs());
+    if (docIdSet == null) {
+      return bits;
+    }
+    DocIdSetIterator iterator = docIdSet.iterator();
+    if (iterator != null) {
+      bits.or(iterator);
+    }
+    return bits;
+  }
+
+  public static class QueryFilteredAtomicReader extends FilterAtomicReader {
+
+    private final FixedBitSet _matchingDocs;
+    private final int _numDocs;
+
+    public QueryFilteredAtomicReader(AtomicReader in, FixedBitSet matchingDocs) {
+      super(in);
+      _matchingDocs = matchingDocs;
+      _numDocs = matchingDocs.cardinality();
+    }
+
+    @Override
+    public Bits getLiveDocs() {
+      return _matchingDocs;
+    }
+
+    @Override
+    public int numDocs() {
+      return _numDocs;
+    }
+
+    @Override
+    public boolean hasDeletions() {
+      return _numDocs < maxDoc();
+    }
+  }
+
+}
@@ -23,10 +23,14 @@ import org.apache.blur.BlurConfiguration;
 import org.apache.blur.command.IndexContext;
 import org.apache.blur.command.Shard;
 import org.apache.blur.lucene.search.IndexSearcherCloseable;
+import org.apache.blur.manager.QueryParserUtil;
 import org.apache.blur.manager.writer.BlurIndex;
 import org.apache.blur.server.ShardContext;
 import org.apache.blur.server.TableContext;
+import org.apache.blur.thrift.generated.ScoreType;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
 
 public class StreamIndexContext extends IndexContext implements Closeable {
 
@@ -36,12 +40,48 @@ public class StreamIndexContext extends IndexContext implements Closeable {
   private final IndexReader _indexReader;
   private final Shard _shard;
 
+  private final Query _query;
+
   public StreamIndexContext(BlurIndex blurIndex) throws IOException {
+    this(blurIndex, null);
+  }
+
+  /**
+   * @param query
+   *          an optional record query, when provided the index reader only
+   *          exposes the matching documents as live documents. Note that the
+   *          index searcher is not filtered.
+   */
+  public StreamIndexContext(BlurIndex blurIndex, String query) throws IOException {
     _shardContext = blurIndex.getShardContext();
     _tableContext = _shardContext.getTableContext();
-    _indexSearcher = blurIndex.getIndexSearcher();
-    _indexReader = _indexSearcher.getIndexReader();
     _shard = new Shard(_tableContext.getTable(), _shardContext.getShard());
+    _query = parseQuery(query);
+    _indexSearcher = blurIndex.getIndexSearcher();
+    if (_query == null) {
+      _indexReader = _indexSearcher.getIndexReader();
+    } else {
+      _indexReader = QueryFilteredIndexReader.wrap(_indexSearcher.getIndexReader(), _query);
+    }
+  }
+
+  private Query parseQuery(String query) throws IOException {
+    if (query == null) {
+      return null;
+    }
+    try {
+      return QueryParserUtil.parseQuery(query, false, _tableContext.getFieldManager(), null, null,
+          ScoreType.CONSTANT, _tableContext);
+    } catch (ParseException e) {
+      throw new IOException("Could not parse stream query [" + query + "].", e);
+    }
+  }
+
+  /**
+   * @return the pushed down query or null if all the documents are streamed.
+   */
+  public Query getQuery() {
+    return _query;
   }
 
   @Override
@@ -96,6 +96,11 @@ public class StreamProcessor {
   }
 
   public StreamIndexContext getIndexContext(final String table, final String shard) throws IOException {
+    return getIndexContext(table, shard, null);
+  }
+
+  public StreamIndexContext getIndexContext(final String table, final String shard, final String query)
+      throws IOException {
     Map<String, BlurIndex> indexes = _indexServer.getIndexes(table);
     if (indexes == null) {
       throw new IOException("Table [" + table + "] is not being served by this server.");
@@ -104,7 +109,7 @@ public class StreamProcessor {
     if (blurIndex == null) {
       throw new IOException("Shard [" + shard + "] for table [" + table + "] is not being served by this server.");
     }
-    return new StreamIndexContext(blurIndex);
+    return new StreamIndexContext(blurIndex, query);
   }
 
   public <T> void execute(StreamFunction<T> function, OutputStream outputStream, IndexContext indexContext)
@@ -173,7 +173,7 @@ public class StreamServer implements Closeable {
       UserContext.setUser(user);
       StreamIndexContext indexContext = null;
       try {
-        indexContext = streamProcessor.getIndexContext(table, shard);
+        indexContext = streamProcessor.getIndexContext(table, shard, streamSplit.getQuery());
         StreamFunction<?> function = streamProcessor.getStreamFunction(classLoaderId, toInputStream(functionBytes));
         streamProcessor.execute(function, outputStream, indexContext);
       } finally {
@@ -28,13 +28,26 @@ public class StreamSplit implements Serializable {
   private final String classLoaderId;
   private final String user;
   private final Map<String, String> userAttributes;
+  private final String query;
 
   public StreamSplit(String table, String shard, String classLoaderId, String user, Map<String, String> userAttributes) {
+    this(table, shard, classLoaderId, user, userAttributes, null);
+  }
+
+  /**
+   * @param query
+   *          an optional record query (Blur query syntax) that is evaluated on
+   *          the shard server, only the matching documents are visible to the
+   *          {@link StreamFunction}.
+   */
+  public StreamSplit(String table, String shard, String classLoaderId, String user,
+      Map<String, String> userAttributes, String query) {
     this.table = table;
     this.shard = shard;
     this.classLoaderId = classLoaderId;
     this.user = user;
     this.userAttributes = userAttributes;
+    this.query = query;
   }
 
   public String getTable() {
@@ -57,8 +70,12 @@ public class StreamSplit implements Serializable {
     return userAttributes;
   }
 
+  public String getQuery() {
+    return query;
+  }
+
   public StreamSplit copy() {
-    return new StreamSplit(table, shard, classLoaderId, user, userAttributes);
+    return new StreamSplit(table, shard, classLoaderId, user, userAttributes, query);
   }
 
 }
@@ -28,7 +28,8 @@ import org.apache.lucene.search.Query;
 /**
  * The {@link BlurFilterCache} class provides the ability to cache pre and post
  * filters on a per table basis. The closing and opening methods should be used
- * as hooks to for when tables are being enabled and disabled.
+ * as hooks to for when tables are being enabled and disabled. The methods are
+ * called concurrently so implementations have to be thread safe.
  */
 public abstract class BlurFilterCache {
 
@@ -17,7 +17,10 @@ package org.apache.blur.manager;
  * limitations under the License.
  */
 import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.FETCH_LATENCY;
+import static org.apache.blur.metrics.MetricsConstants.MUTATE_LATENCY;
 import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.QUERY_LATENCY;
 import static org.apache.blur.utils.BlurConstants.FAMILY;
 import static org.apache.blur.utils.BlurConstants.PRIME_DOC;
 import static org.apache.blur.utils.BlurConstants.RECORD_ID;
@@ -29,7 +32,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -44,6 +51,7 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.blur.analysis.FieldManager;
@@ -58,14 +66,19 @@ import org.apache.blur.lucene.search.DeepPagingCache;
 import org.apache.blur.lucene.search.FacetExecutor;
 import org.apache.blur.lucene.search.FacetQuery;
 import org.apache.blur.lucene.search.IndexSearcherCloseable;
+import org.apache.blur.lucene.search.PrimeDocCache;
+import org.apache.blur.lucene.search.SegmentResultCache;
 import org.apache.blur.lucene.search.StopExecutionCollector.StopExecutionCollectorException;
 import org.apache.blur.lucene.security.index.SecureDirectoryReader;
 import org.apache.blur.manager.clusterstatus.ClusterStatus;
 import org.apache.blur.manager.results.BlurResultIterable;
 import org.apache.blur.manager.results.BlurResultIterableSearcher;
 import org.apache.blur.manager.results.MergerBlurResultIterable;
+import org.apache.blur.manager.status.LatencyMetrics;
 import org.apache.blur.manager.status.QueryStatus;
 import org.apache.blur.manager.status.QueryStatusManager;
+import org.apache.blur.manager.status.SlowQueryLog;
+import org.apache.blur.manager.status.SlowQueryLog.SlowQuery;
 import org.apache.blur.manager.writer.BlurIndex;
 import org.apache.blur.manager.writer.MutatableAction;
 import org.apache.blur.memory.MemoryAllocationWatcher;
@@ -73,6 +86,7 @@ import org.apache.blur.memory.Watcher;
 import org.apache.blur.server.ShardContext;
 import org.apache.blur.server.ShardServerContext;
 import org.apache.blur.server.TableContext;
+import org.apache.blur.server.cache.RowCache;
 import org.apache.blur.thrift.BException;
 import org.apache.blur.thrift.MutationHelper;
 import org.apache.blur.thrift.UserConverter;
@@ -80,12 +94,15 @@ import org.apache.blur.thrift.generated.BlurException;
 import org.apache.blur.thrift.generated.BlurQuery;
 import org.apache.blur.thrift.generated.BlurQueryStatus;
 import org.apache.blur.thrift.generated.BlurResult;
+import org.apache.blur.thrift.generated.Column;
 import org.apache.blur.thrift.generated.ErrorType;
 import org.apache.blur.thrift.generated.Facet;
+import org.apache.blur.thrift.generated.FetchRecordResult;
 import org.apache.blur.thrift.generated.FetchResult;
 import org.apache.blur.thrift.generated.FetchRowResult;
 import org.apache.blur.thrift.generated.HighlightOptions;
 import org.apache.blur.thrift.generated.QueryState;
+import org.apache.blur.thrift.generated.Record;
 import org.apache.blur.thrift.generated.Row;
 import org.apache.blur.thrift.generated.RowMutation;
 import org.apache.blur.thrift.generated.ScoreType;
@@ -103,13 +120,16 @@ import org.apache.blur.utils.ForkJoin;
 import org.apache.blur.utils.ForkJoin.Merger;
 import org.apache.blur.utils.ForkJoin.ParallelCall;
 import org.apache.blur.utils.HighlightHelper;
+import org.apache.blur.utils.MemoryUsageCounter;
 import org.apache.blur.utils.ResetableDocumentStoredFieldVisitor;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.BaseCompositeReader;
 import org.apache.lucene.index.BaseCompositeReaderUtil;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiFields;
@@ -135,17 +155,21 @@ import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.OpenBitSet;
 
 import com.yammer.metrics.Metrics;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.MetricName;
 import com.yammer.metrics.core.Timer;
-import com.yammer.metrics.core.TimerContext;
 
 public class IndexManager {
 
   public static final String NOT_FOUND = "NOT_FOUND";
   private static final Log LOG = LogFactory.getLog(IndexManager.class);
+  // Estimated heap per hit slot of a collector (ScoreDoc plus the reference to
+  // it) and per sort field value of a hit.
+  private static final long COLLECTOR_HIT_HEAP = 32;
+  private static final long COLLECTOR_SORT_VALUE_HEAP = 24;
 
   private static final Meter _readRecordsMeter;
   private static final Meter _readRowMeter;
@@ -173,22 +197,45 @@ public class IndexManager {
   private final long _defaultParallelCallTimeout = TimeUnit.MINUTES.toMillis(1);
 
   private final Timer _fetchTimer;
+  private final LatencyMetrics _queryLatency = new LatencyMetrics(QUERY_LATENCY);
+  private final LatencyMetrics _fetchLatency = new LatencyMetrics(FETCH_LATENCY);
+  private final LatencyMetrics _mutateLatency = new LatencyMetrics(MUTATE_LATENCY);
   private final int _fetchCount;
   private final int _maxHeapPerRowFetch;
 
   private final int _threadCount;
   private final int _mutateThreadCount;
   private final DeepPagingCache _deepPagingCache;
+  private final SegmentResultCache _segmentResultCache;
+  private final RowCache _rowCache;
   private final MemoryAllocationWatcher _memoryAllocationWatcher;
+  private final SlowQueryLog _slowQueryLog;
+  private final ParsedQueryCache _parsedQueryCache;
 
   public static AtomicBoolean DEBUG_RUN_SLOW = new AtomicBoolean(false);
 
+  /**
+   * @param segmentResultCache
+   *          the cache of per segment search results, null disables it.
+   * @param rowCache
+   *          the cache of fetched rows, null disables it.
+   * @param slowQueryLog
+   *          the log that slow queries are offered to, null disables it.
+   * @param parsedQueryCache
+   *          the cache of parsed queries, null disables it.
+   */
   public IndexManager(IndexServer indexServer, ClusterStatus clusterStatus, BlurFilterCache filterCache,
       int maxHeapPerRowFetch, int fetchCount, int threadCount, int mutateThreadCount, int facetThreadCount,
-      DeepPagingCache deepPagingCache, MemoryAllocationWatcher memoryAllocationWatcher, QueryStatusManager statusManager) {
+      DeepPagingCache deepPagingCache, SegmentResultCache segmentResultCache, RowCache rowCache,
+      MemoryAllocationWatcher memoryAllocationWatcher, QueryStatusManager statusManager, SlowQueryLog slowQueryLog,
+      ParsedQueryCache parsedQueryCache) {
     _statusManager = statusManager;
+    _slowQueryLog = slowQueryLog;
+    _parsedQueryCache = parsedQueryCache;
+    _rowCache = rowCache;
     _memoryAllocationWatcher = memoryAllocationWatcher;
     _deepPagingCache = deepPagingCache;
+    _segmentResultCache = segmentResultCache;
     _indexServer = indexServer;
     _clusterStatus = clusterStatus;
     _filterCache = filterCache;
@@ -240,23 +287,60 @@ public class IndexManager {
     }
   }
 
+  /**
+   * Selectors that only name a row id are grouped by shard and resolved with
+   * one task per shard that seeks the row ids directly in the terms of each
+   * segment, see {@link #populateSelectors(IndexReader, String, List, Term)}.
+   * All the other selectors are fetched one by one.
+   */
   public List<FetchResult> fetchRowBatch(final String table, List<Selector> selectors) throws BlurException {
-    List<Future<FetchResult>> futures = new ArrayList<Future<FetchResult>>();
-    for (Selector s : selectors) {
-      final Selector selector = s;
-      futures.add(_executor.submit(new Callable<FetchResult>() {
+    final TableContext tableContext = getTableContext(table);
+    final Filter filter = tableContext.getReadInterceptor().getFilter();
+    final FetchResult[] results = new FetchResult[selectors.size()];
+    Map<String, List<Integer>> rowIdLookups = new HashMap<String, List<Integer>>();
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < selectors.size(); i++) {
+      final Selector selector = selectors.get(i);
+      final int index = i;
+      results[index] = new FetchResult();
+      if (isRowIdLookup(tableContext, selector, filter)) {
+        String shard = MutationHelper.getShardName(table, selector.getRowId(), getNumberOfShards(table),
+            _blurPartitioner);
+        List<Integer> indexes = rowIdLookups.get(shard);
+        if (indexes == null) {
+          indexes = new ArrayList<Integer>();
+          rowIdLookups.put(shard, indexes);
+        }
+        indexes.add(index);
+        continue;
+      }
+      futures.add(_executor.submit(new Callable<Void>() {
         @Override
-        public FetchResult call() throws Exception {
-          FetchResult fetchResult = new FetchResult();
-          fetchRow(table, selector, fetchResult);
-          return fetchResult;
+        public Void call() throws Exception {
+          fetchRow(table, selector, results[index]);
+          return null;
         }
       }));
     }
-    List<FetchResult> results = new ArrayList<FetchResult>();
-    for (Future<FetchResult> future : futures) {
+    for (Entry<String, List<Integer>> entry : rowIdLookups.entrySet()) {
+      final String shard = entry.getKey();
+      final List<Selector> shardSelectors = new ArrayList<Selector>();
+      final List<FetchResult> shardResults = new ArrayList<FetchResult>();
+      for (Integer index : entry.getValue()) {
+        shardSelectors.add(selectors.get(index));
+        shardResults.add(results[index]);
+      }
+      futures.add(_executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          fetchRowsById(table, shard, shardSelectors, shardResults, tableContext, filter);
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
       try {
-        results.add(future.get());
+        future.get();
       } catch (InterruptedException e) {
         throw new BException("Unkown error while fetching batch table [{0}] selectors [{1}].", e, table, selectors);
       } catch (ExecutionException e) {
@@ -264,7 +348,56 @@ public class IndexManager {
             selectors);
       }
     }
-    return results;
+    return new ArrayList<FetchResult>(Arrays.asList(results));
+  }
+
+  private boolean isRowIdLookup(TableContext tableContext, Selector selector, Filter filter) throws BlurException {
+    validSelector(selector);
+    if (selector.getLocationId() != null || selector.getRowId() == null || selector.isRecordOnly()) {
+      return false;
+    }
+    // Rows in the row cache are served without touching the index.
+    return _rowCache == null || !isRowCacheable(tableContext, selector, filter);
+  }
+
+  /**
+   * Fetches the rows of the selectors from one shard, the location ids are
+   * resolved and the rows are read with the same searcher so that the doc ids
+   * can not change in between.
+   */
+  private void fetchRowsById(String table, String shard, List<Selector> selectors, List<FetchResult> results,
+      TableContext tableContext, Filter filter) throws Exception {
+    BlurIndex index = getBlurIndex(table, shard);
+    Tracer trace = Trace.trace("manager fetch rows by id", Trace.param("table", table), Trace.param("shard", shard),
+        Trace.param("rows", selectors.size()));
+    IndexSearcherCloseable searcher = index.getIndexSearcher();
+    try {
+      IndexReader reader = searcher.getIndexReader();
+      populateSelectors(reader, shard, selectors, tableContext.getDefaultPrimeDocTerm());
+      FieldManager fieldManager = tableContext.getFieldManager();
+      for (int i = 0; i < selectors.size(); i++) {
+        Selector selector = selectors.get(i);
+        FetchResult fetchResult = results.get(i);
+        if (selector.getLocationId().equals(NOT_FOUND)) {
+          fetchResult.setDeleted(false);
+          fetchResult.setExists(false);
+          continue;
+        }
+        long start = System.nanoTime();
+        Query highlightQuery = getHighlightQuery(selector, table, fieldManager);
+        MemoryUsageCounter heapUsage = _statusManager.startFetch();
+        try {
+          fetchRow(reader, table, shard, selector, fetchResult, highlightQuery, fieldManager, _maxHeapPerRowFetch,
+              tableContext, filter, heapUsage);
+        } finally {
+          _statusManager.finishFetch(heapUsage);
+          recordFetch(table, shard, System.nanoTime() - start);
+        }
+      }
+    } finally {
+      trace.done();
+      searcher.close();
+    }
   }
 
   public void fetchRow(String table, Selector selector, FetchResult fetchResult) throws BlurException {
@@ -272,6 +405,94 @@ public class IndexManager {
     TableContext tableContext = getTableContext(table);
     ReadInterceptor interceptor = tableContext.getReadInterceptor();
     Filter filter = interceptor.getFilter();
+    if (_rowCache != null && isRowCacheable(tableContext, selector, filter)) {
+      fetchRowFromCache(table, selector, fetchResult, tableContext);
+    } else {
+      fetchRow(table, selector, fetchResult, tableContext, filter);
+    }
+  }
+
+  private void fetchRowFromCache(String table, Selector selector, FetchResult fetchResult, TableContext tableContext)
+      throws BlurException {
+    String rowId = selector.getRowId();
+    String shard;
+    try {
+      shard = MutationHelper.getShardName(table, rowId, getNumberOfShards(table), _blurPartitioner);
+    } catch (Exception e) {
+      LOG.error("Unknown error while trying to get the shard for selector [{0}].", e, selector);
+      throw new BException(e.getMessage(), e);
+    }
+    long start = System.nanoTime();
+    Tracer trace = Trace.trace("manager fetch row cache", Trace.param("table", table), Trace.param("shard", shard));
+    Row row;
+    try {
+      row = _rowCache.get(table, shard, rowId);
+    } finally {
+      trace.done();
+      recordFetch(table, shard, System.nanoTime() - start);
+    }
+    if (row == null) {
+      // The generation has to be read before the searcher is opened so that a
+      // row read from a reader that is replaced during the fetch is not cached.
+      long generation = _rowCache.getGeneration(table, shard);
+      Selector rowSelector = new Selector();
+      rowSelector.setRowId(rowId);
+      rowSelector.setStartRecord(0);
+      rowSelector.setMaxRecordsToFetch(Integer.MAX_VALUE);
+      FetchResult rowFetchResult = new FetchResult();
+      fetchRow(table, rowSelector, rowFetchResult, tableContext, null);
+      if (!rowFetchResult.isExists()) {
+        fetchResult.setTable(table);
+        fetchResult.setExists(false);
+        fetchResult.setDeleted(rowFetchResult.isDeleted());
+        return;
+      }
+      FetchRowResult rowResult = rowFetchResult.getRowResult();
+      if (rowResult.isMoreRecordsToFetch()) {
+        // The row is larger than the max heap per fetch, so it can not be
+        // cached.
+        fetchRow(table, selector, fetchResult, tableContext, null);
+        return;
+      }
+      row = rowResult.getRow();
+      _rowCache.put(table, shard, row, generation);
+    } else {
+      if (selector.isRecordOnly()) {
+        _readRecordsMeter.mark();
+      } else {
+        _readRowMeter.mark();
+      }
+    }
+    RowCache.fetch(table, row, selector, fetchResult);
+  }
+
+  private static boolean isRowCacheable(TableContext tableContext, Selector selector, Filter filter) {
+    if (filter != null || selector.getLocationId() != null || selector.getRowId() == null) {
+      return false;
+    }
+    if (selector.getHighlightOptions() != null) {
+      return false;
+    }
+    List<String> orderOfFamiliesToFetch = selector.getOrderOfFamiliesToFetch();
+    if (orderOfFamiliesToFetch != null && !orderOfFamiliesToFetch.isEmpty()) {
+      return false;
+    }
+    if (selector.getColumnFamiliesToFetch() != null && selector.getColumnsToFetch() != null
+        && selector.getColumnFamiliesToFetch().isEmpty() && selector.getColumnsToFetch().isEmpty()) {
+      // Only the row id is returned, no need to load the row.
+      return false;
+    }
+    // Rows of tables with record level security are read through the access
+    // control of the user and can not be shared between users.
+    Map<String, String> tableProperties = tableContext.getDescriptor().getTableProperties();
+    if (tableProperties != null && Boolean.parseBoolean(tableProperties.get(BlurConstants.BLUR_RECORD_SECURITY))) {
+      return false;
+    }
+    return true;
+  }
+
+  private void fetchRow(String table, Selector selector, FetchResult fetchResult, TableContext tableContext,
+      Filter filter) throws BlurException {
     BlurIndex index = null;
     String shard = null;
     Tracer trace = Trace.trace("manager fetch", Trace.param("table", table));
@@ -303,7 +524,7 @@ public class IndexManager {
       LOG.error("Unknown error while trying to get the correct index reader for selector [{0}].", e, selector);
       throw new BException(e.getMessage(), e);
     }
-    TimerContext timerContext = _fetchTimer.time();
+    long start = System.nanoTime();
     boolean usedCache = true;
     try {
       ShardServerContext shardServerContext = ShardServerContext.getShardServerContext();
@@ -319,14 +540,19 @@ public class IndexManager {
 
       Query highlightQuery = getHighlightQuery(selector, table, fieldManager);
 
-      fetchRow(searcher.getIndexReader(), table, shard, selector, fetchResult, highlightQuery, fieldManager,
-          _maxHeapPerRowFetch, tableContext, filter);
+      MemoryUsageCounter heapUsage = _statusManager.startFetch();
+      try {
+        fetchRow(searcher.getIndexReader(), table, shard, selector, fetchResult, highlightQuery, fieldManager,
+            _maxHeapPerRowFetch, tableContext, filter, heapUsage);
+      } finally {
+        _statusManager.finishFetch(heapUsage);
+      }
     } catch (Exception e) {
       LOG.error("Unknown error while trying to fetch row.", e);
       throw new BException(e.getMessage(), e);
     } finally {
       trace.done();
-      timerContext.stop();
+      recordFetch(table, shard, System.nanoTime() - start);
       if (!usedCache && searcher != null) {
         // if the cached search was not used, close the searcher.
         // this will allow for closing of index
@@ -339,6 +565,12 @@ public class IndexManager {
     }
   }
 
+  private void recordFetch(String table, String shard, long nanos) {
+    _fetchTimer.update(nanos, TimeUnit.NANOSECONDS);
+    _fetchLatency.updateTable(table, nanos);
+    _fetchLatency.updateShard(table, shard, nanos);
+  }
+
   private BlurIndex getBlurIndex(String table, String shard) throws BException, IOException {
     Map<String, BlurIndex> blurIndexes = _indexServer.getIndexes(table);
     if (blurIndexes == null) {
@@ -370,10 +602,11 @@ public class IndexManager {
 
     TableContext context = getTableContext(table);
     Filter preFilter = QueryParserUtil.parseFilter(table, query.recordFilter, false, fieldManager, _filterCache,
-        context);
-    Filter postFilter = QueryParserUtil.parseFilter(table, query.rowFilter, true, fieldManager, _filterCache, context);
+        context, _parsedQueryCache);
+    Filter postFilter = QueryParserUtil.parseFilter(table, query.rowFilter, true, fieldManager, _filterCache, context,
+        _parsedQueryCache);
     return QueryParserUtil.parseQuery(query.query, query.rowQuery, fieldManager, postFilter, preFilter,
-        getScoreType(query.scoreType), context);
+        getScoreType(query.scoreType), context, _parsedQueryCache);
   }
 
   public static void populateSelector(IndexSearcherCloseable searcher, String shardName, String table, Selector selector)
@@ -409,6 +642,64 @@ public class IndexManager {
     }
   }
 
+  /**
+   * Sets the location ids of row selectors (row id only) without running a
+   * search, each row id is looked up with a seek in the row id terms of every
+   * segment and the live prime doc of the row is taken. Selectors of rows that
+   * do not exist get the {@link #NOT_FOUND} location id.
+   */
+  public static void populateSelectors(IndexReader reader, String shardName, List<Selector> selectors,
+      Term primeDocTerm) throws IOException {
+    Tracer trace = Trace.trace("populate selectors", Trace.param("selectors", selectors.size()));
+    try {
+      List<Selector> remaining = new ArrayList<Selector>(selectors);
+      // Seeking the terms in order keeps the terms dictionary reads sequential.
+      Collections.sort(remaining, new Comparator<Selector>() {
+        @Override
+        public int compare(Selector o1, Selector o2) {
+          return o1.getRowId().compareTo(o2.getRowId());
+        }
+      });
+      for (Selector selector : remaining) {
+        selector.setLocationId(NOT_FOUND);
+      }
+      BytesRef rowId = new BytesRef();
+      for (AtomicReaderContext context : reader.leaves()) {
+        if (remaining.isEmpty()) {
+          return;
+        }
+        AtomicReader atomicReader = context.reader();
+        Terms terms = atomicReader.terms(ROW_ID);
+        if (terms == null) {
+          continue;
+        }
+        TermsEnum termsEnum = terms.iterator(null);
+        Bits liveDocs = atomicReader.getLiveDocs();
+        OpenBitSet primeDocs = PrimeDocCache.getPrimeDocBitSet(primeDocTerm, atomicReader);
+        DocsEnum docsEnum = null;
+        Iterator<Selector> iterator = remaining.iterator();
+        while (iterator.hasNext()) {
+          Selector selector = iterator.next();
+          rowId.copyChars(selector.getRowId());
+          if (!termsEnum.seekExact(rowId, false)) {
+            continue;
+          }
+          docsEnum = termsEnum.docs(liveDocs, docsEnum, DocsEnum.FLAG_NONE);
+          int doc;
+          while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            if (primeDocs.fastGet(doc)) {
+              selector.setLocationId(shardName + "/" + (context.docBase + doc));
+              iterator.remove();
+              break;
+            }
+          }
+        }
+      }
+    } finally {
+      trace.done();
+    }
+  }
+
   public static void validSelector(Selector selector) throws BlurException {
     String locationId = selector.locationId;
     String rowId = selector.rowId;
@@ -456,6 +747,10 @@ public class IndexManager {
 
   public BlurResultIterable query(final String table, final BlurQuery blurQuery, AtomicLongArray facetedCounts)
       throws Exception {
+    if (!_statusManager.waitForAdmission()) {
+      throw new BlurException("Cannot execute query right now.", null, ErrorType.BACK_PRESSURE);
+    }
+    final long start = System.nanoTime();
     boolean runSlow = DEBUG_RUN_SLOW.get();
     final AtomicBoolean running = new AtomicBoolean(true);
     User user = UserContext.getUser();
@@ -496,9 +791,9 @@ public class IndexManager {
         }
       }
       Filter recordFilterForSearch = QueryParserUtil.parseFilter(table, simpleQuery.recordFilter, false, fieldManager,
-          _filterCache, context);
+          _filterCache, context, _parsedQueryCache);
       Filter rowFilterForSearch = QueryParserUtil.parseFilter(table, simpleQuery.rowFilter, true, fieldManager,
-          _filterCache, context);
+          _filterCache, context, _parsedQueryCache);
       Filter docFilter;
       if (recordFilterForSearch == null && readFilter != null) {
         docFilter = readFilter;
@@ -515,13 +810,14 @@ public class IndexManager {
         docFilter = null;
       }
       Query userQuery = QueryParserUtil.parseQuery(simpleQuery.query, simpleQuery.rowQuery, fieldManager,
-          rowFilterForSearch, docFilter, getScoreType(simpleQuery.scoreType), context);
+          rowFilterForSearch, docFilter, getScoreType(simpleQuery.scoreType), context, _parsedQueryCache);
 
       Query facetedQuery;
       FacetExecutor executor = null;
       if (blurQuery.facets != null) {
         long[] facetMinimums = getFacetMinimums(blurQuery.facets);
-        executor = new FacetExecutor(blurQuery.facets.size(), facetMinimums, facetedCounts, running);
+        executor = new FacetExecutor(blurQuery.facets.size(), facetMinimums, facetedCounts, running,
+            status.getMemoryUsageCounter());
         facetedQuery = new FacetQuery(userQuery, getFacetQueries(blurQuery, fieldManager, context, rowFilterForSearch,
             recordFilterForSearch), executor);
       } else {
@@ -529,9 +825,11 @@ public class IndexManager {
       }
 
       Sort sort = getSort(blurQuery, fieldManager);
+      context.getReopenWarmer().record(userQuery, sort);
       call = new SimpleQueryParallelCall(running, table, status, facetedQuery, blurQuery.selector,
           _queriesInternalMeter, shardServerContext, runSlow, _fetchCount, _maxHeapPerRowFetch,
-          context.getSimilarity(), context, sort, _deepPagingCache, _memoryAllocationWatcher);
+          context.getSimilarity(), context, sort, _deepPagingCache, _segmentResultCache, _memoryAllocationWatcher,
+          _queryLatency);
       trace.done();
       MergerBlurResultIterable merger = new MergerBlurResultIterable(blurQuery);
       BlurResultIterable merge = ForkJoin.execute(_executor, blurIndexes.entrySet(), call, new Cancel() {
@@ -544,7 +842,9 @@ public class IndexManager {
       if (executor != null) {
         executor.processFacets(_facetExecutor);
       }
-      return fetchDataIfNeeded(merge, table, blurQuery.getSelector());
+      AtomicLong fetchedBytes = new AtomicLong();
+      BlurResultIterable results = fetchDataIfNeeded(merge, table, blurQuery.getSelector(), fetchedBytes);
+      return recordLatencyOnClose(results, table, blurQuery, status, start, fetchedBytes);
     } catch (StopExecutionCollectorException e) {
       BlurQueryStatus queryStatus = status.getQueryStatus();
       QueryState state = queryStatus.getState();
@@ -598,8 +898,76 @@ public class IndexManager {
     return family + "." + column;
   }
 
+  /**
+   * The results are consumed by the caller after the query method returns, so
+   * the latency of the query (including the fetches) is recorded when the
+   * results are closed.
+   */
+  private BlurResultIterable recordLatencyOnClose(final BlurResultIterable iterable, final String table,
+      final BlurQuery blurQuery, final QueryStatus status, final long start, final AtomicLong fetchedBytes) {
+    return new BlurResultIterable() {
+
+      @Override
+      public BlurIterator<BlurResult, BlurException> iterator() throws BlurException {
+        return iterable.iterator();
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          iterable.close();
+        } finally {
+          long realTime = System.nanoTime() - start;
+          _queryLatency.updateTable(table, realTime);
+          if (_slowQueryLog != null && _slowQueryLog.isSlowEnough(realTime)) {
+            org.apache.blur.thrift.generated.Query query = blurQuery.getQuery();
+            String queryStr = query == null ? null : SlowQueryLog.normalize(query.getQuery());
+            _slowQueryLog.offer(new SlowQuery(table, queryStr, blurQuery.getUuid(), realTime, status
+                .getTotalCpuTime(), iterable.getTotalResults(), fetchedBytes.get(), System.currentTimeMillis()));
+          }
+        }
+      }
+
+      @Override
+      public void skipTo(long skipTo) {
+        iterable.skipTo(skipTo);
+      }
+
+      @Override
+      public long getTotalResults() {
+        return iterable.getTotalResults();
+      }
+
+      @Override
+      public Map<String, Long> getShardInfo() {
+        return iterable.getShardInfo();
+      }
+    };
+  }
+
+  /**
+   * Removes the latency timers of the tables that are no longer enabled, so
+   * the per shard timers of closed and removed tables are not kept forever.
+   */
+  public void removeLatencyMetricsOfClosedTables() {
+    Set<String> tables = new HashSet<String>();
+    tables.addAll(_queryLatency.getTables());
+    tables.addAll(_fetchLatency.getTables());
+    tables.addAll(_mutateLatency.getTables());
+    for (String table : tables) {
+      String cluster = _clusterStatus.getCluster(true, table);
+      if (cluster == null || !_clusterStatus.exists(true, cluster, table)
+          || !_clusterStatus.isEnabled(true, cluster, table)) {
+        LOG.info("Removing latency metrics of closed table [{0}].", table);
+        _queryLatency.removeTable(table);
+        _fetchLatency.removeTable(table);
+        _mutateLatency.removeTable(table);
+      }
+    }
+  }
+
   private BlurResultIterable fetchDataIfNeeded(final BlurResultIterable iterable, final String table,
-      final Selector selector) {
+      final Selector selector, final AtomicLong fetchedBytes) {
     if (selector == null) {
       return iterable;
     }
@@ -618,6 +986,7 @@ public class IndexManager {
             Selector s = new Selector(selector);
             s.setLocationId(locationId);
             fetchRow(table, s, fetchResult);
+            fetchedBytes.addAndGet(getFetchedBytes(fetchResult));
             result.setFetchResult(fetchResult);
             return result;
           }
@@ -656,6 +1025,46 @@ public class IndexManager {
     };
   }
 
+  /**
+   * Rough number of bytes of the fetched data, the sum of the lengths of the
+   * ids and of the column names and values.
+   */
+  static long getFetchedBytes(FetchResult fetchResult) {
+    long bytes = 0;
+    FetchRowResult rowResult = fetchResult.getRowResult();
+    if (rowResult != null && rowResult.getRow() != null) {
+      Row row = rowResult.getRow();
+      bytes += length(row.getId());
+      if (row.getRecords() != null) {
+        for (Record record : row.getRecords()) {
+          bytes += getFetchedBytes(record);
+        }
+      }
+    }
+    FetchRecordResult recordResult = fetchResult.getRecordResult();
+    if (recordResult != null) {
+      bytes += length(recordResult.getRowid());
+      if (recordResult.getRecord() != null) {
+        bytes += getFetchedBytes(recordResult.getRecord());
+      }
+    }
+    return bytes;
+  }
+
+  private static long getFetchedBytes(Record record) {
+    long bytes = length(record.getRecordId()) + length(record.getFamily());
+    if (record.getColumns() != null) {
+      for (Column column : record.getColumns()) {
+        bytes += length(column.getName()) + length(column.getValue());
+      }
+    }
+    return bytes;
+  }
+
+  private static int length(String s) {
+    return s == null ? 0 : s.length();
+  }
+
   private long[] getFacetMinimums(List<Facet> facets) {
     long[] mins = new long[facets.size()];
     boolean smallerThanMaxLong = false;
@@ -680,11 +1089,11 @@ public class IndexManager {
     TableContext context = getTableContext(table);
     FieldManager fieldManager = context.getFieldManager();
     Filter preFilter = QueryParserUtil.parseFilter(table, simpleQuery.recordFilter, false, fieldManager, _filterCache,
-        context);
+        context, _parsedQueryCache);
     Filter postFilter = QueryParserUtil.parseFilter(table, simpleQuery.rowFilter, true, fieldManager, _filterCache,
-        context);
+        context, _parsedQueryCache);
     Query userQuery = QueryParserUtil.parseQuery(simpleQuery.query, simpleQuery.rowQuery, fieldManager, postFilter,
-        preFilter, getScoreType(simpleQuery.scoreType), context);
+        preFilter, getScoreType(simpleQuery.scoreType), context, _parsedQueryCache);
     return userQuery.toString();
   }
 
@@ -698,7 +1107,7 @@ public class IndexManager {
     Query[] queries = new Query[size];
     for (int i = 0; i < size; i++) {
       queries[i] = QueryParserUtil.parseQuery(blurQuery.facets.get(i).queryStr, blurQuery.query.rowQuery, fieldManager,
-          postFilter, preFilter, ScoreType.CONSTANT, context);
+          postFilter, preFilter, ScoreType.CONSTANT, context, _parsedQueryCache);
     }
     return queries;
   }
@@ -735,6 +1144,17 @@ public class IndexManager {
   public static void fetchRow(IndexReader reader, String table, String shard, Selector selector,
       FetchResult fetchResult, Query highlightQuery, FieldManager fieldManager, int maxHeap, TableContext tableContext,
       Filter filter) throws CorruptIndexException, IOException {
+    fetchRow(reader, table, shard, selector, fetchResult, highlightQuery, fieldManager, maxHeap, tableContext, filter,
+        null);
+  }
+
+  /**
+   * Fetches the row or record for the selector, adding the size of the
+   * documents that are read to the heap usage counter if one is given.
+   */
+  public static void fetchRow(IndexReader reader, String table, String shard, Selector selector,
+      FetchResult fetchResult, Query highlightQuery, FieldManager fieldManager, int maxHeap, TableContext tableContext,
+      Filter filter, MemoryUsageCounter heapUsage) throws CorruptIndexException, IOException {
     try {
       fetchResult.table = table;
       String locationId = selector.locationId;
@@ -769,6 +1189,9 @@ public class IndexManager {
           fetchResult.exists = true;
           fetchResult.deleted = false;
           reader.document(docId, fieldVisitor);
+          if (heapUsage != null) {
+            heapUsage.add(fieldVisitor.getSize());
+          }
           Document document = fieldVisitor.getDocument();
           if (highlightQuery != null && fieldManager != null) {
             HighlightOptions highlightOptions = selector.getHighlightOptions();
@@ -809,7 +1232,7 @@ public class IndexManager {
               BlurHighlighter highlighter = new BlurHighlighter(highlightQuery, fieldManager, selector);
               Tracer docTrace = Trace.trace("fetchRow - Document read");
               docs = BlurUtil.fetchDocuments(reader, fieldVisitor, selector, maxHeap, table + "/" + shard,
-                  tableContext.getDefaultPrimeDocTerm(), filter, moreDocsToFetch, totalRecords, highlighter);
+                  tableContext.getDefaultPrimeDocTerm(), filter, moreDocsToFetch, totalRecords, highlighter, heapUsage);
               docTrace.done();
               Tracer rowTrace = Trace.trace("fetchRow - Row create");
               Row row = getRow(docs);
@@ -1118,6 +1541,7 @@ public class IndexManager {
   }
 
   private void doMutates(final String table, List<RowMutation> mutations) throws IOException, BlurException {
+    long start = System.nanoTime();
     final Map<String, BlurIndex> indexes = _indexServer.getIndexes(table);
     Map<String, List<RowMutation>> mutationsByShard = new HashMap<String, List<RowMutation>>();
     for (int i = 0; i < mutations.size(); i++) {
@@ -1148,9 +1572,10 @@ public class IndexManager {
         throw new BException("Unknown error during mutation", e.getCause());
       }
     }
+    _mutateLatency.updateTable(table, System.nanoTime() - start);
   }
 
-  private Future<Void> executeMutates(String table, String shard, Map<String, BlurIndex> indexes,
+  private Future<Void> executeMutates(final String table, final String shard, Map<String, BlurIndex> indexes,
       List<RowMutation> mutations) throws BlurException, IOException {
     long s = System.nanoTime();
     try {
@@ -1164,7 +1589,9 @@ public class IndexManager {
       return _mutateExecutor.submit(new Callable<Void>() {
         @Override
         public Void call() throws Exception {
+          long start = System.nanoTime();
           blurIndex.process(mutatableAction);
+          _mutateLatency.updateShard(table, shard, System.nanoTime() - start);
           return null;
         }
       });
@@ -1208,12 +1635,15 @@ public class IndexManager {
     private final TableContext _context;
     private final Sort _sort;
     private final DeepPagingCache _deepPagingCache;
+    private final SegmentResultCache _segmentResultCache;
     private final MemoryAllocationWatcher _memoryAllocationWatcher;
+    private final LatencyMetrics _queryLatency;
 
     public SimpleQueryParallelCall(AtomicBoolean running, String table, QueryStatus status, Query query,
         Selector selector, Meter queriesInternalMeter, ShardServerContext shardServerContext, boolean runSlow,
         int fetchCount, int maxHeapPerRowFetch, Similarity similarity, TableContext context, Sort sort,
-        DeepPagingCache deepPagingCache, MemoryAllocationWatcher memoryAllocationWatcher) {
+        DeepPagingCache deepPagingCache, SegmentResultCache segmentResultCache,
+        MemoryAllocationWatcher memoryAllocationWatcher, LatencyMetrics queryLatency) {
       _running = running;
       _table = table;
       _status = status;
@@ -1228,12 +1658,15 @@ public class IndexManager {
       _context = context;
       _sort = sort;
       _deepPagingCache = deepPagingCache;
+      _segmentResultCache = segmentResultCache;
       _memoryAllocationWatcher = memoryAllocationWatcher;
+      _queryLatency = queryLatency;
     }
 
     @Override
     public BlurResultIterable call(Entry<String, BlurIndex> entry) throws Exception {
       final String shard = entry.getKey();
+      long start = System.nanoTime();
       _status.attachThread(shard);
       BlurIndex index = entry.getValue();
       final IndexSearcherCloseable searcher = index.getIndexSearcher();
@@ -1258,6 +1691,8 @@ public class IndexManager {
           trace1.done();
         }
 
+        _status.addMemoryUsage(getCollectorMemoryUsage(indexReader));
+
         // BlurResultIterableSearcher will close searcher, if shard server
         // context is null.
         trace2 = Trace.trace("query initial search");
@@ -1267,7 +1702,7 @@ public class IndexManager {
               public BlurResultIterableSearcher run() throws BlurException {
                 return new BlurResultIterableSearcher(_running, rewrite, _table, shard, searcher, _selector,
                     _shardServerContext == null, _runSlow, _fetchCount, _maxHeapPerRowFetch, _context, _sort,
-                    _deepPagingCache);
+                    _deepPagingCache, _segmentResultCache);
               }
             });
         return iterableSearcher;
@@ -1289,7 +1724,20 @@ public class IndexManager {
         }
         _queriesInternalMeter.mark();
         _status.deattachThread(shard);
+        _queryLatency.updateShard(_table, shard, System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * Estimates the heap of the collectors, one per segment plus the merged
+     * result for the shard, each holding the fetch count of hits.
+     */
+    private long getCollectorMemoryUsage(IndexReader indexReader) {
+      long hitHeap = COLLECTOR_HIT_HEAP;
+      if (_sort != null) {
+        hitHeap += COLLECTOR_SORT_VALUE_HEAP * _sort.getSort().length;
       }
+      return (indexReader.leaves().size() + 1L) * (_fetchCount + 1L) * hitHeap;
     }
 
   }
@@ -1342,12 +1790,30 @@ public class IndexManager {
     blurIndex.addBulkMutate(bulkId, mutation);
   }
 
-  public void bulkMutateFinish(Set<String> potentialTables, String bulkId, boolean apply, boolean blockUntilComplete)
-      throws BlurException, IOException {
+  public void bulkMutateFinish(Set<String> potentialTables, final String bulkId, final boolean apply,
+      final boolean blockUntilComplete) throws BlurException, IOException {
+    // Each shard finishes its bulk under its own lock, so the shards are
+    // finished in parallel.
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
     for (String table : potentialTables) {
       Map<String, BlurIndex> indexes = _indexServer.getIndexes(table);
-      for (BlurIndex index : indexes.values()) {
-        index.finishBulkMutate(bulkId, apply, blockUntilComplete);
+      for (final BlurIndex index : indexes.values()) {
+        futures.add(_mutateExecutor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            index.finishBulkMutate(bulkId, apply, blockUntilComplete);
+            return null;
+          }
+        }));
+      }
+    }
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        throw new BException("Unknown error during bulk mutate finish", e);
+      } catch (ExecutionException e) {
+        throw new BException("Unknown error during bulk mutate finish", e.getCause());
       }
     }
   }
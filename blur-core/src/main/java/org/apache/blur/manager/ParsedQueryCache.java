@@ -0,0 +1,190 @@
+package org.apache.blur.manager;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.apache.blur.metrics.MetricsConstants.HIT;
+import static org.apache.blur.metrics.MetricsConstants.MISS;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.PARSED_QUERY_CACHE;
+import static org.apache.blur.metrics.MetricsConstants.SIZE;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.analysis.FieldManager;
+import org.apache.blur.thrift.generated.ScoreType;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * A bounded cache of parsed {@link Query} objects. The first thread to miss on
+ * a key parses the query, other threads asking for the same key wait for that
+ * result instead of parsing it again. Failed parses are not cached.
+ */
+public class ParsedQueryCache {
+
+  private final ConcurrentLinkedHashMap<Key, FutureTask<Query>> _cache;
+  private final Meter _hits;
+  private final Meter _misses;
+
+  public ParsedQueryCache(int capacity) {
+    _cache = new ConcurrentLinkedHashMap.Builder<Key, FutureTask<Query>>().maximumWeightedCapacity(capacity).build();
+    _hits = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, PARSED_QUERY_CACHE, HIT), HIT, TimeUnit.SECONDS);
+    _misses = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, PARSED_QUERY_CACHE, MISS), MISS, TimeUnit.SECONDS);
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, PARSED_QUERY_CACHE, SIZE), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _cache.size();
+      }
+    });
+  }
+
+  public Query get(Key key, Callable<Query> parser) throws ParseException {
+    FutureTask<Query> task = _cache.get(key);
+    if (task == null) {
+      FutureTask<Query> newTask = new FutureTask<Query>(parser);
+      task = _cache.putIfAbsent(key, newTask);
+      if (task == null) {
+        _misses.mark();
+        task = newTask;
+        task.run();
+      } else {
+        _hits.mark();
+      }
+    } else {
+      _hits.mark();
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for query [" + key._query + "] to be parsed.", e);
+    } catch (ExecutionException e) {
+      _cache.remove(key, task);
+      Throwable cause = e.getCause();
+      if (cause instanceof ParseException) {
+        throw (ParseException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  public void setCapacity(int capacity) {
+    _cache.setCapacity(capacity);
+  }
+
+  public int size() {
+    return _cache.size();
+  }
+
+  public void clear() {
+    _cache.clear();
+  }
+
+  /**
+   * The parsed query depends on everything that is passed to the parser, the
+   * field manager is compared by identity together with its version so that
+   * new field definitions are picked up.
+   */
+  public static class Key {
+
+    private final String _table;
+    private final String _query;
+    private final boolean _superQueryOn;
+    private final ScoreType _scoreType;
+    private final Filter _preFilter;
+    private final FieldManager _fieldManager;
+    private final long _fieldManagerVersion;
+    private final int _hashCode;
+
+    public Key(String table, String query, boolean superQueryOn, ScoreType scoreType, Filter preFilter,
+        FieldManager fieldManager) {
+      _table = table;
+      _query = query;
+      _superQueryOn = superQueryOn;
+      _scoreType = scoreType;
+      _preFilter = preFilter;
+      _fieldManager = fieldManager;
+      _fieldManagerVersion = fieldManager.getVersion();
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((_table == null) ? 0 : _table.hashCode());
+      result = prime * result + ((_query == null) ? 0 : _query.hashCode());
+      result = prime * result + (_superQueryOn ? 1231 : 1237);
+      result = prime * result + ((_scoreType == null) ? 0 : _scoreType.hashCode());
+      result = prime * result + ((_preFilter == null) ? 0 : _preFilter.hashCode());
+      result = prime * result + System.identityHashCode(_fieldManager);
+      result = prime * result + (int) (_fieldManagerVersion ^ (_fieldManagerVersion >>> 32));
+      _hashCode = result;
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Key other = (Key) obj;
+      if (_hashCode != other._hashCode)
+        return false;
+      if (_fieldManager != other._fieldManager)
+        return false;
+      if (_fieldManagerVersion != other._fieldManagerVersion)
+        return false;
+      if (_superQueryOn != other._superQueryOn)
+        return false;
+      if (_scoreType != other._scoreType)
+        return false;
+      if (_table == null) {
+        if (other._table != null)
+          return false;
+      } else if (!_table.equals(other._table))
+        return false;
+      if (_query == null) {
+        if (other._query != null)
+          return false;
+      } else if (!_query.equals(other._query))
+        return false;
+      if (_preFilter == null) {
+        if (other._preFilter != null)
+          return false;
+      } else if (!_preFilter.equals(other._preFilter))
+        return false;
+      return true;
+    }
+  }
+}
@@ -18,6 +18,8 @@ package org.apache.blur.manager;
  */
 import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
 
+import java.util.concurrent.Callable;
+
 import org.apache.blur.analysis.FieldManager;
 import org.apache.blur.lucene.search.SuperParser;
 import org.apache.blur.server.TableContext;
@@ -33,8 +35,17 @@ public class QueryParserUtil {
 
   public static Query parseQuery(String query, boolean superQueryOn, FieldManager fieldManager, Filter postFilter,
       Filter preFilter, ScoreType scoreType, TableContext tableContext) throws ParseException {
-    Query result = new SuperParser(LUCENE_VERSION, fieldManager, superQueryOn, preFilter, scoreType,
-        tableContext.getDefaultPrimeDocTerm()).parse(query);
+    return parseQuery(query, superQueryOn, fieldManager, postFilter, preFilter, scoreType, tableContext, null);
+  }
+
+  /**
+   * @param parsedQueryCache
+   *          the cache of parsed queries to use, null to always parse.
+   */
+  public static Query parseQuery(String query, boolean superQueryOn, FieldManager fieldManager, Filter postFilter,
+      Filter preFilter, ScoreType scoreType, TableContext tableContext, ParsedQueryCache parsedQueryCache)
+      throws ParseException {
+    Query result = parse(query, superQueryOn, fieldManager, preFilter, scoreType, tableContext, parsedQueryCache);
     if (postFilter == null) {
       return result;
     }
@@ -44,39 +55,67 @@ public class QueryParserUtil {
   public static Filter parseFilter(String table, String filterStr, boolean superQueryOn,
       final FieldManager fieldManager, BlurFilterCache filterCache, final TableContext tableContext)
       throws ParseException, BlurException {
+    return parseFilter(table, filterStr, superQueryOn, fieldManager, filterCache, tableContext, null);
+  }
+
+  /**
+   * @param parsedQueryCache
+   *          the cache of parsed queries to use, null to always parse.
+   */
+  public static Filter parseFilter(String table, String filterStr, boolean superQueryOn,
+      final FieldManager fieldManager, BlurFilterCache filterCache, final TableContext tableContext,
+      ParsedQueryCache parsedQueryCache) throws ParseException, BlurException {
     if (filterStr == null) {
       return null;
     }
-    synchronized (filterCache) {
-      Filter filter;
-      if (superQueryOn) {
-        filter = filterCache.fetchPostFilter(table, filterStr);
-      } else {
-        filter = filterCache.fetchPreFilter(table, filterStr);
-      }
-      if (filter != null) {
-        return filter;
-      }
-      filter = new QueryWrapperFilter(new SuperParser(LUCENE_VERSION, fieldManager, superQueryOn, null,
-          ScoreType.CONSTANT, tableContext.getDefaultPrimeDocTerm()).parse(filterStr));
-      if (superQueryOn) {
-        filter = filterCache.storePostFilter(table, filterStr, filter, new BlurFilterCache.FilterParser() {
-          @Override
-          public Query parse(String query) throws ParseException {
-            return new SuperParser(LUCENE_VERSION, fieldManager, true, null, ScoreType.CONSTANT, tableContext
-                .getDefaultPrimeDocTerm()).parse(query);
-          }
-        });
-      } else {
-        filter = filterCache.storePreFilter(table, filterStr, filter, new BlurFilterCache.FilterParser() {
-          @Override
-          public Query parse(String query) throws ParseException {
-            return new SuperParser(LUCENE_VERSION, fieldManager, false, null, ScoreType.CONSTANT, tableContext
-                .getDefaultPrimeDocTerm()).parse(query);
-          }
-        });
-      }
+    Filter filter;
+    if (superQueryOn) {
+      filter = filterCache.fetchPostFilter(table, filterStr);
+    } else {
+      filter = filterCache.fetchPreFilter(table, filterStr);
+    }
+    if (filter != null) {
       return filter;
     }
+    // Concurrent misses on the same filter wait on a single parse in the
+    // parsed query cache, the filter cache implementations are thread safe.
+    filter = new QueryWrapperFilter(parse(filterStr, superQueryOn, fieldManager, null, ScoreType.CONSTANT,
+        tableContext, parsedQueryCache));
+    if (superQueryOn) {
+      filter = filterCache.storePostFilter(table, filterStr, filter, new BlurFilterCache.FilterParser() {
+        @Override
+        public Query parse(String query) throws ParseException {
+          return new SuperParser(LUCENE_VERSION, fieldManager, true, null, ScoreType.CONSTANT, tableContext
+              .getDefaultPrimeDocTerm()).parse(query);
+        }
+      });
+    } else {
+      filter = filterCache.storePreFilter(table, filterStr, filter, new BlurFilterCache.FilterParser() {
+        @Override
+        public Query parse(String query) throws ParseException {
+          return new SuperParser(LUCENE_VERSION, fieldManager, false, null, ScoreType.CONSTANT, tableContext
+              .getDefaultPrimeDocTerm()).parse(query);
+        }
+      });
+    }
+    return filter;
+  }
+
+  private static Query parse(final String query, final boolean superQueryOn, final FieldManager fieldManager,
+      final Filter preFilter, final ScoreType scoreType, final TableContext tableContext,
+      ParsedQueryCache parsedQueryCache) throws ParseException {
+    if (parsedQueryCache == null) {
+      return new SuperParser(LUCENE_VERSION, fieldManager, superQueryOn, preFilter, scoreType,
+          tableContext.getDefaultPrimeDocTerm()).parse(query);
+    }
+    ParsedQueryCache.Key key = new ParsedQueryCache.Key(tableContext.getTable(), query, superQueryOn, scoreType,
+        preFilter, fieldManager);
+    return parsedQueryCache.get(key, new Callable<Query>() {
+      @Override
+      public Query call() throws Exception {
+        return new SuperParser(LUCENE_VERSION, fieldManager, superQueryOn, preFilter, scoreType, tableContext
+            .getDefaultPrimeDocTerm()).parse(query);
+      }
+    });
   }
 }
@@ -731,6 +731,10 @@ public class ZookeeperClusterStatus extends ClusterStatus {
       }
       String uri = tableDescriptor.getTableUri();
       BlurUtil.removeAll(_zk, blurTablePath);
+      String shardSummariesPath = ZookeeperPathConstants.getShardSummariesPath(cluster, table);
+      if (_zk.exists(shardSummariesPath, false) != null) {
+        BlurUtil.removeAll(_zk, shardSummariesPath);
+      }
       if (deleteIndexFiles) {
         BlurUtil.removeIndexFiles(uri, _config);
       }
@@ -34,6 +34,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -41,16 +43,22 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.blur.concurrent.Executors;
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
+import org.apache.blur.lucene.search.IndexSearcherCloseable;
+import org.apache.blur.lucene.search.PrimeDocCache;
 import org.apache.blur.manager.BlurFilterCache;
 import org.apache.blur.manager.clusterstatus.ClusterStatus;
 import org.apache.blur.manager.clusterstatus.ClusterStatus.Action;
+import org.apache.blur.manager.summary.ShardSummaryPublisher;
 import org.apache.blur.manager.writer.BlurIndex;
 import org.apache.blur.manager.writer.BlurIndexCloser;
 import org.apache.blur.manager.writer.BlurIndexConfig;
 import org.apache.blur.manager.writer.BlurIndexReadOnly;
+import org.apache.blur.manager.writer.IndexImportNotifier;
+import org.apache.blur.manager.writer.IndexImportScheduler;
 import org.apache.blur.manager.writer.SharedMergeScheduler;
 import org.apache.blur.server.ShardContext;
 import org.apache.blur.server.TableContext;
+import org.apache.blur.server.cache.RowCache;
 import org.apache.blur.server.cache.ThriftCache;
 import org.apache.blur.store.BlockCacheDirectoryFactory;
 import org.apache.blur.store.hdfs.BlurLockFactory;
@@ -66,6 +74,7 @@ import org.apache.blur.zookeeper.WatchChildren.OnChange;
 import org.apache.blur.zookeeper.ZookeeperPathConstants;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.store.Directory;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZooKeeper;
@@ -107,8 +116,13 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
   private final Thread _timerCacheFlush;
   private final Object _cleanupLock = new Object();
   private final ExecutorService _openerService;
+  private final NamespaceOpenLimiter _namespaceOpenLimiter;
+  private final ShardSummaryPublisher _shardSummaryPublisher;
+  private final ConcurrentMap<String, Future<BlurIndex>> _openingShards = new ConcurrentHashMap<String, Future<BlurIndex>>();
   private final WatchChildren _watchOnlineShards;
+  private final WatchChildren _watchImportNotifications;
   private final SharedMergeScheduler _mergeScheduler;
+  private final IndexImportScheduler _indexImportScheduler;
   private final ExecutorService _searchExecutor;
   private final BlurIndexCloser _indexCloser;
   private final ConcurrentMap<String, LayoutEntry> _layout = new ConcurrentHashMap<String, LayoutEntry>();
@@ -122,6 +136,7 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
   private final Timer _indexBulkTimer;
   private final Timer _indexIdleWriterTimer;
   private final ThriftCache _thriftCache;
+  private final RowCache _rowCache;
   private final SequentialReadControl _sequentialReadControl;
   private final long _maxWriterIdle;
 
@@ -131,8 +146,9 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
       int shardOpenerThreadCount, int maxMergeThreads, int internalSearchThreads,
       int minimumNumberOfNodesBeforeExitingSafeMode, Timer hdfsKeyValueTimer, Timer indexImporterTimer,
       long smallMergeThreshold, Timer indexBulkTimer, ThriftCache thriftCache,
-      SequentialReadControl sequentialReadControl, Timer indexIdleWriterTimer, long maxWriterIdle)
-      throws KeeperException, InterruptedException {
+      SequentialReadControl sequentialReadControl, Timer indexIdleWriterTimer, long maxWriterIdle,
+      int indexImporterThreadCount, RowCache rowCache, int shardOpenerNamespaceThreadCount,
+      long shardSummaryPublishInterval) throws KeeperException, InterruptedException {
     super(clusterStatus, configuration, nodeName, cluster);
     _indexIdleWriterTimer = indexIdleWriterTimer;
     _maxWriterIdle = maxWriterIdle;
@@ -151,11 +167,15 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     _blockCacheDirectoryFactory = blockCacheDirectoryFactory;
     _distributedLayoutFactory = distributedLayoutFactory;
     _thriftCache = thriftCache;
+    _rowCache = rowCache;
 
     _closer.register(_shardStateManager);
 
     BlurUtil.setupZookeeper(_zookeeper, _cluster);
     _openerService = Executors.newThreadPool("shard-opener", _shardOpenerThreadCount);
+    _namespaceOpenLimiter = new NamespaceOpenLimiter(shardOpenerNamespaceThreadCount);
+    _shardSummaryPublisher = _closer.register(new ShardSummaryPublisher(_zookeeper, _cluster,
+        shardSummaryPublishInterval));
     _searchExecutor = Executors.newThreadPool("internal-search", _internalSearchThreads);
 
     _closer.register(CloseableExecutorService.close(_openerService));
@@ -163,6 +183,7 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
 
     // @TODO allow for configuration of these
     _mergeScheduler = _closer.register(new SharedMergeScheduler(maxMergeThreads, smallMergeThreshold));
+    _indexImportScheduler = _closer.register(new IndexImportScheduler(indexImporterThreadCount));
 
     _indexCloser = _closer.register(new BlurIndexCloser());
     _timerCacheFlush = setupFlushCacheTimer();
@@ -181,6 +202,7 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     _timerTableWarmer = setupTableWarmer();
     _timerTableWarmer.start();
     _watchOnlineShards = watchForShardServerChanges();
+    _watchImportNotifications = watchForImportNotifications();
     _clusterStatus.registerActionOnTableStateChange(new Action() {
       @Override
       public void action() {
@@ -207,6 +229,7 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
       closeAllIndexes();
       _timerCacheFlush.interrupt();
       _watchOnlineShards.close();
+      _watchImportNotifications.close();
       _timerTableWarmer.interrupt();
     }
   }
@@ -219,6 +242,10 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     return _pauseWarmup;
   }
 
+  public SharedMergeScheduler getMergeScheduler() {
+    return _mergeScheduler;
+  }
+
   @Override
   public Map<String, ShardState> getShardState(String table) {
     return _shardStateManager.getShardState(table);
@@ -234,12 +261,7 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     checkTable(table);
 
     Set<String> shardsToServe = getShardsToServe(table);
-    synchronized (_indexes) {
-      if (!_indexes.containsKey(table)) {
-        _indexes.putIfAbsent(table, new ConcurrentHashMap<String, BlurIndex>());
-      }
-    }
-    Map<String, BlurIndex> tableIndexes = _indexes.get(table);
+    Map<String, BlurIndex> tableIndexes = getTableIndexes(table);
     Set<String> shardsBeingServed = new HashSet<String>(tableIndexes.keySet());
     if (shardsBeingServed.containsAll(shardsToServe)) {
       Map<String, BlurIndex> result = new HashMap<String, BlurIndex>(tableIndexes);
@@ -253,6 +275,15 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     }
   }
 
+  private Map<String, BlurIndex> getTableIndexes(String table) {
+    synchronized (_indexes) {
+      if (!_indexes.containsKey(table)) {
+        _indexes.putIfAbsent(table, new ConcurrentHashMap<String, BlurIndex>());
+      }
+    }
+    return _indexes.get(table);
+  }
+
   private boolean isEnabled(String table) {
     checkTable(table);
     return _clusterStatus.isEnabled(true, _cluster, table);
@@ -294,6 +325,25 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     return _closer.register(watchOnlineShards);
   }
 
+  private WatchChildren watchForImportNotifications() {
+    final IndexImportNotifier indexImportNotifier = _closer.register(new IndexImportNotifier(_zookeeper, _cluster,
+        new IndexImportNotifier.Handler() {
+          @Override
+          public boolean handle(String table, String shard) {
+            return _indexImportScheduler.requestImport(table, shard);
+          }
+        }));
+    WatchChildren watchImportNotifications = new WatchChildren(_zookeeper,
+        ZookeeperPathConstants.getImportPath(_cluster));
+    watchImportNotifications.watch(new OnChange() {
+      @Override
+      public void action(List<String> children) {
+        indexImportNotifier.process(children);
+      }
+    });
+    return _closer.register(watchImportNotifications);
+  }
+
   private Thread setupTableWarmer() {
     Thread thread = new Thread(new Runnable() {
       @Override
@@ -394,6 +444,15 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
       AtomicLong segmentCount = new AtomicLong();
       AtomicLong indexMemoryUsage = new AtomicLong();
       AtomicLong recordCount = new AtomicLong();
+      // Submit the missing shards of every table before waiting on any of
+      // them so that the shards of all the tables are opened in parallel.
+      for (String table : tableList) {
+        try {
+          submitMissingShards(table, getShardsToServe(table), getTableIndexes(table));
+        } catch (Exception e) {
+          LOG.error("Unknown error trying to open missing shards for table [{0}]", e, table);
+        }
+      }
       for (String table : tableList) {
         try {
           Map<String, BlurIndex> indexes = getIndexes(table);
@@ -528,7 +587,8 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     }
 
     BlurIndexConfig blurIndexConf = new BlurIndexConfig(shardContext, directory, _mergeScheduler, _searchExecutor,
-        _indexCloser, _indexImporterTimer, _indexBulkTimer, _thriftCache, _indexIdleWriterTimer, _maxWriterIdle);
+        _indexCloser, _indexImporterTimer, _indexBulkTimer, _thriftCache, _indexIdleWriterTimer, _maxWriterIdle,
+        _indexImportScheduler, _rowCache, _shardSummaryPublisher);
 
     BlurIndex index = tableContext.newInstanceBlurIndex(blurIndexConf);
 
@@ -539,46 +599,101 @@ public class DistributedIndexServer extends AbstractDistributedIndexServer {
     return index;
   }
 
-  private synchronized Map<String, BlurIndex> openMissingShards(final String table, Set<String> shardsToServe,
+  /**
+   * Loads the prime doc bit sets of every segment so that the first queries
+   * against a newly opened shard do not pay for them. A failure here is not
+   * fatal, the bit sets are loaded on demand as before.
+   */
+  private void warmupPrimeDocs(String table, String shard, BlurIndex index) {
+    try {
+      IndexSearcherCloseable searcher = index.getIndexSearcher();
+      try {
+        for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+          PrimeDocCache.getPrimeDocBitSet(BlurUtil.PRIME_DOC_TERM, context.reader());
+        }
+      } finally {
+        searcher.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not warm the prime doc cache for shard [{0}] table [{1}].", e, shard, table);
+    }
+  }
+
+  /**
+   * Submits an open for each shard to serve that is neither open nor already
+   * being opened. The opened shard is added to the table indexes by the opener
+   * so callers only wait on the shards they need.
+   */
+  private Map<String, Future<BlurIndex>> submitMissingShards(final String table, Set<String> shardsToServe,
       final Map<String, BlurIndex> tableIndexes) {
     Map<String, Future<BlurIndex>> opening = new HashMap<String, Future<BlurIndex>>();
-    for (String s : shardsToServe) {
-      final String shard = s;
-      BlurIndex blurIndex = tableIndexes.get(shard);
-      if (blurIndex == null) {
-        _pauseWarmup.incrementAndGet();
-        LOG.info("Opening missing shard [{0}] from table [{1}]", shard, table);
-        Future<BlurIndex> submit = _openerService.submit(new Callable<BlurIndex>() {
-          @Override
-          public BlurIndex call() throws Exception {
-            _shardStateManager.opening(table, shard);
-            try {
-              BlurIndex openShard = openShard(table, shard);
-              _shardStateManager.open(table, shard);
-              return openShard;
-            } catch (Exception e) {
-              _shardStateManager.openingError(table, shard);
-              throw e;
-            } catch (Throwable t) {
-              _shardStateManager.openingError(table, shard);
-              throw new RuntimeException(t);
-            } finally {
-              _pauseWarmup.decrementAndGet();
+    synchronized (_openingShards) {
+      for (String s : shardsToServe) {
+        final String shard = s;
+        if (tableIndexes.containsKey(shard)) {
+          continue;
+        }
+        final String key = table + "/" + shard;
+        Future<BlurIndex> future = _openingShards.get(key);
+        if (future == null) {
+          _pauseWarmup.incrementAndGet();
+          LOG.info("Opening missing shard [{0}] from table [{1}]", shard, table);
+          FutureTask<BlurIndex> task = new FutureTask<BlurIndex>(new Callable<BlurIndex>() {
+            @Override
+            public BlurIndex call() throws Exception {
+              _shardStateManager.opening(table, shard);
+              String namespace = null;
+              try {
+                TableContext tableContext = getTableContext(table);
+                namespace = NamespaceOpenLimiter.getNamespace(_configuration, tableContext.getTablePath());
+                _namespaceOpenLimiter.acquire(namespace);
+                BlurIndex openShard = openShard(table, shard);
+                warmupPrimeDocs(table, shard, openShard);
+                tableIndexes.put(shard, openShard);
+                _shardStateManager.open(table, shard);
+                return openShard;
+              } catch (Exception e) {
+                _shardStateManager.openingError(table, shard);
+                throw e;
+              } catch (Throwable t) {
+                _shardStateManager.openingError(table, shard);
+                throw new RuntimeException(t);
+              } finally {
+                if (namespace != null) {
+                  _namespaceOpenLimiter.release(namespace);
+                }
+                _openingShards.remove(key);
+                _pauseWarmup.decrementAndGet();
+              }
             }
+          });
+          // The task removes itself from the opening shards when it finishes,
+          // so it has to be in the map before it can run.
+          _openingShards.put(key, task);
+          try {
+            _openerService.execute(task);
+          } catch (RejectedExecutionException e) {
+            _openingShards.remove(key);
+            _pauseWarmup.decrementAndGet();
+            throw e;
           }
-        });
-        opening.put(shard, submit);
+          future = task;
+        }
+        opening.put(shard, future);
       }
     }
+    return opening;
+  }
 
+  private Map<String, BlurIndex> openMissingShards(final String table, Set<String> shardsToServe,
+      final Map<String, BlurIndex> tableIndexes) {
+    Map<String, Future<BlurIndex>> opening = submitMissingShards(table, shardsToServe, tableIndexes);
     for (Entry<String, Future<BlurIndex>> entry : opening.entrySet()) {
       String shard = entry.getKey();
       Future<BlurIndex> future = entry.getValue();
       try {
-        BlurIndex blurIndex = future.get();
-        tableIndexes.put(shard, blurIndex);
+        future.get();
       } catch (Exception e) {
-        e.printStackTrace();
         LOG.error("Unknown error while opening shard [{0}] for table [{1}].", e.getCause(), shard, table);
       }
     }
@@ -0,0 +1,88 @@
+package org.apache.blur.manager.indexserver;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Limits the number of shards that are opened at the same time against a
+ * single file system namespace (one name node). The shard opener pool bounds
+ * the opens of the whole server, this keeps the opens of many tables that live
+ * in the same namespace from all hitting the same name node at once.
+ */
+public class NamespaceOpenLimiter {
+
+  private final ConcurrentMap<String, Semaphore> _permits = new ConcurrentHashMap<String, Semaphore>();
+  private final int _maxOpensPerNamespace;
+
+  /**
+   * @param maxOpensPerNamespace
+   *          the number of concurrent opens per namespace, zero or less means
+   *          no limit.
+   */
+  public NamespaceOpenLimiter(int maxOpensPerNamespace) {
+    _maxOpensPerNamespace = maxOpensPerNamespace;
+  }
+
+  public void acquire(String namespace) throws InterruptedException {
+    if (_maxOpensPerNamespace <= 0) {
+      return;
+    }
+    getSemaphore(namespace).acquire();
+  }
+
+  public void release(String namespace) {
+    if (_maxOpensPerNamespace <= 0) {
+      return;
+    }
+    getSemaphore(namespace).release();
+  }
+
+  public int getAvailablePermits(String namespace) {
+    if (_maxOpensPerNamespace <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    return getSemaphore(namespace).availablePermits();
+  }
+
+  private Semaphore getSemaphore(String namespace) {
+    Semaphore semaphore = _permits.get(namespace);
+    if (semaphore == null) {
+      semaphore = new Semaphore(_maxOpensPerNamespace);
+      Semaphore existing = _permits.putIfAbsent(namespace, semaphore);
+      if (existing != null) {
+        return existing;
+      }
+    }
+    return semaphore;
+  }
+
+  /**
+   * @return the namespace of the path, the scheme and authority of the file
+   *         system that the path belongs to.
+   */
+  public static String getNamespace(Configuration configuration, Path path) throws IOException {
+    return path.getFileSystem(configuration).getUri().toString();
+  }
+
+}
@@ -26,6 +26,7 @@ import org.apache.blur.lucene.search.IndexSearcherCloseable;
 import org.apache.blur.lucene.search.IterablePaging;
 import org.apache.blur.lucene.search.IterablePaging.ProgressRef;
 import org.apache.blur.lucene.search.IterablePaging.TotalHitsRef;
+import org.apache.blur.lucene.search.SegmentResultCache;
 import org.apache.blur.server.TableContext;
 import org.apache.blur.thrift.generated.BlurException;
 import org.apache.blur.thrift.generated.BlurResult;
@@ -59,7 +60,8 @@ public class BlurResultIterableSearcher implements BlurResultIterable {
 
   public BlurResultIterableSearcher(AtomicBoolean running, Query query, String table, String shard,
       IndexSearcherCloseable searcher, Selector selector, boolean closeSearcher, boolean runSlow, int fetchCount,
-      int maxHeapPerRowFetch, TableContext context, Sort sort, DeepPagingCache deepPagingCache) throws BlurException {
+      int maxHeapPerRowFetch, TableContext context, Sort sort, DeepPagingCache deepPagingCache,
+      SegmentResultCache segmentResultCache) throws BlurException {
     _sort = sort;
     _running = running;
     _query = query;
@@ -69,7 +71,7 @@ public class BlurResultIterableSearcher implements BlurResultIterable {
     _runSlow = runSlow;
     _fetchCount = fetchCount;
     _iterablePaging = new IterablePaging(_running, _searcher, _query, _fetchCount, _totalHitsRef, _progressRef,
-        _runSlow, _sort, deepPagingCache);
+        _runSlow, _sort, deepPagingCache, segmentResultCache);
     _iteratorConverter = new IteratorConverter<ScoreDoc, BlurResult, BlurException>(_iterablePaging.iterator(),
         new Converter<ScoreDoc, BlurResult, BlurException>() {
           @Override
@@ -0,0 +1,127 @@
+package org.apache.blur.manager.status;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
+/**
+ * Latency histograms of one kind of operation (query, fetch or mutate) per
+ * table and per shard. The timers are registered with the default metrics
+ * registry so they are exposed through the metrics call, the table timer is
+ * named by the table and the shard timer is the table timer scoped by the
+ * shard.
+ */
+public class LatencyMetrics {
+
+  private final String _type;
+  private final ConcurrentMap<String, Timer> _tableTimers = new ConcurrentHashMap<String, Timer>();
+  private final ConcurrentMap<String, ConcurrentMap<String, Timer>> _shardTimers = new ConcurrentHashMap<String, ConcurrentMap<String, Timer>>();
+
+  public LatencyMetrics(String type) {
+    _type = type;
+  }
+
+  public void updateTable(String table, long nanos) {
+    getTableTimer(table).update(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void updateShard(String table, String shard, long nanos) {
+    getShardTimer(table, shard).update(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public Timer getTableTimer(String table) {
+    Timer timer = _tableTimers.get(table);
+    if (timer == null) {
+      timer = newTimer(getTableMetricName(_type, table));
+      Timer existing = _tableTimers.putIfAbsent(table, timer);
+      if (existing != null) {
+        return existing;
+      }
+    }
+    return timer;
+  }
+
+  public Timer getShardTimer(String table, String shard) {
+    ConcurrentMap<String, Timer> timers = _shardTimers.get(table);
+    if (timers == null) {
+      timers = new ConcurrentHashMap<String, Timer>();
+      ConcurrentMap<String, Timer> existing = _shardTimers.putIfAbsent(table, timers);
+      if (existing != null) {
+        timers = existing;
+      }
+    }
+    Timer timer = timers.get(shard);
+    if (timer == null) {
+      timer = newTimer(getShardMetricName(_type, table, shard));
+      Timer existing = timers.putIfAbsent(shard, timer);
+      if (existing != null) {
+        return existing;
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * @return the tables that have timers.
+   */
+  public Set<String> getTables() {
+    Set<String> tables = new HashSet<String>(_tableTimers.keySet());
+    tables.addAll(_shardTimers.keySet());
+    return tables;
+  }
+
+  /**
+   * Removes the table timer and the shard timers of the table from the
+   * metrics registry.
+   */
+  public void removeTable(String table) {
+    if (_tableTimers.remove(table) != null) {
+      Metrics.defaultRegistry().removeMetric(getTableMetricName(_type, table));
+    }
+    ConcurrentMap<String, Timer> timers = _shardTimers.remove(table);
+    if (timers != null) {
+      for (String shard : timers.keySet()) {
+        Metrics.defaultRegistry().removeMetric(getShardMetricName(_type, table, shard));
+      }
+    }
+  }
+
+  public static MetricName getTableMetricName(String type, String table) {
+    return new MetricName(ORG_APACHE_BLUR, type, table);
+  }
+
+  public static MetricName getShardMetricName(String type, String table, String shard) {
+    return new MetricName(ORG_APACHE_BLUR, type, table, shard);
+  }
+
+  private static Timer newTimer(MetricName metricName) {
+    // The registry returns the existing timer if another instance already
+    // registered the same name.
+    return Metrics.newTimer(metricName, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+  }
+
+}
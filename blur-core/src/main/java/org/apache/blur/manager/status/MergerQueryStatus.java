@@ -72,6 +72,7 @@ public class MergerQueryStatus implements Merger<List<BlurQueryStatus>> {
 	}
     s1.completeShards = s1.completeShards + s2.completeShards;
     s1.totalShards = s1.totalShards + s2.totalShards;
+    s1.memoryUsage = s1.memoryUsage + s2.memoryUsage;
     if (s1.state != s2.state) {
       if (s1.state == QueryState.INTERRUPTED || s2.state == QueryState.INTERRUPTED) {
         s1.state = QueryState.INTERRUPTED;
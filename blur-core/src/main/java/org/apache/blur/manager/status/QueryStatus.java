@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.blur.thrift.generated.BlurQuery;
@@ -29,6 +30,7 @@ import org.apache.blur.thrift.generated.BlurQueryStatus;
 import org.apache.blur.thrift.generated.CpuTime;
 import org.apache.blur.thrift.generated.QueryState;
 import org.apache.blur.thrift.generated.User;
+import org.apache.blur.utils.MemoryUsageCounter;
 
 /**
  * This class is accessed by multiple threads (one for each shard) executing the
@@ -53,8 +55,20 @@ public class QueryStatus implements Comparable<QueryStatus> {
   private final AtomicInteger _completeShards = new AtomicInteger();
   private final AtomicBoolean _running;
   private final Map<String, CpuTime> _cpuTimes = new ConcurrentHashMap<String, CpuTime>();
+  private final MemoryUsageCounter _memoryUsage;
 
   public QueryStatus(long ttl, String table, BlurQuery blurQuery, AtomicBoolean running, User user) {
+    this(ttl, table, blurQuery, running, user, new AtomicLong());
+  }
+
+  /**
+   * @param totalMemoryUsage
+   *          the running total that the memory usage of this query is added
+   *          to until {@link #releaseMemoryUsage()} is called.
+   */
+  QueryStatus(long ttl, String table, BlurQuery blurQuery, AtomicBoolean running, User user,
+      AtomicLong totalMemoryUsage) {
+    _memoryUsage = new MemoryUsageCounter(totalMemoryUsage);
     _ttl = ttl;
     _table = table;
     _blurQuery = blurQuery;
@@ -87,6 +101,54 @@ public class QueryStatus implements Comparable<QueryStatus> {
     return this;
   }
 
+  /**
+   * Adds (or removes if negative) the estimated number of bytes of heap that
+   * this query is holding.
+   */
+  public void addMemoryUsage(long bytes) {
+    _memoryUsage.add(bytes);
+  }
+
+  public long getMemoryUsage() {
+    return _memoryUsage.get();
+  }
+
+  /**
+   * The counter that holds the estimated memory usage of this query, for the
+   * components that account for their own allocations (e.g. facets).
+   */
+  public MemoryUsageCounter getMemoryUsageCounter() {
+    return _memoryUsage;
+  }
+
+  /**
+   * Removes the memory usage of this query from the running total.
+   * 
+   * @return false if it was already removed.
+   */
+  boolean releaseMemoryUsage() {
+    return _memoryUsage.release();
+  }
+
+  /**
+   * The cpu time in nanoseconds of all the shards that have finished, or -1 if
+   * cpu time is not supported by the jvm.
+   */
+  public long getTotalCpuTime() {
+    if (!CPU_TIME_SUPPORTED) {
+      return -1L;
+    }
+    long total = 0;
+    for (CpuTime cpuTime : _cpuTimes.values()) {
+      total += cpuTime.cpuTime;
+    }
+    return total;
+  }
+
+  public boolean isRunning() {
+    return !_finished && _state.get() == QueryState.RUNNING;
+  }
+
   public String getUserUuid() {
     return _blurQuery.uuid;
   }
@@ -112,6 +174,7 @@ public class QueryStatus implements Comparable<QueryStatus> {
     }
     queryStatus.cpuTimes = _cpuTimes;
     queryStatus.user = _user;
+    queryStatus.memoryUsage = _memoryUsage.get();
     return queryStatus;
   }
 
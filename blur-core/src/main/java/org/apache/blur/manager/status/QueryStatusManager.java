@@ -16,8 +16,16 @@ package org.apache.blur.manager.status;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.QUERY_ADMISSION_REJECTED;
+import static org.apache.blur.metrics.MetricsConstants.QUERY_BACK_PRESSURE_STOPPED;
+import static org.apache.blur.metrics.MetricsConstants.QUERY_MEMORY_USAGE;
+
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -26,7 +34,9 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
@@ -36,7 +46,21 @@ import org.apache.blur.thrift.generated.QueryState;
 import org.apache.blur.thrift.generated.User;
 import org.apache.blur.utils.GCAction;
 import org.apache.blur.utils.GCWatcher;
+import org.apache.blur.utils.MemoryUsageCounter;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
 
+/**
+ * Tracks the queries running on a shard server along with the estimated heap
+ * each of them is holding (see {@link QueryStatus#addMemoryUsage(long)}) plus
+ * the heap held by in flight row fetches. When a memory budget is configured
+ * new queries are queued while the budget is exhausted and rejected if no
+ * memory becomes available before the admission timeout. When the GC watcher
+ * detects heap pressure only the largest consumers are stopped.
+ */
 public class QueryStatusManager implements Closeable {
 
   private static final Log LOG = LogFactory.getLog(QueryStatusManager.class);
@@ -45,9 +69,39 @@ public class QueryStatusManager implements Closeable {
   private final Timer _statusCleanupTimer;
   private final long _statusCleanupTimerDelay;
   private final ConcurrentMap<QueryStatus, Object> _currentQueryStatusCollection = new ConcurrentHashMap<QueryStatus, Object>();
-  
+  private final long _memoryBudget;
+  private final long _admissionTimeout;
+  private final AtomicLong _memoryUsage = new AtomicLong();
+  private final Object _admissionLock = new Object();
+  private final Meter _admissionRejected;
+  private final Meter _backPressureStopped;
+
   public QueryStatusManager(long statusCleanupTimerDelay) {
+    this(statusCleanupTimerDelay, 0, 0);
+  }
+
+  /**
+   * @param memoryBudget
+   *          the number of bytes of heap that running queries and fetches are
+   *          allowed to hold before new queries are queued, 0 or less disables
+   *          admission control.
+   * @param admissionTimeout
+   *          the time in ms that a query will wait for the memory budget.
+   */
+  public QueryStatusManager(long statusCleanupTimerDelay, long memoryBudget, long admissionTimeout) {
     _statusCleanupTimerDelay = statusCleanupTimerDelay;
+    _memoryBudget = memoryBudget;
+    _admissionTimeout = admissionTimeout;
+    _admissionRejected = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, BLUR, QUERY_ADMISSION_REJECTED),
+        QUERY_ADMISSION_REJECTED, TimeUnit.SECONDS);
+    _backPressureStopped = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, BLUR, QUERY_BACK_PRESSURE_STOPPED),
+        QUERY_BACK_PRESSURE_STOPPED, TimeUnit.SECONDS);
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, BLUR, QUERY_MEMORY_USAGE), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return getMemoryUsage();
+      }
+    });
     _statusCleanupTimer = new Timer("Query-Status-Cleanup", true);
     _statusCleanupTimer.schedule(new TimerTask() {
       @Override
@@ -62,7 +116,7 @@ public class QueryStatusManager implements Closeable {
     GCWatcher.registerAction(new GCAction() {
       @Override
       public void takeAction() throws Exception {
-        stopAllQueriesForBackPressure();
+        stopLargestQueriesForBackPressure();
       }
     });
   }
@@ -74,13 +128,96 @@ public class QueryStatusManager implements Closeable {
   }
 
   public QueryStatus newQueryStatus(String table, BlurQuery blurQuery, int maxNumberOfThreads, AtomicBoolean running, User user) {
-    QueryStatus queryStatus = new QueryStatus(_statusCleanupTimerDelay, table, blurQuery, running, user);
+    QueryStatus queryStatus = new QueryStatus(_statusCleanupTimerDelay, table, blurQuery, running, user, _memoryUsage);
     _currentQueryStatusCollection.put(queryStatus, CONSTANT_VALUE);
     return queryStatus;
   }
 
   public void removeStatus(QueryStatus status) {
     status.setFinished(true);
+    if (status.releaseMemoryUsage()) {
+      notifyAdmission();
+    }
+  }
+
+  /**
+   * Waits until the memory held by the running queries and fetches is below
+   * the memory budget. Memory held by a query or a fetch is only released when
+   * it finishes ({@link #removeStatus(QueryStatus)} or
+   * {@link #finishFetch(MemoryUsageCounter)}), both of which wake the waiting queries.
+   * 
+   * @return true if the query may run, false if the budget was not available
+   *         before the admission timeout.
+   */
+  public boolean waitForAdmission() throws InterruptedException {
+    if (_memoryBudget <= 0 || _memoryUsage.get() < _memoryBudget) {
+      return true;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_admissionTimeout);
+    synchronized (_admissionLock) {
+      while (_memoryUsage.get() >= _memoryBudget) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          LOG.warn("Query rejected, memory usage [{0}] is over the budget of [{1}].", _memoryUsage.get(), _memoryBudget);
+          _admissionRejected.mark();
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(_admissionLock, remaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Starts accounting the heap of a row fetch, the fetch adds the size of the
+   * documents it reads to the returned counter.
+   */
+  public MemoryUsageCounter startFetch() {
+    return new MemoryUsageCounter(_memoryUsage);
+  }
+
+  /**
+   * Releases the heap accounted by a row fetch.
+   */
+  public void finishFetch(MemoryUsageCounter memoryUsage) {
+    if (memoryUsage.release()) {
+      notifyAdmission();
+    }
+  }
+
+  /**
+   * @return the estimated heap held by the running queries and row fetches,
+   *         this is a running total that is updated as they account memory
+   *         and released when they finish.
+   */
+  public long getMemoryUsage() {
+    return _memoryUsage.get();
+  }
+
+  /**
+   * @return the number of queries that are currently running.
+   */
+  public int getRunningQueryCount() {
+    int count = 0;
+    for (QueryStatus status : _currentQueryStatusCollection.keySet()) {
+      if (!status.isFinished()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public long getMemoryBudget() {
+    return _memoryBudget;
+  }
+
+  private void notifyAdmission() {
+    if (_memoryBudget <= 0) {
+      return;
+    }
+    synchronized (_admissionLock) {
+      _admissionLock.notifyAll();
+    }
   }
 
   private void cleanupFinishedQueryStatuses() {
@@ -140,6 +277,46 @@ public class QueryStatusManager implements Closeable {
     return new ArrayList<String>(ids);
   }
 
+  /**
+   * Stops the running queries that hold the most memory until at least half
+   * of the memory held by running queries has been released. If none of the
+   * running queries has accounted any memory all of them are stopped.
+   */
+  public void stopLargestQueriesForBackPressure() {
+    List<QueryStatus> running = new ArrayList<QueryStatus>();
+    long total = 0;
+    for (QueryStatus status : _currentQueryStatusCollection.keySet()) {
+      if (status.isRunning()) {
+        running.add(status);
+        total += status.getMemoryUsage();
+      }
+    }
+    if (total <= 0) {
+      stopAllQueriesForBackPressure();
+      return;
+    }
+    Collections.sort(running, new Comparator<QueryStatus>() {
+      @Override
+      public int compare(QueryStatus o1, QueryStatus o2) {
+        long m1 = o1.getMemoryUsage();
+        long m2 = o2.getMemoryUsage();
+        return m1 == m2 ? 0 : (m1 > m2 ? -1 : 1);
+      }
+    });
+    long released = 0;
+    for (QueryStatus status : running) {
+      long memoryUsage = status.getMemoryUsage();
+      if (released * 2 >= total || memoryUsage <= 0) {
+        break;
+      }
+      LOG.warn("Stopping query [{0}] on table [{1}] holding [{2}] bytes for back pressure.", status.getUserUuid(),
+          status.getTable(), memoryUsage);
+      status.stopQueryForBackPressure();
+      _backPressureStopped.mark();
+      released += memoryUsage;
+    }
+  }
+
   public void stopAllQueriesForBackPressure() {
     LOG.warn("Stopping all queries for back pressure.");
     for (QueryStatus status : _currentQueryStatusCollection.keySet()) {
@@ -0,0 +1,317 @@
+package org.apache.blur.manager.status;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.blur.thrift.generated.Metric;
+
+/**
+ * Keeps the N slowest queries seen by this server. Once the log is full a
+ * query has to be slower than the fastest query in the log to be kept, that
+ * check does not take the lock so the common case of a fast query is cheap.
+ */
+public class SlowQueryLog {
+
+  private static final double ONE_MILLION = 1000000.0;
+  private static final String COUNT = "count";
+
+  private static final Comparator<SlowQuery> FASTEST_FIRST = new Comparator<SlowQuery>() {
+    @Override
+    public int compare(SlowQuery o1, SlowQuery o2) {
+      long t1 = o1.getRealTime();
+      long t2 = o2.getRealTime();
+      return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+  };
+
+  private final PriorityQueue<SlowQuery> _queue = new PriorityQueue<SlowQuery>(11, FASTEST_FIRST);
+  private volatile int _capacity;
+  private volatile long _minimumRealTime = -1L;
+
+  public SlowQueryLog(int capacity) {
+    _capacity = capacity;
+  }
+
+  /**
+   * @return true if a query that took the given real time in nanoseconds would
+   *         be kept.
+   */
+  public boolean isSlowEnough(long realTime) {
+    return _capacity > 0 && realTime > _minimumRealTime;
+  }
+
+  /**
+   * @return true if the query was kept.
+   */
+  public boolean offer(SlowQuery slowQuery) {
+    if (!isSlowEnough(slowQuery.getRealTime())) {
+      return false;
+    }
+    synchronized (_queue) {
+      _queue.add(slowQuery);
+      boolean kept = true;
+      while (_queue.size() > _capacity) {
+        if (_queue.poll() == slowQuery) {
+          kept = false;
+        }
+      }
+      updateMinimum();
+      return kept;
+    }
+  }
+
+  public void setCapacity(int capacity) {
+    synchronized (_queue) {
+      _capacity = capacity;
+      while (_queue.size() > Math.max(capacity, 0)) {
+        _queue.poll();
+      }
+      updateMinimum();
+    }
+  }
+
+  public void clear() {
+    synchronized (_queue) {
+      _queue.clear();
+      updateMinimum();
+    }
+  }
+
+  /**
+   * @return the kept queries, slowest first.
+   */
+  public List<SlowQuery> getSlowQueries() {
+    List<SlowQuery> result;
+    synchronized (_queue) {
+      result = new ArrayList<SlowQuery>(_queue);
+    }
+    Collections.sort(result, Collections.reverseOrder(FASTEST_FIRST));
+    return result;
+  }
+
+  /**
+   * Converts the log into a single metric, every value is keyed by the rank of
+   * the query (0 being the slowest) and the name of the value, for example
+   * "0.query". Times are in milliseconds.
+   */
+  public Metric toMetric(String name) {
+    Metric metric = new Metric();
+    metric.setName(name);
+    List<SlowQuery> slowQueries = getSlowQueries();
+    metric.putToLongMap(COUNT, slowQueries.size());
+    for (int i = 0; i < slowQueries.size(); i++) {
+      SlowQuery slowQuery = slowQueries.get(i);
+      String prefix = i + ".";
+      metric.putToStrMap(prefix + "table", slowQuery.getTable());
+      metric.putToStrMap(prefix + "query", slowQuery.getQuery());
+      if (slowQuery.getUuid() != null) {
+        metric.putToStrMap(prefix + "uuid", slowQuery.getUuid());
+      }
+      metric.putToDoubleMap(prefix + "realTime", slowQuery.getRealTime() / ONE_MILLION);
+      metric.putToDoubleMap(prefix + "cpuTime", slowQuery.getCpuTime() < 0 ? -1.0 : slowQuery.getCpuTime()
+          / ONE_MILLION);
+      metric.putToLongMap(prefix + "hits", slowQuery.getHits());
+      metric.putToLongMap(prefix + "fetchedBytes", slowQuery.getFetchedBytes());
+      metric.putToLongMap(prefix + "timestamp", slowQuery.getTimestamp());
+    }
+    return metric;
+  }
+
+  private void updateMinimum() {
+    if (_queue.size() >= _capacity && !_queue.isEmpty()) {
+      _minimumRealTime = _queue.peek().getRealTime();
+    } else {
+      _minimumRealTime = -1L;
+    }
+  }
+
+  /**
+   * Replaces the values in a query with '?' so that queries of the same shape
+   * can be grouped, e.g. "+person.name:(john OR jack) age:[1 TO 5]" becomes
+   * "+person.name:(? OR ?) age:[? TO ?]". Field names, operators and the query
+   * structure are kept.
+   */
+  public static String normalize(String query) {
+    if (query == null) {
+      return null;
+    }
+    StringBuilder builder = new StringBuilder();
+    int length = query.length();
+    int i = 0;
+    while (i < length) {
+      char c = query.charAt(i);
+      if (Character.isWhitespace(c)) {
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+          builder.append(' ');
+        }
+        i++;
+      } else if (c == '"') {
+        int end = query.indexOf('"', i + 1);
+        builder.append("\"?\"");
+        i = end < 0 ? length : end + 1;
+      } else if (isSyntax(c)) {
+        builder.append(c);
+        i++;
+      } else {
+        int start = i;
+        while (i < length && !isEndOfToken(query.charAt(i))) {
+          if (query.charAt(i) == '\\') {
+            i++;
+          }
+          i++;
+        }
+        i = Math.min(i, length);
+        String token = query.substring(start, i);
+        if ((i < length && query.charAt(i) == ':') || isKeyword(token)) {
+          builder.append(token);
+        } else {
+          builder.append('?');
+        }
+      }
+    }
+    int end = builder.length();
+    while (end > 0 && builder.charAt(end - 1) == ' ') {
+      end--;
+    }
+    builder.setLength(end);
+    return builder.toString();
+  }
+
+  private static boolean isKeyword(String token) {
+    return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals("TO");
+  }
+
+  private static boolean isSyntax(char c) {
+    switch (c) {
+    case '(':
+    case ')':
+    case '[':
+    case ']':
+    case '{':
+    case '}':
+    case '<':
+    case '>':
+    case '+':
+    case '-':
+    case '!':
+    case ':':
+    case '^':
+    case '~':
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isEndOfToken(char c) {
+    if (Character.isWhitespace(c) || c == '"') {
+      return true;
+    }
+    switch (c) {
+    case '(':
+    case ')':
+    case '[':
+    case ']':
+    case '{':
+    case '}':
+    case '<':
+    case '>':
+    case ':':
+    case '^':
+    case '~':
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  public static class SlowQuery {
+
+    private final String _table;
+    private final String _query;
+    private final String _uuid;
+    private final long _realTime;
+    private final long _cpuTime;
+    private final long _hits;
+    private final long _fetchedBytes;
+    private final long _timestamp;
+
+    /**
+     * @param query
+     *          the normalized query.
+     * @param realTime
+     *          the wall clock time in nanoseconds.
+     * @param cpuTime
+     *          the cpu time of all the shards in nanoseconds, -1 if unknown.
+     */
+    public SlowQuery(String table, String query, String uuid, long realTime, long cpuTime, long hits,
+        long fetchedBytes, long timestamp) {
+      _table = table;
+      _query = query;
+      _uuid = uuid;
+      _realTime = realTime;
+      _cpuTime = cpuTime;
+      _hits = hits;
+      _fetchedBytes = fetchedBytes;
+      _timestamp = timestamp;
+    }
+
+    public String getTable() {
+      return _table;
+    }
+
+    public String getQuery() {
+      return _query;
+    }
+
+    public String getUuid() {
+      return _uuid;
+    }
+
+    public long getRealTime() {
+      return _realTime;
+    }
+
+    public long getCpuTime() {
+      return _cpuTime;
+    }
+
+    public long getHits() {
+      return _hits;
+    }
+
+    public long getFetchedBytes() {
+      return _fetchedBytes;
+    }
+
+    public long getTimestamp() {
+      return _timestamp;
+    }
+
+    @Override
+    public String toString() {
+      return "SlowQuery [table=" + _table + ", query=" + _query + ", uuid=" + _uuid + ", realTime=" + _realTime
+          + ", cpuTime=" + _cpuTime + ", hits=" + _hits + ", fetchedBytes=" + _fetchedBytes + ", timestamp="
+          + _timestamp + "]";
+    }
+  }
+}
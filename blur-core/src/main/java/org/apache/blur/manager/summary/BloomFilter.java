@@ -0,0 +1,162 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.lucene.util.BytesRef;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A fixed size bloom filter over terms. Filters created with the same number of
+ * bits and hashes can be combined with {@link #or(BloomFilter)}, which is how
+ * the per segment filters are combined into a filter for the whole shard.
+ */
+public class BloomFilter implements Writable {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private long[] _bits;
+  private int _numberOfHashes;
+
+  public BloomFilter() {
+
+  }
+
+  public BloomFilter(int numberOfBits, int numberOfHashes) {
+    _bits = new long[(numberOfBits + 63) / 64];
+    _numberOfHashes = numberOfHashes;
+  }
+
+  /**
+   * Creates an empty filter sized to hold the given number of terms with
+   * roughly a one percent false positive rate.
+   */
+  public static BloomFilter create(int expectedTerms) {
+    int n = Math.max(1, expectedTerms);
+    double p = 0.01;
+    int numberOfBits = (int) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+    int numberOfHashes = Math.max(1, (int) Math.round((double) numberOfBits / n * Math.log(2)));
+    return new BloomFilter(numberOfBits, numberOfHashes);
+  }
+
+  public void add(BytesRef term) {
+    long hash = hash(term);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    long numberOfBits = getNumberOfBits();
+    for (int i = 1; i <= _numberOfHashes; i++) {
+      int combined = hash1 + i * hash2;
+      if (combined < 0) {
+        combined = ~combined;
+      }
+      long bit = combined % numberOfBits;
+      _bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  public boolean mightContain(BytesRef term) {
+    long hash = hash(term);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+    long numberOfBits = getNumberOfBits();
+    for (int i = 1; i <= _numberOfHashes; i++) {
+      int combined = hash1 + i * hash2;
+      if (combined < 0) {
+        combined = ~combined;
+      }
+      long bit = combined % numberOfBits;
+      if ((_bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the other filter has the same shape and was merged into
+   *         this filter.
+   */
+  public boolean or(BloomFilter other) {
+    if (other._bits.length != _bits.length || other._numberOfHashes != _numberOfHashes) {
+      return false;
+    }
+    for (int i = 0; i < _bits.length; i++) {
+      _bits[i] |= other._bits[i];
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the other filter has the same shape and every bit set in
+   *         it is also set in this filter, so no term can be in the other
+   *         filter without being in this one.
+   */
+  public boolean contains(BloomFilter other) {
+    if (other._bits.length != _bits.length || other._numberOfHashes != _numberOfHashes) {
+      return false;
+    }
+    for (int i = 0; i < _bits.length; i++) {
+      if ((other._bits[i] & ~_bits[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public BloomFilter copy() {
+    BloomFilter bloomFilter = new BloomFilter();
+    bloomFilter._bits = _bits.clone();
+    bloomFilter._numberOfHashes = _numberOfHashes;
+    return bloomFilter;
+  }
+
+  public long getNumberOfBits() {
+    return (long) _bits.length * 64L;
+  }
+
+  public int getNumberOfHashes() {
+    return _numberOfHashes;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(_numberOfHashes);
+    out.writeInt(_bits.length);
+    for (long l : _bits) {
+      out.writeLong(l);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    _numberOfHashes = in.readInt();
+    _bits = new long[in.readInt()];
+    for (int i = 0; i < _bits.length; i++) {
+      _bits[i] = in.readLong();
+    }
+  }
+
+  private static long hash(BytesRef term) {
+    return HASH_FUNCTION.hashBytes(term.bytes, term.offset, term.length).asLong();
+  }
+}
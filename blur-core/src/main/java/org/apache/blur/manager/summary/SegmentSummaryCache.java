@@ -0,0 +1,159 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.blur.analysis.FieldManager;
+import org.apache.blur.analysis.FieldTypeDefinition;
+import org.apache.blur.analysis.type.FloatFieldTypeDefinition;
+import org.apache.blur.analysis.type.IntFieldTypeDefinition;
+import org.apache.blur.analysis.type.NumericFieldTypeDefinition;
+import org.apache.blur.analysis.type.StringFieldTypeDefinition;
+import org.apache.blur.index.AtomicReaderUtil;
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SegmentReader.CoreClosedListener;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * Builds shard summaries from index readers. The summary of every segment is
+ * computed once and cached until the segment core is closed, so summarizing a
+ * reopened reader only reads the terms of the new segments.
+ */
+public class SegmentSummaryCache {
+
+  private static final Log LOG = LogFactory.getLog(SegmentSummaryCache.class);
+
+  private static final Map<Object, ShardSummary> _segmentSummaries = new ConcurrentHashMap<Object, ShardSummary>();
+
+  public static ShardSummary getShardSummary(IndexReader reader, FieldManager fieldManager, int maxBloomTerms)
+      throws IOException {
+    List<ShardSummary> summaries = new ArrayList<ShardSummary>();
+    for (AtomicReaderContext context : reader.leaves()) {
+      summaries.add(getSegmentSummary(context.reader(), fieldManager, maxBloomTerms));
+    }
+    return ShardSummary.merge(summaries);
+  }
+
+  public static ShardSummary getSegmentSummary(AtomicReader providedReader, FieldManager fieldManager,
+      int maxBloomTerms) throws IOException {
+    SegmentReader reader = AtomicReaderUtil.getSegmentReader(providedReader);
+    final Object key = reader.getCoreCacheKey();
+    ShardSummary summary = _segmentSummaries.get(key);
+    if (summary == null) {
+      summary = summarize(reader, fieldManager, maxBloomTerms);
+      if (_segmentSummaries.put(key, summary) == null) {
+        reader.addCoreClosedListener(new CoreClosedListener() {
+          @Override
+          public void onClose(SegmentReader owner) {
+            _segmentSummaries.remove(key);
+          }
+        });
+      }
+    }
+    return summary;
+  }
+
+  static ShardSummary summarize(AtomicReader reader, FieldManager fieldManager, int maxBloomTerms)
+      throws IOException {
+    ShardSummary summary = new ShardSummary();
+    Fields fields = reader.fields();
+    if (fields == null) {
+      return summary;
+    }
+    for (String field : fields) {
+      // Only column fields (family.column) have types, the internal fields
+      // (rowid, recordid, family, ...) are never summarized.
+      if (field.indexOf('.') < 0) {
+        continue;
+      }
+      Terms terms = fields.terms(field);
+      if (terms == null) {
+        continue;
+      }
+      FieldTypeDefinition fieldTypeDefinition = fieldManager.getFieldTypeDefinition(field);
+      if (fieldTypeDefinition instanceof NumericFieldTypeDefinition) {
+        boolean is32Bit = fieldTypeDefinition instanceof IntFieldTypeDefinition
+            || fieldTypeDefinition instanceof FloatFieldTypeDefinition;
+        summarizeNumeric(summary, field, terms, is32Bit);
+      } else if (fieldTypeDefinition instanceof StringFieldTypeDefinition) {
+        summarizeString(summary, field, terms, maxBloomTerms);
+      }
+    }
+    LOG.debug("Summarized segment [{0}] [{1}]", reader, summary);
+    return summary;
+  }
+
+  private static void summarizeNumeric(ShardSummary summary, String field, Terms terms, boolean is32Bit)
+      throws IOException {
+    // Only the full precision terms are visited, in order, so the first term is
+    // the min and the last term is the max.
+    TermsEnum termsEnum;
+    if (is32Bit) {
+      termsEnum = NumericUtils.filterPrefixCodedInts(terms.iterator(null));
+    } else {
+      termsEnum = NumericUtils.filterPrefixCodedLongs(terms.iterator(null));
+    }
+    BytesRef term = termsEnum.next();
+    if (term == null) {
+      return;
+    }
+    long min = toLong(term, is32Bit);
+    long max = min;
+    while ((term = termsEnum.next()) != null) {
+      max = toLong(term, is32Bit);
+    }
+    summary.setRange(field, min, max);
+  }
+
+  private static long toLong(BytesRef term, boolean is32Bit) {
+    if (is32Bit) {
+      return NumericUtils.prefixCodedToInt(term);
+    }
+    return NumericUtils.prefixCodedToLong(term);
+  }
+
+  private static void summarizeString(ShardSummary summary, String field, Terms terms, int maxBloomTerms)
+      throws IOException {
+    long size = terms.size();
+    if (size < 0 || size > maxBloomTerms) {
+      summary.addUnsummarized(field);
+      return;
+    }
+    // Every segment uses the same size so that the filters can be merged.
+    BloomFilter bloomFilter = BloomFilter.create(maxBloomTerms);
+    TermsEnum termsEnum = terms.iterator(null);
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      bloomFilter.add(term);
+    }
+    summary.setBloomFilter(field, bloomFilter);
+  }
+}
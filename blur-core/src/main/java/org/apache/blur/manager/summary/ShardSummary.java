@@ -0,0 +1,328 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.blur.lucene.search.SuperQuery;
+import org.apache.hadoop.io.Writable;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * A small description of the values in a shard (or a single segment) that is
+ * used to decide whether a query can match anything in the shard without
+ * searching it. It holds the min and max of the numeric and date fields, in
+ * the sortable form that the values are indexed with, and bloom filters of the
+ * terms of the low cardinality string fields. A field that is not in the
+ * summary is unknown and never causes a shard to be skipped.
+ */
+public class ShardSummary implements Writable {
+
+  private final Map<String, long[]> _ranges = new TreeMap<String, long[]>();
+  private final Map<String, BloomFilter> _blooms = new TreeMap<String, BloomFilter>();
+  private final Set<String> _unsummarized = new TreeSet<String>();
+
+  public void setRange(String field, long min, long max) {
+    _ranges.put(field, new long[] { min, max });
+  }
+
+  public long[] getRange(String field) {
+    return _ranges.get(field);
+  }
+
+  public void setBloomFilter(String field, BloomFilter bloomFilter) {
+    _blooms.put(field, bloomFilter);
+  }
+
+  public BloomFilter getBloomFilter(String field) {
+    return _blooms.get(field);
+  }
+
+  /**
+   * Marks a field as present but not summarized, when summaries are merged the
+   * field is dropped from the result.
+   */
+  public void addUnsummarized(String field) {
+    _unsummarized.add(field);
+  }
+
+  public boolean isEmpty() {
+    return _ranges.isEmpty() && _blooms.isEmpty();
+  }
+
+  /**
+   * Combines the summaries of the segments of a shard into the summary of the
+   * shard.
+   */
+  public static ShardSummary merge(Collection<ShardSummary> summaries) {
+    ShardSummary result = new ShardSummary();
+    Set<String> unsummarized = new HashSet<String>();
+    for (ShardSummary summary : summaries) {
+      unsummarized.addAll(summary._unsummarized);
+    }
+    for (ShardSummary summary : summaries) {
+      for (Entry<String, long[]> e : summary._ranges.entrySet()) {
+        long[] range = result._ranges.get(e.getKey());
+        if (range == null) {
+          result._ranges.put(e.getKey(), e.getValue().clone());
+        } else {
+          range[0] = Math.min(range[0], e.getValue()[0]);
+          range[1] = Math.max(range[1], e.getValue()[1]);
+        }
+      }
+      for (Entry<String, BloomFilter> e : summary._blooms.entrySet()) {
+        BloomFilter bloomFilter = result._blooms.get(e.getKey());
+        if (bloomFilter == null) {
+          result._blooms.put(e.getKey(), e.getValue().copy());
+        } else if (!bloomFilter.or(e.getValue())) {
+          unsummarized.add(e.getKey());
+        }
+      }
+    }
+    result._ranges.keySet().removeAll(unsummarized);
+    result._blooms.keySet().removeAll(unsummarized);
+    return result;
+  }
+
+  /**
+   * @return true if every query that could match the shard described by the
+   *         other summary could also match according to this summary. When
+   *         this summary covers a newer one, pruning with this summary is
+   *         still correct for the newer data.
+   */
+  public boolean covers(ShardSummary other) {
+    for (Entry<String, long[]> e : _ranges.entrySet()) {
+      long[] range = other._ranges.get(e.getKey());
+      if (range == null || range[0] < e.getValue()[0] || range[1] > e.getValue()[1]) {
+        return false;
+      }
+    }
+    for (Entry<String, BloomFilter> e : _blooms.entrySet()) {
+      BloomFilter bloomFilter = other._blooms.get(e.getKey());
+      if (bloomFilter == null || !e.getValue().contains(bloomFilter)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return a copy of this summary with every range widened by an eighth of
+   *         its span on both sides. Values that keep growing, like the
+   *         timestamps of new records, then widen a published summary only
+   *         after the data has grown by a fraction of the range instead of on
+   *         every commit.
+   */
+  public ShardSummary withHeadroom() {
+    ShardSummary summary = new ShardSummary();
+    for (Entry<String, long[]> e : _ranges.entrySet()) {
+      long min = e.getValue()[0];
+      long max = e.getValue()[1];
+      long headroom = Math.max(1L, max / 8 - min / 8);
+      summary._ranges.put(e.getKey(), new long[] { min < Long.MIN_VALUE + headroom ? Long.MIN_VALUE : min - headroom,
+          max > Long.MAX_VALUE - headroom ? Long.MAX_VALUE : max + headroom });
+    }
+    for (Entry<String, BloomFilter> e : _blooms.entrySet()) {
+      summary._blooms.put(e.getKey(), e.getValue().copy());
+    }
+    summary._unsummarized.addAll(_unsummarized);
+    return summary;
+  }
+
+  /**
+   * @return false if no document in the shard can match the query, true if a
+   *         document might match.
+   */
+  public boolean canMatch(Query query) {
+    if (query instanceof BooleanQuery) {
+      return canMatch((BooleanQuery) query);
+    } else if (query instanceof SuperQuery) {
+      return canMatch(((SuperQuery) query).getQuery());
+    } else if (query instanceof FilteredQuery) {
+      return canMatch(((FilteredQuery) query).getQuery());
+    } else if (query instanceof ConstantScoreQuery) {
+      Query inner = ((ConstantScoreQuery) query).getQuery();
+      return inner == null || canMatch(inner);
+    } else if (query instanceof NumericRangeQuery) {
+      return canMatch((NumericRangeQuery<?>) query);
+    } else if (query instanceof TermQuery) {
+      TermQuery termQuery = (TermQuery) query;
+      BloomFilter bloomFilter = _blooms.get(termQuery.getTerm().field());
+      return bloomFilter == null || bloomFilter.mightContain(termQuery.getTerm().bytes());
+    }
+    return true;
+  }
+
+  private boolean canMatch(BooleanQuery query) {
+    boolean required = false;
+    boolean optional = false;
+    boolean optionalCanMatch = false;
+    for (BooleanClause clause : query.clauses()) {
+      switch (clause.getOccur()) {
+      case MUST:
+        if (!canMatch(clause.getQuery())) {
+          return false;
+        }
+        required = true;
+        break;
+      case SHOULD:
+        optional = true;
+        if (!optionalCanMatch && canMatch(clause.getQuery())) {
+          optionalCanMatch = true;
+        }
+        break;
+      default:
+        break;
+      }
+    }
+    if (optional && (!required || query.getMinimumNumberShouldMatch() > 0)) {
+      return optionalCanMatch;
+    }
+    return true;
+  }
+
+  private boolean canMatch(NumericRangeQuery<?> query) {
+    long[] range = _ranges.get(query.getField());
+    if (range == null) {
+      return true;
+    }
+    Number min = query.getMin();
+    if (min != null) {
+      Long value = toSortableLong(min);
+      if (value == null) {
+        return true;
+      }
+      if (range[1] < value || (range[1] == value && !query.includesMin())) {
+        return false;
+      }
+    }
+    Number max = query.getMax();
+    if (max != null) {
+      Long value = toSortableLong(max);
+      if (value == null) {
+        return true;
+      }
+      if (range[0] > value || (range[0] == value && !query.includesMax())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Long toSortableLong(Number number) {
+    if (number instanceof Long || number instanceof Integer) {
+      return number.longValue();
+    } else if (number instanceof Double) {
+      return NumericUtils.doubleToSortableLong(number.doubleValue());
+    } else if (number instanceof Float) {
+      return (long) NumericUtils.floatToSortableInt(number.floatValue());
+    }
+    return null;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(_ranges.size());
+    for (Entry<String, long[]> e : _ranges.entrySet()) {
+      out.writeUTF(e.getKey());
+      out.writeLong(e.getValue()[0]);
+      out.writeLong(e.getValue()[1]);
+    }
+    out.writeInt(_blooms.size());
+    for (Entry<String, BloomFilter> e : _blooms.entrySet()) {
+      out.writeUTF(e.getKey());
+      e.getValue().write(out);
+    }
+    out.writeInt(_unsummarized.size());
+    for (String field : _unsummarized) {
+      out.writeUTF(field);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    _ranges.clear();
+    _blooms.clear();
+    _unsummarized.clear();
+    int ranges = in.readInt();
+    for (int i = 0; i < ranges; i++) {
+      String field = in.readUTF();
+      setRange(field, in.readLong(), in.readLong());
+    }
+    int blooms = in.readInt();
+    for (int i = 0; i < blooms; i++) {
+      String field = in.readUTF();
+      BloomFilter bloomFilter = new BloomFilter();
+      bloomFilter.readFields(in);
+      _blooms.put(field, bloomFilter);
+    }
+    int unsummarized = in.readInt();
+    for (int i = 0; i < unsummarized; i++) {
+      _unsummarized.add(in.readUTF());
+    }
+  }
+
+  public byte[] toBytes() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(outputStream);
+    write(out);
+    out.close();
+    return outputStream.toByteArray();
+  }
+
+  public static ShardSummary fromBytes(byte[] bytes) throws IOException {
+    ShardSummary summary = new ShardSummary();
+    summary.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return summary;
+  }
+
+  /**
+   * @return a copy of this summary without the bloom filters.
+   */
+  public ShardSummary withoutBloomFilters() {
+    ShardSummary summary = new ShardSummary();
+    for (Entry<String, long[]> e : _ranges.entrySet()) {
+      summary._ranges.put(e.getKey(), e.getValue().clone());
+    }
+    return summary;
+  }
+
+  @Override
+  public String toString() {
+    return "ShardSummary [ranges=" + _ranges.keySet() + ", blooms=" + _blooms.keySet() + "]";
+  }
+}
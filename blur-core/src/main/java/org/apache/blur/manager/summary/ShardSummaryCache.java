@@ -0,0 +1,289 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.zookeeper.ZookeeperPathConstants;
+import org.apache.lucene.search.Query;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Controller side cache of the shard summaries published by the shard servers.
+ * Summaries are read from ZooKeeper the first time they are needed and a watch
+ * is left on every node read, a change to a node only invalidates that node so
+ * a commit on one shard causes a single read of that shard's summary. A summary
+ * that can not be read is treated as missing and its shard is never pruned.
+ * 
+ * The watches of a controller can lag behind the writes of the shard servers,
+ * so before pruning the cache waits for a ZooKeeper sync that was started after
+ * the query arrived. ZooKeeper delivers the watch events of every write that
+ * came before the sync ahead of the sync itself, so once it completes a summary
+ * that was written before the query arrived (the shard servers write a summary
+ * that widens before making the new data visible) has invalidated the cached
+ * one and is read again. Concurrent queries share the syncs, if a sync does not
+ * complete in time nothing is pruned.
+ */
+public class ShardSummaryCache {
+
+  private static final Log LOG = LogFactory.getLog(ShardSummaryCache.class);
+
+  private final ZooKeeper _zookeeper;
+  private final ConcurrentMap<String, TableSummaries> _tables = new ConcurrentHashMap<String, TableSummaries>();
+  private final long _syncTimeout;
+  private final Object _syncLock = new Object();
+  private long _syncsStarted;
+  private long _syncsFinished;
+  private long _syncsSucceeded;
+  private long _syncsWanted;
+
+  public ShardSummaryCache(ZooKeeper zookeeper, long syncTimeout) {
+    _zookeeper = zookeeper;
+    _syncTimeout = syncTimeout;
+  }
+
+  /**
+   * @return the summaries of the shards of the table that have one, keyed by
+   *         shard name.
+   */
+  public Map<String, ShardSummary> getShardSummaries(String cluster, String table) {
+    String path = ZookeeperPathConstants.getShardSummariesPath(cluster, table);
+    TableSummaries tableSummaries = _tables.get(path);
+    if (tableSummaries == null) {
+      tableSummaries = new TableSummaries(path);
+      TableSummaries existing = _tables.putIfAbsent(path, tableSummaries);
+      if (existing != null) {
+        tableSummaries = existing;
+      }
+    }
+    return tableSummaries.get();
+  }
+
+  /**
+   * @return the shards of the table that can not match every one of the given
+   *         queries.
+   */
+  public Set<String> getPrunedShards(String cluster, String table, List<Query> queries) {
+    if (queries.isEmpty() || !sync(ZookeeperPathConstants.getShardSummariesPath(cluster, table))) {
+      return Collections.emptySet();
+    }
+    Map<String, ShardSummary> summaries = getShardSummaries(cluster, table);
+    if (summaries.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> pruned = new HashSet<String>();
+    for (Entry<String, ShardSummary> e : summaries.entrySet()) {
+      for (Query query : queries) {
+        if (!e.getValue().canMatch(query)) {
+          pruned.add(e.getKey());
+          break;
+        }
+      }
+    }
+    return pruned;
+  }
+
+  /**
+   * Waits for a sync started after this call.
+   * 
+   * @return true if the sync completed successfully in time.
+   */
+  private boolean sync(String path) {
+    synchronized (_syncLock) {
+      long wanted = _syncsStarted + 1;
+      _syncsWanted = Math.max(_syncsWanted, wanted);
+      if (_syncsFinished == _syncsStarted) {
+        startSync(path);
+      }
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_syncTimeout);
+      while (_syncsFinished < wanted) {
+        long wait = deadline - System.nanoTime();
+        if (wait <= 0) {
+          LOG.warn("ZooKeeper sync did not complete within [{0} ms], not pruning shards.", _syncTimeout);
+          return false;
+        }
+        try {
+          TimeUnit.NANOSECONDS.timedWait(_syncLock, wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      return _syncsSucceeded >= wanted;
+    }
+  }
+
+  private void startSync(final String path) {
+    final long sync = ++_syncsStarted;
+    _zookeeper.sync(path, new VoidCallback() {
+      @Override
+      public void processResult(int rc, String p, Object ctx) {
+        synchronized (_syncLock) {
+          _syncsFinished = sync;
+          if (rc == Code.OK.intValue()) {
+            _syncsSucceeded = sync;
+          } else {
+            LOG.warn("ZooKeeper sync failed with [{0}], not pruning shards.", Code.get(rc));
+          }
+          if (_syncsWanted > _syncsStarted) {
+            startSync(path);
+          }
+          _syncLock.notifyAll();
+        }
+      }
+    }, null);
+  }
+
+  private class TableSummaries implements Watcher {
+
+    private final String _path;
+    private final ConcurrentMap<String, ShardEntry> _entries = new ConcurrentHashMap<String, ShardEntry>();
+    private long _events;
+    private List<String> _shards;
+
+    TableSummaries(String path) {
+      _path = path;
+    }
+
+    Map<String, ShardSummary> get() {
+      Map<String, ShardSummary> result = new HashMap<String, ShardSummary>();
+      for (String shard : getShards()) {
+        ShardEntry entry = _entries.get(shard);
+        if (entry == null) {
+          entry = new ShardEntry(_path + "/" + shard);
+          ShardEntry existing = _entries.putIfAbsent(shard, entry);
+          if (existing != null) {
+            entry = existing;
+          }
+        }
+        ShardSummary summary = entry.get();
+        if (summary != null) {
+          result.put(shard, summary);
+        }
+      }
+      return result;
+    }
+
+    private List<String> getShards() {
+      long events;
+      synchronized (this) {
+        if (_shards != null) {
+          return _shards;
+        }
+        events = _events;
+      }
+      List<String> shards;
+      try {
+        // The exists call leaves a watch for when the first summary of the
+        // table is published.
+        if (_zookeeper.exists(_path, this) == null) {
+          shards = Collections.emptyList();
+        } else {
+          shards = _zookeeper.getChildren(_path, this);
+        }
+      } catch (KeeperException e) {
+        if (e.code() != Code.NONODE) {
+          LOG.error("Could not read shard summaries [{0}].", e, _path);
+        }
+        return Collections.emptyList();
+      } catch (InterruptedException e) {
+        return Collections.emptyList();
+      }
+      synchronized (this) {
+        if (_events == events) {
+          _shards = shards;
+        }
+      }
+      _entries.keySet().retainAll(shards);
+      return shards;
+    }
+
+    @Override
+    public synchronized void process(WatchedEvent event) {
+      _events++;
+      _shards = null;
+    }
+  }
+
+  private class ShardEntry implements Watcher {
+
+    private final String _path;
+    private long _events;
+    private boolean _valid;
+    private ShardSummary _summary;
+
+    ShardEntry(String path) {
+      _path = path;
+    }
+
+    ShardSummary get() {
+      long events;
+      synchronized (this) {
+        if (_valid) {
+          return _summary;
+        }
+        events = _events;
+      }
+      ShardSummary summary = null;
+      try {
+        if (_zookeeper.exists(_path, this) != null) {
+          summary = ShardSummary.fromBytes(_zookeeper.getData(_path, this, null));
+        }
+      } catch (KeeperException e) {
+        if (e.code() != Code.NONODE) {
+          LOG.error("Could not read shard summary [{0}].", e, _path);
+          return null;
+        }
+      } catch (Exception e) {
+        LOG.error("Could not read shard summary [{0}].", e, _path);
+        return null;
+      }
+      synchronized (this) {
+        if (_events != events) {
+          // Changed while being read, the next call will read it again.
+          return null;
+        }
+        _summary = summary;
+        _valid = true;
+      }
+      return summary;
+    }
+
+    @Override
+    public synchronized void process(WatchedEvent event) {
+      _events++;
+      _valid = false;
+      _summary = null;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.zookeeper.ZkUtils;
+import org.apache.blur.zookeeper.ZookeeperPathConstants;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Writes the shard summaries of a shard server to ZooKeeper where the
+ * controllers read them.
+ * 
+ * A summary that is not covered by the published one (new data widened a range
+ * or added a term) is written before {@link #publish(String, String, long, ShardSummary)}
+ * returns, the caller publishes before it makes the new data visible so a
+ * controller that has seen the change never prunes a shard that has matching
+ * data. Published ranges carry some headroom so growing values do not cause a
+ * write on every commit. A summary that is covered by the published one can
+ * only make pruning less precise, it is written later by a background task at
+ * most once per publish interval. Summaries of older index versions than the
+ * last one published for a shard are ignored.
+ */
+public class ShardSummaryPublisher implements Closeable {
+
+  private static final Log LOG = LogFactory.getLog(ShardSummaryPublisher.class);
+
+  // Well below the default ZooKeeper limit of 1 MB per node.
+  private static final int MAX_SUMMARY_SIZE = 512 * 1024;
+
+  private final ZooKeeper _zookeeper;
+  private final String _cluster;
+  private final ConcurrentMap<String, Published> _published = new ConcurrentHashMap<String, Published>();
+  private final ConcurrentMap<String, Pending> _pending = new ConcurrentHashMap<String, Pending>();
+  private final Timer _timer;
+
+  public ShardSummaryPublisher(ZooKeeper zookeeper, String cluster, long publishInterval) {
+    _zookeeper = zookeeper;
+    _cluster = cluster;
+    _timer = new Timer("shard-summary-publisher", true);
+    _timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          publishPending();
+        } catch (Throwable t) {
+          LOG.error("Unknown error while publishing pending shard summaries.", t);
+        }
+      }
+    }, publishInterval, publishInterval);
+  }
+
+  /**
+   * Publishes the summary of the given index version of the shard.
+   */
+  public synchronized void publish(String table, String shard, long version, ShardSummary summary) {
+    String path = getPath(table, shard);
+    Published published = _published.get(path);
+    if (published != null) {
+      if (version < published._version) {
+        return;
+      }
+      if (published._summary.covers(summary)) {
+        Pending pending = _pending.get(path);
+        if (pending == null || pending._version <= version) {
+          _pending.put(path, new Pending(table, shard, version, summary));
+        }
+        return;
+      }
+    }
+    _pending.remove(path);
+    write(table, shard, path, version, summary, false);
+  }
+
+  /**
+   * Forgets the state kept for the shard once it is closed on this server, the
+   * summary itself is left in ZooKeeper for the server that opens the shard
+   * next.
+   */
+  public synchronized void closeShard(String table, String shard) {
+    String path = getPath(table, shard);
+    _pending.remove(path);
+    _published.remove(path);
+  }
+
+  /**
+   * Removes the summary of the shard, the controllers will then always query
+   * the shard.
+   */
+  public synchronized void remove(String table, String shard) {
+    String path = getPath(table, shard);
+    _pending.remove(path);
+    _published.remove(path);
+    try {
+      _zookeeper.delete(path, -1);
+    } catch (KeeperException e) {
+      if (e.code() != Code.NONODE) {
+        LOG.error("Could not remove summary of table [{0}] shard [{1}].", e, table, shard);
+      }
+    } catch (InterruptedException e) {
+      LOG.error("Could not remove summary of table [{0}] shard [{1}].", e, table, shard);
+    }
+  }
+
+  @Override
+  public void close() {
+    _timer.cancel();
+    _timer.purge();
+  }
+
+  synchronized void publishPending() {
+    for (Entry<String, Pending> e : _pending.entrySet()) {
+      Pending pending = e.getValue();
+      _pending.remove(e.getKey(), pending);
+      // Only overwrites the node written by this server, another server that
+      // opened the shard since then has the newer summary.
+      write(pending._table, pending._shard, e.getKey(), pending._version, pending._summary, true);
+    }
+  }
+
+  private void write(String table, String shard, String path, long version, ShardSummary summary,
+      boolean onlyIfUnchanged) {
+    try {
+      ShardSummary toPublish = summary.withHeadroom();
+      byte[] bytes = toPublish.toBytes();
+      if (bytes.length > MAX_SUMMARY_SIZE) {
+        LOG.warn("Summary of table [{0}] shard [{1}] is [{2}] bytes, publishing without bloom filters.", table, shard,
+            bytes.length);
+        toPublish = toPublish.withoutBloomFilters();
+        bytes = toPublish.toBytes();
+      }
+      Published last = _published.get(path);
+      if (last != null && Arrays.equals(last._bytes, bytes)) {
+        _published.put(path, new Published(version, toPublish, bytes, last._nodeVersion));
+        return;
+      }
+      int nodeVersion;
+      if (onlyIfUnchanged) {
+        if (last == null) {
+          return;
+        }
+        nodeVersion = _zookeeper.setData(path, bytes, last._nodeVersion).getVersion();
+      } else if (_zookeeper.exists(path, false) == null) {
+        ZkUtils.mkNodesStr(_zookeeper, ZookeeperPathConstants.getShardSummariesPath(_cluster, table));
+        try {
+          _zookeeper.create(path, bytes, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+          nodeVersion = 0;
+        } catch (KeeperException e) {
+          if (e.code() != Code.NODEEXISTS) {
+            throw e;
+          }
+          nodeVersion = _zookeeper.setData(path, bytes, -1).getVersion();
+        }
+      } else {
+        nodeVersion = _zookeeper.setData(path, bytes, -1).getVersion();
+      }
+      _published.put(path, new Published(version, toPublish, bytes, nodeVersion));
+    } catch (KeeperException e) {
+      if (onlyIfUnchanged && (e.code() == Code.BADVERSION || e.code() == Code.NONODE)) {
+        _published.remove(path);
+        return;
+      }
+      LOG.error("Could not publish summary of table [{0}] shard [{1}].", e, table, shard);
+      remove(table, shard);
+    } catch (Exception e) {
+      LOG.error("Could not publish summary of table [{0}] shard [{1}].", e, table, shard);
+      remove(table, shard);
+    }
+  }
+
+  private String getPath(String table, String shard) {
+    return ZookeeperPathConstants.getShardSummariesPath(_cluster, table) + "/" + shard;
+  }
+
+  private static class Published {
+    final long _version;
+    final ShardSummary _summary;
+    final byte[] _bytes;
+    final int _nodeVersion;
+
+    Published(long version, ShardSummary summary, byte[] bytes, int nodeVersion) {
+      _version = version;
+      _summary = summary;
+      _bytes = bytes;
+      _nodeVersion = nodeVersion;
+    }
+  }
+
+  private static class Pending {
+    final String _table;
+    final String _shard;
+    final long _version;
+    final ShardSummary _summary;
+
+    Pending(String table, String shard, long version, ShardSummary summary) {
+      _table = table;
+      _shard = shard;
+      _version = version;
+      _summary = summary;
+    }
+  }
+}
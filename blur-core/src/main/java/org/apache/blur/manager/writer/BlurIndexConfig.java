@@ -19,7 +19,9 @@ package org.apache.blur.manager.writer;
 import java.util.Timer;
 import java.util.concurrent.ExecutorService;
 
+import org.apache.blur.manager.summary.ShardSummaryPublisher;
 import org.apache.blur.server.ShardContext;
+import org.apache.blur.server.cache.RowCache;
 import org.apache.blur.server.cache.ThriftCache;
 import org.apache.lucene.store.Directory;
 
@@ -35,10 +37,36 @@ public class BlurIndexConfig {
   private final ThriftCache _thriftCache;
   private final Timer _indexWriterTimer;
   private final long _maxWriterIdle;
+  private final IndexImportScheduler _indexImportScheduler;
+  private final RowCache _rowCache;
+  private final ShardSummaryPublisher _shardSummaryPublisher;
 
   public BlurIndexConfig(ShardContext shardContext, Directory directory, SharedMergeScheduler mergeScheduler,
       ExecutorService searchExecutor, BlurIndexCloser indexCloser, Timer indexImporterTimer, Timer bulkIndexingTimer,
       ThriftCache thriftCache, Timer indexWriterTimer, long maxWriterIdle) {
+    this(shardContext, directory, mergeScheduler, searchExecutor, indexCloser, indexImporterTimer, bulkIndexingTimer,
+        thriftCache, indexWriterTimer, maxWriterIdle, null);
+  }
+
+  public BlurIndexConfig(ShardContext shardContext, Directory directory, SharedMergeScheduler mergeScheduler,
+      ExecutorService searchExecutor, BlurIndexCloser indexCloser, Timer indexImporterTimer, Timer bulkIndexingTimer,
+      ThriftCache thriftCache, Timer indexWriterTimer, long maxWriterIdle, IndexImportScheduler indexImportScheduler) {
+    this(shardContext, directory, mergeScheduler, searchExecutor, indexCloser, indexImporterTimer, bulkIndexingTimer,
+        thriftCache, indexWriterTimer, maxWriterIdle, indexImportScheduler, null);
+  }
+
+  public BlurIndexConfig(ShardContext shardContext, Directory directory, SharedMergeScheduler mergeScheduler,
+      ExecutorService searchExecutor, BlurIndexCloser indexCloser, Timer indexImporterTimer, Timer bulkIndexingTimer,
+      ThriftCache thriftCache, Timer indexWriterTimer, long maxWriterIdle, IndexImportScheduler indexImportScheduler,
+      RowCache rowCache) {
+    this(shardContext, directory, mergeScheduler, searchExecutor, indexCloser, indexImporterTimer, bulkIndexingTimer,
+        thriftCache, indexWriterTimer, maxWriterIdle, indexImportScheduler, rowCache, null);
+  }
+
+  public BlurIndexConfig(ShardContext shardContext, Directory directory, SharedMergeScheduler mergeScheduler,
+      ExecutorService searchExecutor, BlurIndexCloser indexCloser, Timer indexImporterTimer, Timer bulkIndexingTimer,
+      ThriftCache thriftCache, Timer indexWriterTimer, long maxWriterIdle, IndexImportScheduler indexImportScheduler,
+      RowCache rowCache, ShardSummaryPublisher shardSummaryPublisher) {
     _shardContext = shardContext;
     _directory = directory;
     _mergeScheduler = mergeScheduler;
@@ -49,6 +77,9 @@ public class BlurIndexConfig {
     _thriftCache = thriftCache;
     _indexWriterTimer = indexWriterTimer;
     _maxWriterIdle = maxWriterIdle;
+    _indexImportScheduler = indexImportScheduler;
+    _rowCache = rowCache;
+    _shardSummaryPublisher = shardSummaryPublisher;
   }
 
   public ShardContext getShardContext() {
@@ -91,4 +122,16 @@ public class BlurIndexConfig {
     return _maxWriterIdle;
   }
 
+  public IndexImportScheduler getIndexImportScheduler() {
+    return _indexImportScheduler;
+  }
+
+  public RowCache getRowCache() {
+    return _rowCache;
+  }
+
+  public ShardSummaryPublisher getShardSummaryPublisher() {
+    return _shardSummaryPublisher;
+  }
+
 }
@@ -20,9 +20,12 @@ import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
 import static org.apache.blur.utils.BlurConstants.ACL_DISCOVER;
 import static org.apache.blur.utils.BlurConstants.ACL_READ;
 import static org.apache.blur.utils.BlurConstants.BLUR_RECORD_SECURITY_DEFAULT_READMASK_MESSAGE;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BULK_MUTATE_SIDE_INDEX;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_WRITER_SORT_FACTOR;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_WRITER_SORT_MEMORY;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_QUEUE_MAX_INMEMORY_LENGTH;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SUMMARY_BLOOM_MAX_TERMS;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SUMMARY_ENABLED;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -60,11 +63,15 @@ import org.apache.blur.lucene.search.IndexSearcherCloseable;
 import org.apache.blur.lucene.search.IndexSearcherCloseableBase;
 import org.apache.blur.lucene.search.SuperQuery;
 import org.apache.blur.lucene.security.index.AccessControlFactory;
+import org.apache.blur.manager.summary.SegmentSummaryCache;
+import org.apache.blur.manager.summary.ShardSummaryPublisher;
 import org.apache.blur.memory.MemoryLeakDetector;
 import org.apache.blur.server.IndexSearcherCloseableSecureBase;
 import org.apache.blur.server.ShardContext;
 import org.apache.blur.server.TableContext;
+import org.apache.blur.server.cache.RowCache;
 import org.apache.blur.server.cache.ThriftCache;
+import org.apache.blur.store.hdfs.HdfsDirectory;
 import org.apache.blur.store.hdfs_v2.StoreDirection;
 import org.apache.blur.thrift.generated.BlurException;
 import org.apache.blur.thrift.generated.RowMutation;
@@ -111,6 +118,7 @@ import com.google.common.base.Splitter;
 public class BlurIndexSimpleWriter extends BlurIndex {
 
   private static final String TRUE = "true";
+  private static final String BULK_SIDE_INDEX = ".bulk";
 
   private static final Log LOG = LogFactory.getLog(BlurIndexSimpleWriter.class);
 
@@ -129,6 +137,7 @@ public class BlurIndexSimpleWriter extends BlurIndex {
   private final ReadWriteLock _indexRefreshLock = new ReentrantReadWriteLock();
   private final Lock _indexRefreshWriteLock = _indexRefreshLock.writeLock();
   private final Lock _indexRefreshReadLock = _indexRefreshLock.readLock();
+  private final Set<SideBuild> _sideBuilds = Collections.newSetFromMap(new ConcurrentHashMap<SideBuild, Boolean>());
   private final IndexDeletionPolicyReader _policy;
   private final SnapshotIndexDeletionPolicy _snapshotIndexDeletionPolicy;
   private final String _context;
@@ -144,20 +153,27 @@ public class BlurIndexSimpleWriter extends BlurIndex {
   private final Timer _bulkIndexingTimer;
   private final TimerTask _watchForIdleBulkWriters;
   private final ThriftCache _thriftCache;
+  private final RowCache _rowCache;
   private final String _defaultReadMaskMessage;
   private final IndexImporter _indexImporter;
   private final Timer _indexWriterTimer;
   private final AtomicLong _lastWrite = new AtomicLong();
   private final long _maxWriterIdle;
   private final TimerTask _watchForIdleWriter;
+  private final ShardSummaryPublisher _shardSummaryPublisher;
+  private final int _summaryBloomMaxTerms;
 
   private volatile Thread _optimizeThread;
+  // The reader of the last commit, it can be newer than the published reader
+  // while that one is being warmed. Guarded by the write lock.
+  private DirectoryReader _latestReader;
 
   public BlurIndexSimpleWriter(BlurIndexConfig blurIndexConf) throws IOException {
     super(blurIndexConf);
     _maxWriterIdle = blurIndexConf.getMaxWriterIdle();
     _indexWriterTimer = blurIndexConf.getIndexWriterTimer();
     _thriftCache = blurIndexConf.getThriftCache();
+    _rowCache = blurIndexConf.getRowCache();
     _commaSplitter = Splitter.on(',');
     _bulkWriters = new ConcurrentHashMap<String, BlurIndexSimpleWriter.BulkEntry>();
     _indexImporterTimer = blurIndexConf.getIndexImporterTimer();
@@ -193,7 +209,8 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     _conf.setInfoStream(new LoggingInfoStream(_tableContext.getTable(), _shardContext.getShard()));
     TieredMergePolicy mergePolicy = (TieredMergePolicy) _conf.getMergePolicy();
     mergePolicy.setUseCompoundFile(false);
-    _conf.setMergeScheduler(blurIndexConf.getMergeScheduler().getMergeScheduler());
+    _conf.setMergeScheduler(blurIndexConf.getMergeScheduler().getMergeScheduler(_tableContext.getTable(),
+        _shardContext.getShard()));
     _snapshotIndexDeletionPolicy = new SnapshotIndexDeletionPolicy(_tableContext.getConfiguration(),
         SnapshotIndexDeletionPolicy.getGenerationsPath(_shardContext.getHdfsDirPath()));
     _policy = new IndexDeletionPolicyReader(_snapshotIndexDeletionPolicy);
@@ -201,6 +218,12 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     BlurConfiguration blurConfiguration = _tableContext.getBlurConfiguration();
     _queue = new ArrayBlockingQueue<RowMutation>(blurConfiguration.getInt(BLUR_SHARD_QUEUE_MAX_INMEMORY_LENGTH, 100));
     _mutationQueueProcessor = new MutationQueueProcessor(_queue, this, _shardContext, _writesWaiting);
+    _summaryBloomMaxTerms = blurConfiguration.getInt(BLUR_SHARD_SUMMARY_BLOOM_MAX_TERMS, 1000);
+    if (blurConfiguration.getBoolean(BLUR_SHARD_SUMMARY_ENABLED, false)) {
+      _shardSummaryPublisher = blurIndexConf.getShardSummaryPublisher();
+    } else {
+      _shardSummaryPublisher = null;
+    }
 
     _directory = blurIndexConf.getDirectory();
     if (!DirectoryReader.indexExists(_directory)) {
@@ -212,10 +235,13 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     DirectoryReader wrappped = wrap(realDirectoryReader);
     String message = "BlurIndexSimpleWriter - inital open";
     DirectoryReader directoryReader = checkForMemoryLeaks(wrappped, message);
+    publishShardSummary(realDirectoryReader);
     _indexReader.set(directoryReader);
+    directoryReader.incRef();
+    _latestReader = directoryReader;
 
-    _indexImporter = new IndexImporter(_indexImporterTimer, BlurIndexSimpleWriter.this, _shardContext,
-        TimeUnit.SECONDS, 10, 120, _thriftCache, _directory);
+    _indexImporter = new IndexImporter(_indexImporterTimer, blurIndexConf.getIndexImportScheduler(),
+        BlurIndexSimpleWriter.this, _shardContext, TimeUnit.SECONDS, 10, 120, _thriftCache, _directory);
 
     _watchForIdleBulkWriters = new TimerTask() {
       @Override
@@ -299,20 +325,41 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     return _policy.register(reader);
   }
 
-  @Override
-  public IndexSearcherCloseable getIndexSearcher() throws IOException {
-    return getIndexSearcher(_security);
-  }
-
-  public IndexSearcherCloseable getIndexSearcher(boolean security) throws IOException {
-    final IndexReader indexReader;
+  /**
+   * @return the current reader with its reference count incremented, the
+   *         caller has to decRef it.
+   */
+  private DirectoryReader acquireIndexReader() {
     _indexRefreshReadLock.lock();
     try {
-      indexReader = _indexReader.get();
+      DirectoryReader indexReader = _indexReader.get();
       indexReader.incRef();
+      return indexReader;
     } finally {
       _indexRefreshReadLock.unlock();
     }
+  }
+
+  /**
+   * @return a searcher over the last commit, which the published reader may not
+   *         include yet. The caller has to hold the write lock.
+   */
+  private IndexSearcherCloseable getLatestIndexSearcher() {
+    DirectoryReader indexReader = _latestReader;
+    indexReader.incRef();
+    if (indexReader instanceof ExitableReader) {
+      ((ExitableReader) indexReader).reset();
+    }
+    return getInsecureIndexSearcher(indexReader);
+  }
+
+  @Override
+  public IndexSearcherCloseable getIndexSearcher() throws IOException {
+    return getIndexSearcher(_security);
+  }
+
+  public IndexSearcherCloseable getIndexSearcher(boolean security) throws IOException {
+    final IndexReader indexReader = acquireIndexReader();
     if (indexReader instanceof ExitableReader) {
       ((ExitableReader) indexReader).reset();
     }
@@ -374,7 +421,7 @@ public class BlurIndexSimpleWriter extends BlurIndex {
   }
 
   private IndexSearcherCloseable getInsecureIndexSearcher(final IndexReader indexReader) {
-    return new IndexSearcherCloseableBase(indexReader, _searchThreadPool) {
+    IndexSearcherCloseableBase searcher = new IndexSearcherCloseableBase(indexReader, _searchThreadPool) {
       private boolean _closed;
 
       @Override
@@ -396,11 +443,23 @@ public class BlurIndexSimpleWriter extends BlurIndex {
         }
       }
     };
+    searcher.setSegmentRangeSplitting(_tableContext.getSegmentRangeMinDocs(), _tableContext.getSegmentMaxRanges());
+    return searcher;
   }
 
   @Override
   public void close() throws IOException {
     _isClosed.set(true);
+    invalidateRowCache(null);
+    _writeLock.lock();
+    try {
+      _latestReader.decRef();
+    } finally {
+      _writeLock.unlock();
+    }
+    if (_shardSummaryPublisher != null) {
+      _shardSummaryPublisher.closeShard(_tableContext.getTable(), _shardContext.getShard());
+    }
     IOUtils.cleanup(LOG, makeCloseable(_bulkIndexingTimer, _watchForIdleBulkWriters),
         makeCloseable(_indexWriterTimer, _watchForIdleWriter), _indexImporter, _mutationQueueProcessor,
         makeCloseable(_writer.get()), _indexReader.get(), _directory);
@@ -443,6 +502,13 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     }
   }
 
+  /**
+   * Testing only.
+   */
+  IndexImporter getIndexImporter() {
+    return _indexImporter;
+  }
+
   /**
    * Testing only.
    */
@@ -488,12 +554,14 @@ public class BlurIndexSimpleWriter extends BlurIndex {
         try {
           BlurIndexWriter writer = getBlurIndexWriter();
           writer.forceMerge(numberOfSegmentsPerShard, true);
+          Refresh refresh;
           _writeLock.lock();
           try {
-            commit();
+            refresh = commit();
           } finally {
             _writeLock.unlock();
           }
+          publish(refresh);
         } catch (Exception e) {
           LOG.error("Unknown error during optimize on table [{0}] shard [{1}]", e, table, shard);
         }
@@ -519,7 +587,12 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     return new ArrayList<String>(_snapshotIndexDeletionPolicy.getSnapshots());
   }
 
-  private void commit() throws IOException {
+  /**
+   * Commits the writer and opens the new reader, the caller has to hold the
+   * write lock and to {@link #publish(Refresh)} the result once the lock is
+   * released.
+   */
+  private Refresh commit() throws IOException {
     Tracer trace1 = Trace.trace("prepareCommit");
     BlurIndexWriter writer = getBlurIndexWriter();
     writer.prepareCommit();
@@ -530,23 +603,116 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     trace2.done();
 
     Tracer trace3 = Trace.trace("index refresh");
-    DirectoryReader currentReader = _indexReader.get();
-    DirectoryReader newReader = DirectoryReader.openIfChanged(currentReader);
-    if (newReader == null) {
-      LOG.debug("Reader should be new after commit for table [{0}] shard [{1}].", _tableContext.getTable(),
-          _shardContext.getShard());
-    } else {
+    try {
+      DirectoryReader currentReader = _latestReader;
+      currentReader.incRef();
+      DirectoryReader newReader;
+      try {
+        newReader = DirectoryReader.openIfChanged(currentReader);
+      } catch (IOException e) {
+        currentReader.decRef();
+        throw e;
+      }
+      if (newReader == null) {
+        LOG.debug("Reader should be new after commit for table [{0}] shard [{1}].", _tableContext.getTable(),
+            _shardContext.getShard());
+        currentReader.decRef();
+        return null;
+      }
       DirectoryReader reader = wrap(newReader);
       checkForMemoryLeaks(reader, "BlurIndexSimpleWriter - reopen table [{0}] shard [{1}]");
+      // Later writes read their rows from the new reader while it is warmed.
+      reader.incRef();
+      _latestReader = reader;
+      currentReader.decRef();
+      return new Refresh(currentReader, newReader, reader);
+    } finally {
+      trace3.done();
+    }
+  }
+
+  /**
+   * Warms the new segments of a reader opened by {@link #commit()} and makes
+   * it the current reader. This runs after the write lock is released so that
+   * queued writes do not wait on the warmup. When commits overlap the reader
+   * that was opened last wins, an older reader is never published over a
+   * newer one.
+   */
+  private void publish(Refresh refresh) throws IOException {
+    if (refresh == null) {
+      return;
+    }
+    try {
+      Tracer trace = Trace.trace("index warmup");
+      _tableContext.getReopenWarmer().warm(refresh._previousReader, refresh._newReader,
+          _tableContext.getSimilarity(), _shardContext.getShard());
+      trace.done();
+      // A summary that widens the published one is written before the new
+      // reader is used so a controller that has seen it does not prune this
+      // shard for the new data.
+      publishShardSummary(refresh._newReader);
+      DirectoryReader replaced;
       _indexRefreshWriteLock.lock();
       try {
-        _indexReader.set(reader);
+        DirectoryReader currentReader = _indexReader.get();
+        if (refresh._reader.getVersion() > currentReader.getVersion()) {
+          _indexReader.set(refresh._reader);
+          replaced = currentReader;
+        } else {
+          replaced = refresh._reader;
+        }
       } finally {
         _indexRefreshWriteLock.unlock();
       }
-      _indexCloser.close(currentReader);
+      _indexCloser.close(replaced);
+    } finally {
+      refresh._previousReader.decRef();
+    }
+  }
+
+  /**
+   * The rows changed by other writes while a bulk side index is built, only
+   * used while holding the write lock.
+   */
+  private static class SideBuild {
+    final Set<String> _rowIds = new HashSet<String>();
+    boolean _allRows;
+
+    void record(Set<String> rowIds) {
+      if (rowIds == null) {
+        _allRows = true;
+        _rowIds.clear();
+      } else if (!_allRows) {
+        _rowIds.addAll(rowIds);
+      }
+    }
+  }
+
+  private static class Refresh {
+    final DirectoryReader _previousReader;
+    final DirectoryReader _newReader;
+    final DirectoryReader _reader;
+
+    Refresh(DirectoryReader previousReader, DirectoryReader newReader, DirectoryReader reader) {
+      _previousReader = previousReader;
+      _newReader = newReader;
+      _reader = reader;
+    }
+  }
+
+  private void publishShardSummary(DirectoryReader reader) {
+    if (_shardSummaryPublisher == null) {
+      return;
+    }
+    String table = _tableContext.getTable();
+    String shard = _shardContext.getShard();
+    try {
+      _shardSummaryPublisher.publish(table, shard, reader.getVersion(),
+          SegmentSummaryCache.getShardSummary(reader, _fieldManager, _summaryBloomMaxTerms));
+    } catch (Exception e) {
+      LOG.error("Could not summarize table [{0}] shard [{1}].", e, table, shard);
+      _shardSummaryPublisher.remove(table, shard);
     }
-    trace3.done();
   }
 
   @Override
@@ -557,11 +723,15 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     indexAction.setWritesWaiting(_writesWaiting);
     BlurIndexWriter writer = getBlurIndexWriter();
     IndexSearcherCloseable indexSearcher = null;
+    Refresh refresh = null;
     try {
-      indexSearcher = getIndexSearcher(false);
+      indexSearcher = getLatestIndexSearcher();
       indexAction.performMutate(indexSearcher, writer);
       indexAction.doPreCommit(indexSearcher, writer);
-      commit();
+      refresh = commit();
+      for (SideBuild sideBuild : _sideBuilds) {
+        sideBuild.record(indexAction.getChangedRowIds());
+      }
       indexAction.doPostCommit(writer);
     } catch (Exception e) {
       indexAction.doPreRollback(writer);
@@ -570,14 +740,34 @@ public class BlurIndexSimpleWriter extends BlurIndex {
       indexAction.doPostRollback(writer);
       throw new IOException("Unknown error during mutation", e);
     } finally {
-      if (_thriftCache != null) {
-        _thriftCache.clearTable(_tableContext.getTable());
-      }
       if (indexSearcher != null) {
         indexSearcher.close();
       }
       _lastWrite.set(System.currentTimeMillis());
       _writeLock.unlock();
+      try {
+        publish(refresh);
+      } finally {
+        // The caches are cleared once the new reader is published so that
+        // nothing read from the old reader is cached afterwards.
+        if (_thriftCache != null) {
+          _thriftCache.clearTable(_tableContext.getTable());
+        }
+        invalidateRowCache(indexAction.getChangedRowIds());
+      }
+    }
+  }
+
+  private void invalidateRowCache(Set<String> changedRowIds) {
+    if (_rowCache == null) {
+      return;
+    }
+    String table = _tableContext.getTable();
+    String shard = _shardContext.getShard();
+    if (changedRowIds == null) {
+      _rowCache.invalidate(table, shard);
+    } else {
+      _rowCache.invalidate(table, shard, changedRowIds);
     }
   }
 
@@ -636,6 +826,10 @@ public class BlurIndexSimpleWriter extends BlurIndex {
       return _writer == null;
     }
 
+    public String getBulkId() {
+      return _bulkId;
+    }
+
     private Writer openSeqWriter() throws IOException {
       Progressable progress = new Progressable() {
         @Override
@@ -726,67 +920,123 @@ public class BlurIndexSimpleWriter extends BlurIndex {
       removeParentIfLastFile(_fileSystem, _parentPath);
     }
 
-    public IndexAction getIndexAction() throws IOException {
-      return new IndexAction() {
-        private Path _sorted;
-        private List<Path> _unsortedPaths;
-
-        @Override
-        public void performMutate(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
-          Configuration configuration = _tableContext.getConfiguration();
-
-          BlurConfiguration blurConfiguration = _tableContext.getBlurConfiguration();
+    /**
+     * Builds the side index for this bulk at the given path from the sorted
+     * mutates. The rows are read from the given searcher, no shard lock is
+     * required.
+     */
+    public void buildSideIndex(IndexSearcherCloseable searcher, IndexWriterConfig conf, Path sorted,
+        Path sideIndexPath) throws IOException {
+      try {
+        _fileSystem.delete(sideIndexPath, true);
+        HdfsDirectory directory = new HdfsDirectory(_configuration, sideIndexPath);
+        try {
+          BulkSideIndexWriter writer = new BulkSideIndexWriter(directory, conf);
+          boolean success = false;
+          try {
+            applyMutates(searcher, writer, sorted);
+            writer.commitInternal();
+            success = true;
+          } finally {
+            if (success) {
+              writer.close();
+            } else {
+              writer.rollback();
+            }
+          }
+        } finally {
+          directory.close();
+        }
+        LOG.info("Shard [{0}/{1}] Id [{2}] Finished building side index [{3}].", _table, _shard, _bulkId,
+            sideIndexPath);
+      } catch (IOException e) {
+        _fileSystem.delete(sideIndexPath, true);
+        throw e;
+      }
+    }
 
-          SequenceFile.Sorter sorter = new Sorter(_fileSystem, Text.class, RowMutationWritable.class, configuration);
-          // This should support up to ~100 GB per shard, probably have
-          // incremental updates in that batch size.
-          sorter.setFactor(blurConfiguration.getInt(BLUR_SHARD_INDEX_WRITER_SORT_FACTOR, 10000));
-          sorter.setMemory(blurConfiguration.getInt(BLUR_SHARD_INDEX_WRITER_SORT_MEMORY, 10 * 1024 * 1024));
+    private Path sort(List<Path> unsortedPaths) throws IOException {
+      Configuration configuration = _tableContext.getConfiguration();
 
-          _unsortedPaths = getUnsortedFiles();
+      BlurConfiguration blurConfiguration = _tableContext.getBlurConfiguration();
 
-          _sorted = new Path(_parentPath, _shard + ".sorted.seq");
+      SequenceFile.Sorter sorter = new Sorter(_fileSystem, Text.class, RowMutationWritable.class, configuration);
+      // This should support up to ~100 GB per shard, probably have
+      // incremental updates in that batch size.
+      sorter.setFactor(blurConfiguration.getInt(BLUR_SHARD_INDEX_WRITER_SORT_FACTOR, 10000));
+      sorter.setMemory(blurConfiguration.getInt(BLUR_SHARD_INDEX_WRITER_SORT_MEMORY, 10 * 1024 * 1024));
 
-          LOG.info("Shard [{2}/{3}] Id [{4}] Sorting mutates paths [{0}] sorted path [{1}]", _unsortedPaths, _sorted,
-              _table, _shard, _bulkId);
-          sorter.sort(_unsortedPaths.toArray(new Path[_unsortedPaths.size()]), _sorted, true);
+      Path sorted = new Path(_parentPath, _shard + ".sorted.seq");
 
-          LOG.info("Shard [{1}/{2}] Id [{3}] Applying mutates sorted path [{0}]", _sorted, _table, _shard, _bulkId);
-          Reader reader = new SequenceFile.Reader(_fileSystem, _sorted, configuration);
+      LOG.info("Shard [{2}/{3}] Id [{4}] Sorting mutates paths [{0}] sorted path [{1}]", unsortedPaths, sorted,
+          _table, _shard, _bulkId);
+      sorter.sort(unsortedPaths.toArray(new Path[unsortedPaths.size()]), sorted, true);
+      return sorted;
+    }
 
-          Text key = new Text();
-          RowMutationWritable value = new RowMutationWritable();
+    private void applyMutates(IndexSearcherCloseable searcher, IndexWriter writer, Path sorted) throws IOException {
+      applyMutates(searcher, writer, sorted, null);
+    }
 
-          Text last = null;
-          List<RowMutation> list = new ArrayList<RowMutation>();
-          while (reader.next(key, value)) {
-            if (!key.equals(last)) {
-              flushMutates(searcher, writer, list);
-              last = new Text(key);
-              list.clear();
-            }
-            list.add(value.getRowMutation().deepCopy());
+    /**
+     * Applies the sorted mutates of the given rows, or of every row if rowIds
+     * is null.
+     */
+    void applyMutates(IndexSearcherCloseable searcher, IndexWriter writer, Path sorted, Set<String> rowIds)
+        throws IOException {
+      LOG.info("Shard [{1}/{2}] Id [{3}] Applying mutates sorted path [{0}]", sorted, _table, _shard, _bulkId);
+      Reader reader = new SequenceFile.Reader(_fileSystem, sorted, _tableContext.getConfiguration());
+      try {
+        Text key = new Text();
+        RowMutationWritable value = new RowMutationWritable();
+
+        Text last = null;
+        List<RowMutation> list = new ArrayList<RowMutation>();
+        while (reader.next(key, value)) {
+          if (rowIds != null && !rowIds.contains(key.toString())) {
+            continue;
           }
-          flushMutates(searcher, writer, list);
-          reader.close();
-          LOG.info("Shard [{0}/{1}] Id [{2}] Finished applying mutates starting commit.", _table, _shard, _bulkId);
+          if (!key.equals(last)) {
+            flushMutates(searcher, writer, list);
+            last = new Text(key);
+            list.clear();
+          }
+          list.add(value.getRowMutation().deepCopy());
         }
+        flushMutates(searcher, writer, list);
+      } finally {
+        reader.close();
+      }
+    }
 
-        private void flushMutates(IndexSearcherCloseable searcher, IndexWriter writer, List<RowMutation> list)
-            throws IOException {
-          if (!list.isEmpty()) {
-            List<RowMutation> reduceMutates;
-            try {
-              reduceMutates = MutatableAction.reduceMutates(list);
-            } catch (BlurException e) {
-              throw new IOException(e);
-            }
-            for (RowMutation mutation : reduceMutates) {
-              MutatableAction mutatableAction = new MutatableAction(_shardContext);
-              mutatableAction.mutate(mutation);
-              mutatableAction.performMutate(searcher, writer);
-            }
-          }
+    private void flushMutates(IndexSearcherCloseable searcher, IndexWriter writer, List<RowMutation> list)
+        throws IOException {
+      if (!list.isEmpty()) {
+        List<RowMutation> reduceMutates;
+        try {
+          reduceMutates = MutatableAction.reduceMutates(list);
+        } catch (BlurException e) {
+          throw new IOException(e);
+        }
+        for (RowMutation mutation : reduceMutates) {
+          MutatableAction mutatableAction = new MutatableAction(_shardContext);
+          mutatableAction.mutate(mutation);
+          mutatableAction.performMutate(searcher, writer);
+        }
+      }
+    }
+
+    public IndexAction getIndexAction() throws IOException {
+      return new IndexAction() {
+        private Path _sorted;
+        private List<Path> _unsortedPaths;
+
+        @Override
+        public void performMutate(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
+          _unsortedPaths = getUnsortedFiles();
+          _sorted = sort(_unsortedPaths);
+          applyMutates(searcher, writer, _sorted);
+          LOG.info("Shard [{0}/{1}] Id [{2}] Finished applying mutates starting commit.", _table, _shard, _bulkId);
         }
 
         @Override
@@ -852,11 +1102,10 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     if (!apply) {
       bulkEntry.cleanupFiles(bulkEntry.getUnsortedFiles(), null);
     } else {
-      final IndexAction indexAction = bulkEntry.getIndexAction();
       if (blockUntilComplete) {
         StoreDirection.LONG_TERM.set(true);
         try {
-          process(indexAction);
+          applyBulkMutate(bulkEntry);
         } finally {
           StoreDirection.LONG_TERM.set(false);
         }
@@ -866,7 +1115,7 @@ public class BlurIndexSimpleWriter extends BlurIndex {
           public void run() {
             try {
               StoreDirection.LONG_TERM.set(true);
-              process(indexAction);
+              applyBulkMutate(bulkEntry);
             } catch (IOException e) {
               LOG.error("Shard [{0}/{1}] Id [{2}] Unknown error while trying to finish the bulk updates.", e, table,
                   shard, bulkId);
@@ -881,6 +1130,73 @@ public class BlurIndexSimpleWriter extends BlurIndex {
     }
   }
 
+  private void applyBulkMutate(final BulkEntry bulkEntry) throws IOException {
+    BlurConfiguration blurConfiguration = _tableContext.getBlurConfiguration();
+    if (!blurConfiguration.getBoolean(BLUR_SHARD_BULK_MUTATE_SIDE_INDEX, false)) {
+      process(bulkEntry.getIndexAction());
+      return;
+    }
+    // Sorting the mutates and building the new versions of the rows happens
+    // without the write lock, only the import of the side index (deletes and
+    // addIndexes) blocks other writers to this shard.
+    Path sideIndexPath = new Path(_shardContext.getHdfsDirPath(), bulkEntry.getBulkId() + BULK_SIDE_INDEX);
+    final SideBuild sideBuild = new SideBuild();
+    List<Path> unsortedPaths = bulkEntry.getUnsortedFiles();
+    Path sorted = null;
+    try {
+      IndexSearcherCloseable searcher = getSideBuildSearcher(sideBuild);
+      try {
+        sorted = bulkEntry.sort(unsortedPaths);
+        bulkEntry.buildSideIndex(searcher, getSideIndexConf(), sorted, sideIndexPath);
+      } finally {
+        searcher.close();
+      }
+      final Path sortedPath = sorted;
+      _indexImporter.importIndex(sideIndexPath, new IndexImporter.PostImport() {
+        @Override
+        public void apply(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
+          // Rows written since the snapshot was taken were rebuilt from their
+          // old versions, the bulk is applied to them again against the
+          // current rows in the same commit.
+          _sideBuilds.remove(sideBuild);
+          Set<String> rowIds = sideBuild._allRows ? null : sideBuild._rowIds;
+          if (rowIds == null || !rowIds.isEmpty()) {
+            LOG.info("Shard [{0}/{1}] Id [{2}] Reapplying bulk mutates to rows changed during the side index build "
+                + "[{3}].", _tableContext.getTable(), _shardContext.getShard(), bulkEntry.getBulkId(),
+                rowIds == null ? "all" : rowIds.size());
+            bulkEntry.applyMutates(searcher, writer, sortedPath, rowIds);
+          }
+        }
+      });
+    } finally {
+      _sideBuilds.remove(sideBuild);
+      bulkEntry.cleanupFiles(unsortedPaths, sorted);
+    }
+  }
+
+  /**
+   * Registers the side build so that the rows of every later commit are
+   * recorded and returns a searcher over the last commit.
+   */
+  private IndexSearcherCloseable getSideBuildSearcher(SideBuild sideBuild) {
+    _writeLock.lock();
+    try {
+      _sideBuilds.add(sideBuild);
+      return getLatestIndexSearcher();
+    } finally {
+      _writeLock.unlock();
+    }
+  }
+
+  private IndexWriterConfig getSideIndexConf() {
+    IndexWriterConfig conf = new IndexWriterConfig(LUCENE_VERSION, _fieldManager.getAnalyzerForIndex());
+    conf.setCodec(new Blur024Codec(_tableContext.getBlurConfiguration()));
+    conf.setSimilarity(_tableContext.getSimilarity());
+    TieredMergePolicy mergePolicy = (TieredMergePolicy) conf.getMergePolicy();
+    mergePolicy.setUseCompoundFile(false);
+    return conf;
+  }
+
   @Override
   public void addBulkMutate(String bulkId, RowMutation mutation) throws IOException {
     BulkEntry bulkEntry = _bulkWriters.get(bulkId);
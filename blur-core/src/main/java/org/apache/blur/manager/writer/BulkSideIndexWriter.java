@@ -0,0 +1,116 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.blur.utils.BlurConstants;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+
+/**
+ * Writes the mutations of a bulk into a side index that the
+ * {@link IndexImporter} can later apply to the shard. Instead of deleting from
+ * the side index, row updates mark the first document of the row with the
+ * {@link BlurConstants#UPDATE_ROW} field and row deletes are written as delete
+ * marker documents, the same layout the MapReduce output format produces.
+ */
+public class BulkSideIndexWriter extends IndexWriter {
+
+  public BulkSideIndexWriter(Directory d, IndexWriterConfig conf) throws IOException {
+    super(d, conf);
+  }
+
+  @Override
+  public void updateDocuments(Term delTerm, Iterable<? extends Iterable<? extends IndexableField>> docs)
+      throws IOException {
+    checkRowIdTerm(delTerm);
+    addDocuments(addToFirst(new StringField(BlurConstants.UPDATE_ROW, delTerm.text(), Store.NO), docs));
+  }
+
+  @Override
+  public void deleteDocuments(Term term) throws IOException {
+    checkRowIdTerm(term);
+    String rowId = term.text();
+    Document document = new Document();
+    document.add(new StringField(BlurConstants.ROW_ID, rowId, Store.NO));
+    document.add(new StringField(BlurConstants.DELETE_MARKER, BlurConstants.DELETE_MARKER_VALUE, Store.NO));
+    document.add(new StringField(BlurConstants.UPDATE_ROW, rowId, Store.NO));
+    addDocument(document);
+  }
+
+  /**
+   * Commits the side index with the internal marker so the importer can skip
+   * the row id partition check.
+   */
+  public void commitInternal() throws IOException {
+    Map<String, String> map = new HashMap<String, String>();
+    map.put(BlurConstants.INTERNAL, BlurConstants.INTERNAL);
+    setCommitData(map);
+    commit();
+  }
+
+  private void checkRowIdTerm(Term term) throws IOException {
+    if (term == null || !BlurConstants.ROW_ID.equals(term.field())) {
+      throw new IOException("Only row level updates and deletes are supported in a side index, term [" + term + "]");
+    }
+  }
+
+  private static Iterable<Iterable<IndexableField>> addToFirst(final IndexableField field,
+      final Iterable<? extends Iterable<? extends IndexableField>> docs) {
+    return new Iterable<Iterable<IndexableField>>() {
+      @Override
+      public Iterator<Iterable<IndexableField>> iterator() {
+        final Iterator<? extends Iterable<? extends IndexableField>> iterator = docs.iterator();
+        return new Iterator<Iterable<IndexableField>>() {
+
+          private boolean _first = true;
+
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @SuppressWarnings("unchecked")
+          @Override
+          public Iterable<IndexableField> next() {
+            Iterable<IndexableField> fields = (Iterable<IndexableField>) iterator.next();
+            if (_first) {
+              _first = false;
+              return new IterablePlusOne<IndexableField>(field, fields);
+            }
+            return fields;
+          }
+
+          @Override
+          public void remove() {
+            throw new RuntimeException("Not Supported.");
+          }
+        };
+      }
+    };
+  }
+}
@@ -17,6 +17,7 @@
 package org.apache.blur.manager.writer;
 
 import java.io.IOException;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.blur.lucene.search.IndexSearcherCloseable;
@@ -36,6 +37,14 @@ public abstract class IndexAction {
 
   public abstract void performMutate(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException;
 
+  /**
+   * @return the ids of the rows changed by this action, or null if any row in
+   *         the shard may have changed.
+   */
+  public Set<String> getChangedRowIds() {
+    return null;
+  }
+
   public void setWritesWaiting(AtomicInteger writesWaiting) {
     _writesWaiting = writesWaiting;
   }
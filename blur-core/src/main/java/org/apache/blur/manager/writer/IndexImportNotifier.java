@@ -0,0 +1,235 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.zookeeper.ZookeeperPathConstants;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Import notifications are persistent sequential nodes stored under
+ * {@link ZookeeperPathConstants#getImportPath(String)} that contain the table
+ * and shard that have new ".commit" directories ready to be imported. The
+ * shard server that is serving the shard triggers the import and removes the
+ * notification.
+ * 
+ * Each notification node is read once, the notifications that no server has
+ * handled yet are kept as pending. A background task retries the pending
+ * notifications and removes the ones that have not been handled within the
+ * maximum notification age, the fallback polling of the {@link IndexImporter}
+ * will pick those up.
+ */
+public class IndexImportNotifier implements Closeable {
+
+  private static final Log LOG = LogFactory.getLog(IndexImportNotifier.class);
+  private static final String UTF_8 = "UTF-8";
+  private static final String PREFIX = "import-";
+  private static final char SEP = '/';
+  private static final long MAX_NOTIFICATION_AGE = TimeUnit.MINUTES.toMillis(10);
+  private static final long RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+  public interface Handler {
+    /**
+     * @return true if the notification has been handled.
+     */
+    boolean handle(String table, String shard);
+  }
+
+  public static void notifyImport(ZooKeeper zooKeeper, String cluster, String table, String shard)
+      throws KeeperException, InterruptedException {
+    String path = ZookeeperPathConstants.getImportPath(cluster) + "/" + PREFIX;
+    zooKeeper.create(path, toBytes(table + SEP + shard), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+  }
+
+  /**
+   * A notification that has been read from ZooKeeper.
+   */
+  private static class Notification {
+    private final String _table;
+    private final String _shard;
+    private final long _created;
+
+    Notification(String table, String shard, long created) {
+      _table = table;
+      _shard = shard;
+      _created = created;
+    }
+  }
+
+  private final ZooKeeper _zooKeeper;
+  private final String _importPath;
+  private final Handler _handler;
+  private final long _maxNotificationAge;
+  private final Map<String, Notification> _pending = new HashMap<String, Notification>();
+  private final Timer _timer;
+
+  public IndexImportNotifier(ZooKeeper zooKeeper, String cluster, Handler handler) {
+    this(zooKeeper, cluster, handler, MAX_NOTIFICATION_AGE, RETRY_INTERVAL);
+  }
+
+  IndexImportNotifier(ZooKeeper zooKeeper, String cluster, Handler handler, long maxNotificationAge,
+      long retryInterval) {
+    _zooKeeper = zooKeeper;
+    _importPath = ZookeeperPathConstants.getImportPath(cluster);
+    _handler = handler;
+    _maxNotificationAge = maxNotificationAge;
+    _timer = new Timer("index-import-notifier", true);
+    _timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          processPending();
+        } catch (Throwable t) {
+          LOG.error("Unknown error while processing pending import notifications.", t);
+        }
+      }
+    }, retryInterval, retryInterval);
+  }
+
+  /**
+   * Processes the given list of notification nodes, notifications that are
+   * handled are removed. Only the nodes that are not already pending are read.
+   */
+  public synchronized void process(List<String> children) {
+    _pending.keySet().retainAll(new HashSet<String>(children));
+    for (String child : children) {
+      String path = _importPath + "/" + child;
+      try {
+        Notification notification = _pending.get(child);
+        if (notification == null) {
+          notification = read(path);
+          if (notification == null) {
+            LOG.warn("Invalid import notification [{0}], removing.", path);
+            delete(path);
+            continue;
+          }
+        }
+        process(child, notification);
+      } catch (KeeperException e) {
+        _pending.remove(child);
+        if (e.code() != Code.NONODE) {
+          LOG.error("Unknown error while processing import notification [{0}].", e, path);
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Retries the pending notifications and removes the ones that are older than
+   * the maximum notification age.
+   */
+  synchronized void processPending() {
+    for (Entry<String, Notification> e : new ArrayList<Entry<String, Notification>>(_pending.entrySet())) {
+      String child = e.getKey();
+      try {
+        process(child, e.getValue());
+      } catch (KeeperException ex) {
+        _pending.remove(child);
+        if (ex.code() != Code.NONODE) {
+          LOG.error("Unknown error while processing import notification [{0}].", ex, _importPath + "/" + child);
+        }
+      } catch (InterruptedException ex) {
+        return;
+      }
+    }
+  }
+
+  synchronized int getPendingCount() {
+    return _pending.size();
+  }
+
+  @Override
+  public void close() {
+    _timer.cancel();
+    _timer.purge();
+  }
+
+  private void process(String child, Notification notification) throws KeeperException, InterruptedException {
+    String path = _importPath + "/" + child;
+    if (_handler.handle(notification._table, notification._shard)) {
+      _pending.remove(child);
+      delete(path);
+    } else if (notification._created + _maxNotificationAge < System.currentTimeMillis()) {
+      LOG.info("Import notification [{0}] for table [{1}] shard [{2}] was never handled, removing.", path,
+          notification._table, notification._shard);
+      _pending.remove(child);
+      delete(path);
+    } else {
+      _pending.put(child, notification);
+    }
+  }
+
+  private Notification read(String path) throws KeeperException, InterruptedException {
+    Stat stat = new Stat();
+    String notification = toString(_zooKeeper.getData(path, false, stat));
+    int index = notification == null ? -1 : notification.lastIndexOf(SEP);
+    if (index < 0) {
+      return null;
+    }
+    return new Notification(notification.substring(0, index), notification.substring(index + 1), stat.getCtime());
+  }
+
+  private void delete(String path) throws InterruptedException, KeeperException {
+    try {
+      _zooKeeper.delete(path, -1);
+    } catch (KeeperException e) {
+      if (e.code() == Code.NONODE) {
+        return;
+      }
+      throw e;
+    }
+  }
+
+  private static byte[] toBytes(String s) {
+    try {
+      return s.getBytes(UTF_8);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toString(byte[] data) {
+    if (data == null) {
+      return null;
+    }
+    try {
+      return new String(data, UTF_8);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.INDEX_IMPORTS_IN_PROGRESS;
+import static org.apache.blur.metrics.MetricsConstants.INDEX_IMPORT_QUEUE_DEPTH;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.blur.concurrent.Executors;
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * Shared (per server) scheduler for {@link IndexImporter}s. Imports for
+ * different shards run concurrently, bounded by the number of import threads,
+ * while imports for a single shard are never run concurrently or queued more
+ * than once.
+ */
+public class IndexImportScheduler implements Closeable {
+
+  private static final Log LOG = LogFactory.getLog(IndexImportScheduler.class);
+
+  private final AtomicBoolean _running = new AtomicBoolean(true);
+  private final LinkedBlockingQueue<Runnable> _queue = new LinkedBlockingQueue<Runnable>();
+  private final ExecutorService _service;
+  private final AtomicInteger _inProgress = new AtomicInteger();
+  private final ConcurrentMap<String, IndexImporter> _importers = new ConcurrentHashMap<String, IndexImporter>();
+
+  public IndexImportScheduler(int threads) {
+    _service = Executors.newThreadPool(_queue, "index-importer-", threads, false);
+    MetricName queueDepth = new MetricName(ORG_APACHE_BLUR, BLUR, INDEX_IMPORT_QUEUE_DEPTH);
+    MetricName inProgress = new MetricName(ORG_APACHE_BLUR, BLUR, INDEX_IMPORTS_IN_PROGRESS);
+    Metrics.newGauge(queueDepth, new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _queue.size();
+      }
+    });
+    Metrics.newGauge(inProgress, new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _inProgress.get();
+      }
+    });
+  }
+
+  public void register(IndexImporter importer) {
+    _importers.put(getKey(importer.getTable(), importer.getShard()), importer);
+  }
+
+  public void unregister(IndexImporter importer) {
+    _importers.remove(getKey(importer.getTable(), importer.getShard()), importer);
+  }
+
+  /**
+   * Requests an import check for the given table and shard, this is called
+   * when an import notification is received.
+   *
+   * @return true if the shard is being served by this server, false if not.
+   */
+  public boolean requestImport(String table, String shard) {
+    IndexImporter importer = _importers.get(getKey(table, shard));
+    if (importer == null) {
+      return false;
+    }
+    importer.requestImport(true);
+    return true;
+  }
+
+  /**
+   * Queues the importer for execution. If the importer is already queued or
+   * running the request is collapsed into a single re-run once the current
+   * run completes.
+   */
+  public void schedule(final IndexImporter importer) {
+    if (!_running.get()) {
+      return;
+    }
+    if (!importer.getQueued().compareAndSet(false, true)) {
+      importer.getRerun().set(true);
+      return;
+    }
+    _service.submit(new Runnable() {
+      @Override
+      public void run() {
+        _inProgress.incrementAndGet();
+        try {
+          do {
+            importer.getRerun().set(false);
+            importer.run();
+          } while (importer.getRerun().get() && _running.get());
+        } catch (Throwable t) {
+          LOG.error("Unknown error while running import for [{0}/{1}]", t, importer.getTable(), importer.getShard());
+        } finally {
+          _inProgress.decrementAndGet();
+          importer.getQueued().set(false);
+        }
+        if (importer.getRerun().getAndSet(false)) {
+          schedule(importer);
+        }
+      }
+    });
+  }
+
+  private String getKey(String table, String shard) {
+    return table + "/" + shard;
+  }
+
+  @Override
+  public void close() throws IOException {
+    _running.set(false);
+    _service.shutdownNow();
+  }
+
+}
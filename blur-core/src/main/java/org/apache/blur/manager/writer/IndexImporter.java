@@ -16,6 +16,11 @@ package org.apache.blur.manager.writer;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.INDEX_IMPORT_THROUGHPUT_BYTES;
+import static org.apache.blur.metrics.MetricsConstants.INDEX_IMPORT_TIMER;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -29,8 +34,7 @@ import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
@@ -67,16 +71,31 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 
-public class IndexImporter extends TimerTask implements Closeable {
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.TimerContext;
+
+public class IndexImporter implements Runnable, Closeable {
 
   private static final String INPROGRESS = ".inprogress";
   private static final String BADROWIDS = ".badrowids";
   private static final String COMMIT = ".commit";
   private static final String INUSE = ".inuse";
   private static final String BADINDEX = ".badindex";
-  private static final Lock _globalLock = new ReentrantReadWriteLock().writeLock();
+  private static final long MAX_TIME_BETWEEN_LISTINGS = TimeUnit.MINUTES.toMillis(5);
+  private static final long MODIFICATION_TIME_GRACE = TimeUnit.SECONDS.toMillis(5);
 
   private final static Log LOG = LogFactory.getLog(IndexImporter.class);
+  private static final Meter _throughputBytes;
+  private static final com.yammer.metrics.core.Timer _importTimer;
+
+  static {
+    MetricName importThroughputBytes = new MetricName(ORG_APACHE_BLUR, BLUR, INDEX_IMPORT_THROUGHPUT_BYTES);
+    MetricName importTimer = new MetricName(ORG_APACHE_BLUR, BLUR, INDEX_IMPORT_TIMER);
+    _throughputBytes = Metrics.newMeter(importThroughputBytes, INDEX_IMPORT_THROUGHPUT_BYTES, TimeUnit.SECONDS);
+    _importTimer = Metrics.newTimer(importTimer, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+  }
 
   private final BlurIndex _blurIndex;
   private final ShardContext _shardContext;
@@ -87,24 +106,54 @@ public class IndexImporter extends TimerTask implements Closeable {
   private final ThriftCache _thriftCache;
   private final HdfsDirectory _directory;
   private final int MAX_ATTEMPTS = 10;
+  private final IndexImportScheduler _importScheduler;
+  private final TimerTask _pollTask;
+  private final AtomicBoolean _queued = new AtomicBoolean();
+  private final AtomicBoolean _rerun = new AtomicBoolean();
 
   private long _lastCleanup;
+  private long _lastListing;
+  private volatile long _lastModified = -1L;
+  private volatile boolean _closed;
   private Runnable _testError;
 
   public IndexImporter(Timer indexImporterTimer, BlurIndex blurIndex, ShardContext shardContext, TimeUnit timeUnit,
       long refreshAmount, long initalWaitTime, ThriftCache thriftCache, Directory dir) throws IOException {
+    this(indexImporterTimer, null, blurIndex, shardContext, timeUnit, refreshAmount, initalWaitTime, thriftCache, dir);
+  }
+
+  public IndexImporter(Timer indexImporterTimer, IndexImportScheduler importScheduler, BlurIndex blurIndex,
+      ShardContext shardContext, TimeUnit timeUnit, long refreshAmount, long initalWaitTime, ThriftCache thriftCache,
+      Directory dir) throws IOException {
     _thriftCache = thriftCache;
     _blurIndex = blurIndex;
     _shardContext = shardContext;
     _directory = getHdfsDirectory(dir);
+    _importScheduler = importScheduler;
+    _table = _shardContext.getTableContext().getTable();
+    _shard = _shardContext.getShard();
+    _cleanupDelay = TimeUnit.MINUTES.toMillis(10);
 
+    // The timer is only a fallback for imports that were not announced through
+    // an import notification, the actual import work is done by the scheduler
+    // (if present) so that the timer thread is never blocked by an import.
+    _pollTask = new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          requestImport(false);
+        } catch (Throwable t) {
+          LOG.error("Unknown error while trying to request import on [{0}/{1}].", t, _table, _shard);
+        }
+      }
+    };
     long period = timeUnit.toMillis(refreshAmount);
     long delay = timeUnit.toMillis(initalWaitTime);
-    indexImporterTimer.schedule(this, delay, period);
+    indexImporterTimer.schedule(_pollTask, delay, period);
     _inindexImporterTimer = indexImporterTimer;
-    _table = _shardContext.getTableContext().getTable();
-    _shard = _shardContext.getShard();
-    _cleanupDelay = TimeUnit.MINUTES.toMillis(10);
+    if (_importScheduler != null) {
+      _importScheduler.register(this);
+    }
   }
 
   private HdfsDirectory getHdfsDirectory(Directory dir) throws IOException {
@@ -123,10 +172,48 @@ public class IndexImporter extends TimerTask implements Closeable {
 
   @Override
   public void close() throws IOException {
-    cancel();
+    _closed = true;
+    if (_importScheduler != null) {
+      _importScheduler.unregister(this);
+    }
+    _pollTask.cancel();
     _inindexImporterTimer.purge();
   }
 
+  /**
+   * Requests that the shard directory be checked for new imports.
+   * 
+   * @param force
+   *          if true the directory will be listed even if the modification
+   *          time of the shard directory has not changed since the last check.
+   */
+  public void requestImport(boolean force) {
+    if (force) {
+      _lastModified = -1L;
+    }
+    if (_importScheduler != null) {
+      _importScheduler.schedule(this);
+    } else {
+      run();
+    }
+  }
+
+  public String getTable() {
+    return _table;
+  }
+
+  public String getShard() {
+    return _shard;
+  }
+
+  AtomicBoolean getQueued() {
+    return _queued;
+  }
+
+  AtomicBoolean getRerun() {
+    return _rerun;
+  }
+
   public long getSegmentImportPendingCount() throws IOException {
     Path path = _shardContext.getHdfsDirPath();
     Configuration configuration = _shardContext.getTableContext().getConfiguration();
@@ -191,9 +278,10 @@ public class IndexImporter extends TimerTask implements Closeable {
   }
 
   @Override
-  public void run() {
-    // Only allow one import to occur in the process at a time.
-    _globalLock.lock();
+  public synchronized void run() {
+    if (_closed) {
+      return;
+    }
     try {
       if (_lastCleanup + _cleanupDelay < System.currentTimeMillis()) {
         try {
@@ -208,12 +296,19 @@ public class IndexImporter extends TimerTask implements Closeable {
       try {
         FileSystem fileSystem = path.getFileSystem(configuration);
         SortedSet<FileStatus> listStatus = null;
+        long modificationTime = -1L;
         for (int i = 0; i < MAX_ATTEMPTS; i++) {
           try {
             if (!fileSystem.exists(path)) {
               LOG.warn("Path [{0}] no longer exists, exiting.", path);
               return;
             }
+            modificationTime = fileSystem.getFileStatus(path).getModificationTime();
+            if (!shouldList(modificationTime)) {
+              // Nothing has been added or renamed in the shard directory since
+              // the last listing, so there can't be anything to import.
+              return;
+            }
             listStatus = sort(fileSystem.listStatus(path, new PathFilter() {
               @Override
               public boolean accept(Path path) {
@@ -223,6 +318,7 @@ public class IndexImporter extends TimerTask implements Closeable {
                 return false;
               }
             }));
+            _lastListing = System.currentTimeMillis();
             break;
           } catch (FileNotFoundException e) {
             LOG.warn("File not found error, retrying.");
@@ -237,36 +333,19 @@ public class IndexImporter extends TimerTask implements Closeable {
           LOG.warn("Could not get listing of path [{0}], exiting.", path);
           return;
         }
+        if (listStatus.isEmpty()) {
+          recordModificationTime(modificationTime);
+          return;
+        }
         for (FileStatus fileStatus : listStatus) {
           Path file = fileStatus.getPath();
           if (fileStatus.isDir() && file.getName().endsWith(COMMIT)) {
-            // rename to inuse, if good continue else rename to badindex
-            Path inuse = new Path(file.getParent(), rename(file.getName(), INUSE));
-            touch(fileSystem, new Path(file, INPROGRESS));
-            if (fileSystem.rename(file, inuse)) {
-              if (_testError != null) {
-                _testError.run();
+            if (importDirectory(fileSystem, configuration, file, null)) {
+              if (_importScheduler != null) {
+                // Drain any remaining imports for this shard.
+                _importScheduler.schedule(this);
               }
-              HdfsDirectory hdfsDirectory = new HdfsDirectory(configuration, inuse);
-              try {
-                if (DirectoryReader.indexExists(hdfsDirectory)) {
-                  IndexAction indexAction = getIndexAction(hdfsDirectory, fileSystem);
-                  _blurIndex.process(indexAction);
-                  return;
-                } else {
-                  Path badindex = new Path(file.getParent(), rename(file.getName(), BADINDEX));
-                  if (fileSystem.rename(inuse, badindex)) {
-                    LOG.error("Directory found at [{0}] is not a vaild index, renaming to [{1}].", inuse, badindex);
-                  } else {
-                    LOG.fatal("Directory found at [{0}] is not a vaild index, could not rename to [{1}].", inuse,
-                        badindex);
-                  }
-                }
-              } finally {
-                hdfsDirectory.close();
-              }
-            } else {
-              LOG.fatal("Could not rename [{0}] to inuse dir.", file);
+              return;
             }
           }
         }
@@ -275,10 +354,106 @@ public class IndexImporter extends TimerTask implements Closeable {
       }
     } catch (Throwable t) {
       LOG.error("Unknown error while tyring to run index importer.", t);
-    } finally {
-      _globalLock.unlock();
     }
+  }
+
+  /**
+   * Work done in the same commit as an import, after the imported index has
+   * been added to the shard.
+   */
+  public interface PostImport {
+    void apply(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException;
+  }
+
+  /**
+   * Imports the index in the given directory on the calling thread, the
+   * directory has to be located in the shard directory. Unlike the ".commit"
+   * directories found while polling, errors are thrown to the caller.
+   */
+  public synchronized void importIndex(Path indexPath) throws IOException {
+    importIndex(indexPath, null);
+  }
+
+  /**
+   * Imports the index like {@link #importIndex(Path)} and runs the given
+   * {@link PostImport} under the shard write lock before the commit.
+   */
+  public synchronized void importIndex(Path indexPath, PostImport postImport) throws IOException {
+    if (_closed) {
+      throw new IOException("Importer for [" + _table + "/" + _shard + "] is closed.");
+    }
+    Configuration configuration = _shardContext.getTableContext().getConfiguration();
+    FileSystem fileSystem = indexPath.getFileSystem(configuration);
+    if (!importDirectory(fileSystem, configuration, indexPath, postImport)) {
+      throw new IOException("Index [" + indexPath + "] could not be imported into [" + _table + "/" + _shard + "].");
+    }
+  }
+
+  /**
+   * @return true if the index in the directory was applied to the shard.
+   */
+  private boolean importDirectory(FileSystem fileSystem, Configuration configuration, Path file, PostImport postImport)
+      throws IOException {
+    // rename to inuse, if good continue else rename to badindex
+    Path inuse = new Path(file.getParent(), rename(file.getName(), INUSE));
+    touch(fileSystem, new Path(file, INPROGRESS));
+    if (fileSystem.rename(file, inuse)) {
+      if (_testError != null) {
+        _testError.run();
+      }
+      HdfsDirectory hdfsDirectory = new HdfsDirectory(configuration, inuse);
+      try {
+        if (DirectoryReader.indexExists(hdfsDirectory)) {
+          IndexAction indexAction = getIndexAction(hdfsDirectory, fileSystem, postImport);
+          long size = getSize(hdfsDirectory);
+          TimerContext context = _importTimer.time();
+          try {
+            _blurIndex.process(indexAction);
+          } finally {
+            context.stop();
+          }
+          _throughputBytes.mark(size);
+          return true;
+        } else {
+          Path badindex = new Path(file.getParent(), rename(file.getName(), BADINDEX));
+          if (fileSystem.rename(inuse, badindex)) {
+            LOG.error("Directory found at [{0}] is not a vaild index, renaming to [{1}].", inuse, badindex);
+          } else {
+            LOG.fatal("Directory found at [{0}] is not a vaild index, could not rename to [{1}].", inuse, badindex);
+          }
+        }
+      } finally {
+        hdfsDirectory.close();
+      }
+    } else {
+      LOG.fatal("Could not rename [{0}] to inuse dir.", file);
+    }
+    return false;
+  }
+
+  private boolean shouldList(long modificationTime) {
+    if (_lastModified < 0 || modificationTime != _lastModified) {
+      return true;
+    }
+    return _lastListing + MAX_TIME_BETWEEN_LISTINGS < System.currentTimeMillis();
+  }
 
+  private void recordModificationTime(long modificationTime) {
+    // Only trust modification times that are not too recent, that way a change
+    // made within the same timestamp granularity as the listing is not missed.
+    if (modificationTime + MODIFICATION_TIME_GRACE < System.currentTimeMillis()) {
+      _lastModified = modificationTime;
+    } else {
+      _lastModified = -1L;
+    }
+  }
+
+  private long getSize(Directory directory) throws IOException {
+    long size = 0;
+    for (String name : directory.listAll()) {
+      size += directory.fileLength(name);
+    }
+    return size;
   }
 
   private void touch(FileSystem fileSystem, Path path) throws IOException {
@@ -290,7 +465,8 @@ public class IndexImporter extends TimerTask implements Closeable {
     return name.substring(0, lastIndexOf) + newSuffix;
   }
 
-  private IndexAction getIndexAction(final HdfsDirectory directory, final FileSystem fileSystem) {
+  private IndexAction getIndexAction(final HdfsDirectory directory, final FileSystem fileSystem,
+      final PostImport postImport) {
     return new IndexAction() {
 
       @Override
@@ -304,6 +480,9 @@ public class IndexImporter extends TimerTask implements Closeable {
         writer.addIndexes(directory);
         LOG.info("Removing delete markers [{0}] on [{1}/{2}]", directory, _shard, _table);
         writer.deleteDocuments(new Term(BlurConstants.DELETE_MARKER, BlurConstants.DELETE_MARKER_VALUE));
+        if (postImport != null) {
+          postImport.apply(searcher, writer);
+        }
         LOG.info("Finishing import [{0}], commiting on [{1}/{2}]", directory, _shard, _table);
       }
 
@@ -545,6 +545,7 @@ public class MutatableAction extends IndexAction {
 
   private final List<InternalAction> _actions = new ArrayList<InternalAction>();
   private final Map<String, UpdateRow> _rowUpdates = new HashMap<String, UpdateRow>();
+  private final Set<String> _rowIds = new HashSet<String>();
   private final FieldManager _fieldManager;
   private final TableContext _tableContext;
 
@@ -554,6 +555,7 @@ public class MutatableAction extends IndexAction {
   }
 
   public void deleteRow(final String rowId) {
+    addRowId(rowId);
     _actions.add(new InternalAction() {
       @Override
       void performAction(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
@@ -564,6 +566,7 @@ public class MutatableAction extends IndexAction {
   }
 
   public void replaceRow(final Row row) {
+    addRowId(row.getId());
     _actions.add(new InternalAction() {
       @Override
       void performAction(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
@@ -607,6 +610,15 @@ public class MutatableAction extends IndexAction {
     }
   }
 
+  @Override
+  public synchronized Set<String> getChangedRowIds() {
+    return new HashSet<String>(_rowIds);
+  }
+
+  private synchronized void addRowId(String rowId) {
+    _rowIds.add(rowId);
+  }
+
   public static Term createRowId(String id) {
     return new Term(BlurConstants.ROW_ID, id);
   }
@@ -618,6 +630,7 @@ public class MutatableAction extends IndexAction {
   private synchronized UpdateRow getUpdateRow(String rowId) {
     UpdateRow updateRow = _rowUpdates.get(rowId);
     if (updateRow == null) {
+      _rowIds.add(rowId);
       updateRow = new UpdateRow(rowId, _tableContext);
       _rowUpdates.put(rowId, updateRow);
       _actions.add(updateRow);
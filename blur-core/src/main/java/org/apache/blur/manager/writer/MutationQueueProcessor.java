@@ -23,7 +23,9 @@ import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_QUEUE_MAX_WRITER_LO
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -118,6 +120,7 @@ public class MutationQueueProcessor implements Runnable, Closeable {
   class MutationQueueProcessorIndexAction extends IndexAction {
 
     private final long _start = System.nanoTime();
+    private final Set<String> _changedRowIds = new HashSet<String>();
     private boolean _didMutates = false;
 
     private boolean shouldContinueProcessing() {
@@ -145,6 +148,7 @@ public class MutationQueueProcessor implements Runnable, Closeable {
             mutatableAction.mutate(reduceMutates);
             LOG.debug("Mutating [{0}]", reduceMutates.size());
             mutatableAction.performMutate(searcher, writer);
+            _changedRowIds.addAll(mutatableAction.getChangedRowIds());
             _didMutates = true;
           } catch (BlurException e) {
             LOG.error("Unknown error during reduce of mutations.", e);
@@ -165,6 +169,11 @@ public class MutationQueueProcessor implements Runnable, Closeable {
       }
     }
 
+    @Override
+    public Set<String> getChangedRowIds() {
+      return _changedRowIds;
+    }
+
     @Override
     public void doPreCommit(IndexSearcherCloseable indexSearcher, IndexWriter writer) throws IOException {
 
@@ -0,0 +1,205 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.similarities.Similarity;
+
+/**
+ * Keeps a bounded sample of the most recently seen queries (with their
+ * filters and sorts) for a table and replays them against the new segments of
+ * a reopened reader before the reader is published. The per segment
+ * structures the queries need, prime doc bit sets, cached filters and field
+ * cache / doc values for the sorts, are then loaded by the warmer instead of by
+ * the first queries after a commit or a merge.
+ */
+public class ReopenWarmer {
+
+  private static final Log LOG = LogFactory.getLog(ReopenWarmer.class);
+
+  private final String _table;
+  private final int _maxQueries;
+  private final long _maxTimeNanos;
+  private final Map<WarmupQuery, WarmupQuery> _queries;
+
+  /**
+   * @param maxQueries
+   *          the number of recent queries to keep, zero or less disables the
+   *          warmer.
+   * @param maxTime
+   *          the longest time in milliseconds that a single reopen is allowed
+   *          to spend warming.
+   */
+  public ReopenWarmer(String table, final int maxQueries, long maxTime) {
+    _table = table;
+    _maxQueries = maxQueries;
+    _maxTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxTime);
+    _queries = new LinkedHashMap<WarmupQuery, WarmupQuery>(16, 0.75f, true) {
+      private static final long serialVersionUID = 4213597862498215716L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<WarmupQuery, WarmupQuery> eldest) {
+        return size() > maxQueries;
+      }
+    };
+  }
+
+  public boolean isEnabled() {
+    return _maxQueries > 0;
+  }
+
+  /**
+   * Records a query that was executed against the table, the sort may be null.
+   */
+  public void record(Query query, Sort sort) {
+    if (!isEnabled() || query == null) {
+      return;
+    }
+    WarmupQuery warmupQuery = new WarmupQuery(query, sort);
+    synchronized (_queries) {
+      _queries.put(warmupQuery, warmupQuery);
+    }
+  }
+
+  public List<WarmupQuery> getQueries() {
+    synchronized (_queries) {
+      return new ArrayList<WarmupQuery>(_queries.keySet());
+    }
+  }
+
+  /**
+   * Runs the recorded queries against the segments of the new reader that are
+   * not in the old reader.
+   * 
+   * @return the number of queries that were executed.
+   */
+  public int warm(IndexReader oldReader, IndexReader newReader, Similarity similarity, String shard) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    List<WarmupQuery> queries = getQueries();
+    if (queries.isEmpty()) {
+      return 0;
+    }
+    Set<Object> oldSegments = new HashSet<Object>();
+    for (AtomicReaderContext context : oldReader.leaves()) {
+      oldSegments.add(context.reader().getCoreCacheKey());
+    }
+    long start = System.nanoTime();
+    int executed = 0;
+    int segments = 0;
+    for (AtomicReaderContext context : newReader.leaves()) {
+      if (oldSegments.contains(context.reader().getCoreCacheKey())) {
+        continue;
+      }
+      segments++;
+      IndexSearcher searcher = new IndexSearcher(context.reader());
+      searcher.setSimilarity(similarity);
+      for (WarmupQuery warmupQuery : queries) {
+        if (System.nanoTime() - start > _maxTimeNanos) {
+          LOG.info("Warmup of table [{0}] shard [{1}] stopped after [{2}] queries, the time limit was reached.",
+              _table, shard, executed);
+          return executed;
+        }
+        try {
+          warmupQuery.execute(searcher);
+          executed++;
+        } catch (Throwable t) {
+          LOG.debug("Warmup query [{0}] failed on table [{1}] shard [{2}].", t, warmupQuery, _table, shard);
+        }
+      }
+    }
+    LOG.debug("Warmup of table [{0}] shard [{1}] ran [{2}] queries against [{3}] new segments in [{4} ms].", _table,
+        shard, executed, segments, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return executed;
+  }
+
+  public static class WarmupQuery {
+
+    private final Query _query;
+    private final Sort _sort;
+
+    public WarmupQuery(Query query, Sort sort) {
+      _query = query;
+      _sort = sort;
+    }
+
+    public Query getQuery() {
+      return _query;
+    }
+
+    public Sort getSort() {
+      return _sort;
+    }
+
+    void execute(IndexSearcher searcher) throws IOException {
+      Query rewrite = searcher.rewrite(_query.clone());
+      if (_sort == null) {
+        searcher.search(rewrite, 1);
+      } else {
+        searcher.search(rewrite, 1, _sort);
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + _query.hashCode();
+      result = prime * result + ((_sort == null) ? 0 : _sort.hashCode());
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      WarmupQuery other = (WarmupQuery) obj;
+      if (!_query.equals(other._query)) {
+        return false;
+      }
+      if (_sort == null) {
+        return other._sort == null;
+      }
+      return _sort.equals(other._sort);
+    }
+
+    @Override
+    public String toString() {
+      return "WarmupQuery [query=" + _query + ", sort=" + _sort + "]";
+    }
+  }
+}
@@ -17,6 +17,8 @@ package org.apache.blur.manager.writer;
  * limitations under the License.
  */
 import static org.apache.blur.metrics.MetricsConstants.LUCENE;
+import static org.apache.blur.metrics.MetricsConstants.MERGES_RUNNING;
+import static org.apache.blur.metrics.MetricsConstants.MERGE_QUEUE_WAIT_TIME;
 import static org.apache.blur.metrics.MetricsConstants.MERGE_THROUGHPUT_BYTES;
 import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
 import static org.apache.blur.utils.BlurConstants.SHARED_MERGE_SCHEDULER_PREFIX;
@@ -25,18 +27,26 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.blur.concurrent.Executors;
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
+import org.apache.blur.store.hdfs.MergeRateLimiter;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.MergePolicy.OneMerge;
@@ -50,6 +60,15 @@ import com.yammer.metrics.core.Gauge;
 import com.yammer.metrics.core.Meter;
 import com.yammer.metrics.core.MetricName;
 
+/**
+ * Merge scheduler shared by all the shards on a server. Merges are split into
+ * a small and a large queue, each drained by its own threads. Within a queue
+ * merges are taken round robin across tables and then across the shards of a
+ * table, so a few busy shards cannot starve the others, and the smallest merge
+ * of a shard goes first. The bytes per second written by merges can be limited
+ * with a separate limit for when queries are running (see
+ * {@link #setRateLimits(long, long, QueryLoad)}).
+ */
 public class SharedMergeScheduler implements Closeable {
 
   private static final String LARGE_QUEUE_DEPTH_IN_BYTES = "Large Queue Depth In Bytes";
@@ -57,33 +76,64 @@ public class SharedMergeScheduler implements Closeable {
   private static final String SMALL_QUEUE_DEPTH_IN_BYTES = "Small Queue Depth In Bytes";
   private static final String SMALL_QUEUE_DEPTH = "Small Queue Depth";
   private static final Log LOG = LogFactory.getLog(SharedMergeScheduler.class);
+  private static final String UNKNOWN = "unknown";
+  private static final long RATE_LIMIT_CHECK_PERIOD = TimeUnit.SECONDS.toMillis(1);
   private static final Meter _throughputBytes;
+  private static final com.yammer.metrics.core.Timer _queueWaitTimer;
 
   static {
     MetricName mergeThoughputBytes = new MetricName(ORG_APACHE_BLUR, LUCENE, MERGE_THROUGHPUT_BYTES);
     _throughputBytes = Metrics.newMeter(mergeThoughputBytes, MERGE_THROUGHPUT_BYTES, TimeUnit.SECONDS);
+    MetricName queueWaitTime = new MetricName(ORG_APACHE_BLUR, LUCENE, MERGE_QUEUE_WAIT_TIME);
+    _queueWaitTimer = Metrics.newTimer(queueWaitTime, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Provides the current query load of the server to drive the merge rate
+   * limit.
+   */
+  public interface QueryLoad {
+    int getRunningQueryCount();
   }
 
   private final AtomicBoolean _running = new AtomicBoolean(true);
 
   private final ExecutorService _smallMergeService;
   private final ExecutorService _largeMergeService;
-  private final PriorityBlockingQueue<MergeWork> _smallMergeQueue = new PriorityBlockingQueue<MergeWork>();
-  private final PriorityBlockingQueue<MergeWork> _largeMergeQueue = new PriorityBlockingQueue<MergeWork>();
+  private final MergeQueue _smallMergeQueue = new MergeQueue();
+  private final MergeQueue _largeMergeQueue = new MergeQueue();
   private final long _smallMergeThreshold;
+  private final AtomicInteger _runningMerges = new AtomicInteger();
+  private Timer _rateLimitTimer;
 
   static class MergeWork implements Comparable<MergeWork> {
 
     private final String _id;
+    private final String _table;
+    private final String _shard;
     private final MergePolicy.OneMerge _merge;
     private final IndexWriter _writer;
     private final long _size;
+    private final long _queued;
 
-    public MergeWork(String id, OneMerge merge, IndexWriter writer) throws IOException {
+    public MergeWork(String id, String table, String shard, OneMerge merge, IndexWriter writer) throws IOException {
       _id = id;
+      _table = table;
+      _shard = shard;
       _merge = merge;
       _writer = writer;
       _size = merge.totalBytesSize();
+      _queued = System.nanoTime();
+    }
+
+    MergeWork(String id, String table, String shard, long size) {
+      _id = id;
+      _table = table;
+      _shard = shard;
+      _merge = null;
+      _writer = null;
+      _size = size;
+      _queued = System.nanoTime();
     }
 
     @Override
@@ -115,6 +165,137 @@ public class SharedMergeScheduler implements Closeable {
     public long getSize() {
       return _size;
     }
+
+    public String getTable() {
+      return _table;
+    }
+
+    public String getShard() {
+      return _shard;
+    }
+
+    public long getQueued() {
+      return _queued;
+    }
+  }
+
+  /**
+   * Blocking queue of merges that hands out merges round robin by table and
+   * then by shard, smallest merge first within a shard.
+   */
+  static class MergeQueue {
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _notEmpty = _lock.newCondition();
+    // Iteration order is the round robin order, empty entries are removed.
+    private final LinkedHashMap<String, LinkedHashMap<String, PriorityQueue<MergeWork>>> _tables =
+        new LinkedHashMap<String, LinkedHashMap<String, PriorityQueue<MergeWork>>>();
+    private int _size;
+    private long _sizeInBytes;
+
+    void add(MergeWork mergeWork) {
+      _lock.lock();
+      try {
+        LinkedHashMap<String, PriorityQueue<MergeWork>> shards = _tables.get(mergeWork.getTable());
+        if (shards == null) {
+          shards = new LinkedHashMap<String, PriorityQueue<MergeWork>>();
+          _tables.put(mergeWork.getTable(), shards);
+        }
+        PriorityQueue<MergeWork> queue = shards.get(mergeWork.getShard());
+        if (queue == null) {
+          queue = new PriorityQueue<MergeWork>();
+          shards.put(mergeWork.getShard(), queue);
+        }
+        queue.add(mergeWork);
+        _size++;
+        _sizeInBytes += mergeWork.getSize();
+        _notEmpty.signal();
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    MergeWork take() throws InterruptedException {
+      _lock.lockInterruptibly();
+      try {
+        while (_size == 0) {
+          _notEmpty.await();
+        }
+        Iterator<Entry<String, LinkedHashMap<String, PriorityQueue<MergeWork>>>> tableIterator = _tables.entrySet()
+            .iterator();
+        Entry<String, LinkedHashMap<String, PriorityQueue<MergeWork>>> tableEntry = tableIterator.next();
+        tableIterator.remove();
+        LinkedHashMap<String, PriorityQueue<MergeWork>> shards = tableEntry.getValue();
+
+        Iterator<Entry<String, PriorityQueue<MergeWork>>> shardIterator = shards.entrySet().iterator();
+        Entry<String, PriorityQueue<MergeWork>> shardEntry = shardIterator.next();
+        shardIterator.remove();
+        PriorityQueue<MergeWork> queue = shardEntry.getValue();
+
+        MergeWork mergeWork = queue.poll();
+        // Re-adding moves the shard and table to the back of the line.
+        if (!queue.isEmpty()) {
+          shards.put(shardEntry.getKey(), queue);
+        }
+        if (!shards.isEmpty()) {
+          _tables.put(tableEntry.getKey(), shards);
+        }
+        _size--;
+        _sizeInBytes -= mergeWork.getSize();
+        return mergeWork;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    void remove(String id) {
+      _lock.lock();
+      try {
+        Iterator<LinkedHashMap<String, PriorityQueue<MergeWork>>> tableIterator = _tables.values().iterator();
+        while (tableIterator.hasNext()) {
+          LinkedHashMap<String, PriorityQueue<MergeWork>> shards = tableIterator.next();
+          Iterator<PriorityQueue<MergeWork>> shardIterator = shards.values().iterator();
+          while (shardIterator.hasNext()) {
+            PriorityQueue<MergeWork> queue = shardIterator.next();
+            Iterator<MergeWork> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+              MergeWork mergeWork = iterator.next();
+              if (id.equals(mergeWork.getId())) {
+                iterator.remove();
+                _size--;
+                _sizeInBytes -= mergeWork.getSize();
+              }
+            }
+            if (queue.isEmpty()) {
+              shardIterator.remove();
+            }
+          }
+          if (shards.isEmpty()) {
+            tableIterator.remove();
+          }
+        }
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    int size() {
+      _lock.lock();
+      try {
+        return _size;
+      } finally {
+        _lock.unlock();
+      }
+    }
+
+    long getSizeInBytes() {
+      _lock.lock();
+      try {
+        return _sizeInBytes;
+      } finally {
+        _lock.unlock();
+      }
+    }
   }
 
   static class MergeStatus {
@@ -179,6 +360,7 @@ public class SharedMergeScheduler implements Closeable {
     MetricName mergeSmallQueueDepthInBytes = new MetricName(ORG_APACHE_BLUR, LUCENE, SMALL_QUEUE_DEPTH_IN_BYTES);
     MetricName mergeLargeQueueDepth = new MetricName(ORG_APACHE_BLUR, LUCENE, LARGE_QUEUE_DEPTH);
     MetricName mergeLargeQueueDepthInBytes = new MetricName(ORG_APACHE_BLUR, LUCENE, LARGE_QUEUE_DEPTH_IN_BYTES);
+    MetricName mergesRunning = new MetricName(ORG_APACHE_BLUR, LUCENE, MERGES_RUNNING);
 
     _smallMergeThreshold = smallMergeThreshold;
     _smallMergeService = Executors.newThreadPool(SHARED_MERGE_SCHEDULER_PREFIX + "-small", threads, false);
@@ -197,7 +379,7 @@ public class SharedMergeScheduler implements Closeable {
     Metrics.newGauge(mergeSmallQueueDepthInBytes, new Gauge<Long>() {
       @Override
       public Long value() {
-        return getSizeInBytes(_smallMergeQueue);
+        return _smallMergeQueue.getSizeInBytes();
       }
     });
     Metrics.newGauge(mergeLargeQueueDepth, new Gauge<Long>() {
@@ -209,30 +391,70 @@ public class SharedMergeScheduler implements Closeable {
     Metrics.newGauge(mergeLargeQueueDepthInBytes, new Gauge<Long>() {
       @Override
       public Long value() {
-        return getSizeInBytes(_largeMergeQueue);
+        return _largeMergeQueue.getSizeInBytes();
+      }
+    });
+    Metrics.newGauge(mergesRunning, new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _runningMerges.get();
       }
     });
   }
 
-  protected long getSizeInBytes(PriorityBlockingQueue<MergeWork> queue) {
-    long total = 0;
-    for (MergeWork mergeWork : queue) {
-      total += mergeWork.getSize();
+  /**
+   * Sets the limits on the bytes per second written by merges on this server,
+   * 0 or less means no limit.
+   * 
+   * @param idleBytesPerSecond
+   *          the limit when no queries are running.
+   * @param busyBytesPerSecond
+   *          the limit while queries are running.
+   * @param queryLoad
+   *          the source of the current query load.
+   */
+  public synchronized void setRateLimits(final long idleBytesPerSecond, final long busyBytesPerSecond,
+      final QueryLoad queryLoad) {
+    if (_rateLimitTimer != null) {
+      _rateLimitTimer.cancel();
+      _rateLimitTimer = null;
     }
-    return total;
+    MergeRateLimiter.setBytesPerSecond(idleBytesPerSecond);
+    if (idleBytesPerSecond == busyBytesPerSecond || queryLoad == null) {
+      return;
+    }
+    _rateLimitTimer = new Timer("merge-rate-limit", true);
+    _rateLimitTimer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        try {
+          if (queryLoad.getRunningQueryCount() > 0) {
+            MergeRateLimiter.setBytesPerSecond(busyBytesPerSecond);
+          } else {
+            MergeRateLimiter.setBytesPerSecond(idleBytesPerSecond);
+          }
+        } catch (Throwable t) {
+          LOG.error("Unknown error while trying to update the merge rate limit.", t);
+        }
+      }
+    }, RATE_LIMIT_CHECK_PERIOD, RATE_LIMIT_CHECK_PERIOD);
   }
 
-  private Runnable getMergerRunnable(final PriorityBlockingQueue<MergeWork> queue) {
+  private Runnable getMergerRunnable(final MergeQueue queue) {
     return new Runnable() {
       @Override
       public void run() {
         while (_running.get()) {
           try {
             MergeWork mergeWork = queue.take();
+            _queueWaitTimer.update(System.nanoTime() - mergeWork.getQueued(), TimeUnit.NANOSECONDS);
+            _runningMerges.incrementAndGet();
             try {
               mergeWork.merge();
             } catch (Throwable t) {
               LOG.error("Unknown error while trying to perform merge on [{0}]", t, mergeWork);
+            } finally {
+              _runningMerges.decrementAndGet();
             }
           } catch (InterruptedException e) {
             if (_running.get()) {
@@ -246,13 +468,21 @@ public class SharedMergeScheduler implements Closeable {
   }
 
   public MergeScheduler getMergeScheduler() {
+    return getMergeScheduler(UNKNOWN, UNKNOWN);
+  }
+
+  /**
+   * @return a merge scheduler for the given table and shard, the table and
+   *         shard are used to schedule merges fairly.
+   */
+  public MergeScheduler getMergeScheduler(final String table, final String shard) {
     return new MergeScheduler() {
 
       private final String _id = UUID.randomUUID().toString();
 
       @Override
       public void merge(IndexWriter writer) throws IOException {
-        addMerges(_id, writer);
+        addMerges(_id, table, shard, writer);
       }
 
       @Override
@@ -262,20 +492,21 @@ public class SharedMergeScheduler implements Closeable {
 
       @Override
       public MergeScheduler clone() {
-        return getMergeScheduler();
+        return getMergeScheduler(table, shard);
       }
     };
   }
 
-  protected void addMerges(String id, IndexWriter writer) throws IOException {
+  protected void addMerges(String id, String table, String shard, IndexWriter writer) throws IOException {
     OneMerge merge;
     while ((merge = writer.getNextMerge()) != null) {
-      addMerge(id, writer, merge);
+      addMerge(id, table, shard, writer, merge);
     }
   }
 
-  private void addMerge(String id, IndexWriter writer, OneMerge merge) throws IOException {
-    MergeWork mergeWork = new MergeWork(id, merge, writer);
+  private void addMerge(String id, String table, String shard, IndexWriter writer, OneMerge merge)
+      throws IOException {
+    MergeWork mergeWork = new MergeWork(id, table, shard, merge, writer);
     if (isLargeMerge(merge)) {
       _largeMergeQueue.add(mergeWork);
     } else {
@@ -292,23 +523,19 @@ public class SharedMergeScheduler implements Closeable {
   }
 
   protected void remove(String id) {
-    remove(_smallMergeQueue, id);
-    remove(_largeMergeQueue, id);
-  }
-
-  private void remove(PriorityBlockingQueue<MergeWork> queue, String id) {
-    Iterator<MergeWork> iterator = queue.iterator();
-    while (iterator.hasNext()) {
-      MergeWork mergeWork = iterator.next();
-      if (id.equals(mergeWork.getId())) {
-        iterator.remove();
-      }
-    }
+    _smallMergeQueue.remove(id);
+    _largeMergeQueue.remove(id);
   }
 
   @Override
   public void close() throws IOException {
     _running.set(false);
+    synchronized (this) {
+      if (_rateLimitTimer != null) {
+        _rateLimitTimer.cancel();
+        _rateLimitTimer = null;
+      }
+    }
     _smallMergeService.shutdownNow();
     _largeMergeService.shutdownNow();
   }
@@ -0,0 +1,80 @@
+package org.apache.blur.server;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Hands a pending result from a server method back to the Thrift processor
+ * that invoked it. The processor opens a response on the invoking thread, the
+ * method may then defer its result instead of blocking until it is available
+ * and return null. The processor writes the response once the deferred future
+ * completes. Because the call still goes through the normal Iface
+ * chain, security, user and trace handling is applied as usual.
+ */
+public class AsyncResponse {
+
+  private static final ThreadLocal<AsyncResponse> _current = new ThreadLocal<AsyncResponse>();
+
+  private boolean _deferrable = true;
+  private ListenableFuture<?> _future;
+
+  /**
+   * Opens a response for the current thread, called by the processor before
+   * the method is invoked.
+   */
+  public static void open() {
+    _current.set(new AsyncResponse());
+  }
+
+  /**
+   * Closes the response of the current thread.
+   *
+   * @return the deferred result or null if the method completed normally.
+   */
+  public static ListenableFuture<?> close() {
+    AsyncResponse response = _current.get();
+    _current.remove();
+    if (response == null) {
+      return null;
+    }
+    return response._future;
+  }
+
+  /**
+   * @return true if the method being invoked on this thread may defer its
+   *         result.
+   */
+  public static boolean isDeferrable() {
+    AsyncResponse response = _current.get();
+    return response != null && response._deferrable;
+  }
+
+  /**
+   * Defers the result of the method being invoked on this thread, the method
+   * should return null after calling this.
+   */
+  public static void defer(ListenableFuture<?> future) {
+    AsyncResponse response = _current.get();
+    if (response == null || !response._deferrable) {
+      throw new IllegalStateException("Response can not be deferred.");
+    }
+    response._deferrable = false;
+    response._future = future;
+  }
+
+}
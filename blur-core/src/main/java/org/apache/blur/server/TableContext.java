@@ -21,6 +21,10 @@ import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BLURINDEX_CLASS;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_DELETION_POLICY_MAXAGE;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_SIMILARITY;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_READ_INTERCEPTOR;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_REOPEN_WARMUP_MAX_TIME;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_REOPEN_WARMUP_QUERIES;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SEARCH_SEGMENT_MAX_RANGES;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SEARCH_SEGMENT_RANGE_MIN_DOCS;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_TIME_BETWEEN_COMMITS;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_TIME_BETWEEN_REFRESHS;
 import static org.apache.blur.utils.BlurConstants.SUPER;
@@ -52,6 +56,7 @@ import org.apache.blur.manager.ReadInterceptor;
 import org.apache.blur.manager.writer.BlurIndex;
 import org.apache.blur.manager.writer.BlurIndexConfig;
 import org.apache.blur.manager.writer.BlurIndexSimpleWriter;
+import org.apache.blur.manager.writer.ReopenWarmer;
 import org.apache.blur.thrift.generated.Blur.Iface;
 import org.apache.blur.thrift.generated.ScoreType;
 import org.apache.blur.thrift.generated.TableDescriptor;
@@ -93,6 +98,8 @@ public class TableContext implements Cloneable {
   private TableDescriptor _descriptor;
   private long _timeBetweenCommits;
   private long _timeBetweenRefreshs;
+  private int _segmentRangeMinDocs;
+  private int _segmentMaxRanges;
   private ScoreType _defaultScoreType;
   private Term _defaultPrimeDocTerm;
   private FieldManager _fieldManager;
@@ -100,6 +107,7 @@ public class TableContext implements Cloneable {
   private ReadInterceptor _readInterceptor;
   private AccessControlFactory _accessControlFactory;
   private Set<String> _discoverableFields;
+  private ReopenWarmer _reopenWarmer;
 
   protected TableContext() {
 
@@ -174,8 +182,12 @@ public class TableContext implements Cloneable {
     tableContext._descriptor = tableDescriptor;
     tableContext._timeBetweenCommits = configuration.getLong(BLUR_SHARD_TIME_BETWEEN_COMMITS, 60000);
     tableContext._timeBetweenRefreshs = configuration.getLong(BLUR_SHARD_TIME_BETWEEN_REFRESHS, 5000);
+    tableContext._segmentRangeMinDocs = configuration.getInt(BLUR_SHARD_SEARCH_SEGMENT_RANGE_MIN_DOCS, 1000000);
+    tableContext._segmentMaxRanges = configuration.getInt(BLUR_SHARD_SEARCH_SEGMENT_MAX_RANGES, 1);
     tableContext._defaultPrimeDocTerm = new Term(BlurConstants.PRIME_DOC, BlurConstants.PRIME_DOC_VALUE);
     tableContext._defaultScoreType = ScoreType.SUPER;
+    tableContext._reopenWarmer = new ReopenWarmer(name, configuration.getInt(BLUR_SHARD_REOPEN_WARMUP_QUERIES, 0),
+        configuration.getLong(BLUR_SHARD_REOPEN_WARMUP_MAX_TIME, 5000));
 
     // TODO make configurable
     tableContext._discoverableFields = new HashSet<String>(Arrays.asList(BlurConstants.ROW_ID, BlurConstants.RECORD_ID,
@@ -296,6 +308,14 @@ public class TableContext implements Cloneable {
     return _timeBetweenRefreshs;
   }
 
+  public int getSegmentRangeMinDocs() {
+    return _segmentRangeMinDocs;
+  }
+
+  public int getSegmentMaxRanges() {
+    return _segmentMaxRanges;
+  }
+
   public FieldManager getFieldManager() {
     return _fieldManager;
   }
@@ -395,6 +415,10 @@ public class TableContext implements Cloneable {
     }
   }
 
+  public ReopenWarmer getReopenWarmer() {
+    return _reopenWarmer;
+  }
+
   public ReadInterceptor getReadInterceptor() {
     return _readInterceptor;
   }
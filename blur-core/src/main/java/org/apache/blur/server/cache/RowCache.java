@@ -0,0 +1,426 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.server.cache;
+
+import static org.apache.blur.metrics.MetricsConstants.COUNT;
+import static org.apache.blur.metrics.MetricsConstants.EVICTION;
+import static org.apache.blur.metrics.MetricsConstants.HIT;
+import static org.apache.blur.metrics.MetricsConstants.HIT_RATIO;
+import static org.apache.blur.metrics.MetricsConstants.MISS;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.ROW_CACHE;
+import static org.apache.blur.metrics.MetricsConstants.SIZE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.Column;
+import org.apache.blur.thrift.generated.FetchRecordResult;
+import org.apache.blur.thrift.generated.FetchResult;
+import org.apache.blur.thrift.generated.FetchRowResult;
+import org.apache.blur.thrift.generated.Record;
+import org.apache.blur.thrift.generated.Row;
+import org.apache.blur.thrift.generated.Selector;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * Shard level read through cache of complete rows, weighted by the serialized
+ * size of the row. Rows are always cached whole and the selector of each fetch
+ * is applied to the cached row, the same way the fetch would have been applied
+ * to the index.
+ *
+ * Every shard has a generation that is moved forward each time rows in the
+ * shard are invalidated. A row loaded from the index is only cached if the
+ * generation of its shard did not change while it was being loaded, so a row
+ * read from a reader that was replaced during the fetch is never cached.
+ *
+ * Every shard also has an epoch that is part of the key of its rows. Removing
+ * all the rows of a shard moves the epoch forward instead of scanning the
+ * cache, the rows cached under the old epoch can no longer be found and are
+ * evicted as the cache fills up.
+ */
+public class RowCache {
+
+  private static final Log LOG = LogFactory.getLog(RowCache.class);
+
+  private final ConcurrentLinkedHashMap<RowCacheKey, ThriftCacheValue<Row>> _cacheMap;
+  private final ConcurrentMap<String, ShardGeneration> _generations = new ConcurrentHashMap<String, ShardGeneration>();
+  private final ConcurrentMap<String, TableStats> _tableStats = new ConcurrentHashMap<String, TableStats>();
+  private final Meter _hits;
+  private final Meter _misses;
+  private final Meter _evictions;
+
+  public RowCache(long totalNumberOfBytes) {
+    _hits = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, HIT), HIT, TimeUnit.SECONDS);
+    _misses = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, MISS), MISS, TimeUnit.SECONDS);
+    _evictions = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, EVICTION), EVICTION, TimeUnit.SECONDS);
+    _cacheMap = new ConcurrentLinkedHashMap.Builder<RowCacheKey, ThriftCacheValue<Row>>()
+        .weigher(new EntryWeigher<RowCacheKey, ThriftCacheValue<Row>>() {
+          @Override
+          public int weightOf(RowCacheKey key, ThriftCacheValue<Row> value) {
+            return key.size() + value.size();
+          }
+        }).listener(new EvictionListener<RowCacheKey, ThriftCacheValue<Row>>() {
+          @Override
+          public void onEviction(RowCacheKey key, ThriftCacheValue<Row> value) {
+            _evictions.mark();
+          }
+        }).maximumWeightedCapacity(totalNumberOfBytes).build();
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, SIZE), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return _cacheMap.weightedSize();
+      }
+    });
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, COUNT), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _cacheMap.size();
+      }
+    });
+  }
+
+  /**
+   * The generation has to be read before the searcher that the row is loaded
+   * from is opened.
+   *
+   * @return the current generation of the given shard.
+   */
+  public long getGeneration(String table, String shard) {
+    return getShardGeneration(table, shard).get();
+  }
+
+  /**
+   * @return the cached row or null if the row is not cached.
+   */
+  public Row get(String table, String shard, String rowId) throws BlurException {
+    TableStats stats = getTableStats(table);
+    long epoch = getShardGeneration(table, shard).getEpoch();
+    ThriftCacheValue<Row> value = _cacheMap.get(new RowCacheKey(table, shard, rowId, epoch));
+    if (value == null) {
+      _misses.mark();
+      stats.miss();
+      return null;
+    }
+    _hits.mark();
+    stats.hit();
+    return value.getValue(Row.class);
+  }
+
+  /**
+   * Caches the complete row, unless rows in the shard have been invalidated
+   * since the given generation was read.
+   *
+   * @return true if the row was cached.
+   */
+  public boolean put(String table, String shard, Row row, long generation) throws BlurException {
+    ThriftCacheValue<Row> value = new ThriftCacheValue<Row>(row);
+    ShardGeneration shardGeneration = getShardGeneration(table, shard);
+    synchronized (shardGeneration) {
+      if (shardGeneration.get() != generation) {
+        LOG.debug("Not caching row [{0}] for table [{1}] shard [{2}], shard was changed during the fetch.",
+            row.getId(), table, shard);
+        return false;
+      }
+      _cacheMap.put(new RowCacheKey(table, shard, row.getId(), shardGeneration.getEpoch()), value);
+      return true;
+    }
+  }
+
+  /**
+   * Removes the given rows from the cache, called after a mutate on the shard
+   * has been committed.
+   */
+  public void invalidate(String table, String shard, Collection<String> rowIds) {
+    if (rowIds.isEmpty()) {
+      return;
+    }
+    ShardGeneration shardGeneration = getShardGeneration(table, shard);
+    synchronized (shardGeneration) {
+      shardGeneration.incrementAndGet();
+      long epoch = shardGeneration.getEpoch();
+      for (String rowId : rowIds) {
+        _cacheMap.remove(new RowCacheKey(table, shard, rowId, epoch));
+      }
+    }
+  }
+
+  /**
+   * Removes all the rows of the given shard from the cache, called when the
+   * rows changed by an update to the shard are unknown (imports) or when the
+   * shard is closed.
+   */
+  public void invalidate(String table, String shard) {
+    ShardGeneration shardGeneration = getShardGeneration(table, shard);
+    synchronized (shardGeneration) {
+      shardGeneration.incrementAndGet();
+      shardGeneration.nextEpoch();
+    }
+  }
+
+  public void clear() {
+    for (ShardGeneration shardGeneration : _generations.values()) {
+      synchronized (shardGeneration) {
+        shardGeneration.incrementAndGet();
+      }
+    }
+    _cacheMap.clear();
+  }
+
+  public double getHitRatio(String table) {
+    return getTableStats(table).getHitRatio();
+  }
+
+  /**
+   * Applies the given selector to a complete row the same way a fetch against
+   * the index would, the record selection, column selection and record paging
+   * all match the fetch from the index.
+   */
+  public static void fetch(String table, Row row, Selector selector, FetchResult fetchResult) {
+    fetchResult.setTable(table);
+    if (selector.isRecordOnly()) {
+      Record record = findRecord(row, selector.getRecordId());
+      if (record == null) {
+        fetchResult.setExists(false);
+        fetchResult.setDeleted(false);
+        return;
+      }
+      fetchResult.setExists(true);
+      fetchResult.setDeleted(false);
+      fetchResult.setRecordResult(new FetchRecordResult(row.getId(), selectColumns(record, selector)));
+      return;
+    }
+    fetchResult.setExists(true);
+    fetchResult.setDeleted(false);
+    List<Record> selected = new ArrayList<Record>();
+    if (row.getRecords() != null) {
+      for (Record record : row.getRecords()) {
+        if (isRecordSelected(record, selector)) {
+          selected.add(record);
+        }
+      }
+    }
+    int start = selector.getStartRecord();
+    int end = (int) Math.min((long) start + Math.max(selector.getMaxRecordsToFetch(), 0), selected.size());
+    Row result;
+    if (start >= end) {
+      result = new Row(row.getId(), null);
+    } else {
+      List<Record> records = new ArrayList<Record>();
+      for (int i = start; i < end; i++) {
+        Record record = selectColumns(selected.get(i), selector);
+        // Records without any of the selected columns are not returned.
+        if (record.getColumns() != null) {
+          records.add(record);
+        }
+      }
+      result = new Row(row.getId(), records);
+    }
+    boolean more = end < selected.size();
+    fetchResult.setRowResult(new FetchRowResult(result, start, selector.getMaxRecordsToFetch(), more, selected
+        .size()));
+  }
+
+  private static Record findRecord(Row row, String recordId) {
+    if (row.getRecords() == null) {
+      return null;
+    }
+    for (Record record : row.getRecords()) {
+      if (recordId.equals(record.getRecordId())) {
+        return record;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isRecordSelected(Record record, Selector selector) {
+    Set<String> families = selector.getColumnFamiliesToFetch();
+    Map<String, Set<String>> columns = selector.getColumnsToFetch();
+    if (families == null && columns == null) {
+      return true;
+    }
+    String family = record.getFamily();
+    if (families != null && families.contains(family)) {
+      return true;
+    }
+    return columns != null && columns.containsKey(family);
+  }
+
+  private static Record selectColumns(Record record, Selector selector) {
+    Record result = new Record();
+    result.setRecordId(record.getRecordId());
+    result.setFamily(record.getFamily());
+    if (record.getColumns() == null) {
+      return result;
+    }
+    Set<String> families = selector.getColumnFamiliesToFetch();
+    Map<String, Set<String>> columns = selector.getColumnsToFetch();
+    String family = record.getFamily();
+    boolean allColumns = (families == null && columns == null) || (families != null && families.contains(family));
+    Set<String> columnNames = columns == null ? null : columns.get(family);
+    for (Column column : record.getColumns()) {
+      if (allColumns || (columnNames != null && columnNames.contains(column.getName()))) {
+        result.addToColumns(new Column(column));
+      }
+    }
+    return result;
+  }
+
+  private ShardGeneration getShardGeneration(String table, String shard) {
+    String key = table + "/" + shard;
+    ShardGeneration shardGeneration = _generations.get(key);
+    if (shardGeneration == null) {
+      ShardGeneration newShardGeneration = new ShardGeneration();
+      shardGeneration = _generations.putIfAbsent(key, newShardGeneration);
+      if (shardGeneration == null) {
+        shardGeneration = newShardGeneration;
+      }
+    }
+    return shardGeneration;
+  }
+
+  private TableStats getTableStats(String table) {
+    TableStats stats = _tableStats.get(table);
+    if (stats == null) {
+      synchronized (_tableStats) {
+        stats = _tableStats.get(table);
+        if (stats == null) {
+          stats = new TableStats(table);
+          _tableStats.put(table, stats);
+        }
+      }
+    }
+    return stats;
+  }
+
+  @SuppressWarnings("serial")
+  private static class ShardGeneration extends AtomicLong {
+
+    private volatile long _epoch;
+
+    long getEpoch() {
+      return _epoch;
+    }
+
+    /**
+     * Has to be called while holding the lock of the generation.
+     */
+    void nextEpoch() {
+      _epoch++;
+    }
+  }
+
+  private static class TableStats {
+
+    private final Meter _hits;
+    private final Meter _misses;
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+
+    TableStats(String table) {
+      _hits = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, HIT, table), HIT, TimeUnit.SECONDS);
+      _misses = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, MISS, table), MISS, TimeUnit.SECONDS);
+      Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, ROW_CACHE, HIT_RATIO, table), new Gauge<Double>() {
+        @Override
+        public Double value() {
+          return getHitRatio();
+        }
+      });
+    }
+
+    void hit() {
+      _hits.mark();
+      _hitCount.incrementAndGet();
+    }
+
+    void miss() {
+      _misses.mark();
+      _missCount.incrementAndGet();
+    }
+
+    double getHitRatio() {
+      long hits = _hitCount.get();
+      long total = hits + _missCount.get();
+      if (total == 0) {
+        return 0.0;
+      }
+      return (double) hits / (double) total;
+    }
+  }
+
+  static class RowCacheKey {
+
+    private final String _table;
+    private final String _shard;
+    private final String _rowId;
+    private final long _epoch;
+
+    RowCacheKey(String table, String shard, String rowId, long epoch) {
+      _table = table;
+      _shard = shard;
+      _rowId = rowId;
+      _epoch = epoch;
+    }
+
+    int size() {
+      // Rough heap size of the key, the strings are mostly shared with other
+      // structures, the row id is not.
+      return 40 + _rowId.length() * 2;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + (int) (_epoch ^ (_epoch >>> 32));
+      result = prime * result + _rowId.hashCode();
+      result = prime * result + _shard.hashCode();
+      result = prime * result + _table.hashCode();
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      RowCacheKey other = (RowCacheKey) obj;
+      return _epoch == other._epoch && _rowId.equals(other._rowId) && _shard.equals(other._shard)
+          && _table.equals(other._table);
+    }
+  }
+}
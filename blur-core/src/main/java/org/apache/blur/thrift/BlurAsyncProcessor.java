@@ -0,0 +1,167 @@
+package org.apache.blur.thrift;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.server.AsyncResponse;
+import org.apache.blur.thirdparty.thrift_0_9_0.ProcessFunction;
+import org.apache.blur.thirdparty.thrift_0_9_0.TApplicationException;
+import org.apache.blur.thirdparty.thrift_0_9_0.TBase;
+import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessage;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessageType;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolException;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolUtil;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType;
+import org.apache.blur.thrift.generated.Blur;
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.server.TAsyncProcessor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Processor that lets the given methods defer their results through
+ * {@link AsyncResponse}. The processor thread is released as soon as the call
+ * has been dispatched, the response is written by the thread that completes
+ * the result and then handed to the selector. All other methods, and all
+ * methods when no callback is given, are processed synchronously.
+ */
+public class BlurAsyncProcessor implements TAsyncProcessor {
+
+  private static final Log LOG = LogFactory.getLog(BlurAsyncProcessor.class);
+
+  // The generated results store the return value in field 0 and the
+  // BlurException in field 1.
+  private static final short SUCCESS_FIELD_ID = 0;
+  private static final short EX_FIELD_ID = 1;
+
+  private final Iface _iface;
+  private final Map<String, ProcessFunction<Iface, ? extends TBase>> _processMap;
+  private final Set<String> _asyncMethods;
+
+  public BlurAsyncProcessor(Iface iface, Set<String> asyncMethods) {
+    _iface = iface;
+    _processMap = new Blur.Processor<Iface>(iface).getProcessMapView();
+    _asyncMethods = asyncMethods;
+  }
+
+  @Override
+  public boolean process(TProtocol in, TProtocol out) throws TException {
+    return process(in, out, null);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Override
+  public boolean process(TProtocol in, final TProtocol out, final ResponseCallback callback) throws TException {
+    final TMessage msg = in.readMessageBegin();
+    ProcessFunction fn = _processMap.get(msg.name);
+    if (fn == null) {
+      TProtocolUtil.skip(in, TType.STRUCT);
+      in.readMessageEnd();
+      writeException(out, msg, TApplicationException.UNKNOWN_METHOD, "Invalid method name: '" + msg.name + "'");
+      return true;
+    }
+    if (callback == null || !_asyncMethods.contains(msg.name)) {
+      fn.process(msg.seqid, in, out, _iface);
+      return true;
+    }
+    TBase args = fn.getEmptyArgsInstance();
+    try {
+      args.read(in);
+    } catch (TProtocolException e) {
+      in.readMessageEnd();
+      writeException(out, msg, TApplicationException.PROTOCOL_ERROR, e.getMessage());
+      return true;
+    }
+    in.readMessageEnd();
+
+    final TBase result;
+    ListenableFuture<?> future;
+    AsyncResponse.open();
+    try {
+      result = fn.getResult(_iface, args);
+    } catch (Throwable t) {
+      LOG.error("Internal error processing [{0}]", t, msg.name);
+      writeException(out, msg, TApplicationException.INTERNAL_ERROR, "Internal error processing " + msg.name);
+      return true;
+    } finally {
+      future = AsyncResponse.close();
+    }
+    if (future == null) {
+      writeResult(out, msg, result);
+      return true;
+    }
+    Futures.addCallback(future, new FutureCallback<Object>() {
+      @Override
+      public void onSuccess(Object value) {
+        result.setFieldValue(result.fieldForId(SUCCESS_FIELD_ID), value);
+        respond();
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof BlurException) {
+          result.setFieldValue(result.fieldForId(EX_FIELD_ID), t);
+          respond();
+          return;
+        }
+        LOG.error("Internal error processing [{0}]", t, msg.name);
+        try {
+          writeException(out, msg, TApplicationException.INTERNAL_ERROR, "Internal error processing " + msg.name);
+          callback.responseReady();
+        } catch (TException e) {
+          LOG.error("Could not write response for [{0}]", e, msg.name);
+          callback.close();
+        }
+      }
+
+      private void respond() {
+        try {
+          writeResult(out, msg, result);
+          callback.responseReady();
+        } catch (Throwable t) {
+          LOG.error("Could not write response for [{0}]", t, msg.name);
+          callback.close();
+        }
+      }
+    });
+    return false;
+  }
+
+  private static void writeResult(TProtocol out, TMessage msg, TBase<?, ?> result) throws TException {
+    out.writeMessageBegin(new TMessage(msg.name, TMessageType.REPLY, msg.seqid));
+    result.write(out);
+    out.writeMessageEnd();
+    out.getTransport().flush();
+  }
+
+  private static void writeException(TProtocol out, TMessage msg, int type, String message) throws TException {
+    TApplicationException x = new TApplicationException(type, message);
+    out.writeMessageBegin(new TMessage(msg.name, TMessageType.EXCEPTION, msg.seqid));
+    x.write(out);
+    out.writeMessageEnd();
+    out.getTransport().flush();
+  }
+}
@@ -16,11 +16,15 @@ package org.apache.blur.thrift;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SUMMARY_ENABLED;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -44,6 +48,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -60,6 +65,7 @@ import org.apache.blur.command.Shard;
 import org.apache.blur.concurrent.Executors;
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
+import org.apache.blur.lucene.search.SuperParser;
 import org.apache.blur.manager.BlurPartitioner;
 import org.apache.blur.manager.BlurQueryChecker;
 import org.apache.blur.manager.IndexManager;
@@ -68,10 +74,13 @@ import org.apache.blur.manager.indexserver.DistributedLayoutFactory;
 import org.apache.blur.manager.indexserver.DistributedLayoutFactoryImpl;
 import org.apache.blur.manager.results.BlurResultIterable;
 import org.apache.blur.manager.results.BlurResultIterableClient;
+import org.apache.blur.manager.results.BlurResultIterableMultiple;
 import org.apache.blur.manager.results.LazyBlurResult;
 import org.apache.blur.manager.results.MergerBlurResultIterable;
 import org.apache.blur.manager.stats.MergerTableStats;
 import org.apache.blur.manager.status.MergerQueryStatusSingle;
+import org.apache.blur.manager.summary.ShardSummaryCache;
+import org.apache.blur.server.AsyncResponse;
 import org.apache.blur.server.ControllerServerContext;
 import org.apache.blur.server.LayoutFactory;
 import org.apache.blur.server.TableContext;
@@ -98,6 +107,7 @@ import org.apache.blur.thrift.generated.FetchResult;
 import org.apache.blur.thrift.generated.HighlightOptions;
 import org.apache.blur.thrift.generated.Query;
 import org.apache.blur.thrift.generated.RowMutation;
+import org.apache.blur.thrift.generated.ScoreType;
 import org.apache.blur.thrift.generated.Schema;
 import org.apache.blur.thrift.generated.Selector;
 import org.apache.blur.thrift.generated.ShardState;
@@ -105,6 +115,7 @@ import org.apache.blur.thrift.generated.TableDescriptor;
 import org.apache.blur.thrift.generated.TableStats;
 import org.apache.blur.thrift.generated.TimeoutException;
 import org.apache.blur.thrift.generated.User;
+import org.apache.blur.thrift.util.SerializedFetchResult;
 import org.apache.blur.trace.Trace;
 import org.apache.blur.trace.Trace.TraceId;
 import org.apache.blur.trace.Tracer;
@@ -115,6 +126,7 @@ import org.apache.blur.utils.BlurUtil;
 import org.apache.blur.utils.ForkJoin;
 import org.apache.blur.utils.ForkJoin.Merger;
 import org.apache.blur.utils.ForkJoin.ParallelCall;
+import org.apache.blur.utils.QueryCoalescer;
 import org.apache.blur.utils.ShardUtil;
 import org.apache.blur.zookeeper.WatchChildren;
 import org.apache.blur.zookeeper.WatchChildren.OnChange;
@@ -128,6 +140,10 @@ import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.ZooDefs.Ids;
 import org.apache.zookeeper.data.Stat;
+import org.json.JSONException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class BlurControllerServer extends TableAdmin implements Iface {
 
@@ -172,12 +188,16 @@ public class BlurControllerServer extends TableAdmin implements Iface {
   }
 
   private static final String CONTROLLER_THREAD_POOL = "controller-thread-pool";
+  private static final String CONTROLLER_ASYNC_COMPLETION_POOL = "controller-async-completion";
+  private static final long MAX_ASYNC_QUERY_TIMEOUT = TimeUnit.DAYS.toMillis(1);
   private static final Log LOG = LogFactory.getLog(BlurControllerServer.class);
   private static final Map<String, Set<String>> EMPTY_MAP = Collections
       .unmodifiableMap(new HashMap<String, Set<String>>());
   private static final Set<String> EMPTY_SET = Collections.unmodifiableSet(new HashSet<String>());
 
   private ExecutorService _executor;
+  private ExecutorService _completionExecutor;
+  private Timer _asyncQueryTimer;
   private AtomicReference<Map<String, Map<String, String>>> _shardServerLayout = new AtomicReference<Map<String, Map<String, String>>>(
       new HashMap<String, Map<String, String>>());
   private BlurClient _client;
@@ -214,11 +234,19 @@ public class BlurControllerServer extends TableAdmin implements Iface {
   private long _tableLayoutTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
   private ControllerCommandManager _commandManager;
   private BlurObjectSerDe _serDe = new BlurObjectSerDe();
+  private QueryCoalescer _queryCoalescer = new QueryCoalescer();
+  private boolean _queryCoalescing = false;
+  private boolean _fetchPassThrough = true;
+  private ShardSummaryCache _shardSummaryCache;
 
   public void init() throws KeeperException, InterruptedException {
     setupZookeeper();
     registerMyself();
     _executor = Executors.newThreadPool(CONTROLLER_THREAD_POOL, _threadCount);
+    // Async queries convert their results on a separate pool because the
+    // conversion waits on fetches that run on the controller thread pool.
+    _completionExecutor = Executors.newThreadPool(CONTROLLER_ASYNC_COMPLETION_POOL, _threadCount);
+    _asyncQueryTimer = new Timer("controller async query", true);
     _running.set(true);
     watchForClusterChanges();
     List<String> clusterList = _clusterStatus.getClusterList(false);
@@ -435,6 +463,9 @@ public class BlurControllerServer extends TableAdmin implements Iface {
       _closed.set(true);
       _running.set(false);
       _executor.shutdownNow();
+      _completionExecutor.shutdownNow();
+      _asyncQueryTimer.cancel();
+      _asyncQueryTimer.purge();
       _preconnectTimer.cancel();
       _preconnectTimer.purge();
       _tableContextWarmupTimer.cancel();
@@ -464,65 +495,58 @@ public class BlurControllerServer extends TableAdmin implements Iface {
 
   @Override
   public BlurResults query(final String table, final BlurQuery blurQuery) throws BlurException, TException {
+    long arrival = System.nanoTime();
+    if (AsyncResponse.isDeferrable()) {
+      AsyncResponse.defer(queryAsync(table, blurQuery));
+      return null;
+    }
+    if (!_queryCoalescing) {
+      return executeQuery(table, blurQuery);
+    }
+    SettableFuture<BlurResults> future = SettableFuture.create();
+    ListenableFuture<BlurResults> inFlight = _queryCoalescer.register(table, blurQuery, arrival, future);
+    if (inFlight != future) {
+      return QueryCoalescer.waitForResults(inFlight, blurQuery);
+    }
     try {
-      checkTable(table);
-      Tracer trace = Trace.trace("query - setup", Trace.param("table", table), Trace.param("blurQuery", blurQuery));
-      String cluster = _clusterStatus.getCluster(true, table);
-      _queryChecker.checkQuery(blurQuery);
-      checkSelectorFetchSize(blurQuery.getSelector());
-      TableDescriptor tableDescriptor = _clusterStatus.getTableDescriptor(true, cluster, table);
-      int shardCount = tableDescriptor.getShardCount();
-      if (blurQuery.getUuid() == null) {
-        blurQuery.setUuid(UUID.randomUUID().toString());
+      BlurResults results = executeQuery(table, blurQuery);
+      future.set(results);
+      return results;
+    } catch (BlurException e) {
+      future.setException(e);
+      throw e;
+    } finally {
+      if (!future.isDone()) {
+        future.setException(new BException("Query [{0}] on table [{1}] did not complete.", blurQuery, table));
       }
-      BlurUtil.setStartTime(blurQuery);
-      trace.done();
+    }
+  }
+
+  private BlurResults executeQuery(final String table, final BlurQuery blurQuery) throws BlurException, TException {
+    try {
+      TableDescriptor tableDescriptor = setupQuery(table, blurQuery);
+      int shardCount = tableDescriptor.getShardCount();
 
       BlurUtil.setStartTime(blurQuery);
 
       QueryCoundNotBeCompletedReport report = null;
       OUTER: for (int retries = 0; retries < _maxDefaultRetries; retries++) {
-        Tracer selectorTrace = Trace.trace("selector - setup", Trace.param("retries", retries));
         final AtomicLongArray facetCounts = BlurUtil.getAtomicLongArraySameLengthAsList(blurQuery.facets);
-        Selector selector = blurQuery.getSelector();
-        if (selector == null) {
-          selector = new Selector();
-          selector.setColumnFamiliesToFetch(EMPTY_SET);
-          selector.setColumnsToFetch(EMPTY_MAP);
-          if (!blurQuery.query.rowQuery) {
-            selector.setRecordOnly(true);
-          }
-        } else {
-          HighlightOptions highlightOptions = selector.getHighlightOptions();
-          if (highlightOptions != null && highlightOptions.getQuery() == null) {
-            highlightOptions.setQuery(blurQuery.getQuery());
-          }
-        }
-        blurQuery.setSelector(null);
-        selectorTrace.done();
-
-        BlurCommand<BlurResultIterable> command = new BlurCommand<BlurResultIterable>() {
-          @Override
-          public BlurResultIterable call(Client client, Connection connection) throws BlurException, TException {
-            return new BlurResultIterableClient(connection, client, table, blurQuery, facetCounts, _remoteFetchCount);
-          }
-
-          @Override
-          public BlurResultIterable call(Client client) throws BlurException, TException {
-            throw new RuntimeException("Won't be called.");
-          }
-        };
-
-        command.setDetachClient(true);
+        Selector selector = getQuerySelector(blurQuery, retries);
+        BlurCommand<BlurResultIterable> command = getQueryCommand(table, blurQuery, facetCounts);
 
         MergerBlurResultIterable merger = new MergerBlurResultIterable(blurQuery);
         BlurResultIterable hitsIterable = null;
         try {
           String rowId = blurQuery.getRowId();
+          Set<String> prunedShards = EMPTY_SET;
           if (rowId == null) {
             Tracer scatterGatherTrace = Trace.trace("query - scatterGather", Trace.param("retries", retries));
             try {
-              hitsIterable = scatterGather(tableDescriptor.getCluster(), command, merger);
+              String cluster = tableDescriptor.getCluster();
+              prunedShards = getPrunedShards(table, cluster, blurQuery);
+              List<String> nodes = getQueryNodes(table, cluster, shardCount, prunedShards);
+              hitsIterable = scatterGather(nodes, command, merger);
             } finally {
               scatterGatherTrace.done();
             }
@@ -537,12 +561,10 @@ public class BlurControllerServer extends TableAdmin implements Iface {
           } finally {
             convertToBlurResults.done();
           }
+          addPrunedShards(results, prunedShards);
           if (!validResults(results, shardCount, blurQuery)) {
             BlurClientManager.sleep(_defaultDelay, _maxDefaultDelay, retries, _maxDefaultRetries);
-            Map<String, String> map = getTableLayout(table);
-            Map<String, Long> shardInfo = results.getShardInfo();
-            report = new QueryCoundNotBeCompletedReport(map, shardCount, shardInfo, blurQuery);
-            LOG.info("Current layout for table [{0}] is [{1}]", table, map);
+            report = getQueryReport(table, shardCount, results, blurQuery);
             continue OUTER;
           }
           return results;
@@ -554,11 +576,310 @@ public class BlurControllerServer extends TableAdmin implements Iface {
       }
       throw new BException("Query could not be completed, report [{0}].", report);
     } catch (Exception e) {
-      LOG.error("Unknown error during search of [table={0},blurQuery={1}]", e, table, blurQuery);
-      if (e instanceof BlurException) {
-        throw (BlurException) e;
+      throw toQueryException(e, table, blurQuery);
+    }
+  }
+
+  /**
+   * Asynchronous version of {@link #query(String, BlurQuery)}. The shard
+   * servers are called on the controller thread pool and the returned future
+   * is completed by the last shard response, no thread waits on the fan out.
+   * Retries are scheduled instead of sleeping.
+   */
+  public ListenableFuture<BlurResults> queryAsync(final String table, final BlurQuery blurQuery) throws BlurException,
+      TException {
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future = SettableFuture.create();
+    if (_queryCoalescing) {
+      ListenableFuture<BlurResults> inFlight = _queryCoalescer.register(table, blurQuery, arrival, future);
+      if (inFlight != future) {
+        return QueryCoalescer.forCaller(inFlight);
+      }
+    }
+    try {
+      TableDescriptor tableDescriptor = setupQuery(table, blurQuery);
+      new AsyncQueryAttempt(table, blurQuery, tableDescriptor, 0, future).start();
+      return future;
+    } catch (Exception e) {
+      BlurException exception = toQueryException(e, table, blurQuery);
+      future.setException(exception);
+      throw exception;
+    }
+  }
+
+  private TableDescriptor setupQuery(String table, BlurQuery blurQuery) throws BlurException, TException {
+    checkTable(table);
+    Tracer trace = Trace.trace("query - setup", Trace.param("table", table), Trace.param("blurQuery", blurQuery));
+    String cluster = _clusterStatus.getCluster(true, table);
+    _queryChecker.checkQuery(blurQuery);
+    checkSelectorFetchSize(blurQuery.getSelector());
+    TableDescriptor tableDescriptor = _clusterStatus.getTableDescriptor(true, cluster, table);
+    if (blurQuery.getUuid() == null) {
+      blurQuery.setUuid(UUID.randomUUID().toString());
+    }
+    BlurUtil.setStartTime(blurQuery);
+    trace.done();
+    return tableDescriptor;
+  }
+
+  private Selector getQuerySelector(BlurQuery blurQuery, int retries) {
+    Tracer selectorTrace = Trace.trace("selector - setup", Trace.param("retries", retries));
+    Selector selector = blurQuery.getSelector();
+    if (selector == null) {
+      selector = new Selector();
+      selector.setColumnFamiliesToFetch(EMPTY_SET);
+      selector.setColumnsToFetch(EMPTY_MAP);
+      if (!blurQuery.query.rowQuery) {
+        selector.setRecordOnly(true);
+      }
+    } else {
+      HighlightOptions highlightOptions = selector.getHighlightOptions();
+      if (highlightOptions != null && highlightOptions.getQuery() == null) {
+        highlightOptions.setQuery(blurQuery.getQuery());
+      }
+    }
+    blurQuery.setSelector(null);
+    selectorTrace.done();
+    return selector;
+  }
+
+  private BlurCommand<BlurResultIterable> getQueryCommand(final String table, final BlurQuery blurQuery,
+      final AtomicLongArray facetCounts) {
+    BlurCommand<BlurResultIterable> command = new BlurCommand<BlurResultIterable>() {
+      @Override
+      public BlurResultIterable call(Client client, Connection connection) throws BlurException, TException {
+        return new BlurResultIterableClient(connection, client, table, blurQuery, facetCounts, _remoteFetchCount);
+      }
+
+      @Override
+      public BlurResultIterable call(Client client) throws BlurException, TException {
+        throw new RuntimeException("Won't be called.");
+      }
+    };
+    command.setDetachClient(true);
+    return command;
+  }
+
+  private QueryCoundNotBeCompletedReport getQueryReport(String table, int shardCount, BlurResults results,
+      BlurQuery blurQuery) throws BlurException, TException {
+    Map<String, String> map = getTableLayout(table);
+    Map<String, Long> shardInfo = results.getShardInfo();
+    LOG.info("Current layout for table [{0}] is [{1}]", table, map);
+    try {
+      return new QueryCoundNotBeCompletedReport(map, shardCount, shardInfo, blurQuery);
+    } catch (JSONException e) {
+      throw new BException("Could not create the report for query [{0}] on table [{1}]", e, blurQuery, table);
+    }
+  }
+
+  private BlurException toQueryException(Exception e, String table, BlurQuery blurQuery) {
+    LOG.error("Unknown error during search of [table={0},blurQuery={1}]", e, table, blurQuery);
+    if (e instanceof BlurException) {
+      return (BlurException) e;
+    }
+    return new BException("Unknown error during search of [table={0},blurQuery={1}]", e, table, blurQuery);
+  }
+
+  /**
+   * A single attempt of an asynchronous query. Results are gathered as the
+   * shard servers respond, once all have responded (or enough hits have been
+   * found) the results are converted on the completion pool.
+   */
+  private class AsyncQueryAttempt {
+
+    private final String _table;
+    private final BlurQuery _blurQuery;
+    private final TableDescriptor _tableDescriptor;
+    private final int _retries;
+    private final SettableFuture<BlurResults> _future;
+    private final AtomicLongArray _facetCounts;
+    private final Selector _selector;
+    private final BlurResultIterableMultiple _iterable = new BlurResultIterableMultiple();
+    private final List<Future<?>> _calls = new ArrayList<Future<?>>();
+    private final Object _lock = new Object();
+    private Set<String> _prunedShards = EMPTY_SET;
+    private int _remaining;
+    private boolean _done;
+    private TimerTask _timeout;
+
+    AsyncQueryAttempt(String table, BlurQuery blurQuery, TableDescriptor tableDescriptor, int retries,
+        SettableFuture<BlurResults> future) {
+      _table = table;
+      _blurQuery = blurQuery;
+      _tableDescriptor = tableDescriptor;
+      _retries = retries;
+      _future = future;
+      _facetCounts = BlurUtil.getAtomicLongArraySameLengthAsList(blurQuery.facets);
+      _selector = getQuerySelector(blurQuery, retries);
+    }
+
+    void start() throws BlurException, TException {
+      final BlurCommand<BlurResultIterable> command = getQueryCommand(_table, _blurQuery, _facetCounts);
+      final List<String> nodes;
+      final int maxRetries;
+      final long delay;
+      final long maxDelay;
+      String rowId = _blurQuery.getRowId();
+      if (rowId == null) {
+        String cluster = _tableDescriptor.getCluster();
+        _prunedShards = getPrunedShards(_table, cluster, _blurQuery);
+        nodes = getQueryNodes(_table, cluster, _tableDescriptor.getShardCount(), _prunedShards);
+        maxRetries = _maxDefaultRetries;
+        delay = _defaultDelay;
+        maxDelay = _maxDefaultDelay;
+      } else {
+        nodes = Arrays.asList(getNode(_table, rowId));
+        maxRetries = _maxFetchRetries;
+        delay = _fetchDelay;
+        maxDelay = _maxFetchDelay;
+      }
+      synchronized (_lock) {
+        _remaining = nodes.size();
+        if (_remaining == 0) {
+          _done = true;
+        }
+      }
+      if (nodes.isEmpty()) {
+        gathered();
+        return;
+      }
+      long maxQueryTime = _blurQuery.maxQueryTime;
+      if (maxQueryTime > 0 && maxQueryTime < MAX_ASYNC_QUERY_TIMEOUT) {
+        _timeout = new TimerTask() {
+          @Override
+          public void run() {
+            LOG.info("Query timeout with max query time of [{0}] for query [{1}].", _blurQuery.maxQueryTime,
+                _blurQuery);
+            failed(new BlurException("Query timeout with max query time of [" + _blurQuery.maxQueryTime
+                + "] for query [" + _blurQuery + "].", null, ErrorType.QUERY_TIMEOUT));
+          }
+        };
+        _asyncQueryTimer.schedule(_timeout, maxQueryTime);
+      }
+      for (final String node : nodes) {
+        Future<?> call = _executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              added(_client.execute(node, command.clone(), maxRetries, delay, maxDelay));
+            } catch (Exception e) {
+              failed(e);
+            }
+          }
+        });
+        synchronized (_lock) {
+          _calls.add(call);
+        }
+      }
+    }
+
+    private void added(BlurResultIterable iterable) {
+      synchronized (_lock) {
+        if (!_done) {
+          _iterable.addBlurResultIterable(iterable);
+          _remaining--;
+          if (_remaining > 0 && _iterable.getTotalResults() < _blurQuery.minimumNumberOfResults) {
+            return;
+          }
+          _done = true;
+          iterable = null;
+        }
+      }
+      if (iterable != null) {
+        // Arrived after the attempt was completed.
+        close(iterable);
+        return;
+      }
+      stop();
+      _completionExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          gathered();
+        }
+      });
+    }
+
+    private void failed(Exception e) {
+      synchronized (_lock) {
+        if (_done) {
+          return;
+        }
+        _done = true;
+      }
+      stop();
+      close(_iterable);
+      _future.setException(toQueryException(e, _table, _blurQuery));
+    }
+
+    private void gathered() {
+      try {
+        Tracer convertToBlurResults = Trace.trace("query - convertToBlurResults", Trace.param("retries", _retries));
+        BlurResults results;
+        try {
+          results = convertToBlurResults(_iterable, _blurQuery, _facetCounts, _executor, _selector, _table);
+        } finally {
+          convertToBlurResults.done();
+        }
+        addPrunedShards(results, _prunedShards);
+        int shardCount = _tableDescriptor.getShardCount();
+        if (!validResults(results, shardCount, _blurQuery)) {
+          retry(getQueryReport(_table, shardCount, results, _blurQuery));
+          return;
+        }
+        _future.set(results);
+      } catch (Exception e) {
+        _future.setException(toQueryException(e, _table, _blurQuery));
+      } finally {
+        close(_iterable);
+      }
+    }
+
+    private void retry(QueryCoundNotBeCompletedReport report) {
+      if (_retries + 1 >= _maxDefaultRetries) {
+        _future.setException(new BException("Query could not be completed, report [{0}].", report));
+        return;
+      }
+      final org.apache.blur.user.User user = UserContext.getUser();
+      final Runnable runnable = Trace.getRunnable(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            new AsyncQueryAttempt(_table, _blurQuery, _tableDescriptor, _retries + 1, _future).start();
+          } catch (Exception e) {
+            _future.setException(toQueryException(e, _table, _blurQuery));
+          }
+        }
+      });
+      _asyncQueryTimer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          UserContext.setUser(user);
+          try {
+            runnable.run();
+          } finally {
+            UserContext.reset();
+          }
+        }
+      }, BlurClientManager.getBackOffTime(_defaultDelay, _maxDefaultDelay, _retries, _maxDefaultRetries));
+    }
+
+    private void stop() {
+      if (_timeout != null) {
+        _timeout.cancel();
+      }
+      synchronized (_lock) {
+        for (Future<?> call : _calls) {
+          call.cancel(true);
+        }
+      }
+    }
+
+    private void close(BlurResultIterable iterable) {
+      try {
+        iterable.close();
+      } catch (IOException e) {
+        LOG.error("Unknown error while closing results of query [{0}]", e, _blurQuery);
       }
-      throw new BException("Unknown error during search of [table={0},blurQuery={1}]", e, table, blurQuery);
     }
   }
 
@@ -680,6 +1001,98 @@ public class BlurControllerServer extends TableAdmin implements Iface {
     return results;
   }
 
+  /**
+   * Uses the shard summaries published by the shard servers to find the shards
+   * of the table that can not match the query. Any problem parsing the query
+   * disables pruning for the query rather than failing it.
+   */
+  private Set<String> getPrunedShards(String table, String cluster, BlurQuery blurQuery) {
+    if (_shardSummaryCache == null || blurQuery.getRowId() != null || blurQuery.getQuery() == null) {
+      return EMPTY_SET;
+    }
+    try {
+      TableContext context = getTableContext(table);
+      // A table that had summaries enabled before may have old ones left.
+      if (!context.getBlurConfiguration().getBoolean(BLUR_SHARD_SUMMARY_ENABLED, false)) {
+        return EMPTY_SET;
+      }
+      if (_shardSummaryCache.getShardSummaries(cluster, table).isEmpty()) {
+        return EMPTY_SET;
+      }
+      Query query = blurQuery.getQuery();
+      List<org.apache.lucene.search.Query> queries = new ArrayList<org.apache.lucene.search.Query>();
+      addParsedQuery(queries, context, query.getQuery(), query.isRowQuery());
+      addParsedQuery(queries, context, query.getRecordFilter(), false);
+      addParsedQuery(queries, context, query.getRowFilter(), true);
+      return _shardSummaryCache.getPrunedShards(cluster, table, queries);
+    } catch (Exception e) {
+      LOG.debug("Could not prune shards for query [{0}] on table [{1}]", e, blurQuery, table);
+      return EMPTY_SET;
+    }
+  }
+
+  private void addParsedQuery(List<org.apache.lucene.search.Query> queries, TableContext context, String query,
+      boolean superQueryOn) throws Exception {
+    if (query == null) {
+      return;
+    }
+    queries.add(new SuperParser(LUCENE_VERSION, context.getFieldManager(), superQueryOn, null, ScoreType.CONSTANT,
+        context.getDefaultPrimeDocTerm()).parse(query));
+  }
+
+  /**
+   * @return the shard servers that serve at least one shard that was not
+   *         pruned. If the layout is incomplete no shards are pruned and all
+   *         the online shard servers are returned.
+   */
+  private List<String> getQueryNodes(String table, String cluster, int shardCount, Set<String> prunedShards)
+      throws BlurException, TException {
+    List<String> onlineShardServers = _clusterStatus.getOnlineShardServers(true, cluster);
+    if (prunedShards.isEmpty()) {
+      return onlineShardServers;
+    }
+    Map<String, String> layout = shardServerLayout(table);
+    if (layout.size() < shardCount) {
+      prunedShards.clear();
+      return onlineShardServers;
+    }
+    Set<String> servers = new HashSet<String>();
+    for (Entry<String, String> e : layout.entrySet()) {
+      if (!prunedShards.contains(e.getKey())) {
+        servers.add(e.getValue());
+      }
+    }
+    List<String> nodes = new ArrayList<String>();
+    for (String server : onlineShardServers) {
+      if (servers.contains(server)) {
+        nodes.add(server);
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Pruned shards can not have hits, they are reported with no hits so that
+   * the results account for every shard of the table.
+   */
+  private void addPrunedShards(BlurResults results, Set<String> prunedShards) {
+    if (prunedShards.isEmpty()) {
+      return;
+    }
+    Map<String, Long> shardInfo = results.getShardInfo();
+    if (shardInfo == null) {
+      shardInfo = new HashMap<String, Long>();
+    } else {
+      shardInfo = new HashMap<String, Long>(shardInfo);
+    }
+    for (String shard : prunedShards) {
+      if (!shardInfo.containsKey(shard)) {
+        shardInfo.put(shard, 0L);
+      }
+    }
+    results.setShardInfo(shardInfo);
+  }
+
   private boolean validResults(BlurResults results, int shardCount, BlurQuery query) {
     if (results.totalResults >= query.minimumNumberOfResults) {
       return true;
@@ -723,51 +1136,25 @@ public class BlurControllerServer extends TableAdmin implements Iface {
 
   @Override
   public List<FetchResult> fetchRowBatch(final String table, List<Selector> selectors) throws BlurException, TException {
+    if (AsyncResponse.isDeferrable()) {
+      AsyncResponse.defer(fetchRowBatchAsync(table, selectors));
+      return null;
+    }
     try {
       checkTable(table);
-      Map<String, List<Selector>> selectorBatches = new HashMap<String, List<Selector>>();
       final Map<String, List<Integer>> selectorBatchesIndexes = new HashMap<String, List<Integer>>();
-      int i = 0;
-      for (Selector selector : selectors) {
-        checkSelectorFetchSize(selector);
-        IndexManager.validSelector(selector);
-        String clientHostnamePort = getNode(table, selector);
-        List<Selector> list = selectorBatches.get(clientHostnamePort);
-        List<Integer> indexes = selectorBatchesIndexes.get(clientHostnamePort);
-        if (list == null) {
-          if (indexes != null) {
-            throw new BlurException("This should never happen,", null, ErrorType.UNKNOWN);
-          }
-          list = new ArrayList<Selector>();
-          indexes = new ArrayList<Integer>();
-          selectorBatches.put(clientHostnamePort, list);
-          selectorBatchesIndexes.put(clientHostnamePort, indexes);
-        }
-        list.add(selector);
-        indexes.add(i);
-        i++;
-      }
+      Map<String, List<Selector>> selectorBatches = getSelectorBatches(table, selectors, selectorBatchesIndexes);
 
       List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
-      final AtomicReferenceArray<FetchResult> fetchResults = new AtomicReferenceArray<FetchResult>(new FetchResult[i]);
+      final AtomicReferenceArray<FetchResult> fetchResults = new AtomicReferenceArray<FetchResult>(
+          new FetchResult[selectors.size()]);
       for (Entry<String, List<Selector>> batch : selectorBatches.entrySet()) {
         final String clientHostnamePort = batch.getKey();
         final List<Selector> list = batch.getValue();
         futures.add(_executor.submit(new Callable<Boolean>() {
           @Override
           public Boolean call() throws Exception {
-            List<FetchResult> fetchResultList = _client.execute(clientHostnamePort,
-                new BlurCommand<List<FetchResult>>() {
-                  @Override
-                  public List<FetchResult> call(Client client) throws BlurException, TException {
-                    return client.fetchRowBatch(table, list);
-                  }
-                }, _maxFetchRetries, _fetchDelay, _maxFetchDelay);
-            List<Integer> indexes = selectorBatchesIndexes.get(clientHostnamePort);
-            for (int i = 0; i < fetchResultList.size(); i++) {
-              int index = indexes.get(i);
-              fetchResults.set(index, fetchResultList.get(i));
-            }
+            fetchBatch(table, clientHostnamePort, list, selectorBatchesIndexes.get(clientHostnamePort), fetchResults);
             return Boolean.TRUE;
           }
         }));
@@ -782,20 +1169,115 @@ public class BlurControllerServer extends TableAdmin implements Iface {
           throw new BException("Unknown error during fetching of batch", e.getCause());
         }
       }
+      return toList(fetchResults);
+    } catch (Exception e) {
+      throw toFetchBatchException(e, table);
+    }
+  }
 
-      List<FetchResult> batchResult = new ArrayList<FetchResult>();
-      for (int c = 0; c < fetchResults.length(); c++) {
-        FetchResult fetchResult = fetchResults.get(c);
-        batchResult.add(fetchResult);
+  /**
+   * Asynchronous version of {@link #fetchRowBatch(String, List)}. The returned
+   * future is completed by the last shard server batch to respond.
+   */
+  public ListenableFuture<List<FetchResult>> fetchRowBatchAsync(final String table, List<Selector> selectors)
+      throws BlurException, TException {
+    try {
+      checkTable(table);
+      final Map<String, List<Integer>> selectorBatchesIndexes = new HashMap<String, List<Integer>>();
+      Map<String, List<Selector>> selectorBatches = getSelectorBatches(table, selectors, selectorBatchesIndexes);
+
+      final SettableFuture<List<FetchResult>> future = SettableFuture.create();
+      final AtomicReferenceArray<FetchResult> fetchResults = new AtomicReferenceArray<FetchResult>(
+          new FetchResult[selectors.size()]);
+      if (selectorBatches.isEmpty()) {
+        future.set(toList(fetchResults));
+        return future;
       }
-      return batchResult;
+      final AtomicInteger remaining = new AtomicInteger(selectorBatches.size());
+      for (Entry<String, List<Selector>> batch : selectorBatches.entrySet()) {
+        final String clientHostnamePort = batch.getKey();
+        final List<Selector> list = batch.getValue();
+        _executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              fetchBatch(table, clientHostnamePort, list, selectorBatchesIndexes.get(clientHostnamePort), fetchResults);
+            } catch (Exception e) {
+              future.setException(toFetchBatchException(e, table));
+              return;
+            }
+            if (remaining.decrementAndGet() == 0) {
+              future.set(toList(fetchResults));
+            }
+          }
+        });
+      }
+      return future;
     } catch (Exception e) {
-      LOG.error("Unknown error during fetch a batch of rows from table [{0}]", e, table);
-      if (e instanceof BlurException) {
-        throw (BlurException) e;
+      throw toFetchBatchException(e, table);
+    }
+  }
+
+  private Map<String, List<Selector>> getSelectorBatches(String table, List<Selector> selectors,
+      Map<String, List<Integer>> selectorBatchesIndexes) throws BlurException, TException {
+    Map<String, List<Selector>> selectorBatches = new HashMap<String, List<Selector>>();
+    int i = 0;
+    for (Selector selector : selectors) {
+      checkSelectorFetchSize(selector);
+      IndexManager.validSelector(selector);
+      String clientHostnamePort = getNode(table, selector);
+      List<Selector> list = selectorBatches.get(clientHostnamePort);
+      List<Integer> indexes = selectorBatchesIndexes.get(clientHostnamePort);
+      if (list == null) {
+        if (indexes != null) {
+          throw new BlurException("This should never happen,", null, ErrorType.UNKNOWN);
+        }
+        list = new ArrayList<Selector>();
+        indexes = new ArrayList<Integer>();
+        selectorBatches.put(clientHostnamePort, list);
+        selectorBatchesIndexes.put(clientHostnamePort, indexes);
+      }
+      list.add(selector);
+      indexes.add(i);
+      i++;
+    }
+    return selectorBatches;
+  }
+
+  private void fetchBatch(final String table, String clientHostnamePort, final List<Selector> list,
+      List<Integer> indexes, AtomicReferenceArray<FetchResult> fetchResults) throws BlurException, TException,
+      IOException {
+    List<FetchResult> fetchResultList = _client.execute(clientHostnamePort, new BlurCommand<List<FetchResult>>() {
+      @Override
+      public List<FetchResult> call(Client client) throws BlurException, TException {
+        if (_fetchPassThrough) {
+          // The rows are forwarded to the client without being deserialized.
+          return SerializedFetchResult.fetchRowBatch(client, table, list);
+        }
+        return client.fetchRowBatch(table, list);
       }
-      throw new BException("Unknown error during fetch a batch of rows from table [{0}]", e, table);
+    }, _maxFetchRetries, _fetchDelay, _maxFetchDelay);
+    for (int i = 0; i < fetchResultList.size(); i++) {
+      int index = indexes.get(i);
+      fetchResults.set(index, fetchResultList.get(i));
+    }
+  }
+
+  private static List<FetchResult> toList(AtomicReferenceArray<FetchResult> fetchResults) {
+    List<FetchResult> batchResult = new ArrayList<FetchResult>();
+    for (int c = 0; c < fetchResults.length(); c++) {
+      FetchResult fetchResult = fetchResults.get(c);
+      batchResult.add(fetchResult);
+    }
+    return batchResult;
+  }
+
+  private BlurException toFetchBatchException(Exception e, String table) {
+    LOG.error("Unknown error during fetch a batch of rows from table [{0}]", e, table);
+    if (e instanceof BlurException) {
+      return (BlurException) e;
     }
+    return new BException("Unknown error during fetch a batch of rows from table [{0}]", e, table);
   }
 
   @Override
@@ -1037,7 +1519,11 @@ public class BlurControllerServer extends TableAdmin implements Iface {
   }
 
   private <R> R scatterGather(String cluster, final BlurCommand<R> command, Merger<R> merger) throws Exception {
-    return ForkJoin.execute(_executor, _clusterStatus.getOnlineShardServers(true, cluster),
+    return scatterGather(_clusterStatus.getOnlineShardServers(true, cluster), command, merger);
+  }
+
+  private <R> R scatterGather(List<String> nodes, final BlurCommand<R> command, Merger<R> merger) throws Exception {
+    return ForkJoin.execute(_executor, nodes,
         new ParallelCall<String, R>() {
           @Override
           public R call(String hostnamePort) throws BlurException, TException, IOException {
@@ -1436,6 +1922,18 @@ public class BlurControllerServer extends TableAdmin implements Iface {
     _maxDefaultDelay = maxDefaultDelay;
   }
 
+  public void setQueryCoalescing(boolean queryCoalescing) {
+    _queryCoalescing = queryCoalescing;
+  }
+
+  public void setFetchPassThrough(boolean fetchPassThrough) {
+    _fetchPassThrough = fetchPassThrough;
+  }
+
+  public void setShardSummaryCache(ShardSummaryCache shardSummaryCache) {
+    _shardSummaryCache = shardSummaryCache;
+  }
+
   public BlurClient getClient() {
     return _client;
   }
@@ -39,6 +39,7 @@ import org.apache.blur.command.BaseCommandManager;
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
 import org.apache.blur.manager.clusterstatus.ClusterStatus;
+import org.apache.blur.manager.writer.IndexImportNotifier;
 import org.apache.blur.server.TableContext;
 import org.apache.blur.store.hdfs.HdfsDirectory;
 import org.apache.blur.thirdparty.thrift_0_9_0.TException;
@@ -773,12 +774,25 @@ public abstract class TableAdmin implements Iface {
       for (String externalPath : externalIndexPaths) {
         Path newLoadShardPath = new Path(externalPath);
         loadShard(newLoadShardPath, fileSystem, tablePath);
+        notifyImport(cluster, table, newLoadShardPath.getName());
       }
     } catch (IOException e) {
       throw new BException(e.getMessage(), e);
     }
   }
 
+  private void notifyImport(String cluster, String table, String shard) {
+    if (_zookeeper == null) {
+      return;
+    }
+    try {
+      IndexImportNotifier.notifyImport(_zookeeper, cluster, table, shard);
+    } catch (Exception e) {
+      // The shard server will still find the import on its next poll.
+      LOG.warn("Could not send import notification for table [{0}] shard [{1}].", e, table, shard);
+    }
+  }
+
   private void loadShard(Path newLoadShardPath, FileSystem fileSystem, Path tablePath) throws IOException {
     Path shardPath = new Path(tablePath, newLoadShardPath.getName());
     FileStatus[] listStatus = fileSystem.listStatus(newLoadShardPath, new PathFilter() {
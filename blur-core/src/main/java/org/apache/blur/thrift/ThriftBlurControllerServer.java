@@ -21,7 +21,10 @@ import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_BIND_ADDRESS;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_BIND_PORT;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_COMMAND_DRIVER_THREADS;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_COMMAND_WORKER_THREADS;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_FETCH_PASS_THROUGH;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_FILTERED_SERVER_CLASS;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_HOSTNAME;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_QUERY_COALESCING;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_REMOTE_FETCH_COUNT;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_RETRY_DEFAULT_DELAY;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_RETRY_FETCH_DELAY;
@@ -35,7 +38,10 @@ import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_RETRY_MUTATE_D
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_SERVER_REMOTE_THREAD_COUNT;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_SERVER_THRIFT_THREAD_COUNT;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_SHARD_CONNECTION_TIMEOUT;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_SHARD_PRUNING;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_SHARD_PRUNING_SYNC_TIMEOUT;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD;
+import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_THRIFT_ASYNC_PROCESSOR;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_THRIFT_MAX_READ_BUFFER_BYTES;
 import static org.apache.blur.utils.BlurConstants.BLUR_CONTROLLER_THRIFT_SELECTOR_THREADS;
 import static org.apache.blur.utils.BlurConstants.BLUR_GC_BACK_PRESSURE_HEAP_RATIO;
@@ -62,6 +68,7 @@ import org.apache.blur.manager.BlurQueryChecker;
 import org.apache.blur.manager.clusterstatus.ZookeeperClusterStatus;
 import org.apache.blur.manager.indexserver.BlurServerShutDown;
 import org.apache.blur.manager.indexserver.BlurServerShutDown.BlurShutdown;
+import org.apache.blur.manager.summary.ShardSummaryCache;
 import org.apache.blur.metrics.ReporterSetup;
 import org.apache.blur.server.ControllerServerEventHandler;
 import org.apache.blur.server.ServerSecurityFilter;
@@ -176,6 +183,17 @@ public class ThriftBlurControllerServer extends ThriftServer {
     controllerServer.setMaxFetchDelay(configuration.getInt(BLUR_CONTROLLER_RETRY_MAX_FETCH_DELAY, 2000));
     controllerServer.setMaxMutateDelay(configuration.getInt(BLUR_CONTROLLER_RETRY_MAX_MUTATE_DELAY, 2000));
     controllerServer.setMaxDefaultDelay(configuration.getInt(BLUR_CONTROLLER_RETRY_MAX_DEFAULT_DELAY, 2000));
+    controllerServer.setQueryCoalescing(configuration.getBoolean(BLUR_CONTROLLER_QUERY_COALESCING, false));
+    // A filtered server may read the fetched rows, which are left serialized in
+    // pass through mode.
+    String filteredServerClass = configuration.get(BLUR_CONTROLLER_FILTERED_SERVER_CLASS);
+    boolean filtered = filteredServerClass != null && !filteredServerClass.isEmpty();
+    controllerServer.setFetchPassThrough(!filtered
+        && configuration.getBoolean(BLUR_CONTROLLER_FETCH_PASS_THROUGH, true));
+    if (configuration.getBoolean(BLUR_CONTROLLER_SHARD_PRUNING, true)) {
+      controllerServer.setShardSummaryCache(new ShardSummaryCache(zooKeeper, configuration.getLong(
+          BLUR_CONTROLLER_SHARD_PRUNING_SYNC_TIMEOUT, 1000)));
+    }
     controllerServer
         .setMaxRecordsPerRowFetchRequest(configuration.getInt(BLUR_MAX_RECORDS_PER_ROW_FETCH_REQUEST, 1000));
     controllerServer.setConfiguration(configuration);
@@ -208,6 +226,7 @@ public class ThriftBlurControllerServer extends ThriftServer {
     server.setAcceptQueueSizePerThread(configuration.getInt(BLUR_CONTROLLER_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD, 4));
     server.setMaxReadBufferBytes(configuration.getLong(BLUR_CONTROLLER_THRIFT_MAX_READ_BUFFER_BYTES, Long.MAX_VALUE));
     server.setSelectorThreads(configuration.getInt(BLUR_CONTROLLER_THRIFT_SELECTOR_THREADS, 2));
+    server.setAsyncProcessor(configuration.getBoolean(BLUR_CONTROLLER_THRIFT_ASYNC_PROCESSOR, false));
     server.setMaxFrameSize(configuration.getInt(BLUR_THRIFT_MAX_FRAME_SIZE, BLUR_THRIFT_DEFAULT_MAX_FRAME_SIZE));
     server.setConfiguration(configuration);
 
@@ -16,6 +16,9 @@ package org.apache.blur.thrift;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.SLOW_QUERIES;
 import static org.apache.blur.utils.BlurConstants.BLUR_CLUSTER;
 import static org.apache.blur.utils.BlurConstants.BLUR_CLUSTER_NAME;
 import static org.apache.blur.utils.BlurConstants.BLUR_COMMAND_LIB_PATH;
@@ -42,15 +45,28 @@ import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_FILTER_CACHE_CLASS;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_HOSTNAME;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_MAX_IDLE_TIME;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INTERNAL_SEARCH_THREAD_COUNT;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_INDEX_IMPORTER_THREAD_COUNT;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_MERGE_RATE_LIMIT_BUSY;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_MERGE_RATE_LIMIT_IDLE;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_MERGE_THREAD_COUNT;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_OPENER_NAMESPACE_THREAD_COUNT;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_OPENER_THREAD_COUNT;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_QUERY_ADMISSION_TIMEOUT;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_QUERY_MEMORY_BUDGET_HEAP_RATIO;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_REQUEST_CACHE_SIZE;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_PARSED_QUERY_CACHE_SIZE;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SLOW_QUERY_LOG_SIZE;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_ROW_CACHE_SIZE;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SEGMENT_RESULT_CACHE_SIZE;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SAFEMODEDELAY;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SERVER_MINIMUM_BEFORE_SAFEMODE_EXIT;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SERVER_THRIFT_THREAD_COUNT;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SMALL_MERGE_THRESHOLD;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_SUMMARY_PUBLISH_INTERVAL;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_THRIFT_MAX_READ_BUFFER_BYTES;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFERS;
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFER_SIZE;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_THRIFT_SELECTOR_THREADS;
 import static org.apache.blur.utils.BlurConstants.BLUR_STREAM_SERVER_RUNNING_PORT;
 import static org.apache.blur.utils.BlurConstants.BLUR_STREAM_SERVER_THREADS;
@@ -77,10 +93,12 @@ import org.apache.blur.gui.HttpJettyServer;
 import org.apache.blur.log.Log;
 import org.apache.blur.log.LogFactory;
 import org.apache.blur.lucene.search.DeepPagingCache;
+import org.apache.blur.lucene.search.SegmentResultCache;
 import org.apache.blur.manager.BlurFilterCache;
 import org.apache.blur.manager.BlurQueryChecker;
 import org.apache.blur.manager.DefaultBlurFilterCache;
 import org.apache.blur.manager.IndexManager;
+import org.apache.blur.manager.ParsedQueryCache;
 import org.apache.blur.manager.clusterstatus.ClusterStatus.Action;
 import org.apache.blur.manager.clusterstatus.ZookeeperClusterStatus;
 import org.apache.blur.manager.indexserver.BlurServerShutDown;
@@ -89,6 +107,8 @@ import org.apache.blur.manager.indexserver.DistributedIndexServer;
 import org.apache.blur.manager.indexserver.DistributedLayoutFactory;
 import org.apache.blur.manager.indexserver.DistributedLayoutFactoryImpl;
 import org.apache.blur.manager.status.QueryStatusManager;
+import org.apache.blur.manager.status.SlowQueryLog;
+import org.apache.blur.manager.writer.SharedMergeScheduler.QueryLoad;
 import org.apache.blur.memory.MemoryAllocationWatcher;
 import org.apache.blur.memory.Watcher;
 import org.apache.blur.metrics.JSONReporter;
@@ -98,6 +118,7 @@ import org.apache.blur.server.ServerSecurityFilterFactory;
 import org.apache.blur.server.ServerSecurityUtil;
 import org.apache.blur.server.ShardServerEventHandler;
 import org.apache.blur.server.TableContext;
+import org.apache.blur.server.cache.RowCache;
 import org.apache.blur.server.cache.ThriftCache;
 import org.apache.blur.server.cache.ThriftCacheServer;
 import org.apache.blur.store.BlockCacheDirectoryFactory;
@@ -110,11 +131,13 @@ import org.apache.blur.thirdparty.thrift_0_9_0.server.TServlet;
 import org.apache.blur.thirdparty.thrift_0_9_0.transport.TServerTransport;
 import org.apache.blur.thrift.generated.Blur;
 import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.Metric;
 import org.apache.blur.trace.Trace;
 import org.apache.blur.trace.TraceStorage;
 import org.apache.blur.utils.BlurUtil;
 import org.apache.blur.utils.GCWatcher;
 import org.apache.blur.utils.MemoryReporter;
+import org.apache.blur.utils.MemoryReporter.MetricSource;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.zookeeper.ZooKeeper;
@@ -123,6 +146,8 @@ import org.eclipse.jetty.webapp.WebAppContext;
 
 import sun.misc.VM;
 
+import com.yammer.metrics.core.MetricName;
+
 public class ThriftBlurShardServer extends ThriftServer {
 
   private static final Log LOG = LogFactory.getLog(ThriftBlurShardServer.class);
@@ -210,10 +235,21 @@ public class ThriftBlurShardServer extends ThriftServer {
 
     long requestCacheSize = configuration.getLong(BLUR_SHARD_REQUEST_CACHE_SIZE, 10000000);
     final ThriftCache thriftCache = new ThriftCache(requestCacheSize);
+    long rowCacheSize = configuration.getLong(BLUR_SHARD_ROW_CACHE_SIZE, 0);
+    final RowCache rowCache;
+    if (rowCacheSize > 0) {
+      rowCache = new RowCache(rowCacheSize);
+    } else {
+      rowCache = null;
+    }
+    final ParsedQueryCache parsedQueryCache = new ParsedQueryCache(configuration.getInt(
+        BLUR_SHARD_PARSED_QUERY_CACHE_SIZE, 10000));
 
     long safeModeDelay = configuration.getLong(BLUR_SHARD_SAFEMODEDELAY, 60000);
     int shardOpenerThreadCount = configuration.getInt(BLUR_SHARD_OPENER_THREAD_COUNT, 16);
+    int shardOpenerNamespaceThreadCount = configuration.getInt(BLUR_SHARD_OPENER_NAMESPACE_THREAD_COUNT, 0);
     int maxMergeThreads = configuration.getInt(BLUR_SHARD_MERGE_THREAD_COUNT, 3);
+    int indexImporterThreadCount = configuration.getInt(BLUR_SHARD_INDEX_IMPORTER_THREAD_COUNT, 4);
     int minimumNumberOfNodesBeforeExitingSafeMode = configuration.getInt(
         BLUR_SHARD_SERVER_MINIMUM_BEFORE_SAFEMODE_EXIT, 0);
     int internalSearchThreads = configuration.getInt(BLUR_SHARD_INTERNAL_SEARCH_THREAD_COUNT, 16);
@@ -223,12 +259,14 @@ public class ThriftBlurShardServer extends ThriftServer {
     final Timer indexIdleWriterTimer = new Timer("BlurIdleWriter", true);
     long smallMergeThreshold = configuration.getLong(BLUR_SHARD_SMALL_MERGE_THRESHOLD, 128 * 1000 * 1000);
     long maxWriterIdle = configuration.getLong(BLUR_SHARD_INDEX_MAX_IDLE_TIME, 30000);
+    long shardSummaryPublishInterval = configuration.getLong(BLUR_SHARD_SUMMARY_PUBLISH_INTERVAL, 60000);
     SequentialReadControl sequentialReadControl = new SequentialReadControl(configuration);
     final DistributedIndexServer indexServer = new DistributedIndexServer(config, zooKeeper, clusterStatus,
         filterCache, blockCacheDirectoryFactory, distributedLayoutFactory, cluster, nodeName, safeModeDelay,
         shardOpenerThreadCount, maxMergeThreads, internalSearchThreads, minimumNumberOfNodesBeforeExitingSafeMode,
         hdfsKeyValueTimer, indexImporterTimer, smallMergeThreshold, indexBulkTimer, thriftCache, sequentialReadControl,
-        indexIdleWriterTimer, maxWriterIdle);
+        indexIdleWriterTimer, maxWriterIdle, indexImporterThreadCount, rowCache, shardOpenerNamespaceThreadCount,
+        shardSummaryPublishInterval);
 
     BooleanQuery.setMaxClauseCount(configuration.getInt(BLUR_MAX_CLAUSE_COUNT, 1024));
 
@@ -245,6 +283,11 @@ public class ThriftBlurShardServer extends ThriftServer {
     long statusCleanupTimerDelay = TimeUnit.SECONDS.toMillis(10);
     int cacheSize = configuration.getInt(BLUR_SHARD_DEEP_PAGING_CACHE_SIZE, 1000);
     DeepPagingCache deepPagingCache = new DeepPagingCache(cacheSize);
+    long segmentResultCacheSize = configuration.getLong(BLUR_SHARD_SEGMENT_RESULT_CACHE_SIZE, 1000000);
+    SegmentResultCache segmentResultCache = null;
+    if (segmentResultCacheSize > 0) {
+      segmentResultCache = new SegmentResultCache(segmentResultCacheSize);
+    }
 
     MemoryAllocationWatcher memoryAllocationWatcher = new MemoryAllocationWatcher() {
       @Override
@@ -253,11 +296,32 @@ public class ThriftBlurShardServer extends ThriftServer {
       }
     };
 
-    QueryStatusManager statusManager = new QueryStatusManager(statusCleanupTimerDelay);
+    double memoryBudgetRatio = configuration.getDouble(BLUR_SHARD_QUERY_MEMORY_BUDGET_HEAP_RATIO, 0.0);
+    long memoryBudget = (long) (Runtime.getRuntime().maxMemory() * memoryBudgetRatio);
+    long admissionTimeout = configuration.getLong(BLUR_SHARD_QUERY_ADMISSION_TIMEOUT, 10000);
+    final QueryStatusManager statusManager = new QueryStatusManager(statusCleanupTimerDelay, memoryBudget,
+        admissionTimeout);
+
+    long mergeRateLimitIdle = configuration.getLong(BLUR_SHARD_MERGE_RATE_LIMIT_IDLE, 0L);
+    long mergeRateLimitBusy = configuration.getLong(BLUR_SHARD_MERGE_RATE_LIMIT_BUSY, 0L);
+    indexServer.getMergeScheduler().setRateLimits(mergeRateLimitIdle, mergeRateLimitBusy, new QueryLoad() {
+      @Override
+      public int getRunningQueryCount() {
+        return statusManager.getRunningQueryCount();
+      }
+    });
+
+    final SlowQueryLog slowQueryLog = new SlowQueryLog(configuration.getInt(BLUR_SHARD_SLOW_QUERY_LOG_SIZE, 50));
+    MemoryReporter.addMetricSource(new MetricName(ORG_APACHE_BLUR, BLUR, SLOW_QUERIES), new MetricSource() {
+      @Override
+      public Metric getMetric(String name) {
+        return slowQueryLog.toMetric(name);
+      }
+    });
 
     final IndexManager indexManager = new IndexManager(indexServer, clusterStatus, filterCache, maxHeapPerRowFetch,
-        fetchCount, indexManagerThreadCount, mutateThreadCount, facetThreadCount, deepPagingCache,
-        memoryAllocationWatcher, statusManager);
+        fetchCount, indexManagerThreadCount, mutateThreadCount, facetThreadCount, deepPagingCache, segmentResultCache,
+        rowCache, memoryAllocationWatcher, statusManager, slowQueryLog, parsedQueryCache);
 
     File tmpPath = getTmpPath(configuration);
     int numberOfShardWorkerCommandThreads = configuration.getInt(BLUR_SHARD_COMMAND_WORKER_THREADS, 16);
@@ -276,6 +340,11 @@ public class ThriftBlurShardServer extends ThriftServer {
       @Override
       public void action() {
         thriftCache.clear();
+        if (rowCache != null) {
+          rowCache.clear();
+        }
+        parsedQueryCache.clear();
+        indexManager.removeLatencyMetricsOfClosedTables();
       }
     });
 
@@ -355,6 +424,9 @@ public class ThriftBlurShardServer extends ThriftServer {
     server.setAcceptQueueSizePerThread(configuration.getInt(BLUR_SHARD_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD, 4));
     server.setMaxReadBufferBytes(configuration.getLong(BLUR_SHARD_THRIFT_MAX_READ_BUFFER_BYTES, Long.MAX_VALUE));
     server.setSelectorThreads(configuration.getInt(BLUR_SHARD_THRIFT_SELECTOR_THREADS, 2));
+    server.setMaxPooledResponseBuffers(configuration.getInt(BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFERS, 64));
+    server.setMaxPooledResponseBufferSize(configuration.getInt(BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFER_SIZE,
+        1024 * 1024));
     server.setMaxFrameSize(configuration.getInt(BLUR_THRIFT_MAX_FRAME_SIZE, BLUR_THRIFT_DEFAULT_MAX_FRAME_SIZE));
     server.setConfiguration(configuration);
 
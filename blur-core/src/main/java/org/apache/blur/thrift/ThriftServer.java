@@ -26,6 +26,10 @@ import static org.apache.blur.utils.BlurConstants.BLUR_HDFS_TRACE_PATH;
 import static org.apache.blur.utils.BlurConstants.BLUR_HOME;
 import static org.apache.blur.utils.BlurConstants.BLUR_SERVER_SECURITY_FILTER_CLASS;
 import static org.apache.blur.utils.BlurConstants.BLUR_TMP_PATH;
+import static org.apache.blur.utils.BlurConstants.BLUR_TRACE_PHASE_METRICS;
+import static org.apache.blur.utils.BlurConstants.BLUR_TRACE_SAMPLE_BUFFER_SIZE;
+import static org.apache.blur.utils.BlurConstants.BLUR_TRACE_SAMPLE_RATE;
+import static org.apache.blur.utils.BlurConstants.BLUR_TRACE_SLOW_THRESHOLD;
 import static org.apache.blur.utils.BlurConstants.BLUR_ZOOKEEPER_CONNECTION;
 import static org.apache.blur.utils.BlurConstants.BLUR_ZOOKEEPER_TIMEOUT;
 import static org.apache.blur.utils.BlurConstants.BLUR_ZOOKEEPER_TIMEOUT_DEFAULT;
@@ -44,12 +48,16 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.blur.BlurConfiguration;
 import org.apache.blur.concurrent.Executors;
@@ -58,6 +66,7 @@ import org.apache.blur.log.LogFactory;
 import org.apache.blur.manager.indexserver.BlurServerShutDown.BlurShutdown;
 import org.apache.blur.server.ServerSecurityFilter;
 import org.apache.blur.server.ServerSecurityFilterFactory;
+import org.apache.blur.thirdparty.thrift_0_9_0.TProcessor;
 import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TBinaryProtocol;
 import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TCompactProtocol;
 import org.apache.blur.thirdparty.thrift_0_9_0.server.TServer;
@@ -77,6 +86,9 @@ import org.apache.blur.thrift.sasl.TSaslServerTransport;
 import org.apache.blur.thrift.server.TThreadedSelectorServer;
 import org.apache.blur.thrift.server.TThreadedSelectorServer.Args.AcceptPolicy;
 import org.apache.blur.trace.LogTraceStorage;
+import org.apache.blur.trace.SampledTraceStorage;
+import org.apache.blur.trace.Trace;
+import org.apache.blur.trace.TraceSampler;
 import org.apache.blur.trace.TraceStorage;
 import org.apache.blur.trace.hdfs.HdfsTraceStorage;
 import org.apache.blur.utils.BlurUtil;
@@ -92,6 +104,7 @@ import com.yammer.metrics.core.MetricName;
 public class ThriftServer {
 
   private static final Log LOG = LogFactory.getLog(ThriftServer.class);
+  private static final Set<String> ASYNC_METHODS = new HashSet<String>(Arrays.asList("query", "fetchRowBatch"));
 
   private String _nodeName;
   private Iface _iface;
@@ -108,7 +121,10 @@ public class ThriftServer {
   private long _maxReadBufferBytes = Long.MAX_VALUE;
   private int _selectorThreads = 2;
   private int _maxFrameSize = 16384000;
+  private int _maxPooledResponseBuffers = 64;
+  private int _maxPooledResponseBufferSize = 1024 * 1024;
   private BlurConfiguration _configuration;
+  private boolean _asyncProcessor;
 
   public int getMaxFrameSize() {
     return _maxFrameSize;
@@ -186,14 +202,27 @@ public class ThriftServer {
   }
 
   public static TraceStorage setupTraceStorage(BlurConfiguration configuration, Configuration conf) throws IOException {
+    TraceStorage storage;
     String hdfsPath = configuration.get(BLUR_HDFS_TRACE_PATH);
     if (hdfsPath != null) {
       HdfsTraceStorage hdfsTraceStorage = new HdfsTraceStorage(configuration);
       hdfsTraceStorage.init(conf);
-      return hdfsTraceStorage;
+      storage = hdfsTraceStorage;
     } else {
-      return new LogTraceStorage(configuration);
+      storage = new LogTraceStorage(configuration);
     }
+    Trace.setPhaseMetrics(configuration.getBoolean(BLUR_TRACE_PHASE_METRICS, true));
+    double sampleRate = configuration.getDouble(BLUR_TRACE_SAMPLE_RATE, 0.001);
+    long slowThreshold = configuration.getLong(BLUR_TRACE_SLOW_THRESHOLD, 10000);
+    int bufferSize = configuration.getInt(BLUR_TRACE_SAMPLE_BUFFER_SIZE, 100);
+    TraceSampler sampler = new TraceSampler(sampleRate, slowThreshold, TimeUnit.MILLISECONDS, bufferSize);
+    if (!sampler.isEnabled()) {
+      return storage;
+    }
+    LOG.info("Sampling traces with rate [{0}] and slow threshold [{1} ms] into a buffer of [{2}] traces.",
+        sampleRate, slowThreshold, bufferSize);
+    Trace.setSampler(sampler);
+    return new SampledTraceStorage(configuration, storage, sampler);
   }
 
   public static void printUlimits() throws IOException {
@@ -301,7 +330,12 @@ public class ThriftServer {
   }
 
   public void start() throws TTransportException, IOException {
-    Blur.Processor<Blur.Iface> processor = new Blur.Processor<Blur.Iface>(_iface);
+    TProcessor processor;
+    if (_asyncProcessor) {
+      processor = new BlurAsyncProcessor(_iface, ASYNC_METHODS);
+    } else {
+      processor = new Blur.Processor<Blur.Iface>(_iface);
+    }
     if (SaslHelper.isSaslEnabled(_configuration)) {
       _executorService = Executors.newThreadPool("thrift-processors", _threadCount, false);
       TSaslServerTransport.Factory saslTransportFactory = SaslHelper.getTSaslServerTransportFactory(_configuration);
@@ -323,6 +357,8 @@ public class ThriftServer {
       args.protocolFactory(new TBinaryProtocol.Factory(true, true));
       args.selectorThreads = _selectorThreads;
       args.maxReadBufferBytes = _maxReadBufferBytes;
+      args.maxPooledResponseBuffers = _maxPooledResponseBuffers;
+      args.maxPooledResponseBufferSize = _maxPooledResponseBufferSize;
       args.acceptQueueSizePerThread(_acceptQueueSizePerThread);
       args.acceptPolicy(AcceptPolicy.FAIR_ACCEPT);
 
@@ -389,6 +425,10 @@ public class ThriftServer {
     _threadCount = threadCount;
   }
 
+  public void setAsyncProcessor(boolean asyncProcessor) {
+    _asyncProcessor = asyncProcessor;
+  }
+
   public BlurShutdown getShutdown() {
     return _shutdown;
   }
@@ -421,6 +461,22 @@ public class ThriftServer {
     _maxReadBufferBytes = maxReadBufferBytes;
   }
 
+  public int getMaxPooledResponseBuffers() {
+    return _maxPooledResponseBuffers;
+  }
+
+  public void setMaxPooledResponseBuffers(int maxPooledResponseBuffers) {
+    _maxPooledResponseBuffers = maxPooledResponseBuffers;
+  }
+
+  public int getMaxPooledResponseBufferSize() {
+    return _maxPooledResponseBufferSize;
+  }
+
+  public void setMaxPooledResponseBufferSize(int maxPooledResponseBufferSize) {
+    _maxPooledResponseBufferSize = maxPooledResponseBufferSize;
+  }
+
   public int getSelectorThreads() {
     return _selectorThreads;
   }
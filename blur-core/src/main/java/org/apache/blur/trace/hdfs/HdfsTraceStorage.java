@@ -16,15 +16,20 @@
  */
 package org.apache.blur.trace.hdfs;
 
+import static org.apache.blur.metrics.MetricsConstants.DROPPED_TRACES;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.TRACE;
 import static org.apache.blur.utils.BlurConstants.BLUR_HDFS_TRACE_PATH;
+import static org.apache.blur.utils.BlurConstants.BLUR_HDFS_TRACE_QUEUE_SIZE;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.blur.BlurConfiguration;
 import org.apache.blur.log.Log;
@@ -42,17 +47,25 @@ import org.apache.hadoop.fs.Path;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
 public class HdfsTraceStorage extends TraceStorage {
 
   private final static Log LOG = LogFactory.getLog(HdfsTraceStorage.class);
 
   private Path _storePath;
-  private BlockingQueue<TraceCollector> _queue = new LinkedBlockingQueue<TraceCollector>();
+  private final BlockingQueue<TraceCollector> _queue;
+  private final Meter _droppedTraces;
   private Thread _daemon;
   private FileSystem _fileSystem;
 
   public HdfsTraceStorage(BlurConfiguration configuration) throws IOException {
     super(configuration);
+    _queue = new ArrayBlockingQueue<TraceCollector>(configuration.getInt(BLUR_HDFS_TRACE_QUEUE_SIZE, 1000));
+    _droppedTraces = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, TRACE, DROPPED_TRACES), DROPPED_TRACES,
+        TimeUnit.SECONDS);
   }
 
   public void init(Configuration conf) throws IOException {
@@ -85,10 +98,10 @@ public class HdfsTraceStorage extends TraceStorage {
 
   @Override
   public void store(TraceCollector collector) {
-    try {
-      _queue.put(collector);
-    } catch (InterruptedException e) {
-      LOG.error("Unknown error while trying to add collector on queue", e);
+    if (!_queue.offer(collector)) {
+      // Never block the request that is being traced.
+      _droppedTraces.mark();
+      LOG.debug("Trace queue is full, dropping trace [{0}].", collector.getId().getRootId());
     }
   }
 
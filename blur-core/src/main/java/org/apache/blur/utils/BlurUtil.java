@@ -439,6 +439,7 @@ public class BlurUtil {
       BlurUtil.createIfMissing(zookeeper, ZookeeperPathConstants.getSafemodePath(cluster));
       BlurUtil.createIfMissing(zookeeper, ZookeeperPathConstants.getOnlineShardsPath(cluster));
       BlurUtil.createIfMissing(zookeeper, ZookeeperPathConstants.getTablesPath(cluster));
+      BlurUtil.createIfMissing(zookeeper, ZookeeperPathConstants.getImportPath(cluster));
     }
   }
 
@@ -847,10 +848,23 @@ public class BlurUtil {
    * 
    * @throws IOException
    */
-  @SuppressWarnings("unchecked")
   public static List<Document> fetchDocuments(IndexReader reader, ResetableDocumentStoredFieldVisitor fieldSelector,
       Selector selector, int maxHeap, String context, Term primeDocTerm, Filter filter, AtomicBoolean moreToFetch,
       AtomicInteger totalRecords, BlurHighlighter highlighter) throws IOException {
+    return fetchDocuments(reader, fieldSelector, selector, maxHeap, context, primeDocTerm, filter, moreToFetch,
+        totalRecords, highlighter, null);
+  }
+
+  /**
+   * Same as
+   * {@link #fetchDocuments(IndexReader, ResetableDocumentStoredFieldVisitor, Selector, int, String, Term, Filter, AtomicBoolean, AtomicInteger, BlurHighlighter)}
+   * but also adds the size of every document that is read to the heap usage
+   * counter, if one is given.
+   */
+  @SuppressWarnings("unchecked")
+  public static List<Document> fetchDocuments(IndexReader reader, ResetableDocumentStoredFieldVisitor fieldSelector,
+      Selector selector, int maxHeap, String context, Term primeDocTerm, Filter filter, AtomicBoolean moreToFetch,
+      AtomicInteger totalRecords, BlurHighlighter highlighter, MemoryUsageCounter heapUsage) throws IOException {
     if (highlighter == null) {
       highlighter = new BlurHighlighter();
     }
@@ -914,6 +928,9 @@ public class BlurUtil {
                 docs.add(document);
               }
               totalHeap += fieldSelector.getSize();
+              if (heapUsage != null) {
+                heapUsage.add(fieldSelector.getSize());
+              }
               fieldSelector.reset();
             }
           }
@@ -1205,6 +1222,8 @@ public class BlurUtil {
         String rootTraceId = context.getTraceRootId();
         if (rootTraceId != null) {
           Trace.setupTrace(rootTraceId, context.getTraceRequestId());
+        } else {
+          Trace.setupSampledTrace(method.getName());
         }
         try {
           return method.invoke(iface, args);
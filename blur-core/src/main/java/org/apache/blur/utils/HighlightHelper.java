@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 
 import org.apache.blur.analysis.FieldManager;
+import org.apache.blur.analysis.FieldTypeDefinition;
 import org.apache.blur.lucene.search.SuperQuery;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -62,7 +63,9 @@ public class HighlightHelper {
   };
 
   /**
-   * NOTE: This method will not preserve the correct field types.
+   * NOTE: This method will not preserve the correct field types. Fields that
+   * have offsets indexed in the postings are highlighted with the
+   * {@link OffsetsHighlighter}, all others are re-analyzed.
    * 
    * @param preTag
    * @param postTag
@@ -77,6 +80,7 @@ public class HighlightHelper {
     Analyzer analyzer = fieldManager.getAnalyzerForQuery();
 
     SimpleHTMLFormatter htmlFormatter = new SimpleHTMLFormatter(preTag, postTag);
+    OffsetsHighlighter offsetsHighlighter = null;
     Document result = new Document();
     for (IndexableField f : document) {
       String name = f.name();
@@ -100,6 +104,19 @@ public class HighlightHelper {
           result.add(new StringField(name, numberHighlight, Store.YES));
         }
       } else {
+        String[] fragments = null;
+        if (isOffsetsInPostings(fieldManager, name)) {
+          if (offsetsHighlighter == null) {
+            offsetsHighlighter = new OffsetsHighlighter(reader, docId, preTag, postTag);
+          }
+          fragments = offsetsHighlighter.highlight(name, fieldFixedQuery, text);
+        }
+        if (fragments != null) {
+          for (String fragment : fragments) {
+            result.add(new StringField(name, fragment, Store.YES));
+          }
+          continue;
+        }
         Highlighter highlighter = new Highlighter(htmlFormatter, new QueryScorer(fieldFixedQuery, name));
         TokenStream tokenStream = TokenSources.getAnyTokenStream(reader, docId, name, analyzer);
         TextFragment[] frag = highlighter.getBestTextFragments(tokenStream, text, false, 10);
@@ -113,6 +130,11 @@ public class HighlightHelper {
     return result;
   }
 
+  private static boolean isOffsetsInPostings(FieldManager fieldManager, String name) throws IOException {
+    FieldTypeDefinition fieldTypeDefinition = fieldManager.getFieldTypeDefinition(name);
+    return fieldTypeDefinition != null && fieldTypeDefinition.isOffsetsInPostings();
+  }
+
   private static Query fixSuperQuery(Query query, String name, String fieldLessFieldName) {
     if (query instanceof BooleanQuery) {
       BooleanQuery bq = (BooleanQuery) query;
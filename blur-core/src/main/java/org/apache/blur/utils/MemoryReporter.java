@@ -45,9 +45,32 @@ public class MemoryReporter extends AbstractPollingReporter implements
   private static final Log LOG = LogFactory.getLog(MemoryReporter.class);
 
   private static ConcurrentMap<String, org.apache.blur.thrift.generated.Metric> _metrics = new ConcurrentHashMap<String, org.apache.blur.thrift.generated.Metric>();
+  private static ConcurrentMap<String, MetricSource> _sources = new ConcurrentHashMap<String, MetricSource>();
+
+  /**
+   * Provides a metric that can not be expressed as a yammer metric, the metric
+   * is created when the metrics are requested.
+   */
+  public interface MetricSource {
+    org.apache.blur.thrift.generated.Metric getMetric(String name);
+  }
 
   public static Map<String, org.apache.blur.thrift.generated.Metric> getMetrics() {
-    return new HashMap<String, org.apache.blur.thrift.generated.Metric>(_metrics);
+    Map<String, org.apache.blur.thrift.generated.Metric> metrics = new HashMap<String, org.apache.blur.thrift.generated.Metric>(
+        _metrics);
+    for (Entry<String, MetricSource> entry : _sources.entrySet()) {
+      String name = entry.getKey();
+      try {
+        metrics.put(name, entry.getValue().getMetric(name));
+      } catch (Exception e) {
+        LOG.error("Unknown error while getting metric [{0}].", e, name);
+      }
+    }
+    return metrics;
+  }
+
+  public static void addMetricSource(MetricName name, MetricSource source) {
+    _sources.put(name.toString(), source);
   }
 
   public static void enable() {
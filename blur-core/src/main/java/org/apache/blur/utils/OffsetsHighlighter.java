@@ -0,0 +1,297 @@
+package org.apache.blur.utils;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.blur.lucene.search.AbstractWrapperQuery;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Highlights stored text using the offsets that were indexed in the postings
+ * (see {@link org.apache.blur.analysis.FieldTypeDefinition#OFFSETS_IN_POSTINGS}
+ * ) instead of re-analyzing the text. The passages are built in the same shape
+ * as the analysis based highlighter produces them, up to
+ * {@link #MAX_NUM_FRAGMENTS} fragments of roughly {@link #FRAGMENT_SIZE}
+ * characters ordered by the number of distinct query terms they contain.
+ * 
+ * An instance is bound to a single document and is not thread safe.
+ */
+public class OffsetsHighlighter {
+
+  public static final int FRAGMENT_SIZE = 100;
+  public static final int MAX_NUM_FRAGMENTS = 10;
+
+  private static final int MAX_TERM_EXPANSIONS = 1024;
+  // Matches the default offset gap of the Lucene Analyzer between the values
+  // of a multi valued field.
+  private static final int OFFSET_GAP = 1;
+
+  private final IndexReader _reader;
+  private final int _docId;
+  private final String _preTag;
+  private final String _postTag;
+  private final Map<String, List<Match>> _matches = new HashMap<String, List<Match>>();
+  private final Map<String, Integer> _nextValueOffset = new HashMap<String, Integer>();
+
+  public OffsetsHighlighter(IndexReader reader, int docId, String preTag, String postTag) {
+    _reader = reader;
+    _docId = docId;
+    _preTag = preTag;
+    _postTag = postTag;
+  }
+
+  /**
+   * Highlights the next value of the given field, values of multi valued
+   * fields have to be passed in the order they were indexed.
+   * 
+   * @return the highlighted fragments or null if the field does not have
+   *         offsets indexed in the postings.
+   */
+  public String[] highlight(String field, Query query, String text) throws IOException {
+    List<Match> matches = getMatches(field, query);
+    if (matches == null) {
+      return null;
+    }
+    Integer valueOffset = _nextValueOffset.get(field);
+    int base = valueOffset == null ? 0 : valueOffset;
+    _nextValueOffset.put(field, base + text.length() + OFFSET_GAP);
+    List<Passage> passages = getPassages(text, getMatches(matches, base, text.length()));
+    String[] fragments = new String[passages.size()];
+    for (int i = 0; i < fragments.length; i++) {
+      fragments[i] = toString(text, passages.get(i));
+    }
+    return fragments;
+  }
+
+  private List<Match> getMatches(String field, Query query) throws IOException {
+    if (_matches.containsKey(field)) {
+      return _matches.get(field);
+    }
+    List<Match> matches = readMatches(field, query);
+    _matches.put(field, matches);
+    return matches;
+  }
+
+  private List<Match> readMatches(String field, Query query) throws IOException {
+    Terms terms = MultiFields.getTerms(_reader, field);
+    if (terms == null || !terms.hasOffsets()) {
+      return null;
+    }
+    Set<BytesRef> queryTerms = new LinkedHashSet<BytesRef>();
+    extractTerms(query, field, queryTerms);
+    List<Match> matches = new ArrayList<Match>();
+    TermsEnum termsEnum = terms.iterator(null);
+    DocsAndPositionsEnum docsAndPositionsEnum = null;
+    int termIndex = 0;
+    for (BytesRef term : queryTerms) {
+      if (!termsEnum.seekExact(term, true)) {
+        continue;
+      }
+      docsAndPositionsEnum = termsEnum.docsAndPositions(null, docsAndPositionsEnum,
+          DocsAndPositionsEnum.FLAG_OFFSETS);
+      if (docsAndPositionsEnum == null || docsAndPositionsEnum.advance(_docId) != _docId) {
+        continue;
+      }
+      int freq = docsAndPositionsEnum.freq();
+      for (int i = 0; i < freq; i++) {
+        docsAndPositionsEnum.nextPosition();
+        int startOffset = docsAndPositionsEnum.startOffset();
+        if (startOffset >= 0) {
+          matches.add(new Match(startOffset, docsAndPositionsEnum.endOffset(), termIndex));
+        }
+      }
+      termIndex++;
+    }
+    Collections.sort(matches, new Comparator<Match>() {
+      @Override
+      public int compare(Match o1, Match o2) {
+        return o1._start - o2._start;
+      }
+    });
+    return matches;
+  }
+
+  private void extractTerms(Query query, String field, Set<BytesRef> terms) throws IOException {
+    if (query instanceof BooleanQuery) {
+      for (BooleanClause booleanClause : (BooleanQuery) query) {
+        if (!booleanClause.isProhibited()) {
+          extractTerms(booleanClause.getQuery(), field, terms);
+        }
+      }
+    } else if (query instanceof AbstractWrapperQuery) {
+      extractTerms(((AbstractWrapperQuery) query).getQuery(), field, terms);
+    } else if (query instanceof TermQuery) {
+      addTerm(((TermQuery) query).getTerm(), field, terms);
+    } else if (query instanceof PhraseQuery) {
+      for (Term term : ((PhraseQuery) query).getTerms()) {
+        addTerm(term, field, terms);
+      }
+    } else if (query instanceof MultiPhraseQuery) {
+      for (Term[] termArray : ((MultiPhraseQuery) query).getTermArrays()) {
+        for (Term term : termArray) {
+          addTerm(term, field, terms);
+        }
+      }
+    } else if (query instanceof MultiTermQuery) {
+      MultiTermQuery multiTermQuery = (MultiTermQuery) query;
+      if (field.equals(multiTermQuery.getField())) {
+        MultiTermQuery clone = (MultiTermQuery) multiTermQuery.clone();
+        clone.setRewriteMethod(new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(MAX_TERM_EXPANSIONS));
+        extractTerms(clone.rewrite(_reader), field, terms);
+      }
+    }
+  }
+
+  private void addTerm(Term term, String field, Set<BytesRef> terms) {
+    if (field.equals(term.field())) {
+      terms.add(term.bytes());
+    }
+  }
+
+  private List<Match> getMatches(List<Match> matches, int base, int length) {
+    List<Match> result = new ArrayList<Match>();
+    int lastEnd = 0;
+    for (Match match : matches) {
+      int start = match._start - base;
+      int end = match._end - base;
+      if (start < lastEnd || end > length) {
+        // Skip overlapping matches and matches that belong to other values.
+        continue;
+      }
+      result.add(new Match(start, end, match._termIndex));
+      lastEnd = end;
+    }
+    return result;
+  }
+
+  private List<Passage> getPassages(String text, List<Match> matches) {
+    List<Passage> passages = new ArrayList<Passage>();
+    Passage current = null;
+    for (Match match : matches) {
+      if (current != null && match._start < current._end) {
+        current.add(match);
+        continue;
+      }
+      int window = match._start / FRAGMENT_SIZE;
+      int start = getBoundary(text, window * FRAGMENT_SIZE);
+      if (start > match._start) {
+        // The match spans the window boundary, so it belongs to the previous
+        // window.
+        window--;
+        start = Math.min(getBoundary(text, window * FRAGMENT_SIZE), match._start);
+      }
+      if (current != null) {
+        start = Math.max(start, current._end);
+      }
+      int end = getBoundary(text, (window + 1) * FRAGMENT_SIZE);
+      current = new Passage(start, end);
+      current.add(match);
+      passages.add(current);
+    }
+    // Stable sort, so fragments with the same score stay in document order.
+    Collections.sort(passages, new Comparator<Passage>() {
+      @Override
+      public int compare(Passage o1, Passage o2) {
+        return o2._terms.size() - o1._terms.size();
+      }
+    });
+    if (passages.size() > MAX_NUM_FRAGMENTS) {
+      return passages.subList(0, MAX_NUM_FRAGMENTS);
+    }
+    return passages;
+  }
+
+  private int getBoundary(String text, int offset) {
+    if (offset <= 0) {
+      return 0;
+    }
+    int length = text.length();
+    while (offset < length && !Character.isWhitespace(text.charAt(offset))) {
+      offset++;
+    }
+    return Math.min(offset, length);
+  }
+
+  private String toString(String text, Passage passage) {
+    StringBuilder builder = new StringBuilder();
+    int position = passage._start;
+    while (position < passage._end && Character.isWhitespace(text.charAt(position))) {
+      position++;
+    }
+    for (Match match : passage._matches) {
+      builder.append(text, position, match._start);
+      builder.append(_preTag);
+      builder.append(text, match._start, match._end);
+      builder.append(_postTag);
+      position = match._end;
+    }
+    builder.append(text, position, passage._end);
+    return builder.toString();
+  }
+
+  private static class Match {
+    final int _start;
+    final int _end;
+    final int _termIndex;
+
+    Match(int start, int end, int termIndex) {
+      _start = start;
+      _end = end;
+      _termIndex = termIndex;
+    }
+  }
+
+  private static class Passage {
+    final int _start;
+    int _end;
+    final List<Match> _matches = new ArrayList<Match>();
+    final Set<Integer> _terms = new LinkedHashSet<Integer>();
+
+    Passage(int start, int end) {
+      _start = start;
+      _end = end;
+    }
+
+    void add(Match match) {
+      _matches.add(match);
+      _terms.add(match._termIndex);
+      _end = Math.max(_end, match._end);
+    }
+  }
+}
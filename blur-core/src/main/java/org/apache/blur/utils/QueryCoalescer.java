@@ -0,0 +1,245 @@
+package org.apache.blur.utils;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.apache.blur.metrics.MetricsConstants.BLUR;
+import static org.apache.blur.metrics.MetricsConstants.COALESCED_QUERIES;
+import static org.apache.blur.metrics.MetricsConstants.IN_FLIGHT_QUERIES;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.blur.server.cache.ThriftCacheValue;
+import org.apache.blur.thrift.BException;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.BlurResults;
+import org.apache.blur.thrift.generated.ErrorType;
+import org.apache.blur.user.User;
+import org.apache.blur.user.UserContext;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * Collapses identical queries that run at the same time into a single
+ * execution. Queries are identical when the normalized query (see
+ * {@link QueryCache#getNormalizedBlurQueryKey(String, BlurQuery)}), the table
+ * and the user are the same. The first query registers the future of its
+ * execution, identical queries attach to that future instead of executing
+ * again, but only if the execution started after they arrived. An execution
+ * that started earlier might not see the writes the caller made before
+ * sending the query. Queries that set a uuid or that do not allow cached
+ * results are never coalesced, so that their uuid reaches the shard servers
+ * and their results are never shared.
+ */
+public class QueryCoalescer {
+
+  private static final Log LOG = LogFactory.getLog(QueryCoalescer.class);
+
+  private final ConcurrentMap<Key, InFlight> _inFlight = new ConcurrentHashMap<Key, InFlight>();
+  private final Meter _coalescedMeter;
+
+  public QueryCoalescer() {
+    _coalescedMeter = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, BLUR, COALESCED_QUERIES), COALESCED_QUERIES,
+        TimeUnit.SECONDS);
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, BLUR, IN_FLIGHT_QUERIES), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return (long) _inFlight.size();
+      }
+    });
+  }
+
+  /**
+   * Registers the given future as the execution of the query, unless an
+   * identical query that started after the caller arrived is already in
+   * flight. An identical query that started before the caller arrived is
+   * replaced by the caller's execution. The registration is removed once the
+   * future completes.
+   *
+   * @param arrival
+   *          the {@link System#nanoTime()} at which the caller's query arrived.
+   * @return the given future if the caller has to execute the query, otherwise
+   *         the future of the identical query that is in flight.
+   */
+  public ListenableFuture<BlurResults> register(String table, BlurQuery blurQuery, long arrival,
+      final SettableFuture<BlurResults> future) throws BlurException {
+    if (!canCoalesce(blurQuery)) {
+      return future;
+    }
+    final Key key = new Key(table, blurQuery, UserContext.getUser());
+    final InFlight execution = new InFlight(future, System.nanoTime());
+    while (true) {
+      InFlight inFlight = _inFlight.putIfAbsent(key, execution);
+      if (inFlight == null) {
+        break;
+      }
+      if (inFlight._started - arrival >= 0) {
+        LOG.debug("Query [{0}] on table [{1}] attached to identical query in flight.", blurQuery, table);
+        _coalescedMeter.mark();
+        return inFlight._future;
+      }
+      if (_inFlight.replace(key, inFlight, execution)) {
+        break;
+      }
+    }
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        _inFlight.remove(key, execution);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    return future;
+  }
+
+  private static boolean canCoalesce(BlurQuery blurQuery) {
+    return blurQuery.isUseCacheIfPresent() && blurQuery.getUuid() == null;
+  }
+
+  /**
+   * @return a copy of the results of the in flight query for a caller.
+   */
+  public static ListenableFuture<BlurResults> forCaller(ListenableFuture<BlurResults> inFlight) {
+    return Futures.transform(inFlight, new Function<BlurResults, BlurResults>() {
+      @Override
+      public BlurResults apply(BlurResults results) {
+        return copy(results);
+      }
+    });
+  }
+
+  /**
+   * Waits for the in flight query, no longer than the max query time of the
+   * caller's query.
+   *
+   * @return a copy of the results of the in flight query.
+   */
+  public static BlurResults waitForResults(ListenableFuture<BlurResults> inFlight, BlurQuery blurQuery)
+      throws BlurException {
+    long maxQueryTime = blurQuery.getMaxQueryTime();
+    try {
+      if (maxQueryTime > 0) {
+        return copy(inFlight.get(maxQueryTime, TimeUnit.MILLISECONDS));
+      }
+      return copy(inFlight.get());
+    } catch (TimeoutException e) {
+      LOG.info("Query timeout with max query time of [{0}] for query [{1}].", maxQueryTime, blurQuery);
+      throw new BlurException("Query timeout with max query time of [" + maxQueryTime + "] for query [" + blurQuery
+          + "].", null, ErrorType.QUERY_TIMEOUT);
+    } catch (InterruptedException e) {
+      throw new BException("Interrupted while waiting for identical query in flight [{0}].", e, blurQuery);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof BlurException) {
+        throw (BlurException) cause;
+      }
+      throw new BException("Unknown error during identical query in flight [{0}].", cause, blurQuery);
+    }
+  }
+
+  private static BlurResults copy(BlurResults results) {
+    if (results == null) {
+      return null;
+    }
+    return new BlurResults(results);
+  }
+
+  private static class InFlight {
+
+    private final ListenableFuture<BlurResults> _future;
+    private final long _started;
+
+    InFlight(ListenableFuture<BlurResults> future, long started) {
+      _future = future;
+      _started = started;
+    }
+  }
+
+  static class Key {
+
+    private final String _table;
+    private final String _username;
+    private final Map<String, String> _attributes;
+    private final byte[] _query;
+    private final int _hashCode;
+
+    Key(String table, BlurQuery blurQuery, User user) throws BlurException {
+      _table = table;
+      _username = user == null ? null : user.getUsername();
+      _attributes = user == null ? null : user.getAttributes();
+      // The generated hashCode of BlurQuery is constant so the serialized form
+      // of the normalized query is used instead.
+      QueryCacheKey queryCacheKey = QueryCache.getNormalizedBlurQueryKey(table, blurQuery);
+      _query = ThriftCacheValue.toBytes(queryCacheKey.getQuery());
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + Arrays.hashCode(_query);
+      result = prime * result + _table.hashCode();
+      result = prime * result + ((_username == null) ? 0 : _username.hashCode());
+      _hashCode = result;
+    }
+
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Key other = (Key) obj;
+      if (_hashCode != other._hashCode)
+        return false;
+      if (!_table.equals(other._table))
+        return false;
+      if (!Arrays.equals(_query, other._query))
+        return false;
+      if (_username == null) {
+        if (other._username != null)
+          return false;
+      } else if (!_username.equals(other._username))
+        return false;
+      if (_attributes == null) {
+        if (other._attributes != null)
+          return false;
+      } else if (!_attributes.equals(other._attributes))
+        return false;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.command.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+public class QueryFilteredIndexReaderTest {
+
+  @Test
+  public void testOnlyMatchingDocsAreLive() throws IOException {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_43, new KeywordAnalyzer()));
+    for (int i = 0; i < 100; i++) {
+      Document document = new Document();
+      document.add(new StringField("id", Integer.toString(i), Store.YES));
+      document.add(new StringField("type", i % 3 == 0 ? "a" : "b", Store.YES));
+      writer.addDocument(document);
+      if (i == 50) {
+        writer.commit();
+      }
+    }
+    writer.deleteDocuments(new Term("id", "0"));
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(directory);
+    IndexReader filtered = QueryFilteredIndexReader.wrap(reader, new TermQuery(new Term("type", "a")));
+    // 34 documents of type a minus the deleted doc 0
+    assertEquals(33, filtered.numDocs());
+    assertEquals(reader.maxDoc(), filtered.maxDoc());
+    assertEquals(reader.leaves().size(), filtered.leaves().size());
+
+    int live = 0;
+    for (AtomicReaderContext context : filtered.leaves()) {
+      AtomicReader atomicReader = context.reader();
+      Bits liveDocs = atomicReader.getLiveDocs();
+      for (int d = 0; d < atomicReader.maxDoc(); d++) {
+        Document document = atomicReader.document(d);
+        if (liveDocs.get(d)) {
+          live++;
+          assertEquals("a", document.get("type"));
+          assertFalse("0".equals(document.get("id")));
+        } else {
+          assertTrue("b".equals(document.get("type")) || "0".equals(document.get("id")));
+        }
+      }
+    }
+    assertEquals(33, live);
+    reader.close();
+  }
+
+}
@@ -17,6 +17,8 @@ package org.apache.blur.manager;
  * limitations under the License.
  */
 
+import static org.apache.blur.metrics.MetricsConstants.FETCH_LATENCY;
+import static org.apache.blur.metrics.MetricsConstants.QUERY_LATENCY;
 import static org.apache.blur.thrift.generated.RecordMutationType.APPEND_COLUMN_VALUES;
 import static org.apache.blur.thrift.generated.RecordMutationType.DELETE_ENTIRE_RECORD;
 import static org.apache.blur.thrift.generated.RecordMutationType.REPLACE_COLUMNS;
@@ -44,6 +46,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.blur.BlurConfiguration;
@@ -51,7 +54,10 @@ import org.apache.blur.lucene.search.DeepPagingCache;
 import org.apache.blur.manager.clusterstatus.ClusterStatus;
 import org.apache.blur.manager.indexserver.LocalIndexServer;
 import org.apache.blur.manager.results.BlurResultIterable;
+import org.apache.blur.manager.status.LatencyMetrics;
 import org.apache.blur.manager.status.QueryStatusManager;
+import org.apache.blur.manager.status.SlowQueryLog;
+import org.apache.blur.manager.status.SlowQueryLog.SlowQuery;
 import org.apache.blur.memory.MemoryAllocationWatcher;
 import org.apache.blur.memory.Watcher;
 import org.apache.blur.server.TableContext;
@@ -89,6 +95,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
 public class IndexManagerTest {
 
   private static final File TMPDIR = new File("./target/tmp");
@@ -108,6 +118,7 @@ public class IndexManagerTest {
   private File base;
 
   private QueryStatusManager _statusManager;
+  private SlowQueryLog _slowQueryLog;
 
   @Before
   public void setUp() throws BlurException, IOException, InterruptedException {
@@ -133,8 +144,11 @@ public class IndexManagerTest {
     long statusCleanupTimerDelay = 1000;
     _statusManager = new QueryStatusManager(statusCleanupTimerDelay);
 
+    _slowQueryLog = new SlowQueryLog(50);
+
     indexManager = new IndexManager(server, getClusterStatus(tableDescriptor), filterCache, 10000000, 100, 1, 1, 0,
-        new DeepPagingCache(), NOTHING, _statusManager);
+        new DeepPagingCache(), null, null, NOTHING, _statusManager, _slowQueryLog,
+        new ParsedQueryCache(100));
     setupData();
   }
 
@@ -817,6 +831,44 @@ public class IndexManagerTest {
     assertEquals(2, rowResult2.getTotalRecords());
   }
 
+  @Test
+  public void testFetchRowByRowIdBatchMatchesSingleFetch() throws Exception {
+    List<Selector> selectors = new ArrayList<Selector>();
+    selectors.add(new Selector().setRowId("row-2"));
+    selectors.add(new Selector().setRowId("row-missing"));
+    selectors.add(new Selector().setRowId("row-1").setRecordId("record-1").setRecordOnly(true));
+    selectors.add(new Selector().setRowId("row-1"));
+    selectors.add(new Selector().setRowId("row-2").setStartRecord(1).setMaxRecordsToFetch(1));
+    selectors.add(new Selector().setRowId("row-6"));
+
+    List<Selector> copies = new ArrayList<Selector>();
+    for (Selector selector : selectors) {
+      copies.add(new Selector(selector));
+    }
+    List<FetchResult> fetchRowBatch = indexManager.fetchRowBatch(TABLE, selectors);
+    assertEquals(selectors.size(), fetchRowBatch.size());
+    for (int i = 0; i < copies.size(); i++) {
+      FetchResult fetchResult = new FetchResult();
+      indexManager.fetchRow(TABLE, copies.get(i), fetchResult);
+      assertEquals(fetchResult, fetchRowBatch.get(i));
+    }
+    assertFalse(fetchRowBatch.get(1).isExists());
+    assertFalse(fetchRowBatch.get(1).isDeleted());
+    assertEquals("row-1", fetchRowBatch.get(3).getRowResult().getRow().getId());
+  }
+
+  @Test
+  public void testFetchRowByRowIdBatchDeletedRow() throws Exception {
+    indexManager.mutate(newRowMutation(DELETE_ROW, TABLE, "row-1"));
+    List<Selector> selectors = new ArrayList<Selector>();
+    selectors.add(new Selector().setRowId("row-1"));
+    selectors.add(new Selector().setRowId("row-2"));
+    List<FetchResult> fetchRowBatch = indexManager.fetchRowBatch(TABLE, selectors);
+    assertFalse(fetchRowBatch.get(0).isExists());
+    assertTrue(fetchRowBatch.get(1).isExists());
+    assertEquals("row-2", fetchRowBatch.get(1).getRowResult().getRow().getId());
+  }
+
   @Test
   public void testFetchRowByRowIdPaging() throws Exception {
     Selector selector = new Selector().setRowId("row-6");
@@ -1070,6 +1122,47 @@ public class IndexManagerTest {
     assertTrue(indexManager.currentQueries(TABLE).isEmpty());
   }
 
+  @Test
+  public void testQueryRecordsLatencyAndSlowQuery() throws Exception {
+    SlowQueryLog slowQueryLog = _slowQueryLog;
+    BlurQuery blurQuery = new BlurQuery();
+    blurQuery.query = new Query();
+    blurQuery.query.query = "test-family.testcol1:value1";
+    blurQuery.query.rowQuery = true;
+    blurQuery.query.scoreType = ScoreType.SUPER;
+    blurQuery.fetch = 10;
+    blurQuery.minimumNumberOfResults = Long.MAX_VALUE;
+    blurQuery.maxQueryTime = Long.MAX_VALUE;
+    blurQuery.uuid = "latency";
+    blurQuery.selector = new Selector();
+
+    long queryCount = getTimer(LatencyMetrics.getTableMetricName(QUERY_LATENCY, TABLE)).count();
+    long fetchCount = getTimer(LatencyMetrics.getTableMetricName(FETCH_LATENCY, TABLE)).count();
+    BlurResultIterable iterable = indexManager.query(TABLE, blurQuery, null);
+    BlurIterator<BlurResult, BlurException> iterator = iterable.iterator();
+    while (iterator.hasNext()) {
+      iterator.next();
+    }
+    iterable.close();
+
+    assertEquals(queryCount + 1, getTimer(LatencyMetrics.getTableMetricName(QUERY_LATENCY, TABLE)).count());
+    assertEquals(fetchCount + 2, getTimer(LatencyMetrics.getTableMetricName(FETCH_LATENCY, TABLE)).count());
+    assertTrue(getTimer(LatencyMetrics.getShardMetricName(QUERY_LATENCY, TABLE, SHARD_NAME)).count() > 0);
+
+    List<SlowQuery> slowQueries = slowQueryLog.getSlowQueries();
+    assertEquals(1, slowQueries.size());
+    SlowQuery slowQuery = slowQueries.get(0);
+    assertEquals(TABLE, slowQuery.getTable());
+    assertEquals("test-family.testcol1:?", slowQuery.getQuery());
+    assertEquals("latency", slowQuery.getUuid());
+    assertEquals(2, slowQuery.getHits());
+    assertTrue(slowQuery.getFetchedBytes() > 0);
+  }
+
+  private Timer getTimer(MetricName metricName) {
+    return Metrics.newTimer(metricName, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+  }
+
   @Test
   public void testQuerySuperQueryFalse() throws Exception {
     BlurQuery blurQuery = new BlurQuery();
@@ -0,0 +1,187 @@
+package org.apache.blur.manager;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.blur.analysis.BaseFieldManager;
+import org.apache.blur.analysis.FieldTypeDefinition;
+import org.apache.blur.thrift.generated.ScoreType;
+import org.apache.blur.utils.BlurConstants;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+public class ParsedQueryCacheTest {
+
+  @Test
+  public void testParseOnce() throws Exception {
+    ParsedQueryCache cache = new ParsedQueryCache(100);
+    BaseFieldManager fieldManager = getFieldManager();
+    AtomicInteger count = new AtomicInteger();
+    Query query1 = cache.get(newKey("a:a", fieldManager), newParser(count));
+    Query query2 = cache.get(newKey("a:a", fieldManager), newParser(count));
+    assertTrue(query1 == query2);
+    assertEquals(1, count.get());
+
+    cache.get(newKey("a:b", fieldManager), newParser(count));
+    cache.get(new ParsedQueryCache.Key("t", "a:a", false, ScoreType.SUPER, null, fieldManager), newParser(count));
+    cache.get(new ParsedQueryCache.Key("t", "a:a", true, ScoreType.CONSTANT, null, fieldManager), newParser(count));
+    cache.get(new ParsedQueryCache.Key("t2", "a:a", true, ScoreType.SUPER, null, fieldManager), newParser(count));
+    assertEquals(5, count.get());
+  }
+
+  @Test
+  public void testPreFilterIsPartOfTheKey() throws Exception {
+    ParsedQueryCache cache = new ParsedQueryCache(100);
+    BaseFieldManager fieldManager = getFieldManager();
+    AtomicInteger count = new AtomicInteger();
+    QueryWrapperFilter filter1 = new QueryWrapperFilter(new TermQuery(new Term("a", "b")));
+    QueryWrapperFilter filter2 = new QueryWrapperFilter(new TermQuery(new Term("a", "b")));
+    cache.get(new ParsedQueryCache.Key("t", "a:a", true, ScoreType.SUPER, filter1, fieldManager), newParser(count));
+    cache.get(new ParsedQueryCache.Key("t", "a:a", true, ScoreType.SUPER, filter2, fieldManager), newParser(count));
+    assertEquals(1, count.get());
+    cache.get(newKey("a:a", fieldManager), newParser(count));
+    assertEquals(2, count.get());
+  }
+
+  @Test
+  public void testNewFieldDefinitionInvalidates() throws Exception {
+    ParsedQueryCache cache = new ParsedQueryCache(100);
+    BaseFieldManager fieldManager = getFieldManager();
+    AtomicInteger count = new AtomicInteger();
+    cache.get(newKey("a:a", fieldManager), newParser(count));
+    fieldManager.addColumnDefinitionInt("a", "id_i");
+    cache.get(newKey("a:a", fieldManager), newParser(count));
+    assertEquals(2, count.get());
+  }
+
+  @Test
+  public void testFailuresAreNotCached() throws Exception {
+    ParsedQueryCache cache = new ParsedQueryCache(100);
+    BaseFieldManager fieldManager = getFieldManager();
+    final AtomicInteger count = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get(newKey("a:(", fieldManager), new Callable<Query>() {
+          @Override
+          public Query call() throws Exception {
+            count.incrementAndGet();
+            throw new ParseException("bad query");
+          }
+        });
+        fail();
+      } catch (ParseException e) {
+        assertEquals("bad query", e.getMessage());
+      }
+    }
+    assertEquals(2, count.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testConcurrentMissesParseOnce() throws Exception {
+    final ParsedQueryCache cache = new ParsedQueryCache(100);
+    final BaseFieldManager fieldManager = getFieldManager();
+    final AtomicInteger count = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Callable<Query> parser = new Callable<Query>() {
+      @Override
+      public Query call() throws Exception {
+        count.incrementAndGet();
+        latch.await();
+        return new TermQuery(new Term("a", "a"));
+      }
+    };
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Query>> futures = new ArrayList<Future<Query>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(service.submit(new Callable<Query>() {
+          @Override
+          public Query call() throws Exception {
+            return cache.get(newKey("a:a", fieldManager), parser);
+          }
+        }));
+      }
+      Thread.sleep(100);
+      for (Future<Query> future : futures) {
+        assertFalse(future.isDone());
+      }
+      latch.countDown();
+      Query query = futures.get(0).get();
+      for (Future<Query> future : futures) {
+        assertTrue(query == future.get());
+      }
+      assertEquals(1, count.get());
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  private static ParsedQueryCache.Key newKey(String query, BaseFieldManager fieldManager) {
+    return new ParsedQueryCache.Key("t", query, true, ScoreType.SUPER, null, fieldManager);
+  }
+
+  private static Callable<Query> newParser(final AtomicInteger count) {
+    return new Callable<Query>() {
+      @Override
+      public Query call() throws Exception {
+        count.incrementAndGet();
+        return new TermQuery(new Term("a", "a"));
+      }
+    };
+  }
+
+  private BaseFieldManager getFieldManager() throws IOException {
+    return new BaseFieldManager(BlurConstants.SUPER, new WhitespaceAnalyzer(LUCENE_VERSION), new Configuration()) {
+      @Override
+      protected boolean tryToStore(FieldTypeDefinition fieldTypeDefinition, String fieldName) {
+        return true;
+      }
+
+      @Override
+      protected void tryToLoad(String fieldName) {
+
+      }
+
+      @Override
+      protected List<String> getFieldNamesToLoad() throws IOException {
+        return new ArrayList<String>();
+      }
+    };
+  }
+}
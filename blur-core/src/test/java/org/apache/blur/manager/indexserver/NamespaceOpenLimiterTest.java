@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.indexserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class NamespaceOpenLimiterTest {
+
+  @Test
+  public void testLimitPerNamespace() throws InterruptedException {
+    final NamespaceOpenLimiter limiter = new NamespaceOpenLimiter(2);
+    limiter.acquire("hdfs://nn1:9000");
+    limiter.acquire("hdfs://nn1:9000");
+    assertEquals(0, limiter.getAvailablePermits("hdfs://nn1:9000"));
+
+    // Another namespace has its own permits.
+    limiter.acquire("hdfs://nn2:9000");
+    assertEquals(1, limiter.getAvailablePermits("hdfs://nn2:9000"));
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          limiter.acquire("hdfs://nn1:9000");
+          acquired.countDown();
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    });
+    thread.start();
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+    limiter.release("hdfs://nn1:9000");
+    assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    thread.join();
+  }
+
+  @Test
+  public void testNoLimit() throws InterruptedException {
+    NamespaceOpenLimiter limiter = new NamespaceOpenLimiter(0);
+    for (int i = 0; i < 100; i++) {
+      limiter.acquire("hdfs://nn1:9000");
+    }
+    assertEquals(Integer.MAX_VALUE, limiter.getAvailablePermits("hdfs://nn1:9000"));
+  }
+}
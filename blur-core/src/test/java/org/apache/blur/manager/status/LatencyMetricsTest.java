@@ -0,0 +1,58 @@
+package org.apache.blur.manager.status;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+
+public class LatencyMetricsTest {
+
+  private static final String TYPE = "Latency Test";
+
+  @Test
+  public void testRemoveTable() {
+    LatencyMetrics latencyMetrics = new LatencyMetrics(TYPE);
+    latencyMetrics.updateTable("table1", 1000);
+    latencyMetrics.updateShard("table1", "shard-0", 1000);
+    latencyMetrics.updateShard("table1", "shard-1", 1000);
+    latencyMetrics.updateShard("table2", "shard-0", 1000);
+    assertEquals(2, latencyMetrics.getTables().size());
+    assertTrue(isRegistered(LatencyMetrics.getShardMetricName(TYPE, "table1", "shard-1")));
+
+    latencyMetrics.removeTable("table1");
+    assertFalse(latencyMetrics.getTables().contains("table1"));
+    assertFalse(isRegistered(LatencyMetrics.getTableMetricName(TYPE, "table1")));
+    assertFalse(isRegistered(LatencyMetrics.getShardMetricName(TYPE, "table1", "shard-0")));
+    assertFalse(isRegistered(LatencyMetrics.getShardMetricName(TYPE, "table1", "shard-1")));
+    assertTrue(isRegistered(LatencyMetrics.getShardMetricName(TYPE, "table2", "shard-0")));
+    latencyMetrics.removeTable("table2");
+  }
+
+  private static boolean isRegistered(MetricName metricName) {
+    Map<MetricName, Metric> metrics = Metrics.defaultRegistry().allMetrics();
+    return metrics.containsKey(metricName);
+  }
+}
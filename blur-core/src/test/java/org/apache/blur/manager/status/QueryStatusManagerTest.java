@@ -0,0 +1,178 @@
+package org.apache.blur.manager.status;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.QueryState;
+import org.apache.blur.utils.MemoryUsageCounter;
+import org.junit.After;
+import org.junit.Test;
+
+public class QueryStatusManagerTest {
+
+  private QueryStatusManager _statusManager;
+
+  @After
+  public void tearDown() {
+    if (_statusManager != null) {
+      _statusManager.close();
+    }
+  }
+
+  @Test
+  public void testMemoryUsage() {
+    _statusManager = new QueryStatusManager(1000);
+    QueryStatus status1 = newQueryStatus("1", new AtomicBoolean(true));
+    QueryStatus status2 = newQueryStatus("2", new AtomicBoolean(true));
+    status1.addMemoryUsage(100);
+    status2.addMemoryUsage(50);
+    MemoryUsageCounter fetch = _statusManager.startFetch();
+    fetch.add(10);
+    assertEquals(160, _statusManager.getMemoryUsage());
+    assertEquals(100, _statusManager.queryStatus("table", "1").getMemoryUsage());
+
+    _statusManager.removeStatus(status1);
+    _statusManager.finishFetch(fetch);
+    assertEquals(50, _statusManager.getMemoryUsage());
+    // The finished query still reports what it was holding.
+    assertEquals(100, _statusManager.queryStatus("table", "1").getMemoryUsage());
+  }
+
+  @Test
+  public void testMemoryUsageIsReleasedOnce() {
+    _statusManager = new QueryStatusManager(1000);
+    QueryStatus status1 = newQueryStatus("1", new AtomicBoolean(true));
+    QueryStatus status2 = newQueryStatus("2", new AtomicBoolean(true));
+    status1.getMemoryUsageCounter().add(100);
+    status2.getMemoryUsageCounter().add(1);
+    MemoryUsageCounter fetch = _statusManager.startFetch();
+    fetch.add(20);
+    fetch.add(-5);
+    assertEquals(116, _statusManager.getMemoryUsage());
+
+    _statusManager.removeStatus(status1);
+    _statusManager.removeStatus(status1);
+    _statusManager.finishFetch(fetch);
+    _statusManager.finishFetch(fetch);
+    assertEquals(1, _statusManager.getMemoryUsage());
+
+    // Memory accounted after a query or fetch finished is not added to the
+    // running total.
+    status1.addMemoryUsage(1000);
+    fetch.add(1000);
+    assertEquals(1, _statusManager.getMemoryUsage());
+    assertEquals(1100, status1.getMemoryUsage());
+  }
+
+  @Test
+  public void testStopLargestQueriesForBackPressure() {
+    _statusManager = new QueryStatusManager(1000);
+    AtomicBoolean running1 = new AtomicBoolean(true);
+    AtomicBoolean running2 = new AtomicBoolean(true);
+    AtomicBoolean running3 = new AtomicBoolean(true);
+    newQueryStatus("1", running1).addMemoryUsage(100);
+    newQueryStatus("2", running2).addMemoryUsage(1000);
+    newQueryStatus("3", running3).addMemoryUsage(10);
+
+    _statusManager.stopLargestQueriesForBackPressure();
+    assertTrue(running1.get());
+    assertFalse(running2.get());
+    assertTrue(running3.get());
+    assertEquals(QueryState.BACK_PRESSURE_INTERRUPTED, _statusManager.queryStatus("table", "2").getState());
+    assertEquals(QueryState.RUNNING, _statusManager.queryStatus("table", "1").getState());
+  }
+
+  @Test
+  public void testStopLargestQueriesForBackPressureWithoutAccounting() {
+    _statusManager = new QueryStatusManager(1000);
+    AtomicBoolean running1 = new AtomicBoolean(true);
+    AtomicBoolean running2 = new AtomicBoolean(true);
+    newQueryStatus("1", running1);
+    newQueryStatus("2", running2);
+
+    _statusManager.stopLargestQueriesForBackPressure();
+    assertFalse(running1.get());
+    assertFalse(running2.get());
+  }
+
+  @Test
+  public void testAdmission() throws InterruptedException {
+    _statusManager = new QueryStatusManager(1000, 100, 50);
+    assertTrue(_statusManager.waitForAdmission());
+
+    QueryStatus status = newQueryStatus("1", new AtomicBoolean(true));
+    status.addMemoryUsage(200);
+    long start = System.nanoTime();
+    assertFalse(_statusManager.waitForAdmission());
+    assertTrue(System.nanoTime() - start >= 40000000L);
+
+    _statusManager.removeStatus(status);
+    assertTrue(_statusManager.waitForAdmission());
+  }
+
+  @Test
+  public void testAdmissionAfterRelease() throws InterruptedException {
+    _statusManager = new QueryStatusManager(1000, 100, 10000);
+    final QueryStatus status = newQueryStatus("1", new AtomicBoolean(true));
+    status.addMemoryUsage(200);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        _statusManager.removeStatus(status);
+      }
+    }).start();
+    assertTrue(_statusManager.waitForAdmission());
+  }
+
+  @Test
+  public void testAdmissionAfterFetch() throws InterruptedException {
+    _statusManager = new QueryStatusManager(1000, 100, 10000);
+    final MemoryUsageCounter fetch = _statusManager.startFetch();
+    fetch.add(200);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        _statusManager.finishFetch(fetch);
+      }
+    }).start();
+    long start = System.nanoTime();
+    assertTrue(_statusManager.waitForAdmission());
+    assertTrue(System.nanoTime() - start < 5000000000L);
+  }
+
+  private QueryStatus newQueryStatus(String uuid, AtomicBoolean running) {
+    BlurQuery blurQuery = new BlurQuery();
+    blurQuery.setUuid(uuid);
+    return _statusManager.newQueryStatus("table", blurQuery, 1, running, null);
+  }
+}
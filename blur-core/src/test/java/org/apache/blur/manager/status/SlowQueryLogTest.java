@@ -0,0 +1,97 @@
+package org.apache.blur.manager.status;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.blur.manager.status.SlowQueryLog.SlowQuery;
+import org.apache.blur.thrift.generated.Metric;
+import org.junit.Test;
+
+public class SlowQueryLogTest {
+
+  @Test
+  public void testKeepsSlowest() {
+    SlowQueryLog log = new SlowQueryLog(3);
+    for (int i = 1; i <= 10; i++) {
+      log.offer(newSlowQuery("q" + i, i * 1000000L));
+    }
+    List<SlowQuery> slowQueries = log.getSlowQueries();
+    assertEquals(3, slowQueries.size());
+    assertEquals("q10", slowQueries.get(0).getQuery());
+    assertEquals("q9", slowQueries.get(1).getQuery());
+    assertEquals("q8", slowQueries.get(2).getQuery());
+
+    assertFalse(log.isSlowEnough(8000000L));
+    assertFalse(log.offer(newSlowQuery("fast", 1000000L)));
+    assertTrue(log.offer(newSlowQuery("slow", 20000000L)));
+    assertEquals("slow", log.getSlowQueries().get(0).getQuery());
+  }
+
+  @Test
+  public void testSetCapacity() {
+    SlowQueryLog log = new SlowQueryLog(5);
+    for (int i = 1; i <= 5; i++) {
+      log.offer(newSlowQuery("q" + i, i));
+    }
+    log.setCapacity(2);
+    assertEquals(2, log.getSlowQueries().size());
+    assertEquals("q5", log.getSlowQueries().get(0).getQuery());
+
+    log.setCapacity(0);
+    assertTrue(log.getSlowQueries().isEmpty());
+    assertFalse(log.offer(newSlowQuery("q", 100)));
+  }
+
+  @Test
+  public void testToMetric() {
+    SlowQueryLog log = new SlowQueryLog(2);
+    log.offer(new SlowQuery("t", "a:?", "uuid", 2000000L, 1000000L, 10, 100, 1234L));
+    log.offer(new SlowQuery("t", "b:?", null, 3000000L, -1L, 5, 50, 1235L));
+    Metric metric = log.toMetric("slow");
+    assertEquals("slow", metric.getName());
+    assertEquals(2L, (long) metric.getLongMap().get("count"));
+    assertEquals("b:?", metric.getStrMap().get("0.query"));
+    assertEquals(3.0, metric.getDoubleMap().get("0.realTime"), 0.0);
+    assertEquals(-1.0, metric.getDoubleMap().get("0.cpuTime"), 0.0);
+    assertNull(metric.getStrMap().get("0.uuid"));
+    assertEquals("a:?", metric.getStrMap().get("1.query"));
+    assertEquals("uuid", metric.getStrMap().get("1.uuid"));
+    assertEquals(1.0, metric.getDoubleMap().get("1.cpuTime"), 0.0);
+    assertEquals(10L, (long) metric.getLongMap().get("1.hits"));
+    assertEquals(100L, (long) metric.getLongMap().get("1.fetchedBytes"));
+  }
+
+  @Test
+  public void testNormalize() {
+    assertEquals("+person.name:(? OR ?) age:[? TO ?]",
+        SlowQueryLog.normalize("+person.name:(john OR jack)   age:[1 TO 5]"));
+    assertEquals("fam.col:\"?\"~? -fam.col2:?^?", SlowQueryLog.normalize(" fam.col:\"a b c\"~2 -fam.col2:abc*^3 "));
+    assertEquals("<+fam.col:?> <+fam2.col:?>", SlowQueryLog.normalize("<+fam.col:a\\:b> <+fam2.col:c>"));
+    assertEquals("? ?", SlowQueryLog.normalize("value1 value2"));
+    assertNull(SlowQueryLog.normalize(null));
+  }
+
+  private static SlowQuery newSlowQuery(String query, long realTime) {
+    return new SlowQuery("t", query, null, realTime, 0L, 0L, 0L, System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+  @Test
+  public void testMightContain() {
+    BloomFilter bloomFilter = BloomFilter.create(1000);
+    for (int i = 0; i < 1000; i++) {
+      bloomFilter.add(new BytesRef("value" + i));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bloomFilter.mightContain(new BytesRef("value" + i)));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (bloomFilter.mightContain(new BytesRef("other" + i))) {
+        falsePositives++;
+      }
+    }
+    assertTrue("False positives [" + falsePositives + "]", falsePositives < 50);
+  }
+
+  @Test
+  public void testOr() {
+    BloomFilter bloomFilter1 = BloomFilter.create(100);
+    bloomFilter1.add(new BytesRef("a"));
+    BloomFilter bloomFilter2 = BloomFilter.create(100);
+    bloomFilter2.add(new BytesRef("b"));
+    assertFalse(bloomFilter1.mightContain(new BytesRef("b")));
+
+    assertTrue(bloomFilter1.or(bloomFilter2));
+    assertTrue(bloomFilter1.mightContain(new BytesRef("a")));
+    assertTrue(bloomFilter1.mightContain(new BytesRef("b")));
+
+    assertFalse(bloomFilter1.or(BloomFilter.create(1000)));
+  }
+
+  @Test
+  public void testContains() {
+    BloomFilter bloomFilter1 = BloomFilter.create(100);
+    bloomFilter1.add(new BytesRef("a"));
+    BloomFilter bloomFilter2 = bloomFilter1.copy();
+    bloomFilter2.add(new BytesRef("b"));
+
+    assertTrue(bloomFilter2.contains(bloomFilter1));
+    assertFalse(bloomFilter1.contains(bloomFilter2));
+    assertFalse(bloomFilter2.contains(BloomFilter.create(1000)));
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    BloomFilter bloomFilter = BloomFilter.create(100);
+    bloomFilter.add(new BytesRef("a"));
+    bloomFilter.add(new BytesRef("b"));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    bloomFilter.write(new DataOutputStream(outputStream));
+    BloomFilter read = new BloomFilter();
+    read.readFields(new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+
+    assertEquals(bloomFilter.getNumberOfBits(), read.getNumberOfBits());
+    assertEquals(bloomFilter.getNumberOfHashes(), read.getNumberOfHashes());
+    assertTrue(read.mightContain(new BytesRef("a")));
+    assertTrue(read.mightContain(new BytesRef("b")));
+  }
+}
@@ -0,0 +1,155 @@
+package org.apache.blur.manager.summary;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.blur.MiniCluster;
+import org.apache.blur.zookeeper.ZooKeeperClient;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ShardSummaryPublisherTest {
+
+  private static final String CLUSTER = "default";
+  private static final String TABLE = "test-table";
+  private static String path = "./target/test-zk-summary";
+  private static MiniCluster miniCluster;
+
+  @BeforeClass
+  public static void startZooKeeper() throws IOException {
+    new File(path).mkdirs();
+    miniCluster = new MiniCluster();
+    miniCluster.startZooKeeper(path, true);
+  }
+
+  @AfterClass
+  public static void stopZooKeeper() throws InterruptedException {
+    miniCluster.shutdownZooKeeper();
+  }
+
+  private ZooKeeper _shardZk;
+  private ZooKeeper _controllerZk;
+  private ShardSummaryPublisher _publisher;
+  private ShardSummaryCache _cache;
+
+  @Before
+  public void setup() throws IOException {
+    _shardZk = newZooKeeper();
+    _controllerZk = newZooKeeper();
+    _publisher = new ShardSummaryPublisher(_shardZk, CLUSTER, 60 * 60 * 1000);
+    _cache = new ShardSummaryCache(_controllerZk, 10000);
+  }
+
+  @After
+  public void teardown() throws Exception {
+    _publisher.remove(TABLE, "shard-0");
+    _publisher.remove(TABLE, "shard-1");
+    _publisher.close();
+    _shardZk.close();
+    _controllerZk.close();
+  }
+
+  @Test
+  public void testWideningIsSeenByTheNextQuery() {
+    _publisher.publish(TABLE, "shard-0", 1, newSummary(0L, 100L, "a"));
+    _publisher.publish(TABLE, "shard-1", 1, newSummary(0L, 100L, "b"));
+    assertEquals(set("shard-1"), getPrunedShards(new TermQuery(new Term("fam.col", "a"))));
+
+    // The new data of shard-1 matches, the controller already cached the old
+    // summary.
+    _publisher.publish(TABLE, "shard-1", 2, newSummary(0L, 100L, "a", "b"));
+    assertEquals(set(), getPrunedShards(new TermQuery(new Term("fam.col", "a"))));
+  }
+
+  @Test
+  public void testHeadroom() {
+    _publisher.publish(TABLE, "shard-0", 1, newSummary(0L, 800L, "a"));
+    _publisher.publish(TABLE, "shard-1", 1, newSummary(0L, 100L, "a"));
+    assertEquals(set("shard-1"), getPrunedShards(NumericRangeQuery.newLongRange("fam.long", 850L, null, true, true)));
+    assertEquals(set("shard-0", "shard-1"),
+        getPrunedShards(NumericRangeQuery.newLongRange("fam.long", 950L, null, true, true)));
+  }
+
+  @Test
+  public void testNarrowingIsDeferred() {
+    _publisher.publish(TABLE, "shard-0", 1, newSummary(0L, 100L, "a", "b"));
+    _publisher.publish(TABLE, "shard-1", 1, newSummary(0L, 100L, "c"));
+    assertEquals(set("shard-1"), getPrunedShards(new TermQuery(new Term("fam.col", "b"))));
+
+    _publisher.publish(TABLE, "shard-0", 2, newSummary(0L, 100L, "a"));
+    assertEquals(set("shard-1"), getPrunedShards(new TermQuery(new Term("fam.col", "b"))));
+
+    _publisher.publishPending();
+    assertEquals(set("shard-0", "shard-1"), getPrunedShards(new TermQuery(new Term("fam.col", "b"))));
+  }
+
+  @Test
+  public void testOlderVersionIsIgnored() {
+    _publisher.publish(TABLE, "shard-0", 2, newSummary(0L, 100L, "a"));
+    _publisher.publish(TABLE, "shard-1", 1, newSummary(0L, 100L, "c"));
+    _publisher.publish(TABLE, "shard-0", 1, newSummary(0L, 100L, "b"));
+    assertEquals(set("shard-0", "shard-1"), getPrunedShards(new TermQuery(new Term("fam.col", "b"))));
+  }
+
+  private Set<String> getPrunedShards(Query query) {
+    List<Query> queries = Arrays.asList(query);
+    return _cache.getPrunedShards(CLUSTER, TABLE, queries);
+  }
+
+  private static Set<String> set(String... shards) {
+    return new TreeSet<String>(Arrays.asList(shards));
+  }
+
+  private static ShardSummary newSummary(long min, long max, String... terms) {
+    ShardSummary summary = new ShardSummary();
+    summary.setRange("fam.long", min, max);
+    BloomFilter bloomFilter = BloomFilter.create(100);
+    for (String term : terms) {
+      bloomFilter.add(new BytesRef(term));
+    }
+    summary.setBloomFilter("fam.col", bloomFilter);
+    return summary;
+  }
+
+  private static ZooKeeper newZooKeeper() throws IOException {
+    return new ZooKeeperClient(miniCluster.getZkConnectionString(), 20000, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+
+      }
+    });
+  }
+}
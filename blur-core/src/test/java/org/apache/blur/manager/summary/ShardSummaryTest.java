@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+public class ShardSummaryTest {
+
+  @Test
+  public void testNumericRange() {
+    ShardSummary summary = new ShardSummary();
+    summary.setRange("fam.long", 10L, 20L);
+    summary.setRange("fam.int", 10L, 20L);
+
+    assertTrue(summary.canMatch(NumericRangeQuery.newLongRange("fam.long", 15L, 30L, true, true)));
+    assertTrue(summary.canMatch(NumericRangeQuery.newLongRange("fam.long", 20L, 30L, true, true)));
+    assertFalse(summary.canMatch(NumericRangeQuery.newLongRange("fam.long", 20L, 30L, false, true)));
+    assertFalse(summary.canMatch(NumericRangeQuery.newLongRange("fam.long", 21L, null, true, true)));
+    assertFalse(summary.canMatch(NumericRangeQuery.newLongRange("fam.long", null, 9L, true, true)));
+    assertTrue(summary.canMatch(NumericRangeQuery.newIntRange("fam.int", 0, 10, true, true)));
+    assertFalse(summary.canMatch(NumericRangeQuery.newIntRange("fam.int", 0, 10, true, false)));
+    assertTrue(summary.canMatch(NumericRangeQuery.newIntRange("fam.other", 0, 10, true, true)));
+  }
+
+  @Test
+  public void testTerm() {
+    ShardSummary summary = new ShardSummary();
+    summary.setBloomFilter("fam.col", newBloomFilter("a", "b"));
+
+    assertTrue(summary.canMatch(new TermQuery(new Term("fam.col", "a"))));
+    assertFalse(summary.canMatch(new TermQuery(new Term("fam.col", "c"))));
+    assertTrue(summary.canMatch(new TermQuery(new Term("fam.other", "c"))));
+  }
+
+  @Test
+  public void testBoolean() {
+    ShardSummary summary = new ShardSummary();
+    summary.setBloomFilter("fam.col", newBloomFilter("a", "b"));
+    summary.setRange("fam.long", 10L, 20L);
+
+    BooleanQuery must = new BooleanQuery();
+    must.add(new TermQuery(new Term("fam.col", "a")), Occur.MUST);
+    must.add(NumericRangeQuery.newLongRange("fam.long", 30L, 40L, true, true), Occur.MUST);
+    assertFalse(summary.canMatch(must));
+
+    BooleanQuery should = new BooleanQuery();
+    should.add(new TermQuery(new Term("fam.col", "c")), Occur.SHOULD);
+    should.add(NumericRangeQuery.newLongRange("fam.long", 30L, 40L, true, true), Occur.SHOULD);
+    assertFalse(summary.canMatch(should));
+    should.add(new TermQuery(new Term("fam.col", "b")), Occur.SHOULD);
+    assertTrue(summary.canMatch(should));
+
+    BooleanQuery mustNot = new BooleanQuery();
+    mustNot.add(new TermQuery(new Term("fam.col", "a")), Occur.MUST);
+    mustNot.add(new TermQuery(new Term("fam.col", "c")), Occur.MUST_NOT);
+    assertTrue(summary.canMatch(mustNot));
+  }
+
+  @Test
+  public void testMerge() {
+    ShardSummary summary1 = new ShardSummary();
+    summary1.setRange("fam.long", 10L, 20L);
+    summary1.setBloomFilter("fam.col", newBloomFilter("a"));
+    summary1.setRange("fam.big", 0L, 1L);
+    ShardSummary summary2 = new ShardSummary();
+    summary2.setRange("fam.long", 5L, 15L);
+    summary2.setBloomFilter("fam.col", newBloomFilter("b"));
+    summary2.addUnsummarized("fam.big");
+
+    ShardSummary merged = ShardSummary.merge(Arrays.asList(summary1, summary2));
+    assertEquals(5L, merged.getRange("fam.long")[0]);
+    assertEquals(20L, merged.getRange("fam.long")[1]);
+    assertTrue(merged.canMatch(new TermQuery(new Term("fam.col", "a"))));
+    assertTrue(merged.canMatch(new TermQuery(new Term("fam.col", "b"))));
+    assertNull(merged.getRange("fam.big"));
+    assertTrue(merged.canMatch(NumericRangeQuery.newLongRange("fam.big", 5L, 6L, true, true)));
+  }
+
+  @Test
+  public void testToBytesFromBytes() throws IOException {
+    ShardSummary summary = new ShardSummary();
+    summary.setRange("fam.long", 10L, 20L);
+    summary.setBloomFilter("fam.col", newBloomFilter("a"));
+
+    ShardSummary read = ShardSummary.fromBytes(summary.toBytes());
+    assertEquals(10L, read.getRange("fam.long")[0]);
+    assertEquals(20L, read.getRange("fam.long")[1]);
+    assertTrue(read.canMatch(new TermQuery(new Term("fam.col", "a"))));
+    assertFalse(read.canMatch(new TermQuery(new Term("fam.col", "b"))));
+
+    ShardSummary withoutBloomFilters = ShardSummary.fromBytes(summary.withoutBloomFilters().toBytes());
+    assertNull(withoutBloomFilters.getBloomFilter("fam.col"));
+    assertTrue(withoutBloomFilters.canMatch(new TermQuery(new Term("fam.col", "b"))));
+    assertEquals(10L, withoutBloomFilters.getRange("fam.long")[0]);
+  }
+
+  @Test
+  public void testCovers() {
+    ShardSummary published = new ShardSummary();
+    published.setRange("fam.long", 10L, 20L);
+    published.setBloomFilter("fam.col", newBloomFilter("a", "b"));
+
+    ShardSummary narrower = new ShardSummary();
+    narrower.setRange("fam.long", 12L, 20L);
+    narrower.setBloomFilter("fam.col", newBloomFilter("a"));
+    assertTrue(published.covers(narrower));
+    assertFalse(narrower.covers(published));
+
+    ShardSummary wider = new ShardSummary();
+    wider.setRange("fam.long", 10L, 21L);
+    wider.setBloomFilter("fam.col", newBloomFilter("a"));
+    assertFalse(published.covers(wider));
+
+    ShardSummary newTerm = new ShardSummary();
+    newTerm.setRange("fam.long", 10L, 20L);
+    newTerm.setBloomFilter("fam.col", newBloomFilter("a", "c"));
+    assertFalse(published.covers(newTerm));
+
+    ShardSummary unsummarized = new ShardSummary();
+    unsummarized.setBloomFilter("fam.col", newBloomFilter("a"));
+    assertFalse(published.covers(unsummarized));
+    assertTrue(unsummarized.covers(narrower));
+  }
+
+  @Test
+  public void testWithHeadroom() {
+    ShardSummary summary = new ShardSummary();
+    summary.setRange("fam.long", 800L, 1600L);
+    summary.setRange("fam.point", 5L, 5L);
+    summary.setRange("fam.all", Long.MIN_VALUE, Long.MAX_VALUE);
+
+    ShardSummary withHeadroom = summary.withHeadroom();
+    assertEquals(700L, withHeadroom.getRange("fam.long")[0]);
+    assertEquals(1700L, withHeadroom.getRange("fam.long")[1]);
+    assertEquals(4L, withHeadroom.getRange("fam.point")[0]);
+    assertEquals(6L, withHeadroom.getRange("fam.point")[1]);
+    assertEquals(Long.MIN_VALUE, withHeadroom.getRange("fam.all")[0]);
+    assertEquals(Long.MAX_VALUE, withHeadroom.getRange("fam.all")[1]);
+    assertTrue(withHeadroom.covers(summary));
+
+    ShardSummary grown = new ShardSummary();
+    grown.setRange("fam.long", 800L, 1650L);
+    grown.setRange("fam.point", 5L, 5L);
+    grown.setRange("fam.all", 0L, 1L);
+    assertTrue(withHeadroom.covers(grown));
+  }
+
+  private static BloomFilter newBloomFilter(String... terms) {
+    BloomFilter bloomFilter = BloomFilter.create(100);
+    for (String term : terms) {
+      bloomFilter.add(new BytesRef(term));
+    }
+    return bloomFilter;
+  }
+}
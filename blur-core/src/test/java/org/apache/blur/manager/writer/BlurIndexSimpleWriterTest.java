@@ -18,19 +18,26 @@ package org.apache.blur.manager.writer;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Timer;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.blur.BlurConfiguration;
 import org.apache.blur.concurrent.Executors;
@@ -53,10 +60,12 @@ import org.apache.blur.trace.TraceCollector;
 import org.apache.blur.trace.TraceStorage;
 import org.apache.blur.utils.BlurConstants;
 import org.apache.blur.utils.BlurUtil;
+import org.apache.blur.utils.ShardUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -82,12 +91,16 @@ public class BlurIndexSimpleWriterTest {
   private Timer _indexImporterTimer;
   private Timer _bulkTimer;
   private Timer _idleWriterTimer;
+  private Map<String, String> _tableProperties;
+  private String _shard;
 
   @Before
   public void setup() throws IOException {
     _indexImporterTimer = new Timer("Index Importer", true);
     _bulkTimer = new Timer("Bulk Indexing", true);
     _idleWriterTimer = new Timer("Idle Writer", true);
+    _tableProperties = new HashMap<String, String>();
+    _shard = null;
     TableContext.clear();
     _base = new File(TMPDIR, "blur-index-writer-test");
     rmr(_base);
@@ -116,6 +129,7 @@ public class BlurIndexSimpleWriterTest {
     tableProperties.put(BlurConstants.BLUR_SHARD_QUEUE_MAX_QUEUE_BATCH_SIZE, "500");
     tableProperties.put(BlurConstants.BLUR_SHARD_QUEUE_MAX_WRITER_LOCK_TIME, "1000");
     tableProperties.put(BlurConstants.BLUR_SHARD_QUEUE_MAX_INMEMORY_LENGTH, "1000");
+    tableProperties.putAll(_tableProperties);
 
     tableDescriptor.setTableProperties(tableProperties);
     TableContext tableContext = TableContext.create(tableDescriptor);
@@ -127,7 +141,7 @@ public class BlurIndexSimpleWriterTest {
     BlurLockFactory lockFactory = new BlurLockFactory(_configuration, hdfsPath, "unit-test", BlurUtil.getPid());
     directory.setLockFactory(lockFactory);
 
-    ShardContext shardContext = ShardContext.create(tableContext, "test-shard-" + uuid);
+    ShardContext shardContext = ShardContext.create(tableContext, _shard == null ? "test-shard-" + uuid : _shard);
     _writer = new BlurIndexSimpleWriter(new BlurIndexConfig(shardContext, directory, _mergeScheduler, _service, _closer,
         _indexImporterTimer, _bulkTimer, null, _idleWriterTimer, TimeUnit.SECONDS.toMillis(5)));
   }
@@ -283,6 +297,109 @@ public class BlurIndexSimpleWriterTest {
     return row;
   }
 
+  @Test
+  public void testWritesSeeLastCommit() throws Exception {
+    setupWriter(_configuration);
+    final AtomicInteger committed = new AtomicInteger();
+    final AtomicBoolean stale = new AtomicBoolean();
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(_service.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int i = 0; i < 25; i++) {
+            final MutatableAction action = new MutatableAction(_writer.getShardContext());
+            action.replaceRow(genRow());
+            _writer.process(new IndexAction() {
+              @Override
+              public void performMutate(IndexSearcherCloseable searcher, IndexWriter writer) throws IOException {
+                // Readers are published after the write lock is released, the
+                // next write still has to read the rows of every commit.
+                if (searcher.getIndexReader().numDocs() != committed.get()) {
+                  stale.set(true);
+                }
+                action.performMutate(searcher, writer);
+              }
+
+              @Override
+              public void doPreCommit(IndexSearcherCloseable indexSearcher, IndexWriter writer) throws IOException {
+
+              }
+
+              @Override
+              public void doPostCommit(IndexWriter writer) throws IOException {
+                committed.incrementAndGet();
+              }
+
+              @Override
+              public void doPreRollback(IndexWriter writer) throws IOException {
+
+              }
+
+              @Override
+              public void doPostRollback(IndexWriter writer) throws IOException {
+
+              }
+            });
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    assertFalse(stale.get());
+    IndexSearcherCloseable searcher = _writer.getIndexSearcher();
+    assertEquals(100, searcher.getIndexReader().numDocs());
+    searcher.close();
+  }
+
+  @Test
+  public void testBulkSideIndexKeepsConcurrentWrites() throws IOException {
+    _tableProperties.put(BlurConstants.BLUR_SHARD_BULK_MUTATE_SIDE_INDEX, "true");
+    // The import of the side index checks the rows against the shard index.
+    _shard = ShardUtil.getShardName(0);
+    setupWriter(_configuration);
+    final String rowId = "row";
+    MutatableAction action = new MutatableAction(_writer.getShardContext());
+    action.mutate(genRecordMutation(rowId, "base"));
+    _writer.process(action);
+
+    _writer.addBulkMutate("bulk", genRecordMutation(rowId, "bulk"));
+    _writer.getIndexImporter().setTestError(new Runnable() {
+      @Override
+      public void run() {
+        // Written after the side index was built from the old row.
+        MutatableAction action = new MutatableAction(_writer.getShardContext());
+        action.mutate(genRecordMutation(rowId, "interactive"));
+        try {
+          _writer.process(action);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    _writer.finishBulkMutate("bulk", true, true);
+
+    IndexSearcherCloseable searcher = _writer.getIndexSearcher();
+    assertEquals(3, searcher.getIndexReader().numDocs());
+    searcher.close();
+  }
+
+  private RowMutation genRecordMutation(String rowId, String recordId) {
+    Record record = new Record();
+    record.setFamily("testing");
+    record.setRecordId(recordId);
+    record.addToColumns(new Column("col0", recordId));
+    RowMutation rowMutation = new RowMutation();
+    rowMutation.setRowId(rowId);
+    rowMutation.setTable(TEST_TABLE);
+    rowMutation.setRowMutationType(RowMutationType.UPDATE_ROW);
+    rowMutation.addToRecordMutations(new RecordMutation(RecordMutationType.REPLACE_ENTIRE_RECORD, record));
+    return rowMutation;
+  }
+
   @Test
   public void testCreateSnapshot() throws IOException {
     setupWriter(_configuration);
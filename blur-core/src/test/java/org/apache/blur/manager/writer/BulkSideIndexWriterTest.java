@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.blur.utils.BlurConstants;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkSideIndexWriterTest {
+
+  private RAMDirectory _directory;
+  private BulkSideIndexWriter _writer;
+
+  @Before
+  public void setup() throws IOException {
+    _directory = new RAMDirectory();
+    _writer = new BulkSideIndexWriter(_directory, new IndexWriterConfig(Version.LUCENE_43, new KeywordAnalyzer()));
+  }
+
+  @Test
+  public void testUpdateMarksFirstDocument() throws IOException {
+    List<List<Field>> docs = new ArrayList<List<Field>>();
+    docs.add(getDoc("row1", "record1"));
+    docs.add(getDoc("row1", "record2"));
+    _writer.updateDocuments(new Term(BlurConstants.ROW_ID, "row1"), docs);
+    _writer.commitInternal();
+    _writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(_directory);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    assertEquals(2, reader.numDocs());
+    assertEquals(1, searcher.search(new TermQuery(new Term(BlurConstants.UPDATE_ROW, "row1")), 10).totalHits);
+    assertEquals(0, searcher.search(new TermQuery(new Term(BlurConstants.DELETE_MARKER,
+        BlurConstants.DELETE_MARKER_VALUE)), 10).totalHits);
+    assertEquals(BlurConstants.INTERNAL, reader.getIndexCommit().getUserData().get(BlurConstants.INTERNAL));
+    reader.close();
+  }
+
+  @Test
+  public void testDeleteWritesMarker() throws IOException {
+    _writer.deleteDocuments(new Term(BlurConstants.ROW_ID, "row1"));
+    _writer.commitInternal();
+    _writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(_directory);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    assertEquals(1, reader.numDocs());
+    assertEquals(1, searcher.search(new TermQuery(new Term(BlurConstants.ROW_ID, "row1")), 10).totalHits);
+    assertEquals(1, searcher.search(new TermQuery(new Term(BlurConstants.UPDATE_ROW, "row1")), 10).totalHits);
+    assertEquals(1, searcher.search(new TermQuery(new Term(BlurConstants.DELETE_MARKER,
+        BlurConstants.DELETE_MARKER_VALUE)), 10).totalHits);
+    reader.close();
+  }
+
+  @Test
+  public void testNonRowIdDeleteNotSupported() throws IOException {
+    try {
+      _writer.deleteDocuments(new Term(BlurConstants.RECORD_ID, "record1"));
+      fail();
+    } catch (IOException e) {
+      // expected
+    } finally {
+      _writer.close();
+    }
+  }
+
+  private List<Field> getDoc(String rowId, String recordId) {
+    List<Field> fields = new ArrayList<Field>();
+    fields.add(new StringField(BlurConstants.ROW_ID, rowId, Store.YES));
+    fields.add(new StringField(BlurConstants.RECORD_ID, recordId, Store.YES));
+    return fields;
+  }
+}
@@ -0,0 +1,191 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.blur.MiniCluster;
+import org.apache.blur.utils.BlurUtil;
+import org.apache.blur.zookeeper.ZooKeeperClient;
+import org.apache.blur.zookeeper.ZookeeperPathConstants;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class IndexImportNotifierTest {
+
+  private static final String CLUSTER = "default";
+  private static final String TABLE = "test-table";
+  private static String path = "./target/test-zk-import-notifier";
+  private static MiniCluster miniCluster;
+
+  @BeforeClass
+  public static void startZooKeeper() throws IOException {
+    new File(path).mkdirs();
+    miniCluster = new MiniCluster();
+    miniCluster.startZooKeeper(path, true);
+  }
+
+  @AfterClass
+  public static void stopZooKeeper() throws InterruptedException {
+    miniCluster.shutdownZooKeeper();
+  }
+
+  private ZooKeeper _zooKeeper;
+  private IndexImportNotifier _notifier;
+  private final List<String> _handled = new ArrayList<String>();
+  private final AtomicBoolean _served = new AtomicBoolean();
+
+  @Before
+  public void setup() throws IOException, KeeperException, InterruptedException {
+    _zooKeeper = new ZooKeeperClient(miniCluster.getZkConnectionString(), 20000, new Watcher() {
+      @Override
+      public void process(WatchedEvent event) {
+
+      }
+    });
+    BlurUtil.setupZookeeper(_zooKeeper, CLUSTER);
+    for (String child : getChildren()) {
+      _zooKeeper.delete(ZookeeperPathConstants.getImportPath(CLUSTER) + "/" + child, -1);
+    }
+    _handled.clear();
+    _served.set(false);
+  }
+
+  @After
+  public void teardown() throws InterruptedException {
+    if (_notifier != null) {
+      _notifier.close();
+    }
+    _zooKeeper.close();
+  }
+
+  @Test
+  public void testHandledNotificationIsRemoved() throws Exception {
+    _notifier = newNotifier(60000, 60000);
+    _served.set(true);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-0");
+    _notifier.process(getChildren());
+    assertEquals(list(TABLE + "/shard-0"), _handled);
+    assertEquals(0, getChildren().size());
+    assertEquals(0, _notifier.getPendingCount());
+  }
+
+  @Test
+  public void testPendingNotificationIsReadOnce() throws Exception {
+    _notifier = newNotifier(60000, 60000);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-0");
+    List<String> children = getChildren();
+    _notifier.process(children);
+    assertEquals(1, _notifier.getPendingCount());
+
+    // The node is not read again, the pending notification is used.
+    String child = ZookeeperPathConstants.getImportPath(CLUSTER) + "/" + children.get(0);
+    _zooKeeper.setData(child, (TABLE + "/shard-1").getBytes("UTF-8"), -1);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-2");
+    _notifier.process(getChildren());
+    assertEquals(list(TABLE + "/shard-0", TABLE + "/shard-0", TABLE + "/shard-2"), _handled);
+    assertEquals(2, _notifier.getPendingCount());
+    assertEquals(2, getChildren().size());
+  }
+
+  @Test
+  public void testRemovedNotificationIsNoLongerPending() throws Exception {
+    _notifier = newNotifier(60000, 60000);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-0");
+    _notifier.process(getChildren());
+    assertEquals(1, _notifier.getPendingCount());
+
+    List<String> children = new ArrayList<String>();
+    _notifier.process(children);
+    assertEquals(0, _notifier.getPendingCount());
+  }
+
+  @Test
+  public void testPendingNotificationIsRetried() throws Exception {
+    _notifier = newNotifier(60000, 50);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-0");
+    _notifier.process(getChildren());
+    assertEquals(1, _notifier.getPendingCount());
+
+    // The shard is opened on this server without any change to the
+    // notifications.
+    _served.set(true);
+    waitForNoChildren();
+    assertEquals(0, _notifier.getPendingCount());
+  }
+
+  @Test
+  public void testPendingNotificationExpires() throws Exception {
+    _notifier = newNotifier(500, 50);
+    IndexImportNotifier.notifyImport(_zooKeeper, CLUSTER, TABLE, "shard-0");
+    _notifier.process(getChildren());
+    assertEquals(1, _notifier.getPendingCount());
+
+    waitForNoChildren();
+    assertEquals(0, _notifier.getPendingCount());
+    assertTrue(_handled.size() > 1);
+  }
+
+  private IndexImportNotifier newNotifier(long maxNotificationAge, long retryInterval) {
+    return new IndexImportNotifier(_zooKeeper, CLUSTER, new IndexImportNotifier.Handler() {
+      @Override
+      public boolean handle(String table, String shard) {
+        synchronized (_handled) {
+          _handled.add(table + "/" + shard);
+        }
+        return _served.get();
+      }
+    }, maxNotificationAge, retryInterval);
+  }
+
+  private void waitForNoChildren() throws Exception {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!getChildren().isEmpty()) {
+      assertTrue("Notification was not removed.", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private List<String> getChildren() throws KeeperException, InterruptedException {
+    List<String> children = _zooKeeper.getChildren(ZookeeperPathConstants.getImportPath(CLUSTER), false);
+    Collections.sort(children);
+    return children;
+  }
+
+  private static List<String> list(String... values) {
+    List<String> list = new ArrayList<String>();
+    for (String value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,198 @@
+package org.apache.blur.manager.writer;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.blur.server.ShardContext;
+import org.apache.blur.server.TableContext;
+import org.apache.blur.store.hdfs.HdfsDirectory;
+import org.apache.blur.thrift.generated.TableDescriptor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexImportSchedulerTest {
+
+  private static final Path TMPDIR = new Path("target/tmp");
+  private static final String TABLE = "test-table";
+
+  private Configuration _configuration;
+  private Path _tablePath;
+  private Timer _timer;
+  private IndexImportScheduler _scheduler;
+  private final List<TestImporter> _importers = new ArrayList<TestImporter>();
+
+  @Before
+  public void setup() throws IOException {
+    TableContext.clear();
+    _timer = new Timer("Index Importer", true);
+    _configuration = new Configuration();
+    _tablePath = new Path(TMPDIR, "blur-index-import-scheduler-test");
+    FileSystem fileSystem = _tablePath.getFileSystem(_configuration);
+    fileSystem.delete(_tablePath, true);
+    fileSystem.mkdirs(_tablePath);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    for (TestImporter importer : _importers) {
+      importer.close();
+    }
+    _importers.clear();
+    if (_scheduler != null) {
+      _scheduler.close();
+    }
+    _timer.cancel();
+  }
+
+  @Test
+  public void testRequestImportOnlyForRegisteredShards() throws Exception {
+    _scheduler = new IndexImportScheduler(1);
+    TestImporter importer = newImporter("shard-00000000", new CountDownLatch(0));
+    assertTrue(_scheduler.requestImport(TABLE, "shard-00000000"));
+    assertFalse(_scheduler.requestImport(TABLE, "shard-00000001"));
+    importer.waitForRuns(1);
+
+    importer.close();
+    assertFalse(_scheduler.requestImport(TABLE, "shard-00000000"));
+  }
+
+  @Test
+  public void testImportsForOneShardAreNotConcurrent() throws Exception {
+    _scheduler = new IndexImportScheduler(4);
+    CountDownLatch release = new CountDownLatch(1);
+    TestImporter importer = newImporter("shard-00000000", release);
+    _scheduler.schedule(importer);
+    importer.waitForRuns(0);
+    for (int i = 0; i < 100; i++) {
+      _scheduler.schedule(importer);
+    }
+    release.countDown();
+    // All the requests that arrived while the import was running are
+    // collapsed into a single re-run.
+    importer.waitForRuns(2);
+    Thread.sleep(100);
+    assertEquals(2, importer._runs.get());
+    assertEquals(1, importer._maxRunning.get());
+  }
+
+  @Test
+  public void testImportsAreBoundedByThreadCount() throws Exception {
+    _scheduler = new IndexImportScheduler(2);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    for (int i = 0; i < 5; i++) {
+      TestImporter importer = newImporter("shard-0000000" + i, release);
+      importer._sharedRunning = running;
+      importer._sharedMaxRunning = maxRunning;
+      _scheduler.schedule(importer);
+    }
+    long deadline = System.currentTimeMillis() + 10000;
+    while (running.get() < 2) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(2, maxRunning.get());
+    release.countDown();
+    for (TestImporter importer : _importers) {
+      importer.waitForRuns(1);
+    }
+    assertEquals(2, maxRunning.get());
+  }
+
+  private TestImporter newImporter(String shard, CountDownLatch release) throws IOException {
+    TableDescriptor tableDescriptor = new TableDescriptor();
+    tableDescriptor.setName(TABLE);
+    tableDescriptor.setTableUri(_tablePath.toUri().toString());
+    tableDescriptor.setShardCount(5);
+    ShardContext shardContext = ShardContext.create(TableContext.create(tableDescriptor), shard);
+    HdfsDirectory directory = new HdfsDirectory(_configuration, new Path(_tablePath, shard));
+    TestImporter importer = new TestImporter(_timer, _scheduler, shardContext, directory, release);
+    _importers.add(importer);
+    return importer;
+  }
+
+  private static class TestImporter extends IndexImporter {
+
+    private final CountDownLatch _release;
+    private final AtomicInteger _runs = new AtomicInteger();
+    private final AtomicInteger _started = new AtomicInteger();
+    private final AtomicInteger _running = new AtomicInteger();
+    private final AtomicInteger _maxRunning = new AtomicInteger();
+    private AtomicInteger _sharedRunning = new AtomicInteger();
+    private AtomicInteger _sharedMaxRunning = new AtomicInteger();
+
+    TestImporter(Timer timer, IndexImportScheduler scheduler, ShardContext shardContext, HdfsDirectory directory,
+        CountDownLatch release) throws IOException {
+      super(timer, scheduler, null, shardContext, TimeUnit.MINUTES, 10, 10, null, directory);
+      _release = release;
+    }
+
+    @Override
+    public void run() {
+      _started.incrementAndGet();
+      setMax(_maxRunning, _running.incrementAndGet());
+      setMax(_sharedMaxRunning, _sharedRunning.incrementAndGet());
+      try {
+        _release.await();
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        _sharedRunning.decrementAndGet();
+        _running.decrementAndGet();
+        _runs.incrementAndGet();
+      }
+    }
+
+    /**
+     * Waits until the given number of runs completed, 0 waits for the first
+     * run to start.
+     */
+    void waitForRuns(int runs) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (runs == 0 ? _started.get() == 0 : _runs.get() < runs) {
+        assertTrue("Import did not run.", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    }
+
+    private static void setMax(AtomicInteger max, int value) {
+      int current;
+      while ((current = max.get()) < value) {
+        if (max.compareAndSet(current, value)) {
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.Version;
+import org.junit.Test;
+
+public class ReopenWarmerTest {
+
+  @Test
+  public void testRecordIsBounded() {
+    ReopenWarmer warmer = new ReopenWarmer("table", 2, 1000);
+    warmer.record(new TermQuery(new Term("a", "1")), null);
+    warmer.record(new TermQuery(new Term("a", "2")), null);
+    warmer.record(new TermQuery(new Term("a", "1")), null);
+    warmer.record(new TermQuery(new Term("a", "3")), null);
+    List<ReopenWarmer.WarmupQuery> queries = warmer.getQueries();
+    assertEquals(2, queries.size());
+    assertEquals(new TermQuery(new Term("a", "1")), queries.get(0).getQuery());
+    assertEquals(new TermQuery(new Term("a", "3")), queries.get(1).getQuery());
+  }
+
+  @Test
+  public void testDisabled() {
+    ReopenWarmer warmer = new ReopenWarmer("table", 0, 1000);
+    assertFalse(warmer.isEnabled());
+    warmer.record(new TermQuery(new Term("a", "1")), null);
+    assertTrue(warmer.getQueries().isEmpty());
+  }
+
+  @Test
+  public void testWarmOnlyNewSegments() throws IOException {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_43, new KeywordAnalyzer());
+    conf.setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+    IndexWriter writer = new IndexWriter(directory, conf);
+    addDoc(writer, "1");
+    writer.commit();
+    DirectoryReader oldReader = DirectoryReader.open(directory);
+
+    addDoc(writer, "2");
+    writer.commit();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(oldReader);
+    assertEquals(2, newReader.leaves().size());
+
+    final List<Object> warmed = new ArrayList<Object>();
+    Filter filter = new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        warmed.add(context.reader().getCoreCacheKey());
+        return null;
+      }
+    };
+    ReopenWarmer warmer = new ReopenWarmer("table", 10, 10000);
+    warmer.record(new ConstantScoreQuery(filter), null);
+    assertEquals(1, warmer.warm(oldReader, newReader, new DefaultSimilarity(), "shard"));
+    assertEquals(1, warmed.size());
+    assertEquals(newReader.leaves().get(1).reader().getCoreCacheKey(), warmed.get(0));
+
+    oldReader.close();
+    newReader.close();
+    writer.close();
+  }
+
+  private void addDoc(IndexWriter writer, String id) throws IOException {
+    Document document = new Document();
+    document.add(new StringField("id", id, Store.YES));
+    writer.addDocument(document);
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.manager.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.blur.manager.writer.SharedMergeScheduler.MergeQueue;
+import org.apache.blur.manager.writer.SharedMergeScheduler.MergeWork;
+import org.junit.Test;
+
+public class SharedMergeSchedulerTest {
+
+  @Test
+  public void testRoundRobinAcrossTablesAndShards() throws InterruptedException {
+    MergeQueue queue = new MergeQueue();
+    queue.add(new MergeWork("1", "table1", "shard1", 10));
+    queue.add(new MergeWork("1", "table1", "shard1", 5));
+    queue.add(new MergeWork("1", "table1", "shard1", 20));
+    queue.add(new MergeWork("2", "table1", "shard2", 100));
+    queue.add(new MergeWork("3", "table2", "shard1", 50));
+
+    assertEquals(5, queue.size());
+    assertEquals(185L, queue.getSizeInBytes());
+
+    assertMerge(queue.take(), "table1", "shard1", 5);
+    assertMerge(queue.take(), "table2", "shard1", 50);
+    assertMerge(queue.take(), "table1", "shard2", 100);
+    assertMerge(queue.take(), "table1", "shard1", 10);
+    assertMerge(queue.take(), "table1", "shard1", 20);
+
+    assertEquals(0, queue.size());
+    assertEquals(0L, queue.getSizeInBytes());
+  }
+
+  @Test
+  public void testRemove() throws InterruptedException {
+    MergeQueue queue = new MergeQueue();
+    queue.add(new MergeWork("1", "table1", "shard1", 10));
+    queue.add(new MergeWork("1", "table1", "shard1", 5));
+    queue.add(new MergeWork("2", "table1", "shard2", 100));
+
+    queue.remove("1");
+
+    assertEquals(1, queue.size());
+    assertEquals(100L, queue.getSizeInBytes());
+    assertMerge(queue.take(), "table1", "shard2", 100);
+  }
+
+  private void assertMerge(MergeWork mergeWork, String table, String shard, long size) {
+    assertEquals(table, mergeWork.getTable());
+    assertEquals(shard, mergeWork.getShard());
+    assertEquals(size, mergeWork.getSize());
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.Column;
+import org.apache.blur.thrift.generated.FetchResult;
+import org.apache.blur.thrift.generated.FetchRowResult;
+import org.apache.blur.thrift.generated.Record;
+import org.apache.blur.thrift.generated.Row;
+import org.apache.blur.thrift.generated.Selector;
+import org.junit.Test;
+
+public class RowCacheTest {
+
+  @Test
+  public void testPutAndGet() throws BlurException {
+    RowCache rowCache = new RowCache(100000);
+    assertNull(rowCache.get("t", "shard-0", "row-1"));
+    Row row = newRow();
+    assertTrue(rowCache.put("t", "shard-0", row, rowCache.getGeneration("t", "shard-0")));
+    Row cached = rowCache.get("t", "shard-0", "row-1");
+    assertFalse(row == cached);
+    assertEquals(row, cached);
+    assertNull(rowCache.get("t", "shard-1", "row-1"));
+    assertEquals(1.0 / 3.0, rowCache.getHitRatio("t"), 0.0001);
+  }
+
+  @Test
+  public void testInvalidateRow() throws BlurException {
+    RowCache rowCache = new RowCache(100000);
+    rowCache.put("t", "shard-0", newRow(), rowCache.getGeneration("t", "shard-0"));
+    rowCache.put("t", "shard-0", newRow("row-2"), rowCache.getGeneration("t", "shard-0"));
+    rowCache.invalidate("t", "shard-0", Arrays.asList("row-1"));
+    assertNull(rowCache.get("t", "shard-0", "row-1"));
+    assertEquals("row-2", rowCache.get("t", "shard-0", "row-2").getId());
+  }
+
+  @Test
+  public void testInvalidateShard() throws BlurException {
+    RowCache rowCache = new RowCache(100000);
+    rowCache.put("t", "shard-0", newRow(), rowCache.getGeneration("t", "shard-0"));
+    rowCache.put("t", "shard-1", newRow(), rowCache.getGeneration("t", "shard-1"));
+    rowCache.invalidate("t", "shard-0");
+    assertNull(rowCache.get("t", "shard-0", "row-1"));
+    assertEquals("row-1", rowCache.get("t", "shard-1", "row-1").getId());
+
+    // Rows of the shard are cached again after the invalidation.
+    assertTrue(rowCache.put("t", "shard-0", newRow(), rowCache.getGeneration("t", "shard-0")));
+    assertEquals("row-1", rowCache.get("t", "shard-0", "row-1").getId());
+    rowCache.invalidate("t", "shard-0", Arrays.asList("row-1"));
+    assertNull(rowCache.get("t", "shard-0", "row-1"));
+  }
+
+  @Test
+  public void testStalePutIsDropped() throws BlurException {
+    RowCache rowCache = new RowCache(100000);
+    long generation = rowCache.getGeneration("t", "shard-0");
+    rowCache.invalidate("t", "shard-0", Arrays.asList("row-1"));
+    assertFalse(rowCache.put("t", "shard-0", newRow(), generation));
+    assertNull(rowCache.get("t", "shard-0", "row-1"));
+  }
+
+  @Test
+  public void testEmptyInvalidateKeepsGeneration() throws BlurException {
+    RowCache rowCache = new RowCache(100000);
+    long generation = rowCache.getGeneration("t", "shard-0");
+    rowCache.invalidate("t", "shard-0", new HashSet<String>());
+    assertTrue(rowCache.put("t", "shard-0", newRow(), generation));
+  }
+
+  @Test
+  public void testFetchWholeRow() {
+    FetchResult fetchResult = new FetchResult();
+    RowCache.fetch("t", newRow(), new Selector().setRowId("row-1"), fetchResult);
+    assertTrue(fetchResult.isExists());
+    assertEquals("t", fetchResult.getTable());
+    FetchRowResult rowResult = fetchResult.getRowResult();
+    assertEquals(newRow(), rowResult.getRow());
+    assertEquals(3, rowResult.getTotalRecords());
+    assertFalse(rowResult.isMoreRecordsToFetch());
+  }
+
+  @Test
+  public void testFetchPaging() {
+    FetchResult fetchResult = new FetchResult();
+    Selector selector = new Selector().setRowId("row-1").setStartRecord(1).setMaxRecordsToFetch(1);
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    FetchRowResult rowResult = fetchResult.getRowResult();
+    assertEquals(1, rowResult.getRow().getRecordsSize());
+    assertEquals("record-2", rowResult.getRow().getRecords().get(0).getRecordId());
+    assertEquals(3, rowResult.getTotalRecords());
+    assertTrue(rowResult.isMoreRecordsToFetch());
+
+    fetchResult = new FetchResult();
+    selector = new Selector().setRowId("row-1").setStartRecord(5).setMaxRecordsToFetch(1);
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    assertNull(fetchResult.getRowResult().getRow().getRecords());
+    assertFalse(fetchResult.getRowResult().isMoreRecordsToFetch());
+  }
+
+  @Test
+  public void testFetchFamiliesAndColumns() {
+    Selector selector = new Selector().setRowId("row-1");
+    Map<String, Set<String>> columnsToFetch = new HashMap<String, Set<String>>();
+    columnsToFetch.put("fam1", new HashSet<String>(Arrays.asList("b")));
+    selector.setColumnsToFetch(columnsToFetch);
+    selector.setColumnFamiliesToFetch(new HashSet<String>(Arrays.asList("fam2")));
+    FetchResult fetchResult = new FetchResult();
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    Row row = fetchResult.getRowResult().getRow();
+    assertEquals(3, fetchResult.getRowResult().getTotalRecords());
+    assertEquals(3, row.getRecordsSize());
+    assertEquals(Arrays.asList(new Column("b", "2")), row.getRecords().get(0).getColumns());
+    assertEquals(Arrays.asList(new Column("b", "4")), row.getRecords().get(1).getColumns());
+    assertEquals(Arrays.asList(new Column("c", "5")), row.getRecords().get(2).getColumns());
+
+    selector.setColumnsToFetch(null);
+    fetchResult = new FetchResult();
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    assertEquals(1, fetchResult.getRowResult().getTotalRecords());
+    assertEquals("record-3", fetchResult.getRowResult().getRow().getRecords().get(0).getRecordId());
+  }
+
+  @Test
+  public void testFetchRecord() {
+    Selector selector = new Selector().setRowId("row-1").setRecordId("record-2").setRecordOnly(true);
+    FetchResult fetchResult = new FetchResult();
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    assertTrue(fetchResult.isExists());
+    assertEquals("row-1", fetchResult.getRecordResult().getRowid());
+    assertEquals(newRow().getRecords().get(1), fetchResult.getRecordResult().getRecord());
+
+    selector.setRecordId("record-4");
+    fetchResult = new FetchResult();
+    RowCache.fetch("t", newRow(), selector, fetchResult);
+    assertFalse(fetchResult.isExists());
+    assertFalse(fetchResult.isDeleted());
+  }
+
+  private static Row newRow() {
+    return newRow("row-1");
+  }
+
+  private static Row newRow(String rowId) {
+    Row row = new Row();
+    row.setId(rowId);
+    row.addToRecords(newRecord("record-1", "fam1", new Column("a", "1"), new Column("b", "2")));
+    row.addToRecords(newRecord("record-2", "fam1", new Column("a", "3"), new Column("b", "4")));
+    row.addToRecords(newRecord("record-3", "fam2", new Column("c", "5")));
+    return row;
+  }
+
+  private static Record newRecord(String recordId, String family, Column... columns) {
+    return new Record(recordId, family, Arrays.asList(columns));
+  }
+}
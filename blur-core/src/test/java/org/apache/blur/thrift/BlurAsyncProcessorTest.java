@@ -0,0 +1,140 @@
+package org.apache.blur.thrift;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.blur.server.AsyncResponse;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TBinaryProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TMemoryBuffer;
+import org.apache.blur.thrift.generated.Blur.Client;
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.BlurResults;
+import org.apache.blur.thrift.server.TAsyncProcessor.ResponseCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+public class BlurAsyncProcessorTest {
+
+  private SettableFuture<BlurResults> _future;
+  private BlurAsyncProcessor _processor;
+  private TMemoryBuffer _request;
+  private TMemoryBuffer _response;
+  private Client _client;
+  private AtomicInteger _ready;
+  private AtomicInteger _closed;
+  private ResponseCallback _callback;
+
+  @Before
+  public void setup() {
+    _future = SettableFuture.create();
+    Iface iface = (Iface) Proxy.newProxyInstance(Iface.class.getClassLoader(), new Class[] { Iface.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("query")) {
+              if (AsyncResponse.isDeferrable()) {
+                AsyncResponse.defer(_future);
+                return null;
+              }
+              return new BlurResults().setTotalResults(1);
+            }
+            if (method.getName().equals("tableList")) {
+              return Arrays.asList("table");
+            }
+            throw new RuntimeException("Not supported.");
+          }
+        });
+    _processor = new BlurAsyncProcessor(iface, new HashSet<String>(Arrays.asList("query")));
+    _request = new TMemoryBuffer(1024);
+    _response = new TMemoryBuffer(1024);
+    _client = new Client(new TBinaryProtocol(_response), new TBinaryProtocol(_request));
+    _ready = new AtomicInteger();
+    _closed = new AtomicInteger();
+    _callback = new ResponseCallback() {
+      @Override
+      public void responseReady() {
+        _ready.incrementAndGet();
+      }
+
+      @Override
+      public void close() {
+        _closed.incrementAndGet();
+      }
+    };
+  }
+
+  @Test
+  public void testDeferredResult() throws Exception {
+    _client.send_query("table", new BlurQuery());
+    assertFalse(process());
+    assertEquals(0, _ready.get());
+    assertEquals(0, _response.length());
+
+    _future.set(new BlurResults().setTotalResults(10));
+    assertEquals(1, _ready.get());
+    assertEquals(0, _closed.get());
+    assertEquals(10, _client.recv_query().getTotalResults());
+  }
+
+  @Test
+  public void testDeferredException() throws Exception {
+    _client.send_query("table", new BlurQuery());
+    assertFalse(process());
+
+    _future.setException(new BException("Query failed."));
+    assertEquals(1, _ready.get());
+    try {
+      _client.recv_query();
+      fail();
+    } catch (BlurException e) {
+      assertEquals("Query failed.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testSynchronousWithoutCallback() throws Exception {
+    _client.send_query("table", new BlurQuery());
+    assertTrue(_processor.process(new TBinaryProtocol(_request), new TBinaryProtocol(_response)));
+    assertEquals(1, _client.recv_query().getTotalResults());
+  }
+
+  @Test
+  public void testOtherMethodsAreSynchronous() throws Exception {
+    _client.send_tableList();
+    assertTrue(process());
+    assertEquals(Arrays.asList("table"), _client.recv_tableList());
+    assertEquals(0, _ready.get());
+  }
+
+  private boolean process() throws Exception {
+    return _processor.process(new TBinaryProtocol(_request), new TBinaryProtocol(_response), _callback);
+  }
+}
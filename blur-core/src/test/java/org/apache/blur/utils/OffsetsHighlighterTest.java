@@ -0,0 +1,140 @@
+package org.apache.blur.utils;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.blur.analysis.type.TextFieldTypeDefinition;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffsetsHighlighterTest {
+
+  private static final String FIELD = "fam.col";
+  private static final String NO_OFFSETS_FIELD = "fam.nooffsets";
+
+  private DirectoryReader _reader;
+
+  @Before
+  public void setup() throws IOException {
+    RAMDirectory directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(LUCENE_VERSION, new StandardAnalyzer(
+        LUCENE_VERSION)));
+    Document doc1 = new Document();
+    doc1.add(new Field(FIELD, "the quick brown fox jumps", TextFieldTypeDefinition.TYPE_STORED_WITH_OFFSETS));
+    doc1.add(new Field(NO_OFFSETS_FIELD, "the quick brown fox jumps", TextFieldTypeDefinition.TYPE_STORED));
+    writer.addDocument(doc1);
+
+    Document doc2 = new Document();
+    doc2.add(new Field(FIELD, "alpha beta", TextFieldTypeDefinition.TYPE_STORED_WITH_OFFSETS));
+    doc2.add(new Field(FIELD, "gamma beta delta", TextFieldTypeDefinition.TYPE_STORED_WITH_OFFSETS));
+    writer.addDocument(doc2);
+
+    Document doc3 = new Document();
+    doc3.add(new Field(FIELD, getLongText(), TextFieldTypeDefinition.TYPE_STORED_WITH_OFFSETS));
+    writer.addDocument(doc3);
+    writer.close();
+    _reader = DirectoryReader.open(directory);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    _reader.close();
+  }
+
+  @Test
+  public void testTermQuery() throws IOException {
+    OffsetsHighlighter highlighter = new OffsetsHighlighter(_reader, 0, "<b>", "</b>");
+    String[] fragments = highlighter.highlight(FIELD, new TermQuery(new Term(FIELD, "fox")),
+        "the quick brown fox jumps");
+    assertArrayEquals(new String[] { "the quick brown <b>fox</b> jumps" }, fragments);
+  }
+
+  @Test
+  public void testNoMatch() throws IOException {
+    OffsetsHighlighter highlighter = new OffsetsHighlighter(_reader, 0, "<b>", "</b>");
+    String[] fragments = highlighter.highlight(FIELD, new TermQuery(new Term(FIELD, "beta")),
+        "the quick brown fox jumps");
+    assertEquals(0, fragments.length);
+  }
+
+  @Test
+  public void testFieldWithoutOffsets() throws IOException {
+    OffsetsHighlighter highlighter = new OffsetsHighlighter(_reader, 0, "<b>", "</b>");
+    assertNull(highlighter.highlight(NO_OFFSETS_FIELD, new TermQuery(new Term(NO_OFFSETS_FIELD, "fox")),
+        "the quick brown fox jumps"));
+  }
+
+  @Test
+  public void testMultiValuedField() throws IOException {
+    OffsetsHighlighter highlighter = new OffsetsHighlighter(_reader, 1, "<b>", "</b>");
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term(FIELD, "beta")), Occur.SHOULD);
+    query.add(new PrefixQuery(new Term(FIELD, "del")), Occur.SHOULD);
+    assertArrayEquals(new String[] { "alpha <b>beta</b>" }, highlighter.highlight(FIELD, query, "alpha beta"));
+    assertArrayEquals(new String[] { "gamma <b>beta</b> <b>delta</b>" },
+        highlighter.highlight(FIELD, query, "gamma beta delta"));
+  }
+
+  @Test
+  public void testLongText() throws IOException {
+    OffsetsHighlighter highlighter = new OffsetsHighlighter(_reader, 2, "<b>", "</b>");
+    BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term(FIELD, "word5")), Occur.SHOULD);
+    query.add(new TermQuery(new Term(FIELD, "word150")), Occur.SHOULD);
+    query.add(new TermQuery(new Term(FIELD, "word151")), Occur.SHOULD);
+    String[] fragments = highlighter.highlight(FIELD, query, getLongText());
+    assertEquals(2, fragments.length);
+    // The fragment with the most distinct terms is first.
+    assertTrue(fragments[0], fragments[0].contains("<b>word150</b> <b>word151</b>"));
+    assertTrue(fragments[1], fragments[1].contains("<b>word5</b>"));
+    for (String fragment : fragments) {
+      assertTrue(fragment, fragment.length() < 2 * OffsetsHighlighter.FRAGMENT_SIZE);
+    }
+  }
+
+  private static String getLongText() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      if (i != 0) {
+        builder.append(' ');
+      }
+      builder.append("word").append(i);
+    }
+    return builder.toString();
+  }
+}
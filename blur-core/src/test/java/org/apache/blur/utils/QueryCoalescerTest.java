@@ -0,0 +1,173 @@
+package org.apache.blur.utils;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+
+import org.apache.blur.thrift.BException;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.BlurResults;
+import org.apache.blur.thrift.generated.ErrorType;
+import org.apache.blur.thrift.generated.Query;
+import org.apache.blur.user.User;
+import org.apache.blur.user.UserContext;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class QueryCoalescerTest {
+
+  private final QueryCoalescer _coalescer = new QueryCoalescer();
+
+  @After
+  public void tearDown() {
+    UserContext.reset();
+  }
+
+  @Test
+  public void testIdenticalQueriesAreCoalesced() throws Exception {
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), arrival, future1));
+
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    ListenableFuture<BlurResults> inFlight = _coalescer.register("t", newBlurQuery("a"), arrival, future2);
+    assertTrue(future1 == inFlight);
+
+    SettableFuture<BlurResults> future3 = SettableFuture.create();
+    assertTrue(future3 == _coalescer.register("t", newBlurQuery("b"), arrival, future3));
+
+    SettableFuture<BlurResults> future4 = SettableFuture.create();
+    assertTrue(future4 == _coalescer.register("t2", newBlurQuery("a"), arrival, future4));
+
+    future1.set(new BlurResults().setTotalResults(10).setQuery(newBlurQuery("a").setUuid("uuid1")));
+    BlurResults results = QueryCoalescer.waitForResults(inFlight, newBlurQuery("a"));
+    assertEquals(10, results.getTotalResults());
+    assertEquals("uuid1", results.getQuery().getUuid());
+    assertTrue(results != future1.get());
+
+    // Completed queries are no longer in flight.
+    SettableFuture<BlurResults> future5 = SettableFuture.create();
+    assertTrue(future5 == _coalescer.register("t", newBlurQuery("a"), arrival, future5));
+  }
+
+  @Test
+  public void testExecutionStartedBeforeArrivalIsNotJoined() throws Exception {
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), System.nanoTime(), future1));
+
+    // The caller arrived after the first execution started, for example right
+    // after a mutate with waitToBeVisible returned.
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    assertTrue(future2 == _coalescer.register("t", newBlurQuery("a"), arrival, future2));
+
+    // Callers that arrived before the second execution started join it.
+    SettableFuture<BlurResults> future3 = SettableFuture.create();
+    assertTrue(future2 == _coalescer.register("t", newBlurQuery("a"), arrival, future3));
+
+    // The first execution completing does not remove the second.
+    future1.set(new BlurResults());
+    SettableFuture<BlurResults> future4 = SettableFuture.create();
+    assertTrue(future2 == _coalescer.register("t", newBlurQuery("a"), arrival, future4));
+  }
+
+  @Test
+  public void testQueriesWithUuidOrWithoutCacheAreNotCoalesced() throws Exception {
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), arrival, future1));
+
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    assertTrue(future2 == _coalescer.register("t", newBlurQuery("a").setUuid("uuid2"), arrival, future2));
+
+    SettableFuture<BlurResults> future3 = SettableFuture.create();
+    assertTrue(future3 == _coalescer.register("t", newBlurQuery("a").setUseCacheIfPresent(false), arrival, future3));
+
+    SettableFuture<BlurResults> future4 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), arrival, future4));
+  }
+
+  @Test
+  public void testDifferentUsersAreNotCoalesced() throws Exception {
+    long arrival = System.nanoTime();
+    UserContext.setUser(new User("user1", new HashMap<String, String>()));
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), arrival, future1));
+
+    UserContext.setUser(new User("user2", new HashMap<String, String>()));
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    assertTrue(future2 == _coalescer.register("t", newBlurQuery("a"), arrival, future2));
+
+    UserContext.setUser(new User("user1", new HashMap<String, String>()));
+    SettableFuture<BlurResults> future3 = SettableFuture.create();
+    assertTrue(future1 == _coalescer.register("t", newBlurQuery("a"), arrival, future3));
+  }
+
+  @Test
+  public void testFailureIsShared() throws Exception {
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    _coalescer.register("t", newBlurQuery("a"), arrival, future1);
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    ListenableFuture<BlurResults> inFlight = QueryCoalescer.forCaller(_coalescer.register("t", newBlurQuery("a"),
+        arrival, future2));
+    assertFalse(inFlight.isDone());
+
+    future1.setException(new BException("Query failed."));
+    try {
+      QueryCoalescer.waitForResults(inFlight, newBlurQuery("a"));
+      fail();
+    } catch (BlurException e) {
+      assertEquals("Query failed.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Exception {
+    long arrival = System.nanoTime();
+    SettableFuture<BlurResults> future1 = SettableFuture.create();
+    _coalescer.register("t", newBlurQuery("a"), arrival, future1);
+    SettableFuture<BlurResults> future2 = SettableFuture.create();
+    BlurQuery blurQuery = newBlurQuery("a");
+    blurQuery.setMaxQueryTime(50);
+    ListenableFuture<BlurResults> inFlight = _coalescer.register("t", blurQuery, arrival, future2);
+    assertTrue(future1 == inFlight);
+    try {
+      QueryCoalescer.waitForResults(inFlight, blurQuery);
+      fail();
+    } catch (BlurException e) {
+      assertEquals(ErrorType.QUERY_TIMEOUT, e.getErrorType());
+    }
+    assertFalse(future1.isDone());
+  }
+
+  private static BlurQuery newBlurQuery(String query) {
+    BlurQuery blurQuery = new BlurQuery();
+    blurQuery.setQuery(new Query().setQuery(query));
+    blurQuery.setStartTime(System.nanoTime());
+    return blurQuery;
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.blur.hive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.blur.concurrent.Executors;
+import org.apache.blur.thrift.BlurClient;
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.RowMutation;
+
+/**
+ * Sends bulk mutate batches to the shard servers in the background so that the
+ * record writer can keep building batches while earlier batches are on the
+ * network. Batches to the same server are sent in order, batches to different
+ * servers are sent in parallel and the total number of batches in flight is
+ * bounded.
+ */
+public class BlurBulkMutateSender implements Closeable {
+
+  private final String _bulkId;
+  private final int _maxInFlight;
+  private final Semaphore _inFlight;
+  private final Map<String, ExecutorService> _lanes = new ConcurrentHashMap<String, ExecutorService>();
+  private final Map<String, Iface> _clients = new ConcurrentHashMap<String, Iface>();
+  private final AtomicReference<Throwable> _failure = new AtomicReference<Throwable>();
+
+  public BlurBulkMutateSender(String bulkId, int maxInFlight) {
+    _bulkId = bulkId;
+    _maxInFlight = maxInFlight;
+    _inFlight = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * Queues the batch to be sent to the given server, blocks while the maximum
+   * number of batches are in flight. The batch must not be modified after this
+   * call.
+   */
+  public void send(final String server, final List<RowMutation> batch) throws IOException {
+    checkForFailure();
+    try {
+      _inFlight.acquire();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    try {
+      getLane(server).submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (_failure.get() == null) {
+              getClient(server).bulkMutateAddMultiple(_bulkId, batch);
+            }
+          } catch (Throwable t) {
+            _failure.compareAndSet(null, t);
+          } finally {
+            _inFlight.release();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      _inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for all the batches in flight to be sent.
+   */
+  public void flush() throws IOException {
+    try {
+      _inFlight.acquire(_maxInFlight);
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    _inFlight.release(_maxInFlight);
+    checkForFailure();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (ExecutorService service : _lanes.values()) {
+      service.shutdownNow();
+    }
+    _lanes.clear();
+  }
+
+  protected Iface getClient(String server) {
+    Iface client = _clients.get(server);
+    if (client == null) {
+      _clients.put(server, client = BlurClient.getClient(server));
+    }
+    return client;
+  }
+
+  private ExecutorService getLane(String server) {
+    ExecutorService service = _lanes.get(server);
+    if (service == null) {
+      _lanes.put(server, service = Executors.newSingleThreadExecutor("bulk-mutate-sender-" + server + "-"));
+    }
+    return service;
+  }
+
+  private void checkForFailure() throws IOException {
+    Throwable t = _failure.get();
+    if (t != null) {
+      throw new IOException("Error while sending bulk mutate [" + _bulkId + "].", t);
+    }
+  }
+
+}
@@ -19,12 +19,12 @@ package org.apache.blur.hive;
 import java.io.IOException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.blur.manager.BlurPartitioner;
 import org.apache.blur.mapreduce.lib.BlurColumn;
@@ -62,6 +62,10 @@ public class BlurHiveOutputFormat implements HiveOutputFormat<Text, BlurRecord>
   private static final String BLUR = "blur";
   private static final String BLUR_USER_NAME = "blur.user.name";
   private static final String BLUR_BULK_MUTATE_ID = "blur.bulk.mutate.id";
+  private static final String BLUR_BULK_MUTATE_BATCH_SIZE = "blur.bulk.mutate.batch.size";
+  private static final String BLUR_BULK_MUTATE_MAX_IN_FLIGHT = "blur.bulk.mutate.max.in.flight";
+  private static final int DEFAULT_BULK_MUTATE_BATCH_SIZE = 100;
+  private static final int DEFAULT_BULK_MUTATE_MAX_IN_FLIGHT = 4;
 
   public static String getBulkId(Configuration conf) {
     return conf.get(BLUR_BULK_MUTATE_ID);
@@ -71,6 +75,26 @@ public class BlurHiveOutputFormat implements HiveOutputFormat<Text, BlurRecord>
     conf.set(BLUR_BULK_MUTATE_ID, bulkId);
   }
 
+  public static int getBulkMutateBatchSize(Configuration conf) {
+    return conf.getInt(BLUR_BULK_MUTATE_BATCH_SIZE, DEFAULT_BULK_MUTATE_BATCH_SIZE);
+  }
+
+  public static void setBulkMutateBatchSize(Configuration conf, int batchSize) {
+    conf.setInt(BLUR_BULK_MUTATE_BATCH_SIZE, batchSize);
+  }
+
+  public static int getBulkMutateMaxInFlight(Configuration conf) {
+    return conf.getInt(BLUR_BULK_MUTATE_MAX_IN_FLIGHT, DEFAULT_BULK_MUTATE_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Sets the maximum number of bulk mutate batches each record writer has on
+   * the network at once.
+   */
+  public static void setBulkMutateMaxInFlight(Configuration conf, int maxInFlight) {
+    conf.setInt(BLUR_BULK_MUTATE_MAX_IN_FLIGHT, maxInFlight);
+  }
+
   @Override
   public void checkOutputSpecs(FileSystem fileSystem, JobConf jobConf) throws IOException {
 
@@ -171,11 +195,13 @@ public class BlurHiveOutputFormat implements HiveOutputFormat<Text, BlurRecord>
     final String table = tableDescriptor.getName();
     final int numberOfShardsInTable = tableDescriptor.getShardCount();
     final String bulkId = getBulkId(configuration);
+    final int capacity = Math.max(1, getBulkMutateBatchSize(configuration));
+    final BlurBulkMutateSender sender = new BlurBulkMutateSender(bulkId, Math.max(1,
+        getBulkMutateMaxInFlight(configuration)));
     return new org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter() {
 
       private BlurPartitioner _blurPartitioner = new BlurPartitioner();
-      private Map<String, List<RowMutation>> _serverBatches = new ConcurrentHashMap<String, List<RowMutation>>();
-      private int _capacity = 100;
+      private Map<String, List<RowMutation>> _serverBatches = new HashMap<String, List<RowMutation>>();
       private Map<String, String> _shardToServerLayout;
 
       @Override
@@ -193,10 +219,13 @@ public class BlurHiveOutputFormat implements HiveOutputFormat<Text, BlurRecord>
           String server = getServer(rowId);
           List<RowMutation> batch = _serverBatches.get(server);
           if (batch == null) {
-            _serverBatches.put(server, batch = new ArrayList<RowMutation>(_capacity));
+            _serverBatches.put(server, batch = new ArrayList<RowMutation>(capacity));
           }
           batch.add(rowMutation);
-          checkForFlush(_capacity);
+          if (batch.size() >= capacity) {
+            sender.send(server, batch);
+            _serverBatches.remove(server);
+          }
         } catch (BlurException e) {
           throw new IOException(e);
         } catch (TException e) {
@@ -207,23 +236,17 @@ public class BlurHiveOutputFormat implements HiveOutputFormat<Text, BlurRecord>
       @Override
       public void close(boolean abort) throws IOException {
         try {
-          checkForFlush(1);
-        } catch (BlurException e) {
-          throw new IOException(e);
-        } catch (TException e) {
-          throw new IOException(e);
-        }
-      }
-
-      private void checkForFlush(int max) throws BlurException, TException {
-        for (Entry<String, List<RowMutation>> e : _serverBatches.entrySet()) {
-          String server = e.getKey();
-          List<RowMutation> batch = e.getValue();
-          if (batch.size() >= max) {
-            Iface client = BlurClient.getClient(server);
-            client.bulkMutateAddMultiple(bulkId, batch);
-            batch.clear();
+          if (!abort) {
+            for (Entry<String, List<RowMutation>> e : _serverBatches.entrySet()) {
+              if (!e.getValue().isEmpty()) {
+                sender.send(e.getKey(), e.getValue());
+              }
+            }
+            _serverBatches.clear();
+            sender.flush();
           }
+        } finally {
+          sender.close();
         }
       }
 
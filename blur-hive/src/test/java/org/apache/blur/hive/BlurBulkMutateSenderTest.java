@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.blur.hive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.RowMutation;
+import org.junit.Test;
+
+public class BlurBulkMutateSenderTest {
+
+  private final Map<String, List<String>> _received = new ConcurrentHashMap<String, List<String>>();
+
+  @Test
+  public void testBatchesAreSentInOrderPerServer() throws IOException {
+    BlurBulkMutateSender sender = new TestSender("bulk", 2, null);
+    try {
+      for (int i = 0; i < 20; i++) {
+        String server = "server" + (i % 3);
+        sender.send(server, batch(Integer.toString(i)));
+      }
+      sender.flush();
+    } finally {
+      sender.close();
+    }
+    assertEquals(3, _received.size());
+    for (int s = 0; s < 3; s++) {
+      List<String> rowIds = _received.get("server" + s);
+      List<String> expected = new ArrayList<String>();
+      for (int i = s; i < 20; i += 3) {
+        expected.add(Integer.toString(i));
+      }
+      assertEquals(expected, rowIds);
+    }
+  }
+
+  @Test
+  public void testFailureIsReported() throws IOException {
+    BlurBulkMutateSender sender = new TestSender("bulk", 2, "server1");
+    try {
+      sender.send("server0", batch("a"));
+      sender.send("server1", batch("b"));
+      sender.flush();
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getCause() instanceof BlurException);
+    } finally {
+      sender.close();
+    }
+    assertEquals(Collections.singletonList("a"), _received.get("server0"));
+  }
+
+  private List<RowMutation> batch(String rowId) {
+    RowMutation rowMutation = new RowMutation();
+    rowMutation.setTable("test");
+    rowMutation.setRowId(rowId);
+    return Collections.singletonList(rowMutation);
+  }
+
+  private class TestSender extends BlurBulkMutateSender {
+
+    private final String _failingServer;
+
+    TestSender(String bulkId, int maxInFlight, String failingServer) {
+      super(bulkId, maxInFlight);
+      _failingServer = failingServer;
+    }
+
+    @Override
+    protected Iface getClient(final String server) {
+      InvocationHandler handler = new InvocationHandler() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (!method.getName().equals("bulkMutateAddMultiple")) {
+            throw new RuntimeException("Not implemented.");
+          }
+          if (server.equals(_failingServer)) {
+            throw new BlurException("Failed", null, null);
+          }
+          List<String> rowIds = _received.get(server);
+          if (rowIds == null) {
+            _received.put(server, rowIds = Collections.synchronizedList(new ArrayList<String>()));
+          }
+          for (RowMutation rowMutation : (List<RowMutation>) args[1]) {
+            rowIds.add(rowMutation.getRowId());
+          }
+          return null;
+        }
+      };
+      return (Iface) Proxy.newProxyInstance(Iface.class.getClassLoader(), new Class[] { Iface.class }, handler);
+    }
+  }
+
+}
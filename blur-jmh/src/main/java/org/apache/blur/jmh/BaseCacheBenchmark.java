@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.store.blockcache_v2.BaseCache;
+import org.apache.blur.store.blockcache_v2.BaseCache.STORE;
+import org.apache.blur.store.blockcache_v2.CacheDirectory;
+import org.apache.blur.store.blockcache_v2.CacheKey;
+import org.apache.blur.store.blockcache_v2.CacheValue;
+import org.apache.blur.store.blockcache_v2.EvictionException;
+import org.apache.blur.store.blockcache_v2.SimpleCacheValueBufferPool;
+import org.apache.blur.store.hdfs.HdfsDirectory;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BaseCache} get and put under contention. The key space is
+ * larger than the cache so the mixed benchmark also exercises eviction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class BaseCacheBenchmark {
+
+  private static final String FILE_NAME = "test";
+
+  @Param({ "ON_HEAP", "OFF_HEAP" })
+  public STORE store;
+
+  @Param({ "8192" })
+  public int cacheBlockSize;
+
+  @Param({ "8192" })
+  public int numberOfBlocksInCache;
+
+  @Param({ "0.9" })
+  public double readRatio;
+
+  private Path _path;
+  private HdfsDirectory _hdfsDirectory;
+  private BaseCache _cache;
+  private CacheDirectory _cacheDirectory;
+  private int _keySpace;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    _path = BenchmarkUtil.newTempPath("base-cache");
+    _hdfsDirectory = BenchmarkUtil.newHdfsDirectory(_path);
+    SimpleCacheValueBufferPool pool = new SimpleCacheValueBufferPool(store, 1000);
+    _cache = BenchmarkUtil.newCache((long) cacheBlockSize * numberOfBlocksInCache, cacheBlockSize, cacheBlockSize, pool);
+    _cacheDirectory = BenchmarkUtil.newCacheDirectory(_hdfsDirectory, _cache);
+    _keySpace = numberOfBlocksInCache * 2;
+    byte[] buf = new byte[cacheBlockSize];
+    for (int i = 0; i < numberOfBlocksInCache; i++) {
+      put(new CacheKey(0, i), buf);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    _cacheDirectory.close();
+    _cache.close();
+    BenchmarkUtil.rmr(_path);
+  }
+
+  @State(Scope.Thread)
+  public static class Worker {
+    Random _random;
+    byte[] _buffer;
+    CacheKey _key = new CacheKey();
+
+    @Setup(Level.Trial)
+    public void setup(BaseCacheBenchmark benchmark) {
+      _random = new Random(Thread.currentThread().getId());
+      _buffer = new byte[benchmark.cacheBlockSize];
+    }
+  }
+
+  @Benchmark
+  public byte getHit(Worker worker) {
+    worker._key.setBlockId(worker._random.nextInt(numberOfBlocksInCache));
+    return read(worker._key);
+  }
+
+  @Benchmark
+  public byte getOrPut(Worker worker) {
+    CacheKey key = worker._key;
+    key.setBlockId(worker._random.nextInt(_keySpace));
+    if (worker._random.nextDouble() < readRatio) {
+      return read(key);
+    }
+    put(key.clone(), worker._buffer);
+    return 0;
+  }
+
+  private byte read(CacheKey key) {
+    CacheValue value = _cache.get(_cacheDirectory, FILE_NAME, key);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return value.read(0);
+    } catch (EvictionException e) {
+      return 0;
+    }
+  }
+
+  private void put(CacheKey key, byte[] buf) {
+    CacheValue value = _cache.newInstance(_cacheDirectory, FILE_NAME, cacheBlockSize);
+    value.write(0, buf, 0, buf.length);
+    _cache.put(_cacheDirectory, FILE_NAME, key, value);
+  }
+
+}
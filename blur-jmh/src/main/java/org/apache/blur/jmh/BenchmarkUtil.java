@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.blur.store.blockcache_v2.BaseCache;
+import org.apache.blur.store.blockcache_v2.BaseCacheValueBufferPool;
+import org.apache.blur.store.blockcache_v2.CacheDirectory;
+import org.apache.blur.store.blockcache_v2.FileNameFilter;
+import org.apache.blur.store.blockcache_v2.Quiet;
+import org.apache.blur.store.blockcache_v2.Size;
+import org.apache.blur.store.buffer.BufferStore;
+import org.apache.blur.store.hdfs.HdfsDirectory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Builds the directories and caches used by the benchmarks. All data is
+ * written through {@link HdfsDirectory} on the local file system so the
+ * benchmarks exercise the same code paths as a shard server without requiring
+ * a running HDFS cluster.
+ */
+public class BenchmarkUtil {
+
+  private static final String BLUR_JMH_TMP_DIR = "blur.jmh.tmp.dir";
+
+  static {
+    BufferStore.initNewBuffer(1024, 1024 * 128);
+    BufferStore.initNewBuffer(8192, 8192 * 128);
+  }
+
+  public static Path newTempPath(String name) throws IOException {
+    String tmp = System.getProperty(BLUR_JMH_TMP_DIR, System.getProperty("java.io.tmpdir"));
+    Path path = new Path(new Path(tmp, "blur-jmh"), name + "-" + UUID.randomUUID().toString());
+    FileSystem fileSystem = getLocalFileSystem();
+    fileSystem.mkdirs(path);
+    return fileSystem.makeQualified(path);
+  }
+
+  public static HdfsDirectory newHdfsDirectory(Path path) throws IOException {
+    return new HdfsDirectory(new Configuration(), path);
+  }
+
+  public static BaseCache newCache(long totalNumberOfBytes, final int fileBufferSize, final int cacheBlockSize,
+      BaseCacheValueBufferPool pool) {
+    Size fileBufferSizeObj = new Size() {
+      @Override
+      public int getSize(CacheDirectory directory, String fileName) {
+        return fileBufferSize;
+      }
+    };
+    Size cacheBlockSizeObj = new Size() {
+      @Override
+      public int getSize(CacheDirectory directory, String fileName) {
+        return cacheBlockSize;
+      }
+    };
+    Size directLocalCacheRefLimit = new Size() {
+      @Override
+      public int getSize(CacheDirectory directory, String fileName) {
+        return 64 * 1024 * 1024;
+      }
+    };
+    FileNameFilter all = new FileNameFilter() {
+      @Override
+      public boolean accept(CacheDirectory directory, String fileName) {
+        return true;
+      }
+    };
+    Quiet quiet = new Quiet() {
+      @Override
+      public boolean shouldBeQuiet(CacheDirectory directory, String fileName) {
+        return false;
+      }
+    };
+    return new BaseCache(totalNumberOfBytes, fileBufferSizeObj, cacheBlockSizeObj, directLocalCacheRefLimit, all, all,
+        quiet, pool);
+  }
+
+  public static CacheDirectory newCacheDirectory(HdfsDirectory directory, BaseCache cache) {
+    return new CacheDirectory("jmh-table", "shard-00000000", directory, cache, null);
+  }
+
+  public static void rmr(Path path) throws IOException {
+    if (path != null) {
+      getLocalFileSystem().delete(path, true);
+    }
+  }
+
+  private static FileSystem getLocalFileSystem() throws IOException {
+    return FileSystem.getLocal(new Configuration());
+  }
+
+  private BenchmarkUtil() {
+
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.store.blockcache_v2.BaseCache;
+import org.apache.blur.store.blockcache_v2.BaseCache.STORE;
+import org.apache.blur.store.blockcache_v2.CacheDirectory;
+import org.apache.blur.store.blockcache_v2.SimpleCacheValueBufferPool;
+import org.apache.blur.store.hdfs.HdfsDirectory;
+import org.apache.hadoop.fs.Path;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IndexInput#readVInt()} and {@link IndexInput#readBytes}
+ * through CacheIndexInput with a fully populated block cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheIndexInputBenchmark {
+
+  private static final String FILE_NAME = "test.vints";
+
+  @Param({ "ON_HEAP", "OFF_HEAP" })
+  public STORE store;
+
+  @Param({ "8192", "65536" })
+  public int cacheBlockSize;
+
+  @Param({ "16777216" })
+  public int fileLength;
+
+  @Param({ "1024" })
+  public int readLength;
+
+  private Path _path;
+  private HdfsDirectory _hdfsDirectory;
+  private BaseCache _cache;
+  private CacheDirectory _cacheDirectory;
+  private IndexInput _input;
+  private long _vintLength;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    _path = BenchmarkUtil.newTempPath("cache-index-input");
+    _hdfsDirectory = BenchmarkUtil.newHdfsDirectory(_path);
+    Random random = new Random(1);
+    IndexOutput output = _hdfsDirectory.createOutput(FILE_NAME, IOContext.DEFAULT);
+    while (output.getFilePointer() < fileLength) {
+      // Mix of 1 to 5 byte vints.
+      output.writeVInt(random.nextInt() >>> random.nextInt(32));
+    }
+    _vintLength = output.getFilePointer();
+    output.close();
+
+    SimpleCacheValueBufferPool pool = new SimpleCacheValueBufferPool(store, 1000);
+    // Make the cache large enough to hold the entire file.
+    _cache = BenchmarkUtil.newCache(fileLength * 2L, cacheBlockSize, cacheBlockSize, pool);
+    _cacheDirectory = BenchmarkUtil.newCacheDirectory(_hdfsDirectory, _cache);
+    _input = _cacheDirectory.openInput(FILE_NAME, IOContext.DEFAULT);
+
+    // Populate the cache.
+    byte[] buf = new byte[cacheBlockSize];
+    long length = _input.length();
+    while (_input.getFilePointer() < length) {
+      _input.readBytes(buf, 0, (int) Math.min(buf.length, length - _input.getFilePointer()));
+    }
+    _input.seek(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    _input.close();
+    _cacheDirectory.close();
+    _cache.close();
+    BenchmarkUtil.rmr(_path);
+  }
+
+  @State(Scope.Thread)
+  public static class Reader {
+    IndexInput _input;
+    Random _random;
+    byte[] _buffer;
+    long _maxPosition;
+
+    @Setup(Level.Trial)
+    public void setup(CacheIndexInputBenchmark benchmark) {
+      _input = benchmark._input.clone();
+      _random = new Random(Thread.currentThread().getId());
+      _buffer = new byte[benchmark.readLength];
+      _maxPosition = benchmark._input.length() - benchmark.readLength;
+    }
+  }
+
+  @Benchmark
+  public int readVInt(Reader reader) throws IOException {
+    IndexInput input = reader._input;
+    if (input.getFilePointer() >= _vintLength) {
+      input.seek(0);
+    }
+    return input.readVInt();
+  }
+
+  @Benchmark
+  public byte[] readBytesSequential(Reader reader) throws IOException {
+    IndexInput input = reader._input;
+    if (input.getFilePointer() > reader._maxPosition) {
+      input.seek(0);
+    }
+    input.readBytes(reader._buffer, 0, reader._buffer.length);
+    return reader._buffer;
+  }
+
+  @Benchmark
+  public byte[] readBytesRandom(Reader reader) throws IOException {
+    IndexInput input = reader._input;
+    input.seek((long) (reader._random.nextDouble() * reader._maxPosition));
+    input.readBytes(reader._buffer, 0, reader._buffer.length);
+    return reader._buffer;
+  }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.store.blockcache_v2.CacheValue;
+import org.apache.blur.store.blockcache_v2.EvictionException;
+import org.apache.blur.store.blockcache_v2.cachevalue.ByteArrayCacheValue;
+import org.apache.blur.store.blockcache_v2.cachevalue.UnsafeAllocateCacheValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the on heap and off heap (Unsafe) {@link CacheValue}
+ * implementations for single byte, long and bulk reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheValueBenchmark {
+
+  @Param({ "ON_HEAP", "OFF_HEAP" })
+  public String type;
+
+  @Param({ "8192" })
+  public int length;
+
+  @Param({ "256" })
+  public int readLength;
+
+  private CacheValue _cacheValue;
+  private Random _random;
+  private byte[] _buffer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    if ("ON_HEAP".equals(type)) {
+      _cacheValue = new ByteArrayCacheValue(length);
+    } else {
+      _cacheValue = new UnsafeAllocateCacheValue(length);
+    }
+    _random = new Random(1);
+    byte[] data = new byte[length];
+    _random.nextBytes(data);
+    _cacheValue.write(0, data, 0, length);
+    _buffer = new byte[readLength];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    _cacheValue.release();
+  }
+
+  @Benchmark
+  public byte readByte() throws EvictionException {
+    return _cacheValue.read(_random.nextInt(length));
+  }
+
+  @Benchmark
+  public long readLong() throws EvictionException {
+    return _cacheValue.readLong(_random.nextInt(length - 8));
+  }
+
+  @Benchmark
+  public byte[] readBytes() throws EvictionException {
+    _cacheValue.read(_random.nextInt(length - readLength), _buffer, 0, readLength);
+    return _buffer;
+  }
+
+  @Benchmark
+  public void writeBytes() {
+    _cacheValue.write(_random.nextInt(length - readLength), _buffer, 0, readLength);
+  }
+
+}
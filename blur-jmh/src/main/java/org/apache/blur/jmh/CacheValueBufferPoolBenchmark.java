@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.store.blockcache_v2.BaseCache.STORE;
+import org.apache.blur.store.blockcache_v2.BaseCacheValueBufferPool;
+import org.apache.blur.store.blockcache_v2.CacheValue;
+import org.apache.blur.store.blockcache_v2.SimpleCacheValueBufferPool;
+import org.apache.blur.store.blockcache_v2.SlabAllocationCacheValueBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the allocate and release cycle of the cache value buffer pools.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CacheValueBufferPoolBenchmark {
+
+  public enum PoolType {
+    SIMPLE_ON_HEAP, SIMPLE_OFF_HEAP, SLAB
+  }
+
+  @Param({ "SIMPLE_ON_HEAP", "SIMPLE_OFF_HEAP", "SLAB" })
+  public PoolType poolType;
+
+  @Param({ "8192", "65536" })
+  public int cacheBlockSize;
+
+  private BaseCacheValueBufferPool _pool;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    switch (poolType) {
+    case SIMPLE_ON_HEAP:
+      _pool = new SimpleCacheValueBufferPool(STORE.ON_HEAP, 1000);
+      break;
+    case SIMPLE_OFF_HEAP:
+      _pool = new SimpleCacheValueBufferPool(STORE.OFF_HEAP, 1000);
+      break;
+    case SLAB:
+      _pool = new SlabAllocationCacheValueBufferPool(8192, 128 * 1024 * 1024);
+      break;
+    default:
+      throw new RuntimeException("Pool type [" + poolType + "] not supported.");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    _pool.close();
+  }
+
+  @Benchmark
+  public int allocateAndRelease() {
+    CacheValue cacheValue = _pool.getCacheValue(cacheBlockSize);
+    try {
+      return cacheValue.length();
+    } finally {
+      _pool.returnToPool(cacheValue);
+    }
+  }
+
+}
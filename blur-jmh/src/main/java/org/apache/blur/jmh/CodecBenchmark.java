@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.jmh;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.lucene.codec.Blur024Codec;
+import org.apache.blur.store.blockcache_v2.BaseCache;
+import org.apache.blur.store.blockcache_v2.BaseCache.STORE;
+import org.apache.blur.store.blockcache_v2.CacheDirectory;
+import org.apache.blur.store.blockcache_v2.SimpleCacheValueBufferPool;
+import org.apache.blur.store.hdfs.HdfsDirectory;
+import org.apache.hadoop.fs.Path;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures random stored field (CachedDecompressor) and doc values
+ * (DiskDocValuesProducer) access of the {@link Blur024Codec} through the block
+ * cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+  private static final String ID = "id";
+  private static final String BODY = "body";
+  private static final String NUMERIC = "numeric";
+  private static final String BINARY = "binary";
+  private static final String SORTED = "sorted";
+
+  @Param({ "ON_HEAP", "OFF_HEAP" })
+  public STORE store;
+
+  @Param({ "100000" })
+  public int numberOfDocs;
+
+  @Param({ "256" })
+  public int bodyLength;
+
+  private Path _path;
+  private HdfsDirectory _hdfsDirectory;
+  private BaseCache _cache;
+  private CacheDirectory _cacheDirectory;
+  private DirectoryReader _reader;
+  private AtomicReader _atomicReader;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    _path = BenchmarkUtil.newTempPath("codec");
+    _hdfsDirectory = BenchmarkUtil.newHdfsDirectory(_path);
+    SimpleCacheValueBufferPool pool = new SimpleCacheValueBufferPool(store, 1000);
+    _cache = BenchmarkUtil.newCache(256L * 1024L * 1024L, 8192, 8192, pool);
+    _cacheDirectory = BenchmarkUtil.newCacheDirectory(_hdfsDirectory, _cache);
+
+    IndexWriterConfig conf = new IndexWriterConfig(Version.LUCENE_43, new KeywordAnalyzer());
+    conf.setCodec(new Blur024Codec());
+    IndexWriter writer = new IndexWriter(_cacheDirectory, conf);
+    Random random = new Random(1);
+    for (int i = 0; i < numberOfDocs; i++) {
+      writer.addDocument(newDocument(random, i));
+    }
+    writer.forceMerge(1);
+    writer.close();
+
+    _reader = DirectoryReader.open(_cacheDirectory);
+    _atomicReader = SlowCompositeReaderWrapper.wrap(_reader);
+  }
+
+  private Document newDocument(Random random, int id) {
+    Document document = new Document();
+    document.add(new StringField(ID, Integer.toString(id), Store.YES));
+    document.add(new StringField(BODY, randomString(random, bodyLength), Store.YES));
+    document.add(new NumericDocValuesField(NUMERIC, random.nextLong()));
+    document.add(new BinaryDocValuesField(BINARY, new BytesRef(randomString(random, 16))));
+    document.add(new SortedDocValuesField(SORTED, new BytesRef(Integer.toString(random.nextInt(1000)))));
+    return document;
+  }
+
+  private String randomString(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + random.nextInt(26)));
+    }
+    return builder.toString();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    _reader.close();
+    _cacheDirectory.close();
+    _cache.close();
+    BenchmarkUtil.rmr(_path);
+  }
+
+  @State(Scope.Thread)
+  public static class Reader {
+    Random _random;
+    BytesRef _result = new BytesRef();
+    NumericDocValues _numeric;
+    BinaryDocValues _binary;
+    SortedDocValues _sorted;
+
+    @Setup(Level.Trial)
+    public void setup(CodecBenchmark benchmark) throws IOException {
+      _random = new Random(Thread.currentThread().getId());
+      _numeric = benchmark._atomicReader.getNumericDocValues(NUMERIC);
+      _binary = benchmark._atomicReader.getBinaryDocValues(BINARY);
+      _sorted = benchmark._atomicReader.getSortedDocValues(SORTED);
+    }
+  }
+
+  @Benchmark
+  public Document storedFields(Reader reader) throws IOException {
+    return _reader.document(reader._random.nextInt(numberOfDocs));
+  }
+
+  @Benchmark
+  public long numericDocValues(Reader reader) {
+    return reader._numeric.get(reader._random.nextInt(numberOfDocs));
+  }
+
+  @Benchmark
+  public BytesRef binaryDocValues(Reader reader) {
+    reader._binary.get(reader._random.nextInt(numberOfDocs), reader._result);
+    return reader._result;
+  }
+
+  @Benchmark
+  public BytesRef sortedDocValues(Reader reader) {
+    reader._sorted.get(reader._random.nextInt(numberOfDocs), reader._result);
+    return reader._result;
+  }
+
+}
@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.blur.analysis.type.AclDiscoverFieldTypeDefinition;
 import org.apache.blur.analysis.type.AclReadFieldTypeDefinition;
@@ -91,6 +92,7 @@ public abstract class BaseFieldManager extends FieldManager {
   private final FieldTypeDefinition _fieldLessFieldTypeDefinition;
   private final Configuration _configuration;
   private final KeywordAnalyzer _keywordAnalyzer = new KeywordAnalyzer();
+  private final AtomicLong _version = new AtomicLong();
 
   public static FieldType ID_TYPE;
   static {
@@ -201,6 +203,11 @@ public abstract class BaseFieldManager extends FieldManager {
     return false;
   }
 
+  @Override
+  public long getVersion() {
+    return _version.get();
+  }
+
   @Override
   public Set<String> getFieldNames() throws IOException {
     return new TreeSet<String>(_fieldNameToDefMap.keySet());
@@ -484,6 +491,7 @@ public abstract class BaseFieldManager extends FieldManager {
       }
       subColumnNames.add(subColumnName);
     }
+    _version.incrementAndGet();
   }
 
   private String getSubColumnName(String fieldName) {
@@ -526,6 +534,10 @@ public abstract class BaseFieldManager extends FieldManager {
     fieldTypeDefinition.setSortEnable(sortable);
     fieldTypeDefinition.setFieldLessIndexed(fieldLessIndexed);
     fieldTypeDefinition.setMultiValueField(multiValueField);
+    if (props != null) {
+      fieldTypeDefinition.setOffsetsInPostings(Boolean.parseBoolean(props
+          .get(FieldTypeDefinition.OFFSETS_IN_POSTINGS)));
+    }
     return fieldTypeDefinition;
   }
 
@@ -281,4 +281,13 @@ public abstract class FieldManager {
 
   public abstract SortField getSortField(String field, boolean reverse) throws IOException;
 
+  /**
+   * Gets the version of the field definitions, the version changes every time
+   * a field definition is added or loaded. Parsed queries are only valid for
+   * the version they were parsed with.
+   * 
+   * @return the version.
+   */
+  public abstract long getVersion();
+
 }
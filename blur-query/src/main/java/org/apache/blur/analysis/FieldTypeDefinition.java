@@ -33,6 +33,12 @@ import org.apache.lucene.util.BytesRef;
 
 public abstract class FieldTypeDefinition {
 
+  /**
+   * Column property that enables indexing of offsets in the postings, so that
+   * highlighting can be done without re-analyzing the stored text.
+   */
+  public static final String OFFSETS_IN_POSTINGS = "offsetsInPostings";
+
   protected static final Collection<String> EMPTY_COLLECTION = Arrays.asList(new String[] {});
   private boolean _fieldLessIndexed;
   private boolean _sortEnable;
@@ -42,6 +48,7 @@ public abstract class FieldTypeDefinition {
   private String _fieldType;
   private Map<String, String> _properties;
   private boolean _multiValueField;
+  private boolean _offsetsInPostings;
 
   /**
    * Gets the name of the field type.
@@ -202,6 +209,27 @@ public abstract class FieldTypeDefinition {
     _sortEnable = sortEnable;
   }
 
+  /**
+   * Checks if this field type can index offsets in the postings, by default
+   * this is not supported.
+   * 
+   * @return boolean.
+   */
+  public boolean checkSupportForOffsetsInPostings() {
+    return false;
+  }
+
+  public boolean isOffsetsInPostings() {
+    return _offsetsInPostings;
+  }
+
+  public void setOffsetsInPostings(boolean offsetsInPostings) {
+    if (offsetsInPostings && !checkSupportForOffsetsInPostings()) {
+      throw new RuntimeException("Field type [" + getName() + "] does not support offsets in postings.");
+    }
+    _offsetsInPostings = offsetsInPostings;
+  }
+
   public Query getCustomQuery(String text) {
     throw new RuntimeException("Not supported.");
   }
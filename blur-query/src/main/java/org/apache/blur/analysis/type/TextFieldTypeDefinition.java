@@ -36,6 +36,7 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
@@ -49,6 +50,7 @@ public class TextFieldTypeDefinition extends FieldTypeDefinition {
   public static final String NAME = "text";
   public static final FieldType TYPE_NOT_STORED;
   public static final FieldType TYPE_STORED;
+  public static final FieldType TYPE_STORED_WITH_OFFSETS;
 
   private Analyzer _analyzer;
 
@@ -57,6 +59,10 @@ public class TextFieldTypeDefinition extends FieldTypeDefinition {
     TYPE_STORED.setOmitNorms(true);
     TYPE_STORED.freeze();
 
+    TYPE_STORED_WITH_OFFSETS = new FieldType(TYPE_STORED);
+    TYPE_STORED_WITH_OFFSETS.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    TYPE_STORED_WITH_OFFSETS.freeze();
+
     TYPE_NOT_STORED = new FieldType(TextField.TYPE_NOT_STORED);
     TYPE_NOT_STORED.setOmitNorms(true);
     TYPE_NOT_STORED.freeze();
@@ -124,7 +130,7 @@ public class TextFieldTypeDefinition extends FieldTypeDefinition {
   @Override
   public Iterable<? extends Field> getFieldsForColumn(String family, Column column) {
     String name = getName(family, column.getName());
-    Field field = new Field(name, column.getValue(), TYPE_STORED);
+    Field field = new Field(name, column.getValue(), isOffsetsInPostings() ? TYPE_STORED_WITH_OFFSETS : TYPE_STORED);
     return makeIterable(field);
   }
 
@@ -175,6 +181,11 @@ public class TextFieldTypeDefinition extends FieldTypeDefinition {
     return false;
   }
   
+  @Override
+  public boolean checkSupportForOffsetsInPostings() {
+    return true;
+  }
+
   @Override
   public boolean checkSupportForSorting() {
     return false;
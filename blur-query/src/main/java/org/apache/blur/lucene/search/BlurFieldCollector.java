@@ -21,8 +21,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
@@ -34,6 +36,14 @@ public class BlurFieldCollector extends CloneableCollector implements TopDocColl
     return new BlurFieldCollector(sort, numHitsToCollect, after, runSlow, running);
   }
 
+  public static BlurFieldCollector create(Sort sort, int numHitsToCollect, FieldDoc after, boolean runSlow,
+      AtomicBoolean running, Query query, SegmentResultCache segmentResultCache) {
+    BlurFieldCollector collector = new BlurFieldCollector(sort, numHitsToCollect, after, runSlow, running);
+    collector._query = query;
+    collector._segmentResultCache = segmentResultCache;
+    return collector;
+  }
+
   private int _numHitsToCollect;
   private FieldDoc _after;
   private boolean _runSlow;
@@ -41,6 +51,8 @@ public class BlurFieldCollector extends CloneableCollector implements TopDocColl
   private int _hits;
   private TopDocs _topDocs;
   private Sort _sort;
+  private Query _query;
+  private SegmentResultCache _segmentResultCache;
 
   public BlurFieldCollector(Sort sort, int numHitsToCollect, FieldDoc after, boolean runSlow, AtomicBoolean running) {
     _sort = sort;
@@ -70,22 +82,42 @@ public class BlurFieldCollector extends CloneableCollector implements TopDocColl
     return col;
   }
 
+  @Override
+  public Collector newCollector(AtomicReaderContext context) throws IOException {
+    // Only the first page is cached, later pages depend on the after FieldDoc.
+    if (_segmentResultCache == null || _after != null) {
+      return newCollector();
+    }
+    return _segmentResultCache.newCollector(_query, _sort, _numHitsToCollect, context, this);
+  }
+
   @Override
   public Collector merge(Collector... merge) throws IOException {
-    List<TopFieldCollector> list = new ArrayList<TopFieldCollector>();
+    List<TopDocs> list = new ArrayList<TopDocs>();
     for (Collector collector : merge) {
-      list.add(getTopFieldCollector(collector));
+      list.add(getTopDocs(collector));
     }
     int i = 0;
     TopDocs[] results = new TopDocs[list.size()];
-    for (TopFieldCollector tsdc : list) {
-      _hits += tsdc.getTotalHits();
-      results[i++] = tsdc.topDocs();
+    for (TopDocs topDocs : list) {
+      _hits += topDocs.totalHits;
+      results[i++] = topDocs;
     }
     _topDocs = TopDocs.merge(_sort, _numHitsToCollect, results);
     return this;
   }
 
+  private TopDocs getTopDocs(Collector collector) {
+    if (collector instanceof SegmentResultCollector) {
+      SegmentResultCollector segmentResultCollector = (SegmentResultCollector) collector;
+      if (segmentResultCollector.isCached()) {
+        return segmentResultCollector.getCachedTopDocs();
+      }
+      return segmentResultCollector.store(getTopDocs(segmentResultCollector.getCollector()));
+    }
+    return getTopFieldCollector(collector).topDocs();
+  }
+
   private TopFieldCollector getTopFieldCollector(Collector collector) {
     if (collector instanceof SlowCollector) {
       SlowCollector slowCollector = (SlowCollector) collector;
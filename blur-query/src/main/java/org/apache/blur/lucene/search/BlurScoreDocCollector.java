@@ -21,7 +21,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopScoreDocCollector;
@@ -33,12 +35,22 @@ public class BlurScoreDocCollector extends CloneableCollector implements TopDocC
     return new BlurScoreDocCollector(numHitsToCollect, after, runSlow, running);
   }
 
+  public static BlurScoreDocCollector create(int numHitsToCollect, ScoreDoc after, boolean runSlow,
+      AtomicBoolean running, Query query, SegmentResultCache segmentResultCache) {
+    BlurScoreDocCollector collector = new BlurScoreDocCollector(numHitsToCollect, after, runSlow, running);
+    collector._query = query;
+    collector._segmentResultCache = segmentResultCache;
+    return collector;
+  }
+
   private ScoreDoc _after;
   private int _numHitsToCollect;
   private AtomicBoolean _running;
   private boolean _runSlow;
   private int _hits;
   private TopDocs _topDocs;
+  private Query _query;
+  private SegmentResultCache _segmentResultCache;
 
   public BlurScoreDocCollector(int numHitsToCollect, ScoreDoc after, boolean runSlow, AtomicBoolean running) {
     _numHitsToCollect = numHitsToCollect;
@@ -67,22 +79,42 @@ public class BlurScoreDocCollector extends CloneableCollector implements TopDocC
     return col;
   }
 
+  @Override
+  public Collector newCollector(AtomicReaderContext context) throws IOException {
+    // Only the first page is cached, later pages depend on the after ScoreDoc.
+    if (_segmentResultCache == null || _after != null) {
+      return newCollector();
+    }
+    return _segmentResultCache.newCollector(_query, null, _numHitsToCollect, context, this);
+  }
+
   @Override
   public Collector merge(Collector... merge) throws IOException {
-    List<TopScoreDocCollector> list = new ArrayList<TopScoreDocCollector>();
+    List<TopDocs> list = new ArrayList<TopDocs>();
     for (Collector collector : merge) {
-      list.add(getTopScoreDocCollector(collector));
+      list.add(getTopDocs(collector));
     }
     int i = 0;
     TopDocs[] results = new TopDocs[list.size()];
-    for (TopScoreDocCollector tsdc : list) {
-      _hits += tsdc.getTotalHits();
-      results[i++] = tsdc.topDocs();
+    for (TopDocs topDocs : list) {
+      _hits += topDocs.totalHits;
+      results[i++] = topDocs;
     }
     _topDocs = TopDocs.merge(null, _numHitsToCollect, results);
     return this;
   }
 
+  private TopDocs getTopDocs(Collector collector) {
+    if (collector instanceof SegmentResultCollector) {
+      SegmentResultCollector segmentResultCollector = (SegmentResultCollector) collector;
+      if (segmentResultCollector.isCached()) {
+        return segmentResultCollector.getCachedTopDocs();
+      }
+      return segmentResultCollector.store(getTopDocs(segmentResultCollector.getCollector()));
+    }
+    return getTopScoreDocCollector(collector).topDocs();
+  }
+
   private TopScoreDocCollector getTopScoreDocCollector(Collector collector) {
     if (collector instanceof SlowCollector) {
       SlowCollector slowCollector = (SlowCollector) collector;
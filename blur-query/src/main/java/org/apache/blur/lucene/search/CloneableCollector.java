@@ -26,6 +26,14 @@ public abstract class CloneableCollector extends Collector {
 
   public abstract Collector newCollector() throws IOException;
 
+  /**
+   * Creates the collector for the given segment, by default this is the same
+   * as {@link #newCollector()}.
+   */
+  public Collector newCollector(AtomicReaderContext context) throws IOException {
+    return newCollector();
+  }
+
   public abstract Collector merge(Collector... merge) throws IOException;
 
   @Override
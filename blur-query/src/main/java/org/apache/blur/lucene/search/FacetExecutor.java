@@ -41,6 +41,7 @@ import org.apache.blur.trace.Trace;
 import org.apache.blur.trace.Tracer;
 import org.apache.blur.user.User;
 import org.apache.blur.user.UserContext;
+import org.apache.blur.utils.MemoryUsageCounter;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
@@ -250,6 +251,7 @@ public class FacetExecutor {
   private final long[] _minimumsBeforeReturning;
   private final Lock[] _locks;
   private final AtomicBoolean _running;
+  private final MemoryUsageCounter _memoryUsage;
   private boolean _processed;
   private final String _instance = UUID.randomUUID().toString();
 
@@ -266,7 +268,17 @@ public class FacetExecutor {
   }
 
   public FacetExecutor(int length, long[] minimumsBeforeReturning, AtomicLongArray counts, AtomicBoolean running) {
+    this(length, minimumsBeforeReturning, counts, running, new MemoryUsageCounter());
+  }
+
+  /**
+   * @param memoryUsage
+   *          the counter that the heap used by the facet bitsets is added to.
+   */
+  public FacetExecutor(int length, long[] minimumsBeforeReturning, AtomicLongArray counts, AtomicBoolean running,
+      MemoryUsageCounter memoryUsage) {
     _length = length;
+    _memoryUsage = memoryUsage;
     _counts = counts;
     _minimumsBeforeReturning = minimumsBeforeReturning;
     _locks = new Lock[_length];
@@ -288,6 +300,7 @@ public class FacetExecutor {
     if (info == null) {
       info = new Info(context, scorers, _locks, _instance);
       _infoMap.put(key, info);
+      _memoryUsage.add(info._bitSet.getNumWords() * 8L);
     } else {
       AtomicReader reader = context.reader();
       LOG.warn(getPrefix("Info about reader context [{0}] already created, existing Info [{1}] current reader [{2}]."),
@@ -16,6 +16,9 @@ package org.apache.blur.lucene.search;
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+import static org.apache.blur.utils.BlurConstants.PRIME_DOC;
+import static org.apache.blur.utils.BlurConstants.PRIME_DOC_VALUE;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,20 +27,28 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
+import org.apache.blur.lucene.search.FacetQuery.FacetWeight;
 import org.apache.blur.trace.Trace;
 import org.apache.blur.trace.Tracer;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.CollectionTerminatedException;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.OpenBitSet;
 
 public abstract class IndexSearcherCloseableBase extends IndexSearcher implements IndexSearcherCloseable {
 
+  private static final Term PRIME_DOC_TERM = new Term(PRIME_DOC, PRIME_DOC_VALUE);
+
   private final ExecutorService _executor;
+  private int _segmentRangeMinDocs;
+  private int _segmentMaxRanges = 1;
 
   public IndexSearcherCloseableBase(IndexReader r, ExecutorService executor) {
     super(r, executor);
@@ -49,25 +60,49 @@ public abstract class IndexSearcherCloseableBase extends IndexSearcher implement
   @Override
   public abstract void close() throws IOException;
 
+  /**
+   * Enables searching large segments as several doc id ranges concurrently on
+   * the search executor. A segment is split into at most maxRanges ranges of
+   * at least minDocsPerRange documents each, the range boundaries are aligned
+   * to prime docs so that all the records of a row are always searched by the
+   * same range.
+   */
+  public void setSegmentRangeSplitting(int minDocsPerRange, int maxRanges) {
+    _segmentRangeMinDocs = minDocsPerRange;
+    _segmentMaxRanges = maxRanges;
+  }
+
   protected void search(List<AtomicReaderContext> leaves, Weight weight, Collector collector) throws IOException {
     if (collector instanceof CloneableCollector) {
       CloneableCollector cloneableCollector = (CloneableCollector) collector;
-      Collector[] collectors = new Collector[leaves.size()];
-      int i = 0;
+      List<Collector> collectors = new ArrayList<Collector>();
 
       if (_executor == null) {
         for (AtomicReaderContext ctx : leaves) { // search each subreader
-          Collector newCollector = cloneableCollector.newCollector();
-          collectors[i++] = newCollector;
+          Collector newCollector = cloneableCollector.newCollector(ctx);
+          collectors.add(newCollector);
           runSearch(weight, newCollector, ctx);
         }
       } else {
         List<Future<Void>> futures = new ArrayList<Future<Void>>();
         for (AtomicReaderContext ctx : leaves) { // search each subreader
-          Collector newCollector = cloneableCollector.newCollector();
-          collectors[i++] = newCollector;
-          Callable<Void> callable = newSearchCallable(weight, newCollector, ctx);
-          futures.add(_executor.submit(callable));
+          int[] ranges = getRanges(weight, ctx);
+          if (ranges == null) {
+            Collector newCollector = cloneableCollector.newCollector(ctx);
+            collectors.add(newCollector);
+            futures.add(_executor.submit(newSearchCallable(weight, newCollector, ctx)));
+          } else {
+            // The results of a single range can not be cached for the whole
+            // segment, so split segments do not use the segment result cache.
+            for (int r = 0; r < ranges.length - 1; r++) {
+              if (ranges[r] == ranges[r + 1]) {
+                continue;
+              }
+              Collector rangeCollector = cloneableCollector.newCollector();
+              collectors.add(rangeCollector);
+              futures.add(_executor.submit(newSearchCallable(weight, rangeCollector, ctx, ranges[r], ranges[r + 1])));
+            }
+          }
         }
         for (Future<Void> future : futures) {
           try {
@@ -84,7 +119,7 @@ public abstract class IndexSearcherCloseableBase extends IndexSearcher implement
           }
         }
       }
-      cloneableCollector.merge(collectors);
+      cloneableCollector.merge(collectors.toArray(new Collector[collectors.size()]));
     } else {
       for (AtomicReaderContext ctx : leaves) { // search each subreader
         runSearch(weight, collector, ctx);
@@ -92,6 +127,48 @@ public abstract class IndexSearcherCloseableBase extends IndexSearcher implement
     }
   }
 
+  /**
+   * Calculates the doc id range boundaries for the given segment.
+   * 
+   * @return the boundaries (the first is 0 and the last is maxDoc) or null if
+   *         the segment should be searched as a whole.
+   */
+  private int[] getRanges(Weight weight, AtomicReaderContext ctx) throws IOException {
+    if (_segmentMaxRanges <= 1 || _segmentRangeMinDocs <= 0) {
+      return null;
+    }
+    if (weight instanceof FacetWeight) {
+      // Facet scorers share a hit bitset per segment.
+      return null;
+    }
+    AtomicReader reader = ctx.reader();
+    int maxDoc = reader.maxDoc();
+    int numberOfRanges = Math.min(_segmentMaxRanges, maxDoc / _segmentRangeMinDocs);
+    if (numberOfRanges <= 1) {
+      return null;
+    }
+    OpenBitSet primeDocs = getPrimeDocs(reader);
+    int[] ranges = new int[numberOfRanges + 1];
+    for (int r = 1; r < numberOfRanges; r++) {
+      int boundary = (int) ((long) maxDoc * r / numberOfRanges);
+      if (primeDocs != null) {
+        int primeDoc = primeDocs.nextSetBit(boundary);
+        boundary = primeDoc < 0 ? maxDoc : primeDoc;
+      }
+      ranges[r] = Math.max(boundary, ranges[r - 1]);
+    }
+    ranges[numberOfRanges] = maxDoc;
+    return ranges;
+  }
+
+  private OpenBitSet getPrimeDocs(AtomicReader reader) throws IOException {
+    if (reader.terms(PRIME_DOC) == null) {
+      // Not a row index, so the segment can be split anywhere.
+      return null;
+    }
+    return PrimeDocCache.getPrimeDocBitSet(PRIME_DOC_TERM, reader);
+  }
+
   private Callable<Void> newSearchCallable(final Weight weight, final Collector collector, final AtomicReaderContext ctx) {
     return new Callable<Void>() {
       @Override
@@ -102,6 +179,17 @@ public abstract class IndexSearcherCloseableBase extends IndexSearcher implement
     };
   }
 
+  private Callable<Void> newSearchCallable(final Weight weight, final Collector collector,
+      final AtomicReaderContext ctx, final int start, final int end) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        runSearch(weight, collector, ctx, start, end);
+        return null;
+      }
+    };
+  }
+
   private void runSearch(Weight weight, Collector collector, AtomicReaderContext ctx) throws IOException {
     Tracer trace = Trace.trace("search - internal", Trace.param("AtomicReader", ctx.reader()));
     try {
@@ -124,4 +212,33 @@ public abstract class IndexSearcherCloseableBase extends IndexSearcher implement
     }
   }
 
+  private void runSearch(Weight weight, Collector collector, AtomicReaderContext ctx, int start, int end)
+      throws IOException {
+    Tracer trace = Trace.trace("search - internal range", Trace.param("AtomicReader", ctx.reader()),
+        Trace.param("start", start), Trace.param("end", end));
+    try {
+      try {
+        collector.setNextReader(ctx);
+      } catch (CollectionTerminatedException e) {
+        return;
+      }
+      // Ranges require a scorer that can advance, so docs are always scored
+      // in order.
+      Scorer scorer = weight.scorer(ctx, true, false, ctx.reader().getLiveDocs());
+      if (scorer != null) {
+        int doc = scorer.advance(start);
+        if (doc < end) {
+          try {
+            scorer.score(collector, end, doc);
+          } catch (CollectionTerminatedException e) {
+            // collection was terminated prematurely
+            // continue with the following range
+          }
+        }
+      }
+    } finally {
+      trace.done();
+    }
+  }
+
 }
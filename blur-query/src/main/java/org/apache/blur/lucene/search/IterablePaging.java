@@ -34,6 +34,7 @@ import org.apache.blur.utils.BlurIterable;
 import org.apache.blur.utils.BlurIterator;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
@@ -56,6 +57,7 @@ public class IterablePaging implements BlurIterable<ScoreDoc, BlurException> {
   private final boolean _runSlow;
   private final Sort _sort;
   private final DeepPageKey _key;
+  private final SegmentResultCache _segmentResultCache;
 
   private TotalHitsRef _totalHitsRef;
   private ProgressRef _progressRef;
@@ -65,6 +67,12 @@ public class IterablePaging implements BlurIterable<ScoreDoc, BlurException> {
   public IterablePaging(AtomicBoolean running, IndexSearcherCloseable searcher, Query query, int numHitsToCollect,
       TotalHitsRef totalHitsRef, ProgressRef progressRef, boolean runSlow, Sort sort, DeepPagingCache deepPagingCache)
       throws BlurException {
+    this(running, searcher, query, numHitsToCollect, totalHitsRef, progressRef, runSlow, sort, deepPagingCache, null);
+  }
+
+  public IterablePaging(AtomicBoolean running, IndexSearcherCloseable searcher, Query query, int numHitsToCollect,
+      TotalHitsRef totalHitsRef, ProgressRef progressRef, boolean runSlow, Sort sort, DeepPagingCache deepPagingCache,
+      SegmentResultCache segmentResultCache) throws BlurException {
     _deepPagingCache = deepPagingCache;
     _running = running;
     _sort = sort;
@@ -83,6 +91,12 @@ public class IterablePaging implements BlurIterable<ScoreDoc, BlurException> {
     } else {
       _key = new DeepPageKey(_query, _sort, _searcher.getIndexReader().getCombinedCoreAndDeletesKey());
     }
+    if (segmentResultCache != null && searcher instanceof IndexSearcher
+        && SegmentResultCache.isCacheable(_query, ((IndexSearcher) searcher).getSimilarity())) {
+      _segmentResultCache = segmentResultCache;
+    } else {
+      _segmentResultCache = null;
+    }
   }
 
   public static class TotalHitsRef {
@@ -226,9 +240,11 @@ public class IterablePaging implements BlurIterable<ScoreDoc, BlurException> {
       try {
         TopDocCollectorInterface collector;
         if (_sort == null) {
-          collector = BlurScoreDocCollector.create(_numHitsToCollect, after, _runSlow, _running);
+          collector = BlurScoreDocCollector.create(_numHitsToCollect, after, _runSlow, _running, _query,
+              _segmentResultCache);
         } else {
-          collector = BlurFieldCollector.create(_sort, _numHitsToCollect, (FieldDoc) after, _runSlow, _running);
+          collector = BlurFieldCollector.create(_sort, _numHitsToCollect, (FieldDoc) after, _runSlow, _running,
+              _query, _segmentResultCache);
         }
         _searcher.search(_query, (Collector) collector);
         _totalHitsRef.totalHits.set(collector.getTotalHits());
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.search;
+
+import static org.apache.blur.metrics.MetricsConstants.EVICTION;
+import static org.apache.blur.metrics.MetricsConstants.HIT;
+import static org.apache.blur.metrics.MetricsConstants.MISS;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.SEGMENT_RESULT_CACHE;
+import static org.apache.blur.metrics.MetricsConstants.SIZE;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.blur.index.AtomicReaderUtil;
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SegmentReader.CoreClosedListener;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.similarities.Similarity;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * Caches the top hits and the total hit count of a query per segment. The key
+ * is the rewritten query, the sort, the number of hits collected, the core
+ * cache key of the segment and the number of deleted documents in the segment.
+ * Deletes within a segment core only ever accumulate, so the deleted document
+ * count identifies the deletes generation of the core. A write to a shard
+ * therefore only invalidates the results of the segments it touched, the
+ * cached results of the other segments are merged with the freshly collected
+ * results of the new and changed segments.
+ * 
+ * The cached doc ids are segment relative so they stay valid when the doc
+ * base of the segment changes. All entries of a segment are removed when the
+ * segment core is closed.
+ */
+public class SegmentResultCache {
+
+  private static final Log LOG = LogFactory.getLog(SegmentResultCache.class);
+
+  private final ConcurrentLinkedHashMap<SegmentResultKey, TopDocs> _cache;
+  private final ConcurrentMap<Object, Set<SegmentResultKey>> _keysByCore = new ConcurrentHashMap<Object, Set<SegmentResultKey>>();
+  private final Meter _hits;
+  private final Meter _misses;
+  private final Meter _evictions;
+
+  /**
+   * @param maxScoreDocs
+   *          the max number of {@link ScoreDoc}s held by the cache.
+   */
+  public SegmentResultCache(long maxScoreDocs) {
+    _hits = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, SEGMENT_RESULT_CACHE, HIT), HIT, TimeUnit.SECONDS);
+    _misses = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, SEGMENT_RESULT_CACHE, MISS), MISS, TimeUnit.SECONDS);
+    _evictions = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, SEGMENT_RESULT_CACHE, EVICTION), EVICTION,
+        TimeUnit.SECONDS);
+    _cache = new ConcurrentLinkedHashMap.Builder<SegmentResultKey, TopDocs>().maximumWeightedCapacity(maxScoreDocs)
+        .weigher(new Weigher<TopDocs>() {
+          @Override
+          public int weightOf(TopDocs value) {
+            return value.scoreDocs.length + 1;
+          }
+        }).listener(new EvictionListener<SegmentResultKey, TopDocs>() {
+          @Override
+          public void onEviction(SegmentResultKey key, TopDocs value) {
+            Set<SegmentResultKey> keys = _keysByCore.get(key._coreKey);
+            if (keys != null) {
+              keys.remove(key);
+            }
+            _evictions.mark();
+          }
+        }).build();
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, SEGMENT_RESULT_CACHE, SIZE), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return _cache.weightedSize();
+      }
+    });
+  }
+
+  public int getEntryCount() {
+    return _cache.size();
+  }
+
+  /**
+   * Per segment results can only be reused when the scores of a segment do
+   * not depend on the statistics of the other segments in the index and when
+   * collecting the query has no side effects (such as counting facets).
+   */
+  public static boolean isCacheable(Query query, Similarity similarity) {
+    if (query instanceof FacetQuery) {
+      return false;
+    }
+    return similarity instanceof FairSimilarity;
+  }
+
+  /**
+   * Creates the collector for the given segment. If the results for the
+   * segment are already cached the returned collector terminates collection
+   * of the segment immediately and provides the cached results, otherwise the
+   * collector provided by the {@link CloneableCollector} is wrapped so that
+   * the results can be stored once the segment has been collected.
+   */
+  public Collector newCollector(Query query, Sort sort, int numHits, AtomicReaderContext context,
+      CloneableCollector cloneableCollector) throws IOException {
+    AtomicReader reader = context.reader();
+    SegmentResultKey key = new SegmentResultKey(query, sort, numHits, reader.getCoreCacheKey(),
+        reader.numDeletedDocs());
+    TopDocs topDocs = _cache.get(key);
+    if (topDocs != null) {
+      _hits.mark();
+      return new SegmentResultCollector(copy(topDocs, context.docBase));
+    }
+    _misses.mark();
+    return new SegmentResultCollector(this, key, context, cloneableCollector.newCollector());
+  }
+
+  void store(SegmentResultKey key, AtomicReaderContext context, TopDocs topDocs) {
+    SegmentReader segmentReader;
+    try {
+      segmentReader = AtomicReaderUtil.getSegmentReader(context.reader());
+    } catch (IOException e) {
+      LOG.debug("Could not find SegmentReader from [{0}], results not cached.", context.reader());
+      return;
+    }
+    Set<SegmentResultKey> keys = getKeys(segmentReader, key._coreKey);
+    keys.add(key);
+    _cache.put(key, copy(topDocs, -context.docBase));
+  }
+
+  private Set<SegmentResultKey> getKeys(SegmentReader segmentReader, final Object coreKey) {
+    Set<SegmentResultKey> keys = _keysByCore.get(coreKey);
+    if (keys != null) {
+      return keys;
+    }
+    keys = Collections.newSetFromMap(new ConcurrentHashMap<SegmentResultKey, Boolean>());
+    Set<SegmentResultKey> existing = _keysByCore.putIfAbsent(coreKey, keys);
+    if (existing != null) {
+      return existing;
+    }
+    segmentReader.addCoreClosedListener(new CoreClosedListener() {
+      @Override
+      public void onClose(SegmentReader owner) {
+        Set<SegmentResultKey> removed = _keysByCore.remove(coreKey);
+        if (removed != null) {
+          for (SegmentResultKey key : removed) {
+            _cache.remove(key);
+          }
+        }
+      }
+    });
+    return keys;
+  }
+
+  private static TopDocs copy(TopDocs topDocs, int docBaseShift) {
+    ScoreDoc[] scoreDocs = new ScoreDoc[topDocs.scoreDocs.length];
+    for (int i = 0; i < scoreDocs.length; i++) {
+      ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+      if (scoreDoc instanceof FieldDoc) {
+        scoreDocs[i] = new FieldDoc(scoreDoc.doc + docBaseShift, scoreDoc.score, ((FieldDoc) scoreDoc).fields);
+      } else {
+        scoreDocs[i] = new ScoreDoc(scoreDoc.doc + docBaseShift, scoreDoc.score);
+      }
+    }
+    if (topDocs instanceof TopFieldDocs) {
+      return new TopFieldDocs(topDocs.totalHits, scoreDocs, ((TopFieldDocs) topDocs).fields, topDocs.getMaxScore());
+    }
+    return new TopDocs(topDocs.totalHits, scoreDocs, topDocs.getMaxScore());
+  }
+
+  static class SegmentResultKey {
+
+    final Query _query;
+    final Sort _sort;
+    final int _numHits;
+    final Object _coreKey;
+    final int _numDeletedDocs;
+
+    SegmentResultKey(Query query, Sort sort, int numHits, Object coreKey, int numDeletedDocs) {
+      _query = query;
+      _sort = sort;
+      _numHits = numHits;
+      _coreKey = coreKey;
+      _numDeletedDocs = numDeletedDocs;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((_coreKey == null) ? 0 : _coreKey.hashCode());
+      result = prime * result + _numDeletedDocs;
+      result = prime * result + _numHits;
+      result = prime * result + ((_query == null) ? 0 : _query.hashCode());
+      result = prime * result + ((_sort == null) ? 0 : _sort.hashCode());
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      SegmentResultKey other = (SegmentResultKey) obj;
+      if (_coreKey != other._coreKey)
+        return false;
+      if (_numDeletedDocs != other._numDeletedDocs)
+        return false;
+      if (_numHits != other._numHits)
+        return false;
+      if (_query == null) {
+        if (other._query != null)
+          return false;
+      } else if (!_query.equals(other._query))
+        return false;
+      if (_sort == null) {
+        if (other._sort != null)
+          return false;
+      } else if (!_sort.equals(other._sort))
+        return false;
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "SegmentResultKey [_query=" + _query + ", _sort=" + _sort + ", _numHits=" + _numHits + ", _coreKey="
+          + _coreKey + ", _numDeletedDocs=" + _numDeletedDocs + "]";
+    }
+
+  }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.search;
+
+import java.io.IOException;
+
+import org.apache.blur.lucene.search.SegmentResultCache.SegmentResultKey;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * Per segment collector created by the {@link SegmentResultCache}. When the
+ * results are cached the collection of the segment is terminated as soon as it
+ * starts, otherwise all calls are passed to the wrapped collector.
+ */
+public class SegmentResultCollector extends Collector {
+
+  private final TopDocs _cachedTopDocs;
+  private final SegmentResultCache _cache;
+  private final SegmentResultKey _key;
+  private final AtomicReaderContext _context;
+  private final Collector _collector;
+
+  SegmentResultCollector(TopDocs cachedTopDocs) {
+    _cachedTopDocs = cachedTopDocs;
+    _cache = null;
+    _key = null;
+    _context = null;
+    _collector = null;
+  }
+
+  SegmentResultCollector(SegmentResultCache cache, SegmentResultKey key, AtomicReaderContext context,
+      Collector collector) {
+    _cachedTopDocs = null;
+    _cache = cache;
+    _key = key;
+    _context = context;
+    _collector = collector;
+  }
+
+  public boolean isCached() {
+    return _cachedTopDocs != null;
+  }
+
+  public TopDocs getCachedTopDocs() {
+    return _cachedTopDocs;
+  }
+
+  public Collector getCollector() {
+    return _collector;
+  }
+
+  /**
+   * Stores the collected results of the segment in the cache.
+   * 
+   * @return the given {@link TopDocs}.
+   */
+  public TopDocs store(TopDocs topDocs) {
+    if (_cache != null) {
+      _cache.store(_key, _context, topDocs);
+    }
+    return topDocs;
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) throws IOException {
+    _collector.setScorer(scorer);
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    _collector.collect(doc);
+  }
+
+  @Override
+  public void setNextReader(AtomicReaderContext context) throws IOException {
+    if (isCached()) {
+      throw new CollectionTerminatedException();
+    }
+    _collector.setNextReader(context);
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    if (isCached()) {
+      return true;
+    }
+    return _collector.acceptsDocsOutOfOrder();
+  }
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.search;
+
+import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
+import static org.apache.blur.metrics.MetricsConstants.MISS;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.SEGMENT_RESULT_CACHE;
+import static org.apache.blur.utils.BlurConstants.PRIME_DOC;
+import static org.apache.blur.utils.BlurConstants.PRIME_DOC_VALUE;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.blur.thrift.generated.ScoreType;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+
+public class IndexSearcherCloseableBaseTest {
+
+  private static final String COLOR = "color";
+  private static final Term PRIME_DOC_TERM = new Term(PRIME_DOC, PRIME_DOC_VALUE);
+
+  private RAMDirectory _directory;
+  private DirectoryReader _reader;
+  private ExecutorService _executor;
+
+  @Before
+  public void setup() throws IOException {
+    _directory = new RAMDirectory();
+    IndexWriter writer = new IndexWriter(_directory, new IndexWriterConfig(LUCENE_VERSION, new KeywordAnalyzer()));
+    Random random = new Random(1);
+    for (int row = 0; row < 1000; row++) {
+      List<Document> docs = new ArrayList<Document>();
+      int records = random.nextInt(5) + 1;
+      for (int record = 0; record < records; record++) {
+        Document document = new Document();
+        if (record == 0) {
+          document.add(new StringField(PRIME_DOC, PRIME_DOC_VALUE, Store.NO));
+        }
+        document.add(new StringField(COLOR, random.nextInt(4) == 0 ? "red" : "blue", Store.NO));
+        docs.add(document);
+      }
+      writer.addDocuments(docs);
+    }
+    writer.forceMerge(1);
+    writer.close();
+    _reader = DirectoryReader.open(_directory);
+    _executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    _executor.shutdownNow();
+    _reader.close();
+    _directory.close();
+  }
+
+  @Test
+  public void testRecordQueryRangesMatchWholeSegment() throws IOException {
+    assertSameResults(new TermQuery(new Term(COLOR, "red")));
+  }
+
+  @Test
+  public void testRowQueryRangesMatchWholeSegment() throws IOException {
+    for (ScoreType scoreType : ScoreType.values()) {
+      assertSameResults(new SuperQuery(new TermQuery(new Term(COLOR, "red")), scoreType, PRIME_DOC_TERM));
+    }
+  }
+
+  @Test
+  public void testSplitSegmentsDoNotUseSegmentResultCache() throws IOException {
+    SegmentResultCache segmentResultCache = new SegmentResultCache(100000);
+    Meter misses = Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, SEGMENT_RESULT_CACHE, MISS), MISS,
+        TimeUnit.SECONDS);
+    long missCount = misses.count();
+    Query query = new TermQuery(new Term(COLOR, "red"));
+    IndexSearcherCloseable searcher = getSearcher(_reader, 4);
+    Query rewritten = searcher.rewrite(query);
+    BlurScoreDocCollector collector = BlurScoreDocCollector.create(10000, null, false, new AtomicBoolean(true),
+        rewritten, segmentResultCache);
+    searcher.search(rewritten, collector);
+    assertEquals(0, segmentResultCache.getEntryCount());
+    assertEquals(missCount, misses.count());
+
+    searcher = getSearcher(_reader, 1);
+    collector = BlurScoreDocCollector.create(10000, null, false, new AtomicBoolean(true), rewritten,
+        segmentResultCache);
+    searcher.search(rewritten, collector);
+    assertEquals(1, segmentResultCache.getEntryCount());
+    assertEquals(missCount + 1, misses.count());
+  }
+
+  private void assertSameResults(Query query) throws IOException {
+    assertEquals(1, _reader.leaves().size());
+    TopDocs expected = search(getSearcher(_reader, 1), query);
+    for (int ranges = 2; ranges < 8; ranges++) {
+      TopDocs actual = search(getSearcher(_reader, ranges), query);
+      assertEquals(expected.totalHits, actual.totalHits);
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        ScoreDoc e = expected.scoreDocs[i];
+        ScoreDoc a = actual.scoreDocs[i];
+        assertEquals(e.doc, a.doc);
+        assertEquals(e.score, a.score, 0.0f);
+      }
+    }
+  }
+
+  private TopDocs search(IndexSearcherCloseable searcher, Query query) throws IOException {
+    BlurScoreDocCollector collector = BlurScoreDocCollector.create(10000, null, false, new AtomicBoolean(true));
+    searcher.search(searcher.rewrite(query), collector);
+    assertEquals(collector.getTotalHits(), collector.topDocs().totalHits);
+    return collector.topDocs();
+  }
+
+  private IndexSearcherCloseable getSearcher(IndexReader reader, int ranges) {
+    IndexSearcherCloseableBase searcher = new IndexSearcherCloseableBase(reader, _executor) {
+      @Override
+      public Directory getDirectory() {
+        return _directory;
+      }
+
+      @Override
+      public void close() throws IOException {
+
+      }
+    };
+    searcher.setSegmentRangeSplitting(10, ranges);
+    return searcher;
+  }
+}
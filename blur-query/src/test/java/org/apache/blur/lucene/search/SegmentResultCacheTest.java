@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.search;
+
+import static org.apache.blur.lucene.LuceneVersionConstant.LUCENE_VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.blur.lucene.search.IterablePaging.TotalHitsRef;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.utils.BlurIterator;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.SortField.Type;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SegmentResultCacheTest {
+
+  private RAMDirectory _directory;
+  private IndexWriter _writer;
+  private int _id;
+
+  @Before
+  public void setup() throws IOException {
+    _directory = new RAMDirectory();
+    _writer = new IndexWriter(_directory, new IndexWriterConfig(LUCENE_VERSION, new KeywordAnalyzer()));
+    // Create a few segments.
+    for (int i = 0; i < 3; i++) {
+      addDocs(100);
+      _writer.commit();
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    _writer.close();
+    _directory.close();
+  }
+
+  @Test
+  public void testCachedResultsMatchUncachedResults() throws Exception {
+    SegmentResultCache cache = new SegmentResultCache(10000);
+    Query query = new TermQuery(new Term("f1", "value"));
+    Sort sort = new Sort(new SortField("sort", Type.STRING, true));
+
+    DirectoryReader reader = DirectoryReader.open(_directory);
+    assertResults(reader, query, null, cache);
+    assertResults(reader, query, sort, cache);
+    int entries = cache.getEntryCount();
+    assertEquals(reader.leaves().size() * 2, entries);
+
+    // Hits the cache.
+    assertResults(reader, query, null, cache);
+    assertResults(reader, query, sort, cache);
+    assertEquals(entries, cache.getEntryCount());
+
+    // Add a segment and delete from an existing segment.
+    addDocs(50);
+    _writer.deleteDocuments(new Term("id", "5"));
+    _writer.commit();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    reader.close();
+    reader = newReader;
+
+    assertResults(reader, query, null, cache);
+    assertResults(reader, query, sort, cache);
+    reader.close();
+  }
+
+  @Test
+  public void testEntriesRemovedWhenSegmentClosed() throws Exception {
+    SegmentResultCache cache = new SegmentResultCache(10000);
+    Query query = new TermQuery(new Term("f1", "value"));
+    DirectoryReader reader = DirectoryReader.open(_directory);
+    assertResults(reader, query, null, cache);
+    assertTrue(cache.getEntryCount() > 0);
+    _writer.forceMerge(1);
+    _writer.commit();
+    DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+    reader.close();
+    assertEquals(0, cache.getEntryCount());
+    newReader.close();
+  }
+
+  private void assertResults(DirectoryReader reader, Query query, Sort sort, SegmentResultCache cache)
+      throws Exception {
+    IndexSearcherCloseable searcher = getSearcher(reader);
+    TotalHitsRef expectedTotalHits = new TotalHitsRef();
+    List<ScoreDoc> expected = getResults(searcher, query, sort, null, expectedTotalHits);
+    TotalHitsRef totalHits = new TotalHitsRef();
+    List<ScoreDoc> actual = getResults(searcher, query, sort, cache, totalHits);
+    assertEquals(expectedTotalHits.totalHits(), totalHits.totalHits());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).doc, actual.get(i).doc);
+      assertEquals(expected.get(i).score, actual.get(i).score, 0.0f);
+    }
+  }
+
+  private List<ScoreDoc> getResults(IndexSearcherCloseable searcher, Query query, Sort sort,
+      SegmentResultCache cache, TotalHitsRef totalHitsRef) throws Exception {
+    IterablePaging paging = new IterablePaging(new AtomicBoolean(true), searcher, query, 10, totalHitsRef, null,
+        false, sort, new DeepPagingCache(), cache);
+    BlurIterator<ScoreDoc, BlurException> iterator = paging.gather(10).iterator();
+    List<ScoreDoc> results = new ArrayList<ScoreDoc>();
+    while (iterator.hasNext()) {
+      results.add(iterator.next());
+    }
+    return results;
+  }
+
+  private IndexSearcherCloseable getSearcher(DirectoryReader reader) {
+    IndexSearcherCloseableBase searcher = new IndexSearcherCloseableBase(reader, null) {
+      @Override
+      public Directory getDirectory() {
+        return _directory;
+      }
+
+      @Override
+      public void close() throws IOException {
+
+      }
+    };
+    searcher.setSimilarity(new FairSimilarity());
+    return searcher;
+  }
+
+  private void addDocs(int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      Document document = new Document();
+      document.add(new StringField("id", Integer.toString(_id), Store.YES));
+      document.add(new StringField("f1", "value", Store.NO));
+      document.add(new StringField("sort", Integer.toString(_id % 17), Store.NO));
+      _writer.addDocument(document);
+      _id++;
+    }
+  }
+}
@@ -35,6 +35,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.ObjectName;
+
 import jline.Terminal;
 import jline.console.ConsoleReader;
 
@@ -55,6 +57,10 @@ public class TopCommand extends Command {
   private static final String SHORTNAME = ".shortname";
   private static final String UNKNOWN = "Unknown";
   private static final String TOP_SHARD_SERVER_SHORTNAME = "top.SHARD_SERVER.shortname";
+  private static final String ORG_APACHE_BLUR = "org.apache.blur";
+  private static final String SLOW_QUERIES = ObjectName.quote(ORG_APACHE_BLUR) + ":type=" + ObjectName.quote("Blur")
+      + ",name=" + ObjectName.quote("Slow Queries");
+  private static final String[] LATENCY_TYPES = new String[] { "Query Latency", "Fetch Latency", "Mutate Latency" };
 
   public enum SCREEN {
     HELP, TOP
@@ -87,6 +93,7 @@ public class TopCommand extends Command {
 
     AtomicBoolean quit = new AtomicBoolean();
     AtomicBoolean help = new AtomicBoolean();
+    AtomicBoolean slow = new AtomicBoolean();
 
     Properties properties = new Properties();
     try {
@@ -147,7 +154,7 @@ public class TopCommand extends Command {
         }
       }
 
-      startCommandWatcher(reader, quit, help, this);
+      startCommandWatcher(reader, quit, help, slow, this);
     }
 
     List<String> shardServerList = new ArrayList<String>(client.shardServerList(cluster));
@@ -169,6 +176,8 @@ public class TopCommand extends Command {
         return;
       } else if (help.get()) {
         showHelp(output, labels, helpMap);
+      } else if (slow.get()) {
+        showSlowQueries(output, client, cluster, shardClients);
       } else {
         output.append(truncate(String.format(header.toString(), (Object[]) labels)) + "\n");
         lineCount++;
@@ -370,11 +379,144 @@ public class TopCommand extends Command {
       output.append(helpMessage);
       output.append('\n');
     }
+    output.append(String.format("%15s", "s"));
+    output.append(" - Toggles the screen with the latency of each table and the slowest queries\n");
+  }
+
+  /**
+   * Shows the latency of each table (the 99th percentile is the highest of all
+   * the shard servers) followed by the slowest queries of all the shard
+   * servers.
+   */
+  private void showSlowQueries(StringBuilder output, Blur.Iface client, String cluster,
+      Map<String, AtomicReference<Client>> shardClients) throws BlurException, TException {
+    List<String> tables = new ArrayList<String>(client.tableListByCluster(cluster));
+    Collections.sort(tables);
+    Set<String> keys = new HashSet<String>();
+    keys.add(SLOW_QUERIES);
+    for (String table : tables) {
+      for (String type : LATENCY_TYPES) {
+        keys.add(getLatencyMetricName(type, table));
+      }
+    }
 
+    Map<String, double[]> latencies = new TreeMap<String, double[]>();
+    List<SlowQuery> slowQueries = new ArrayList<SlowQuery>();
+    for (Entry<String, AtomicReference<Client>> e : new TreeMap<String, AtomicReference<Client>>(shardClients)
+        .entrySet()) {
+      String shardServer = e.getKey();
+      Map<String, Metric> metrics = getMetrics(shardServer, e.getValue(), keys);
+      if (metrics == null) {
+        continue;
+      }
+      for (String table : tables) {
+        for (int i = 0; i < LATENCY_TYPES.length; i++) {
+          Metric metric = metrics.get(getLatencyMetricName(LATENCY_TYPES[i], table));
+          if (metric == null) {
+            continue;
+          }
+          double[] values = latencies.get(table);
+          if (values == null) {
+            values = new double[LATENCY_TYPES.length + 1];
+            latencies.put(table, values);
+          }
+          Map<String, Double> doubleMap = metric.getDoubleMap();
+          if (i == 0) {
+            values[0] += getValue(doubleMap, "oneMinuteRate");
+          }
+          values[i + 1] = Math.max(values[i + 1], getValue(doubleMap, "99%"));
+        }
+      }
+      Metric metric = metrics.get(SLOW_QUERIES);
+      if (metric != null) {
+        addSlowQueries(shardServer, metric, slowQueries);
+      }
+    }
+
+    int lineCount = 0;
+    String latencyHeader = "%-20s %10s %10s %10s %10s%n";
+    output.append(truncate(String.format(latencyHeader, "table", "qry/s", "qry 99%", "fch 99%", "mut 99%")));
+    lineCount++;
+    for (Entry<String, double[]> e : latencies.entrySet()) {
+      if (tooLong(lineCount)) {
+        return;
+      }
+      double[] values = e.getValue();
+      output.append(truncate(String.format(latencyHeader, e.getKey(), humanize(values[0], false),
+          humanize(values[1], false), humanize(values[2], false), humanize(values[3], false))));
+      lineCount++;
+    }
+
+    Collections.sort(slowQueries);
+    String slowHeader = "%-20s %-20s %10s %10s %10s %10s %s%n";
+    output.append(truncate(String.format("%n" + slowHeader, "shard server", "table", "real ms", "cpu ms", "hits",
+        "bytes", "query")));
+    lineCount += 2;
+    for (SlowQuery slowQuery : slowQueries) {
+      if (tooLong(lineCount)) {
+        return;
+      }
+      output.append(truncate(String.format(slowHeader, slowQuery._shardServer, slowQuery._table,
+          humanize(slowQuery._realTime, false), humanize(slowQuery._cpuTime, false),
+          humanize(slowQuery._hits, false), humanize(slowQuery._fetchedBytes, true), slowQuery._query)));
+      lineCount++;
+    }
+  }
+
+  private void addSlowQueries(String shardServer, Metric metric, List<SlowQuery> slowQueries) {
+    Map<String, String> strMap = metric.getStrMap();
+    Map<String, Long> longMap = metric.getLongMap();
+    Map<String, Double> doubleMap = metric.getDoubleMap();
+    if (longMap == null || longMap.get("count") == null) {
+      return;
+    }
+    long count = longMap.get("count");
+    for (int i = 0; i < count; i++) {
+      String prefix = i + ".";
+      SlowQuery slowQuery = new SlowQuery();
+      slowQuery._shardServer = shardServer;
+      slowQuery._table = strMap.get(prefix + "table");
+      slowQuery._query = strMap.get(prefix + "query");
+      slowQuery._realTime = getValue(doubleMap, prefix + "realTime");
+      slowQuery._cpuTime = getValue(doubleMap, prefix + "cpuTime");
+      slowQuery._hits = getValue(longMap, prefix + "hits");
+      slowQuery._fetchedBytes = getValue(longMap, prefix + "fetchedBytes");
+      slowQueries.add(slowQuery);
+    }
+  }
+
+  private static double getValue(Map<String, ? extends Number> map, String key) {
+    if (map == null) {
+      return 0.0;
+    }
+    Number number = map.get(key);
+    if (number == null) {
+      return 0.0;
+    }
+    return number.doubleValue();
+  }
+
+  private static String getLatencyMetricName(String type, String table) {
+    return ObjectName.quote(ORG_APACHE_BLUR) + ":type=" + ObjectName.quote(type) + ",name=" + ObjectName.quote(table);
+  }
+
+  private static class SlowQuery implements Comparable<SlowQuery> {
+    String _shardServer;
+    String _table;
+    String _query;
+    double _realTime;
+    double _cpuTime;
+    double _hits;
+    double _fetchedBytes;
+
+    @Override
+    public int compareTo(SlowQuery o) {
+      return Double.compare(o._realTime, _realTime);
+    }
   }
 
   private void startCommandWatcher(final ConsoleReader reader, final AtomicBoolean quit, final AtomicBoolean help,
-      final Object lock) {
+      final AtomicBoolean slow, final Object lock) {
     Thread thread = new Thread(new Runnable() {
       @Override
       public void run() {
@@ -392,6 +534,11 @@ public class TopCommand extends Command {
               synchronized (lock) {
                 lock.notify();
               }
+            } else if (readCharacter == 's') {
+              slow.set(!slow.get());
+              synchronized (lock) {
+                lock.notify();
+              }
             }
           }
         } catch (IOException e) {
@@ -17,18 +17,15 @@
 package org.apache.blur.spark;
 
 import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 
-import org.apache.blur.command.stream.StreamClient;
 import org.apache.blur.command.stream.StreamFunction;
 import org.apache.blur.thirdparty.thrift_0_9_0.TException;
 import org.apache.blur.thrift.BlurClient;
@@ -37,14 +34,14 @@ import org.apache.blur.thrift.generated.BlurException;
 import org.apache.blur.user.User;
 import org.apache.blur.user.UserContext;
 import org.apache.blur.utils.BlurConstants;
-import org.apache.commons.io.IOUtils;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.FlatMapFunction;
+
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
 
 import com.google.common.base.Splitter;
-import com.google.common.io.Closer;
 
 @SuppressWarnings("serial")
 public class BlurRDD implements Serializable {
@@ -72,64 +69,33 @@ public class BlurRDD implements Serializable {
   }
 
   public <T> JavaRDD<T> executeStream(JavaSparkContext context, String table, StreamFunction<T> streamFunction) {
-    User user = UserContext.getUser();
-    List<BlurSparkSplit> splits = getSplits(table, user, CLASS_LOADER_ID);
-    return context.parallelize(splits).flatMap(new FlatMapFunction<BlurSparkSplit, T>() {
-      @Override
-      public Iterable<T> call(BlurSparkSplit t) throws Exception {
-        return new Iterable<T>() {
-          @Override
-          public Iterator<T> iterator() {
-            Closer closer = Closer.create();
-            try {
-              String host = t.getHost();
-              int port = t.getPort();
-              int timeout = t.getTimeout();
-              StreamClient streamClient = closer.register(new StreamClient(host, port, timeout));
-              String classLoaderId = t.getClassLoaderId();
-              if (!streamClient.isClassLoaderAvailable(classLoaderId)) {
-                streamClient.loadJars(classLoaderId, _jars);
-              }
-              return wrapClose(closer, streamClient.executeStream(t, streamFunction).iterator());
-            } catch (IOException e) {
-              IOUtils.closeQuietly(closer);
-              throw new RuntimeException(e);
-            }
-          }
-        };
-      }
-    });
+    return executeStream(context, table, null, streamFunction);
   }
 
-  private static <T> Iterator<T> wrapClose(Closeable c, Iterator<T> t) {
-    return new Iterator<T>() {
-
-      @Override
-      public boolean hasNext() {
-        try {
-          boolean hasNext = t.hasNext();
-          if (!hasNext) {
-            IOUtils.closeQuietly(c);
-          }
-          return hasNext;
-        } catch (Throwable t) {
-          IOUtils.closeQuietly(c);
-          if (t instanceof RuntimeException) {
-            throw (RuntimeException) t;
-          } else {
-            throw new RuntimeException(t);
-          }
-        }
-      }
+  /**
+   * Executes the {@link StreamFunction} against every shard of the table, each
+   * shard is a partition that prefers the shard server that is serving it.
+   * 
+   * @param query
+   *          an optional record query (Blur query syntax) that is evaluated on
+   *          the shard servers, only the matching documents are visible to the
+   *          {@link StreamFunction}. Null streams all the documents.
+   */
+  public <T> JavaRDD<T> executeStream(JavaSparkContext context, String table, String query,
+      StreamFunction<T> streamFunction) {
+    User user = UserContext.getUser();
+    List<BlurSparkSplit> splits = getSplits(table, user, CLASS_LOADER_ID, query);
+    ClassTag<T> classTag = getClassTag();
+    BlurSparkRDD<T> rdd = new BlurSparkRDD<T>(context.sc(), splits, streamFunction, _jars, classTag);
+    return new JavaRDD<T>(rdd, classTag);
+  }
 
-      @Override
-      public T next() {
-        return t.next();
-      }
-    };
+  @SuppressWarnings("unchecked")
+  private static <T> ClassTag<T> getClassTag() {
+    return (ClassTag<T>) ClassTag$.MODULE$.AnyRef();
   }
 
-  private List<BlurSparkSplit> getSplits(String table, User user, String classLoaderId) {
+  private List<BlurSparkSplit> getSplits(String table, User user, String classLoaderId, String query) {
     try {
       Map<String, String> shardServerLayout = _client.shardServerLayout(table);
       List<BlurSparkSplit> splits = new ArrayList<BlurSparkSplit>();
@@ -140,7 +106,7 @@ public class BlurRDD implements Serializable {
         int port = getStreamPort(shardServerWithThriftPort);
         String username = user.getUsername();
         Map<String, String> attributes = user.getAttributes();
-        splits.add(new BlurSparkSplit(host, port, _timeout, table, shard, classLoaderId, username, attributes));
+        splits.add(new BlurSparkSplit(host, port, _timeout, table, shard, classLoaderId, username, attributes, query));
       }
       return splits;
     } catch (BlurException e) {
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.spark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.blur.command.stream.StreamClient;
+import org.apache.blur.command.stream.StreamFunction;
+import org.apache.commons.io.IOUtils;
+import org.apache.spark.Dependency;
+import org.apache.spark.Partition;
+import org.apache.spark.SparkContext;
+import org.apache.spark.TaskContext;
+import org.apache.spark.rdd.RDD;
+import org.apache.spark.util.TaskCompletionListener;
+
+import scala.collection.JavaConversions;
+import scala.collection.Seq;
+import scala.collection.mutable.ArrayBuffer;
+import scala.reflect.ClassTag;
+
+import com.google.common.io.Closer;
+
+/**
+ * An {@link RDD} with one partition per shard of a Blur table. Each partition
+ * prefers to run on the shard server that is serving the shard so that
+ * co-located executors stream the shard locally.
+ */
+@SuppressWarnings("serial")
+public class BlurSparkRDD<T> extends RDD<T> {
+
+  private final List<BlurSparkSplit> _splits;
+  private final StreamFunction<T> _streamFunction;
+  private final List<String> _jars;
+
+  public BlurSparkRDD(SparkContext sparkContext, List<BlurSparkSplit> splits, StreamFunction<T> streamFunction,
+      List<String> jars, ClassTag<T> classTag) {
+    super(sparkContext, new ArrayBuffer<Dependency<?>>(), classTag);
+    _splits = splits;
+    _streamFunction = streamFunction;
+    _jars = jars;
+  }
+
+  @Override
+  public Partition[] getPartitions() {
+    Partition[] partitions = new Partition[_splits.size()];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new BlurSparkPartition(i, _splits.get(i));
+    }
+    return partitions;
+  }
+
+  @Override
+  public Seq<String> getPreferredLocations(Partition partition) {
+    BlurSparkSplit split = ((BlurSparkPartition) partition).getSplit();
+    return JavaConversions.asScalaBuffer(Arrays.asList(split.getHost()));
+  }
+
+  @Override
+  public scala.collection.Iterator<T> compute(Partition partition, TaskContext context) {
+    BlurSparkSplit split = ((BlurSparkPartition) partition).getSplit();
+    final Closer closer = Closer.create();
+    context.addTaskCompletionListener(new TaskCompletionListener() {
+      @Override
+      public void onTaskCompletion(TaskContext context) {
+        IOUtils.closeQuietly(closer);
+      }
+    });
+    try {
+      StreamClient streamClient = closer.register(new StreamClient(split.getHost(), split.getPort(),
+          split.getTimeout()));
+      String classLoaderId = split.getClassLoaderId();
+      if (!streamClient.isClassLoaderAvailable(classLoaderId)) {
+        streamClient.loadJars(classLoaderId, _jars);
+      }
+      Iterator<T> iterator = streamClient.executeStream(split, _streamFunction).iterator();
+      return JavaConversions.asScalaIterator(iterator);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(closer);
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static class BlurSparkPartition implements Partition {
+
+    private final int _index;
+    private final BlurSparkSplit _split;
+
+    public BlurSparkPartition(int index, BlurSparkSplit split) {
+      _index = index;
+      _split = split;
+    }
+
+    @Override
+    public int index() {
+      return _index;
+    }
+
+    public BlurSparkSplit getSplit() {
+      return _split;
+    }
+
+    @Override
+    public int hashCode() {
+      return _index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof BlurSparkPartition)) {
+        return false;
+      }
+      return _index == ((BlurSparkPartition) obj)._index;
+    }
+  }
+
+}
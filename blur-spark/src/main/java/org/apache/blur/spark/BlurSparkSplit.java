@@ -30,7 +30,12 @@ public class BlurSparkSplit extends StreamSplit {
 
   public BlurSparkSplit(String host, int port, int timeout, String table, String shard, String classLoaderId,
       String user, Map<String, String> userAttributes) {
-    super(table, shard, classLoaderId, user, userAttributes);
+    this(host, port, timeout, table, shard, classLoaderId, user, userAttributes, null);
+  }
+
+  public BlurSparkSplit(String host, int port, int timeout, String table, String shard, String classLoaderId,
+      String user, Map<String, String> userAttributes, String query) {
+    super(table, shard, classLoaderId, user, userAttributes, query);
     _host = host;
     _port = port;
     _timeout = timeout;
@@ -39,4 +39,12 @@ public abstract class ByteArray {
 
   public abstract void copy(int position, ByteArray dest, int destOffset, int len);
 
+  /**
+   * Frees any resources held outside of the heap, the array can no longer be
+   * used afterwards.
+   */
+  public void release() {
+
+  }
+
 }
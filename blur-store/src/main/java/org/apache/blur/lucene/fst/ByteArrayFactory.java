@@ -30,6 +30,7 @@ public abstract class ByteArrayFactory {
   private static Log LOG = LogFactory.getLog(ByteArrayFactory.class);
 
   private final static ByteArrayFactory _factory;
+  private final static ByteArrayFactory _heapFactory;
 
   static {
     BlurConfiguration configuration;
@@ -55,6 +56,11 @@ public abstract class ByteArrayFactory {
       throw new RuntimeException(e);
     }
     _factory = factory;
+    if (factory instanceof ByteArrayPrimitiveFactory) {
+      _heapFactory = factory;
+    } else {
+      _heapFactory = new ByteArrayPrimitiveFactory(configuration);
+    }
   }
 
   public ByteArrayFactory(BlurConfiguration configuration) {
@@ -67,4 +73,12 @@ public abstract class ByteArrayFactory {
     return _factory;
   }
 
+  /**
+   * @return a factory that keeps the arrays on the java heap, no matter which
+   *         factory is configured.
+   */
+  public static ByteArrayFactory getHeapFactory() {
+    return _heapFactory;
+  }
+
 }
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.fst;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.blur.store.util.UnsafeUtil;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+
+import sun.misc.Unsafe;
+
+/**
+ * A {@link ByteArray} that stores its bytes outside of the java heap. The
+ * memory is freed by {@link #release()}, which is called when the segment that
+ * owns the FST is closed. Lucene only closes the segment once no search is
+ * using it, so accesses do not have to guard against a concurrent release.
+ */
+public class ByteArrayOffHeap extends ByteArray {
+
+  private static final Unsafe _unsafe = UnsafeUtil.getUnsafe();
+  private static final long BYTE_ARRAY_BASE_OFFSET = _unsafe.arrayBaseOffset(byte[].class);
+  private static final int BUFFER_SIZE = 8192;
+
+  private final int _length;
+  private final AtomicBoolean _released = new AtomicBoolean();
+  private final AtomicLong _offHeapSize;
+  private final long _address;
+
+  public ByteArrayOffHeap(int size, AtomicLong offHeapSize) {
+    _length = size;
+    _offHeapSize = offHeapSize;
+    _address = _unsafe.allocateMemory(Math.max(size, 1));
+    // match the zero filled contents of a new byte[]
+    _unsafe.setMemory(_address, size, (byte) 0);
+    _offHeapSize.addAndGet(size);
+  }
+
+  @Override
+  public int length() {
+    return _length;
+  }
+
+  @Override
+  public void put(int position, byte b) {
+    _unsafe.putByte(address(position, 1), b);
+  }
+
+  @Override
+  public byte get(int position) {
+    return _unsafe.getByte(address(position, 1));
+  }
+
+  @Override
+  public void put(int position, byte[] b, int offset, int len) {
+    checkArray(b, offset, len);
+    _unsafe.copyMemory(b, BYTE_ARRAY_BASE_OFFSET + offset, null, address(position, len), len);
+  }
+
+  @Override
+  public void get(int position, byte[] b, int offset, int len) {
+    checkArray(b, offset, len);
+    _unsafe.copyMemory(null, address(position, len), b, BYTE_ARRAY_BASE_OFFSET + offset, len);
+  }
+
+  @Override
+  public void readBytes(DataInput in, int offset, int length) throws IOException {
+    byte[] buf = new byte[Math.min(length, BUFFER_SIZE)];
+    while (length > 0) {
+      int len = Math.min(length, buf.length);
+      in.readBytes(buf, 0, len);
+      put(offset, buf, 0, len);
+      offset += len;
+      length -= len;
+    }
+  }
+
+  @Override
+  public void writeBytes(DataOutput out, int offset, int length) throws IOException {
+    byte[] buf = new byte[Math.min(length, BUFFER_SIZE)];
+    while (length > 0) {
+      int len = Math.min(length, buf.length);
+      get(offset, buf, 0, len);
+      out.writeBytes(buf, 0, len);
+      offset += len;
+      length -= len;
+    }
+  }
+
+  @Override
+  public void copy(int position, ByteArray dest, int destOffset, int len) {
+    if (dest instanceof ByteArrayOffHeap) {
+      ByteArrayOffHeap offHeap = (ByteArrayOffHeap) dest;
+      _unsafe.copyMemory(address(position, len), offHeap.address(destOffset, len), len);
+    } else {
+      byte[] buf = new byte[len];
+      get(position, buf, 0, len);
+      dest.put(destOffset, buf, 0, len);
+    }
+  }
+
+  @Override
+  public void release() {
+    if (!_released.compareAndSet(false, true)) {
+      throw new IllegalStateException("Byte array has already been released.");
+    }
+    _unsafe.freeMemory(_address);
+    _offHeapSize.addAndGet(-_length);
+  }
+
+  public boolean isReleased() {
+    return _released.get();
+  }
+
+  /**
+   * Checks the bounds of an access.
+   * 
+   * @return the address of the position.
+   */
+  private long address(int position, int len) {
+    if (position < 0 || len < 0 || position + len > _length) {
+      throw new ArrayIndexOutOfBoundsException("Position [" + position + "] length [" + len
+          + "] is out of bounds for array of length [" + _length + "]");
+    }
+    return _address + position;
+  }
+
+  private static void checkArray(byte[] b, int offset, int len) {
+    if (offset < 0 || len < 0 || offset + len > b.length) {
+      throw new ArrayIndexOutOfBoundsException("Offset [" + offset + "] length [" + len
+          + "] is out of bounds for array of length [" + b.length + "]");
+    }
+  }
+}
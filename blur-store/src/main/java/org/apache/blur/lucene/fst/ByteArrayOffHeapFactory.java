@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.fst;
+
+import static org.apache.blur.metrics.MetricsConstants.OFF_HEAP_MEMORY;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.blur.BlurConfiguration;
+import org.apache.blur.metrics.AtomicLongGauge;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+
+/**
+ * Creates {@link ByteArrayOffHeap} instances so that the FST terms indexes are
+ * kept outside of the java heap. The memory is released when the segment that
+ * owns the terms index is closed.
+ */
+public class ByteArrayOffHeapFactory extends ByteArrayFactory {
+
+  private static final String FST = "FST";
+
+  private final AtomicLong _offHeapSize = new AtomicLong();
+
+  public ByteArrayOffHeapFactory(BlurConfiguration configuration) {
+    super(configuration);
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, FST, OFF_HEAP_MEMORY), new AtomicLongGauge(_offHeapSize));
+  }
+
+  @Override
+  public ByteArray newByteArray(int size) {
+    return new ByteArrayOffHeap(size, _offHeapSize);
+  }
+
+  public long getOffHeapSize() {
+    return _offHeapSize.get();
+  }
+
+}
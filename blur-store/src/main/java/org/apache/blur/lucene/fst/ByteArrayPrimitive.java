@@ -66,7 +66,11 @@ public class ByteArrayPrimitive extends ByteArray {
 
   @Override
   public void copy(int position, ByteArray dest, int destOffset, int len) {
-    System.arraycopy(_bytes, position, ((ByteArrayPrimitive) dest)._bytes, destOffset, len);
+    if (dest instanceof ByteArrayPrimitive) {
+      System.arraycopy(_bytes, position, ((ByteArrayPrimitive) dest)._bytes, destOffset, len);
+    } else {
+      dest.put(destOffset, _bytes, position, len);
+    }
   }
 
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.blur.store;
 
+import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BLOCK_CACHE_V2_ADMISSION_WINDOW_RATIO;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BLOCK_CACHE_V2_CACHE_BLOCK_SIZE;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BLOCK_CACHE_V2_CACHE_BLOCK_SIZE_PREFIX;
 import static org.apache.blur.utils.BlurConstants.BLUR_SHARD_BLOCK_CACHE_V2_DIRECT_REF_LIMIT;
@@ -194,8 +195,9 @@ public class BlockCacheDirectoryFactoryV2 extends BlockCacheDirectoryFactory {
       pool = new SimpleCacheValueBufferPool(store, queueDepth);
     }
 
+    double admissionWindowRatio = configuration.getDouble(BLUR_SHARD_BLOCK_CACHE_V2_ADMISSION_WINDOW_RATIO, 0.01);
     BaseCache baseCache = new BaseCache(totalNumberOfBytes, fileBufferSize, cacheBlockSize, directLocalCacheRefLimit,
-        readFilter, writeFilter, quiet, pool);
+        readFilter, writeFilter, quiet, pool, admissionWindowRatio);
     CachePoolStrategy cachePoolStrategy = new SingleCachePoolStrategy(baseCache);
     _cache = new PooledCache(cachePoolStrategy);
   }
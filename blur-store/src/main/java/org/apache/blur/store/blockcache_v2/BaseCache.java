@@ -17,12 +17,16 @@
  */
 package org.apache.blur.store.blockcache_v2;
 
+import static org.apache.blur.metrics.MetricsConstants.ADMISSION;
 import static org.apache.blur.metrics.MetricsConstants.CACHE;
 import static org.apache.blur.metrics.MetricsConstants.ENTRIES;
 import static org.apache.blur.metrics.MetricsConstants.EVICTION;
 import static org.apache.blur.metrics.MetricsConstants.HIT;
 import static org.apache.blur.metrics.MetricsConstants.MISS;
 import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.QUIET_HIT;
+import static org.apache.blur.metrics.MetricsConstants.QUIET_MISS;
+import static org.apache.blur.metrics.MetricsConstants.REJECTION;
 import static org.apache.blur.metrics.MetricsConstants.REMOVAL;
 import static org.apache.blur.metrics.MetricsConstants.SIZE;
 
@@ -58,6 +62,8 @@ public class BaseCache extends Cache implements Closeable {
   private static final Log LOG = LogFactory.getLog(BaseCache.class);
   private static final long _1_MINUTE = TimeUnit.MINUTES.toMillis(1);
   protected static final long _10_SECOND = TimeUnit.SECONDS.toMillis(10);
+  // Used to size the frequency sketch, most cached blocks are 8K.
+  private static final int SKETCH_BLOCK_SIZE = 8192;
 
   public enum STORE {
     ON_HEAP, OFF_HEAP
@@ -71,6 +77,28 @@ public class BaseCache extends Cache implements Closeable {
     }
   }
 
+  /**
+   * Blocks evicted from the admission window are moved into the main cache
+   * only if they have been accessed more often than the block the main cache
+   * would evict for them, otherwise they are dropped.
+   */
+  class WindowEvictionListener implements EvictionListener<CacheKey, CacheValue> {
+    @Override
+    public void onEviction(CacheKey key, CacheValue value) {
+      if (admit(key, value)) {
+        _admissions.mark();
+        CacheValue cacheValue = _cacheMap.put(key, value);
+        if (cacheValue != null) {
+          _evictions.mark();
+          _cacheValueBufferPool.returnToPool(cacheValue.detachFromCache());
+        }
+      } else {
+        _rejections.mark();
+        _cacheValueBufferPool.returnToPool(value.detachFromCache());
+      }
+    }
+  }
+
   protected static class BaseCacheWeigher implements Weigher<CacheValue> {
     @Override
     public int weightOf(CacheValue value) {
@@ -83,6 +111,8 @@ public class BaseCache extends Cache implements Closeable {
   }
 
   private final ConcurrentLinkedHashMap<CacheKey, CacheValue> _cacheMap;
+  private final ConcurrentLinkedHashMap<CacheKey, CacheValue> _windowMap;
+  private final FrequencySketch _sketch;
   private final FileNameFilter _readFilter;
   private final FileNameFilter _writeFilter;
   private final Size _cacheBlockSize;
@@ -93,16 +123,45 @@ public class BaseCache extends Cache implements Closeable {
   private final Quiet _quiet;
   private final MeterWrapper _hits;
   private final MeterWrapper _misses;
+  private final MeterWrapper _quietHits;
+  private final MeterWrapper _quietMisses;
   private final MeterWrapper _evictions;
   private final MeterWrapper _removals;
+  private final MeterWrapper _admissions;
+  private final MeterWrapper _rejections;
   private final Thread _oldFileDaemonThread;
   private final AtomicBoolean _running = new AtomicBoolean(true);
   private final BaseCacheValueBufferPool _cacheValueBufferPool;
 
   public BaseCache(long totalNumberOfBytes, Size fileBufferSize, Size cacheBlockSize, Size directLocalCacheRefLimit,
       FileNameFilter readFilter, FileNameFilter writeFilter, Quiet quiet, BaseCacheValueBufferPool cacheValueBufferPool) {
-    _cacheMap = new ConcurrentLinkedHashMap.Builder<CacheKey, CacheValue>().weigher(new BaseCacheWeigher())
-        .maximumWeightedCapacity(totalNumberOfBytes).listener(new BaseCacheEvictionListener()).build();
+    this(totalNumberOfBytes, fileBufferSize, cacheBlockSize, directLocalCacheRefLimit, readFilter, writeFilter, quiet,
+        cacheValueBufferPool, 0.0);
+  }
+
+  /**
+   * @param admissionWindowRatio
+   *          the part of the cache used as the admission window, new blocks
+   *          enter the window and only frequently accessed blocks move on to
+   *          the rest of the cache. 0 disables the admission filter and the
+   *          whole cache is a single LRU.
+   */
+  public BaseCache(long totalNumberOfBytes, Size fileBufferSize, Size cacheBlockSize, Size directLocalCacheRefLimit,
+      FileNameFilter readFilter, FileNameFilter writeFilter, Quiet quiet, BaseCacheValueBufferPool cacheValueBufferPool,
+      double admissionWindowRatio) {
+    long windowSize = (long) (totalNumberOfBytes * admissionWindowRatio);
+    if (windowSize > 0 && windowSize < totalNumberOfBytes) {
+      _cacheMap = new ConcurrentLinkedHashMap.Builder<CacheKey, CacheValue>().weigher(new BaseCacheWeigher())
+          .maximumWeightedCapacity(totalNumberOfBytes - windowSize).listener(new BaseCacheEvictionListener()).build();
+      _windowMap = new ConcurrentLinkedHashMap.Builder<CacheKey, CacheValue>().weigher(new BaseCacheWeigher())
+          .maximumWeightedCapacity(windowSize).listener(new WindowEvictionListener()).build();
+      _sketch = new FrequencySketch(totalNumberOfBytes / SKETCH_BLOCK_SIZE);
+    } else {
+      _cacheMap = new ConcurrentLinkedHashMap.Builder<CacheKey, CacheValue>().weigher(new BaseCacheWeigher())
+          .maximumWeightedCapacity(totalNumberOfBytes).listener(new BaseCacheEvictionListener()).build();
+      _windowMap = null;
+      _sketch = null;
+    }
     _fileBufferSize = fileBufferSize;
     _readFilter = readFilter;
     _writeFilter = writeFilter;
@@ -111,10 +170,20 @@ public class BaseCache extends Cache implements Closeable {
     _quiet = quiet;
     _hits = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, HIT), HIT, TimeUnit.SECONDS));
     _misses = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, MISS), MISS, TimeUnit.SECONDS));
+    // Quiet (merge) reads are accounted separately so they do not skew the
+    // hit ratio seen by queries.
+    _quietHits = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, QUIET_HIT), QUIET_HIT,
+        TimeUnit.SECONDS));
+    _quietMisses = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, QUIET_MISS), QUIET_MISS,
+        TimeUnit.SECONDS));
     _evictions = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, EVICTION), EVICTION,
         TimeUnit.SECONDS));
     _removals = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, REMOVAL), REMOVAL,
         TimeUnit.SECONDS));
+    _admissions = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, ADMISSION), ADMISSION,
+        TimeUnit.SECONDS));
+    _rejections = MeterWrapper.wrap(Metrics.newMeter(new MetricName(ORG_APACHE_BLUR, CACHE, REJECTION), REJECTION,
+        TimeUnit.SECONDS));
     _cacheValueBufferPool = cacheValueBufferPool;
     Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, CACHE, ENTRIES), new Gauge<Long>() {
       @Override
@@ -152,20 +221,33 @@ public class BaseCache extends Cache implements Closeable {
   }
 
   public int getEntryCount() {
-    return _cacheMap.size();
+    if (_windowMap == null) {
+      return _cacheMap.size();
+    }
+    return _cacheMap.size() + _windowMap.size();
   }
 
   public long getWeightedSize() {
-    return _cacheMap.weightedSize();
+    if (_windowMap == null) {
+      return _cacheMap.weightedSize();
+    }
+    return _cacheMap.weightedSize() + _windowMap.weightedSize();
   }
 
   protected void cleanupOldFiles() {
     LOG.debug("Cleanup old files from cache.");
     Set<Long> validFileIds = new HashSet<Long>(_fileNameToId.values());
-    for (CacheKey key : _cacheMap.keySet()) {
+    cleanupOldFiles(_cacheMap, validFileIds);
+    if (_windowMap != null) {
+      cleanupOldFiles(_windowMap, validFileIds);
+    }
+  }
+
+  private void cleanupOldFiles(ConcurrentLinkedHashMap<CacheKey, CacheValue> map, Set<Long> validFileIds) {
+    for (CacheKey key : map.keySet()) {
       long fileId = key.getFileId();
       if (!validFileIds.contains(fileId)) {
-        CacheValue remove = _cacheMap.remove(key);
+        CacheValue remove = map.remove(key);
         if (remove != null) {
           _removals.mark();
           _cacheValueBufferPool.returnToPool(remove.detachFromCache());
@@ -174,6 +256,24 @@ public class BaseCache extends Cache implements Closeable {
     }
   }
 
+  private boolean admit(CacheKey candidate, CacheValue value) {
+    int weight;
+    try {
+      weight = value.length();
+    } catch (EvictionException e) {
+      return false;
+    }
+    if (_cacheMap.weightedSize() + weight <= _cacheMap.capacity()) {
+      return true;
+    }
+    Set<CacheKey> victims = _cacheMap.ascendingKeySetWithLimit(1);
+    if (victims.isEmpty()) {
+      return true;
+    }
+    CacheKey victim = victims.iterator().next();
+    return _sketch.frequency(candidate) > _sketch.frequency(victim);
+  }
+
   @Override
   public void close() throws IOException {
     _running.set(false);
@@ -183,15 +283,26 @@ public class BaseCache extends Cache implements Closeable {
     IOUtils.closeQuietly(_evictions);
     IOUtils.closeQuietly(_hits);
     IOUtils.closeQuietly(_misses);
+    IOUtils.closeQuietly(_quietHits);
+    IOUtils.closeQuietly(_quietMisses);
     IOUtils.closeQuietly(_removals);
+    IOUtils.closeQuietly(_admissions);
+    IOUtils.closeQuietly(_rejections);
   }
 
   private void closeCachMap() {
-    Collection<CacheValue> values = _cacheMap.values();
+    if (_windowMap != null) {
+      closeCachMap(_windowMap);
+    }
+    closeCachMap(_cacheMap);
+  }
+
+  private void closeCachMap(ConcurrentLinkedHashMap<CacheKey, CacheValue> map) {
+    Collection<CacheValue> values = map.values();
     for (CacheValue cacheValue : values) {
       cacheValue.release();
     }
-    _cacheMap.clear();
+    map.clear();
   }
 
   @Override
@@ -273,7 +384,16 @@ public class BaseCache extends Cache implements Closeable {
 
   @Override
   public CacheValue get(CacheDirectory directory, String fileName, CacheKey key) {
-    CacheValue cacheValue = _cacheMap.get(key);
+    CacheValue cacheValue;
+    if (_windowMap == null) {
+      cacheValue = _cacheMap.get(key);
+    } else {
+      _sketch.increment(key);
+      cacheValue = _windowMap.get(key);
+      if (cacheValue == null) {
+        cacheValue = _cacheMap.get(key);
+      }
+    }
     if (cacheValue == null) {
       _misses.mark();
       // System.out.println("Loud Miss [" + fileName + "] Key [" + key + "]");
@@ -285,18 +405,30 @@ public class BaseCache extends Cache implements Closeable {
 
   @Override
   public CacheValue getQuietly(CacheDirectory directory, String fileName, CacheKey key) {
-    CacheValue cacheValue = _cacheMap.getQuietly(key);
+    CacheValue cacheValue = null;
+    if (_windowMap != null) {
+      cacheValue = _windowMap.getQuietly(key);
+    }
+    if (cacheValue == null) {
+      cacheValue = _cacheMap.getQuietly(key);
+    }
     if (cacheValue != null) {
-      _hits.mark();
+      _quietHits.mark();
     } else {
-      // System.out.println("Quiet Miss [" + fileName + "] Key [" + key + "]");
+      _quietMisses.mark();
     }
     return cacheValue;
   }
 
   @Override
   public void put(CacheDirectory directory, String fileName, CacheKey key, CacheValue value) {
-    CacheValue cacheValue = _cacheMap.put(key, value);
+    CacheValue cacheValue;
+    if (_windowMap == null || _cacheMap.containsKey(key)) {
+      cacheValue = _cacheMap.put(key, value);
+    } else {
+      // New blocks always enter the admission window.
+      cacheValue = _windowMap.put(key, value);
+    }
     if (cacheValue != null) {
       _evictions.mark();
       _cacheValueBufferPool.returnToPool(cacheValue.detachFromCache());
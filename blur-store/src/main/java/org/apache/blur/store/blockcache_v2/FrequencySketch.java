@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * This file is derived from the FrequencySketch of Caffeine
+ * (https://github.com/ben-manes/caffeine), licensed under the Apache License,
+ * Version 2.0.
+ *
+ * Copyright 2015 Ben Manes. All Rights Reserved.
+ */
+package org.apache.blur.store.blockcache_v2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch with 4 bit counters that estimates how often a key has
+ * been accessed recently. Each key maps to one counter in each of 4 rows, the
+ * estimate is the smallest of the 4 counters. Once the number of recorded
+ * accesses reaches 10 times the expected number of keys all counters are
+ * halved, so the sketch ages out old accesses. The counters are updated
+ * without locking, a lost update only makes the estimate slightly low.
+ */
+public class FrequencySketch {
+
+  private static final long[] SEED = new long[] { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+      0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAX_COUNT = 15;
+
+  private final AtomicLongArray _table;
+  private final int _tableMask;
+  private final int _sampleSize;
+  private final AtomicInteger _size = new AtomicInteger();
+
+  public FrequencySketch(long expectedNumberOfKeys) {
+    int maximum = (int) Math.min(Math.max(expectedNumberOfKeys, 16), 1 << 30);
+    int tableSize = Integer.highestOneBit(maximum - 1) << 1;
+    _table = new AtomicLongArray(tableSize);
+    _tableMask = tableSize - 1;
+    _sampleSize = (maximum <= Integer.MAX_VALUE / 10) ? 10 * maximum : Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return the estimated number of recent accesses of the given key, at most
+   *         15.
+   */
+  public int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((_table.get(index) >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Records an access of the given key.
+   */
+  public void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && _size.incrementAndGet() >= _sampleSize) {
+      reset();
+    }
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    while (true) {
+      long value = _table.get(index);
+      if ((value & mask) == mask) {
+        return false;
+      }
+      if (_table.compareAndSet(index, value, value + (1L << offset))) {
+        return true;
+      }
+    }
+  }
+
+  private synchronized void reset() {
+    if (_size.get() < _sampleSize) {
+      // Already aged by another thread.
+      return;
+    }
+    int odd = 0;
+    for (int i = 0; i < _table.length(); i++) {
+      while (true) {
+        long value = _table.get(i);
+        if (_table.compareAndSet(i, value, (value >>> 1) & RESET_MASK)) {
+          odd += Long.bitCount(value & ONE_MASK);
+          break;
+        }
+      }
+    }
+    _size.set((_size.get() - (odd >>> 2)) >>> 1);
+  }
+
+  private int indexOf(int item, int i) {
+    long hash = (item + SEED[i]) * SEED[i];
+    hash += (hash >>> 32);
+    return ((int) hash) & _tableMask;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
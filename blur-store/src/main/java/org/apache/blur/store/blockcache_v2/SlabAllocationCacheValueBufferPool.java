@@ -16,12 +16,18 @@
  */
 package org.apache.blur.store.blockcache_v2;
 
+import static org.apache.blur.metrics.MetricsConstants.ALLOCATION_LATENCY;
+import static org.apache.blur.metrics.MetricsConstants.CACHE_POOL;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
 import java.io.IOException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.blur.store.blockcache.BlockLocks;
 import org.apache.blur.store.blockcache_v2.BaseCache.STORE;
 import org.apache.blur.store.blockcache_v2.cachevalue.UnsafeWrappedCacheValue;
 import org.apache.blur.store.blockcache_v2.cachevalue.UnsafeWrapperMultiCacheValue;
@@ -29,14 +35,19 @@ import org.apache.blur.store.util.UnsafeUtil;
 
 import sun.misc.Unsafe;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
 public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool {
 
   private static final Unsafe _unsafe;
 
-  private final Collection<Slab> _slabs;
+  private final List<Slab> _slabs;
   private final int _chunkSize;
   private final int _slabSize;
   private final int _numberOfBlocksPerSlab;
+  private final Timer _allocationTimer;
 
   static {
     _unsafe = UnsafeUtil.getUnsafe();
@@ -47,53 +58,135 @@ public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool
     _chunkSize = chunkSize;
     _slabSize = slabSize;
     _numberOfBlocksPerSlab = _slabSize / _chunkSize;
-    _slabs = Collections.newSetFromMap(new ConcurrentHashMap<Slab, Boolean>());
+    _slabs = new CopyOnWriteArrayList<Slab>();
+    _allocationTimer = Metrics.newTimer(new MetricName(ORG_APACHE_BLUR, CACHE_POOL, ALLOCATION_LATENCY),
+        TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
   }
 
+  /**
+   * Free chunks are kept as runs of contiguous chunks. The length of every free
+   * run is stored at its first and its last chunk, so a released run is merged
+   * with the free runs right before and after it in constant time. The free
+   * runs are linked in a list per run length and an allocation takes the
+   * shortest run that is long enough, splitting off the remainder. Allocate
+   * and release lock the slab, threads start their search at different slabs
+   * to spread contention.
+   */
   static class Slab {
+    private static final int NONE = -1;
+
     final long _address;
-    final BlockLocks _locks;
     final int _chunkSize;
     final long _maxAddress;
     final int _maxChunks;
+    private final int[] _runStart;
+    private final int[] _runEnd;
+    private final int[] _next;
+    private final int[] _prev;
+    private final int[] _heads;
+    private final BitSet _runLengths = new BitSet();
+    private volatile int _free;
 
     Slab(long address, int maxChunks, int chunkSize) {
       _maxChunks = maxChunks;
       _address = address;
       _maxAddress = _address + ((long) maxChunks * (long) chunkSize);
-      _locks = new BlockLocks(maxChunks);
       _chunkSize = chunkSize;
+      _runStart = new int[maxChunks];
+      _runEnd = new int[maxChunks];
+      _next = new int[maxChunks];
+      _prev = new int[maxChunks];
+      _heads = new int[maxChunks + 1];
+      Arrays.fill(_heads, NONE);
+      addRun(0, maxChunks);
+      _free = maxChunks;
     }
 
-    void dumpSlabPopulation() {
-      System.out.println("Address [" + _address + "] MaxAddress [" + _maxAddress + "] Clear:[");
-      int index = 0;
-      while ((index = _locks.nextClearBit(index)) != -1) {
-        System.out.println(index);
-        index++;
-      }
-      System.out.println("]");
+    synchronized void dumpSlabPopulation() {
+      System.out.println("Address [" + _address + "] MaxAddress [" + _maxAddress + "] Used [" + (_maxChunks - _free)
+          + "] Largest free run [" + getLargestFreeRun() + "]");
     }
 
-    long findChunk() {
-      while (true) {
-        int chunkId = _locks.nextClearBit(0);
-        if (chunkId < 0 || chunkId>=_maxChunks) {
+    /**
+     * @return the address of the first of the given number of contiguous
+     *         chunks, -1 if the slab does not have a free run that large.
+     */
+    long allocate(int chunks) {
+      if (_free < chunks) {
+        return -1L;
+      }
+      int index;
+      synchronized (this) {
+        int length = _runLengths.nextSetBit(chunks);
+        if (length < 0) {
           return -1L;
         }
-        if (_locks.set(chunkId)) {
-          return _address + ((long) chunkId * (long) _chunkSize);
+        index = _heads[length];
+        removeRun(index, length);
+        if (length > chunks) {
+          addRun(index + chunks, length - chunks);
+        }
+        _free -= chunks;
+      }
+      return _address + ((long) index * (long) _chunkSize);
+    }
+
+    void release(long address, int chunks) {
+      int index = (int) ((address - _address) / _chunkSize);
+      int start = index;
+      int length = chunks;
+      synchronized (this) {
+        if (start > 0 && _runEnd[start - 1] > 0) {
+          int before = _runEnd[start - 1];
+          start -= before;
+          length += before;
+          removeRun(start, before);
         }
+        int end = index + chunks;
+        if (end < _maxChunks && _runStart[end] > 0) {
+          int after = _runStart[end];
+          length += after;
+          removeRun(end, after);
+        }
+        addRun(start, length);
+        _free += chunks;
       }
     }
 
-    boolean releaseIfValid(long address) {
-      if (address >= _address && address < _maxAddress) {
-        long offset = address - _address;
-        int index = (int) (offset / _chunkSize);
-        _locks.clear(index);
+    synchronized int getLargestFreeRun() {
+      int length = _runLengths.length() - 1;
+      return length < 0 ? 0 : length;
+    }
+
+    private void addRun(int start, int length) {
+      _runStart[start] = length;
+      _runEnd[start + length - 1] = length;
+      int head = _heads[length];
+      _prev[start] = NONE;
+      _next[start] = head;
+      if (head != NONE) {
+        _prev[head] = start;
+      }
+      _heads[length] = start;
+      _runLengths.set(length);
+    }
+
+    private void removeRun(int start, int length) {
+      _runStart[start] = 0;
+      _runEnd[start + length - 1] = 0;
+      int prev = _prev[start];
+      int next = _next[start];
+      if (prev == NONE) {
+        _heads[length] = next;
+        if (next == NONE) {
+          _runLengths.clear(length);
+        }
+      } else {
+        _next[prev] = next;
+      }
+      if (next != NONE) {
+        _prev[next] = prev;
       }
-      return false;
     }
 
     void release() {
@@ -105,57 +198,85 @@ public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool
   @Override
   public CacheValue getCacheValue(int cacheBlockSize) {
     validCacheBlockSize(cacheBlockSize);
-    int numberOfChunks = getNumberOfChunks(cacheBlockSize);
-    if (numberOfChunks == 1) {
-      while (true) {
-        Collection<Slab> slabs = getSlabs();
-        for (Slab slab : slabs) {
-          final long chunkAddress = slab.findChunk();
-          if (chunkAddress >= 0) {
-            // found one!
-            return new UnsafeWrappedCacheValue(cacheBlockSize, chunkAddress) {
-              @Override
-              protected void releaseInternal() {
-                releaseChunk(chunkAddress);
-              }
-            };
-          }
-        }
-        maybeAllocateNewSlab(slabs.size());
-      }
-    } else {
-      final long[] chunkAddresses = new long[numberOfChunks];
-      int chunksFound = 0;
-      while (true) {
-        Collection<Slab> slabs = getSlabs();
-        for (Slab slab : slabs) {
-          INNER: while (chunksFound < numberOfChunks) {
-            long chunkAddress = slab.findChunk();
-            if (chunkAddress >= 0) {
-              // found one!
-              chunkAddresses[chunksFound] = chunkAddress;
-              chunksFound++;
-            } else {
-              break INNER;
-            }
-          }
-        }
-        if (chunksFound == numberOfChunks) {
-          return new UnsafeWrapperMultiCacheValue(cacheBlockSize, chunkAddresses, _chunkSize) {
+    long start = System.nanoTime();
+    try {
+      return allocate(cacheBlockSize);
+    } finally {
+      _allocationTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private CacheValue allocate(int cacheBlockSize) {
+    final int numberOfChunks = getNumberOfChunks(cacheBlockSize);
+    while (true) {
+      List<Slab> slabs = getSlabs();
+      int size = slabs.size();
+      // Threads start their search at different slabs to spread contention.
+      int offset = size == 0 ? 0 : (int) (Thread.currentThread().getId() % size);
+      for (int i = 0; i < size; i++) {
+        final Slab slab = slabs.get((offset + i) % size);
+        final long address = slab.allocate(numberOfChunks);
+        if (address >= 0) {
+          // found one!
+          return new UnsafeWrappedCacheValue(cacheBlockSize, address) {
+            private final AtomicBoolean _freed = new AtomicBoolean();
+
             @Override
             protected void releaseInternal() {
-              releaseChunks(chunkAddresses);
+              if (_freed.compareAndSet(false, true)) {
+                slab.release(address, numberOfChunks);
+              }
             }
           };
         }
-        maybeAllocateNewSlab(slabs.size());
       }
+      if (numberOfChunks > 1) {
+        CacheValue cacheValue = allocateScattered(slabs, cacheBlockSize, numberOfChunks);
+        if (cacheValue != null) {
+          return cacheValue;
+        }
+      }
+      maybeAllocateNewSlab(size);
     }
+  }
 
+  /**
+   * Used when no slab has a contiguous run left, the block is spread over
+   * single chunks instead of growing the pool.
+   */
+  private CacheValue allocateScattered(List<Slab> slabs, int cacheBlockSize, int numberOfChunks) {
+    final Slab[] chunkSlabs = new Slab[numberOfChunks];
+    final long[] chunkAddresses = new long[numberOfChunks];
+    int chunksFound = 0;
+    for (Slab slab : slabs) {
+      while (chunksFound < numberOfChunks) {
+        long chunkAddress = slab.allocate(1);
+        if (chunkAddress < 0) {
+          break;
+        }
+        chunkSlabs[chunksFound] = slab;
+        chunkAddresses[chunksFound] = chunkAddress;
+        chunksFound++;
+      }
+    }
+    if (chunksFound < numberOfChunks) {
+      releaseChunks(chunkSlabs, chunkAddresses, chunksFound);
+      return null;
+    }
+    return new UnsafeWrapperMultiCacheValue(cacheBlockSize, chunkAddresses, _chunkSize) {
+      private final AtomicBoolean _freed = new AtomicBoolean();
+
+      @Override
+      protected void releaseInternal() {
+        if (_freed.compareAndSet(false, true)) {
+          releaseChunks(chunkSlabs, chunkAddresses, chunkAddresses.length);
+        }
+      }
+    };
   }
 
   private synchronized void maybeAllocateNewSlab(int numberOfSlabs) {
-    Collection<Slab> slabs = getSlabs();
+    List<Slab> slabs = getSlabs();
     if (slabs.size() == numberOfSlabs) {
       allocateNewSlab();
     }
@@ -167,22 +288,13 @@ public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool
     _slabs.add(new Slab(address, _numberOfBlocksPerSlab, _chunkSize));
   }
 
-  private Collection<Slab> getSlabs() {
+  private List<Slab> getSlabs() {
     return _slabs;
   }
 
-  private void releaseChunks(long[] addresses) {
-    for (long address : addresses) {
-      releaseChunk(address);
-    }
-  }
-
-  private void releaseChunk(long address) {
-    Collection<Slab> slabs = getSlabs();
-    for (Slab slab : slabs) {
-      if (slab.releaseIfValid(address)) {
-        return;
-      }
+  private static void releaseChunks(Slab[] slabs, long[] addresses, int length) {
+    for (int i = 0; i < length; i++) {
+      slabs[i].release(addresses[i], 1);
     }
   }
 
@@ -193,7 +305,7 @@ public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool
 
   @Override
   public void close() throws IOException {
-    Collection<Slab> slabs = getSlabs();
+    List<Slab> slabs = getSlabs();
     for (Slab slab : slabs) {
       slab.release();
     }
@@ -218,12 +330,23 @@ public class SlabAllocationCacheValueBufferPool extends BaseCacheValueBufferPool
   }
 
   public long getCurrentSize() {
-    Collection<Slab> slabs = getSlabs();
+    List<Slab> slabs = getSlabs();
     return (long) slabs.size() * (long) _slabSize;
   }
 
+  /**
+   * @return the longest run of free chunks in any slab.
+   */
+  public int getLargestFreeRun() {
+    int largest = 0;
+    for (Slab slab : getSlabs()) {
+      largest = Math.max(largest, slab.getLargestFreeRun());
+    }
+    return largest;
+  }
+
   public void dumpSlabPopulation() {
-    Collection<Slab> slabs = getSlabs();
+    List<Slab> slabs = getSlabs();
     for (Slab slab : slabs) {
       slab.dumpSlabPopulation();
     }
@@ -205,12 +205,12 @@ public class HdfsDirectory extends Directory implements LastModified, HdfsSymlin
 
     public boolean loadCacheFromManifest() throws IOException {
       // Check file_manifest.new first, if is doesn't check file_manifest, if it
-      // doesn't exist can't load cache.
-      if (_fileSystem.exists(_newManifest)) {
-        loadCacheFromManifest(_newManifest);
+      // doesn't exist can't load cache. The manifests are opened directly
+      // rather than checked for existence first to save a call to the name
+      // node per manifest when shards are opened.
+      if (loadCacheFromManifest(_newManifest)) {
         return true;
-      } else if (_fileSystem.exists(_manifest)) {
-        loadCacheFromManifest(_manifest);
+      } else if (loadCacheFromManifest(_manifest)) {
         return true;
       } else {
         return false;
@@ -246,17 +246,26 @@ public class HdfsDirectory extends Directory implements LastModified, HdfsSymlin
       }
     }
 
-    private void loadCacheFromManifest(Path manifest) throws IOException {
-      FSDataInputStream inputStream = _fileSystem.open(manifest);
-      int count = inputStream.readInt();
-      for (int i = 0; i < count; i++) {
-        String name = readString(inputStream);
-        long lastMod = inputStream.readLong();
-        long length = inputStream.readLong();
-        FStat fstat = new FStat(lastMod, length);
-        _cache.put(name, fstat);
+    private boolean loadCacheFromManifest(Path manifest) throws IOException {
+      FSDataInputStream inputStream;
+      try {
+        inputStream = _fileSystem.open(manifest);
+      } catch (FileNotFoundException e) {
+        return false;
       }
-      inputStream.close();
+      try {
+        int count = inputStream.readInt();
+        for (int i = 0; i < count; i++) {
+          String name = readString(inputStream);
+          long lastMod = inputStream.readLong();
+          long length = inputStream.readLong();
+          FStat fstat = new FStat(lastMod, length);
+          _cache.put(name, fstat);
+        }
+      } finally {
+        inputStream.close();
+      }
+      return true;
     }
 
     private String readString(FSDataInputStream inputStream) throws IOException {
@@ -418,6 +427,7 @@ public class HdfsDirectory extends Directory implements LastModified, HdfsSymlin
     }
     final FSDataOutputStream outputStream = openForOutput(name);
     trackObject(outputStream, "Outputstream", name, _path);
+    final boolean merge = MergeRateLimiter.isMerge(context);
     return new BufferedIndexOutput() {
 
       @Override
@@ -427,6 +437,9 @@ public class HdfsDirectory extends Directory implements LastModified, HdfsSymlin
 
       @Override
       protected void flushBuffer(byte[] b, int offset, int len) throws IOException {
+        if (merge) {
+          MergeRateLimiter.pause(len);
+        }
         long start = System.nanoTime();
         outputStream.write(b, offset, len);
         long end = System.nanoTime();
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.store.hdfs;
+
+import static org.apache.blur.metrics.MetricsConstants.LUCENE;
+import static org.apache.blur.metrics.MetricsConstants.MERGE_PAUSE_TIME;
+import static org.apache.blur.metrics.MetricsConstants.MERGE_RATE_LIMIT;
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.IOContext;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
+/**
+ * Server wide limit on the number of bytes per second that merges write to
+ * HDFS. All merge outputs share the same budget, a writer that is over the
+ * budget is paused until its bytes fit. A rate of 0 or less disables the limit.
+ */
+public class MergeRateLimiter {
+
+  private static final long MIN_PAUSE = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final Timer _pauseTimer;
+
+  private static final Object _lock = new Object();
+  private static volatile long _bytesPerSecond;
+  private static long _nextAvailable;
+
+  static {
+    _pauseTimer = Metrics.newTimer(new MetricName(ORG_APACHE_BLUR, LUCENE, MERGE_PAUSE_TIME), TimeUnit.MILLISECONDS,
+        TimeUnit.SECONDS);
+    Metrics.newGauge(new MetricName(ORG_APACHE_BLUR, LUCENE, MERGE_RATE_LIMIT), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        return _bytesPerSecond;
+      }
+    });
+  }
+
+  public static void setBytesPerSecond(long bytesPerSecond) {
+    _bytesPerSecond = bytesPerSecond;
+  }
+
+  public static long getBytesPerSecond() {
+    return _bytesPerSecond;
+  }
+
+  public static boolean isMerge(IOContext context) {
+    return context != null && context.context == IOContext.Context.MERGE;
+  }
+
+  /**
+   * Accounts for the given number of bytes and pauses the calling thread if the
+   * merges are writing faster than the current limit.
+   *
+   * @return the time paused in nanoseconds.
+   */
+  public static long pause(long bytes) throws InterruptedIOException {
+    long bytesPerSecond = _bytesPerSecond;
+    if (bytesPerSecond <= 0) {
+      return 0L;
+    }
+    long cost = TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+    long now = System.nanoTime();
+    long start;
+    synchronized (_lock) {
+      // Unused time is not saved up, so a burst after an idle period is still
+      // limited to the current rate.
+      start = Math.max(_nextAvailable, now);
+      _nextAvailable = start + cost;
+    }
+    long wait = start - now;
+    if (wait < MIN_PAUSE) {
+      return 0L;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    } catch (InterruptedException e) {
+      InterruptedIOException exception = new InterruptedIOException("Merge interrupted while paused.");
+      exception.initCause(e);
+      throw exception;
+    }
+    _pauseTimer.update(wait, TimeUnit.NANOSECONDS);
+    return wait;
+  }
+
+}
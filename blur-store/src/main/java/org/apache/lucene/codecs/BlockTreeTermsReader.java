@@ -53,6 +53,7 @@ import org.apache.lucene.util.automaton.RunAutomaton;
 import org.apache.lucene.util.automaton.Transition;
 import org.apache.lucene.util.fst.ByteSequenceOutputs;
 import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.FSTReleaser;
 import org.apache.lucene.util.fst.Outputs;
 import org.apache.lucene.util.fst.Util;
 
@@ -232,6 +233,10 @@ public class BlockTreeTermsReader extends FieldsProducer {
     try {
       IOUtils.close(indexIn, in, postingsReader);
     } finally { 
+      // Release the terms indexes, they may be stored outside of the heap
+      for (FieldReader fieldReader : fields.values()) {
+        FSTReleaser.release(fieldReader.index);
+      }
       // Clear so refs to terms index is GCable even if
       // app hangs onto us:
       fields.clear();
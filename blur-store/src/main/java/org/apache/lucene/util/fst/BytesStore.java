@@ -32,7 +32,10 @@ import org.apache.lucene.store.DataOutput;
 class BytesStore extends DataOutput {
 
   private final List<ByteArray> blocks = new ArrayList<ByteArray>();
-  private final static ByteArrayFactory factory = ByteArrayFactory.getDefaultFactory();
+  // Only the FSTs read from an index (the terms indexes held by the segment
+  // readers) use the configured factory, the FSTs built while flushing and
+  // merging are short lived and stay on the heap.
+  private final ByteArrayFactory factory;
 
   private final int blockSize;
   private final int blockBits;
@@ -42,6 +45,7 @@ class BytesStore extends DataOutput {
   private int nextWrite;
 
   public BytesStore(int blockBits) {
+    this.factory = ByteArrayFactory.getHeapFactory();
     this.blockBits = blockBits;
     blockSize = 1 << blockBits;
     blockMask = blockSize - 1;
@@ -50,6 +54,7 @@ class BytesStore extends DataOutput {
 
   /** Pulls bytes from the provided IndexInput. */
   public BytesStore(DataInput in, long numBytes, int maxBlockSize) throws IOException {
+    this.factory = ByteArrayFactory.getDefaultFactory();
     int blockSize = 2;
     int blockBits = 1;
     while (blockSize < numBytes && blockSize < maxBlockSize) {
@@ -118,8 +123,12 @@ class BytesStore extends DataOutput {
 
   void writeBytes(long dest, byte[] b, int offset, int len) {
     ByteArray byteArray = factory.newByteArray(len);
-    byteArray.put(0, b, offset, len);
-    writeBytes(dest, byteArray, 0, len);
+    try {
+      byteArray.put(0, b, offset, len);
+      writeBytes(dest, byteArray, 0, len);
+    } finally {
+      byteArray.release();
+    }
   }
 
   /**
@@ -317,7 +326,11 @@ class BytesStore extends DataOutput {
       blockIndex--;
       nextWrite = blockSize;
     }
-    blocks.subList(blockIndex + 1, blocks.size()).clear();
+    List<ByteArray> truncated = blocks.subList(blockIndex + 1, blocks.size());
+    for (ByteArray block : truncated) {
+      block.release();
+    }
+    truncated.clear();
     if (newLen == 0) {
       current = null;
     } else {
@@ -331,10 +344,22 @@ class BytesStore extends DataOutput {
       ByteArray lastBuffer = factory.newByteArray(nextWrite);
       arraycopy(current, 0, lastBuffer, 0, nextWrite);
       blocks.set(blocks.size() - 1, lastBuffer);
+      current.release();
       current = null;
     }
   }
 
+  /**
+   * Releases all the blocks, the store can not be used after this call.
+   */
+  public void release() {
+    for (ByteArray block : blocks) {
+      block.release();
+    }
+    blocks.clear();
+    current = null;
+  }
+
   /** Writes all of our bytes to the target {@link DataOutput}. */
   public void writeTo(DataOutput out) throws IOException {
     for (ByteArray block : blocks) {
@@ -0,0 +1,61 @@
+package org.apache.lucene.util.fst;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+
+import org.apache.blur.log.Log;
+import org.apache.blur.log.LogFactory;
+
+/**
+ * Releases the {@link BytesStore} behind a {@link FST} so that blocks that are
+ * kept outside of the heap are freed as soon as the owner of the FST is
+ * closed.
+ */
+public class FSTReleaser {
+
+  private static final Log LOG = LogFactory.getLog(FSTReleaser.class);
+  private static final Field BYTES_FIELD;
+
+  static {
+    Field field;
+    try {
+      field = FST.class.getDeclaredField("bytes");
+      field.setAccessible(true);
+    } catch (Exception e) {
+      LOG.error("Could not access the bytes of the FST class, off heap FSTs will not be freed.", e);
+      field = null;
+    }
+    BYTES_FIELD = field;
+  }
+
+  public static void release(FST<?> fst) {
+    if (fst == null || BYTES_FIELD == null) {
+      return;
+    }
+    try {
+      BytesStore bytesStore = (BytesStore) BYTES_FIELD.get(fst);
+      if (bytesStore != null) {
+        bytesStore.release();
+      }
+    } catch (IllegalAccessException e) {
+      LOG.error("Could not release the bytes of FST [{0}].", e, fst);
+    }
+  }
+
+}
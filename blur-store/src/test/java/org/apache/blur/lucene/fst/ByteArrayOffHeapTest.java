@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.lucene.fst;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.junit.Test;
+
+public class ByteArrayOffHeapTest {
+
+  private final AtomicLong _offHeapSize = new AtomicLong();
+
+  @Test
+  public void testPutGet() {
+    ByteArrayOffHeap array = new ByteArrayOffHeap(100, _offHeapSize);
+    assertEquals(100, array.length());
+    array.put(0, (byte) 1);
+    array.put(99, (byte) 2);
+    assertEquals(1, array.get(0));
+    assertEquals(2, array.get(99));
+
+    byte[] bs = new byte[] { 3, 4, 5, 6 };
+    array.put(10, bs, 1, 3);
+    byte[] result = new byte[5];
+    array.get(9, result, 1, 4);
+    assertArrayEquals(new byte[] { 0, 0, 4, 5, 6 }, result);
+    array.release();
+  }
+
+  @Test
+  public void testOutOfBounds() {
+    ByteArrayOffHeap array = new ByteArrayOffHeap(10, _offHeapSize);
+    try {
+      array.get(10);
+      fail();
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      array.put(5, new byte[10], 0, 6);
+      fail();
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+    array.release();
+  }
+
+  @Test
+  public void testReadWriteBytes() throws IOException {
+    Random random = new Random(1);
+    byte[] data = new byte[20000];
+    random.nextBytes(data);
+    ByteArrayOffHeap array = new ByteArrayOffHeap(data.length, _offHeapSize);
+    array.readBytes(new ByteArrayDataInput(data), 0, data.length);
+
+    byte[] copy = new byte[data.length];
+    array.writeBytes(new ByteArrayDataOutput(copy), 0, data.length);
+    assertArrayEquals(data, copy);
+    array.release();
+  }
+
+  @Test
+  public void testCopyBetweenTypes() {
+    byte[] data = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+    ByteArrayOffHeap offHeap1 = new ByteArrayOffHeap(data.length, _offHeapSize);
+    ByteArrayOffHeap offHeap2 = new ByteArrayOffHeap(data.length, _offHeapSize);
+    ByteArrayPrimitive primitive = new ByteArrayPrimitive(data.length);
+
+    offHeap1.put(0, data, 0, data.length);
+    offHeap1.copy(2, offHeap2, 0, 4);
+    offHeap2.copy(0, primitive, 4, 4);
+    primitive.copy(4, offHeap1, 0, 4);
+
+    byte[] result = new byte[data.length];
+    primitive.get(0, result, 0, data.length);
+    assertArrayEquals(new byte[] { 0, 0, 0, 0, 3, 4, 5, 6 }, result);
+    offHeap1.get(0, result, 0, data.length);
+    assertArrayEquals(new byte[] { 3, 4, 5, 6, 5, 6, 7, 8 }, result);
+
+    offHeap1.release();
+    offHeap2.release();
+  }
+
+  @Test
+  public void testRelease() {
+    ByteArrayOffHeap array = new ByteArrayOffHeap(1024, _offHeapSize);
+    assertEquals(1024, _offHeapSize.get());
+    assertFalse(array.isReleased());
+    array.release();
+    assertTrue(array.isReleased());
+    assertEquals(0, _offHeapSize.get());
+    try {
+      array.release();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(0, _offHeapSize.get());
+  }
+
+}
@@ -16,6 +16,10 @@
  */
 package org.apache.blur.store.blockcache_v2;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 
 import org.apache.blur.store.blockcache.LastModified;
@@ -93,6 +97,89 @@ public class BaseCacheTest {
     }
   }
 
+  @Test
+  public void testAdmissionWindowKeepsFrequentBlocksDuringScan() throws IOException {
+    int blockSize = 8192;
+    int blocks = 100;
+    _cache = newCache(blocks * blockSize, blockSize, 0.1);
+    _cacheDirectory = new CacheDirectory("test", "test", newDirectory(), _cache, null);
+    String fileName = "test";
+    long fileId = _cache.getFileId(_cacheDirectory, fileName);
+
+    CacheKey hot = new CacheKey(fileId, 0);
+    assertNull(_cache.get(_cacheDirectory, fileName, hot));
+    _cache.put(_cacheDirectory, fileName, hot, _cache.newInstance(_cacheDirectory, fileName));
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(_cache.get(_cacheDirectory, fileName, hot));
+    }
+
+    // Scan through twice as many blocks as the cache can hold, each block is
+    // only read once.
+    for (int i = 1; i <= blocks * 2; i++) {
+      CacheKey key = new CacheKey(fileId, i);
+      if (_cache.get(_cacheDirectory, fileName, key) == null) {
+        _cache.put(_cacheDirectory, fileName, key, _cache.newInstance(_cacheDirectory, fileName));
+      }
+    }
+    assertNotNull(_cache.getQuietly(_cacheDirectory, fileName, hot));
+    assertTrue(_cache.getWeightedSize() <= blocks * blockSize);
+    _cache.close();
+  }
+
+  @Test
+  public void testWithoutAdmissionWindowScanEvictsFrequentBlocks() throws IOException {
+    int blockSize = 8192;
+    int blocks = 100;
+    _cache = newCache(blocks * blockSize, blockSize, 0.0);
+    _cacheDirectory = new CacheDirectory("test", "test", newDirectory(), _cache, null);
+    String fileName = "test";
+    long fileId = _cache.getFileId(_cacheDirectory, fileName);
+
+    CacheKey hot = new CacheKey(fileId, 0);
+    _cache.put(_cacheDirectory, fileName, hot, _cache.newInstance(_cacheDirectory, fileName));
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(_cache.get(_cacheDirectory, fileName, hot));
+    }
+    for (int i = 1; i <= blocks * 2; i++) {
+      CacheKey key = new CacheKey(fileId, i);
+      if (_cache.get(_cacheDirectory, fileName, key) == null) {
+        _cache.put(_cacheDirectory, fileName, key, _cache.newInstance(_cacheDirectory, fileName));
+      }
+    }
+    assertNull(_cache.getQuietly(_cacheDirectory, fileName, hot));
+    _cache.close();
+  }
+
+  private BaseCache newCache(final long totalNumberOfBytes, final int blockSize, double admissionWindowRatio) {
+    Size size = new Size() {
+      @Override
+      public int getSize(CacheDirectory directory, String fileName) {
+        return blockSize;
+      }
+    };
+    Size directLocalCacheLimit = new Size() {
+      @Override
+      public int getSize(CacheDirectory directory, String fileName) {
+        return (int) totalNumberOfBytes;
+      }
+    };
+    FileNameFilter filter = new FileNameFilter() {
+      @Override
+      public boolean accept(CacheDirectory directory, String fileName) {
+        return true;
+      }
+    };
+    Quiet quiet = new Quiet() {
+      @Override
+      public boolean shouldBeQuiet(CacheDirectory directory, String fileName) {
+        return false;
+      }
+    };
+    SimpleCacheValueBufferPool pool = new SimpleCacheValueBufferPool(STORE.ON_HEAP, 1000);
+    return new BaseCache(totalNumberOfBytes, size, size, directLocalCacheLimit, filter, filter, quiet, pool,
+        admissionWindowRatio);
+  }
+
   private Directory newDirectory() {
     return new RDir();
   }
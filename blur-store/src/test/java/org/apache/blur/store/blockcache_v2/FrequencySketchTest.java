@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.store.blockcache_v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+  @Test
+  public void testIncrement() {
+    FrequencySketch sketch = new FrequencySketch(1000);
+    CacheKey key = new CacheKey(1, 1);
+    assertEquals(0, sketch.frequency(key));
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(key);
+    }
+    assertEquals(5, sketch.frequency(key));
+    assertEquals(5, sketch.frequency(new CacheKey(1, 1)));
+  }
+
+  @Test
+  public void testCounterIsCapped() {
+    FrequencySketch sketch = new FrequencySketch(1000);
+    CacheKey key = new CacheKey(1, 1);
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(key);
+    }
+    assertEquals(15, sketch.frequency(key));
+  }
+
+  @Test
+  public void testAging() {
+    FrequencySketch sketch = new FrequencySketch(16);
+    CacheKey hot = new CacheKey(1, 0);
+    for (int i = 0; i < 10; i++) {
+      sketch.increment(hot);
+    }
+    // 10 times the expected number of keys triggers the counters to be halved.
+    for (int i = 1; i <= 160; i++) {
+      sketch.increment(new CacheKey(2, i));
+    }
+    assertTrue(sketch.frequency(hot) < 10);
+  }
+}
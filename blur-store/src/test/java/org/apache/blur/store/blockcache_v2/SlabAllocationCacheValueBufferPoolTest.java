@@ -23,8 +23,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.blur.store.blockcache_v2.cachevalue.ByteArrayCacheValue;
+import org.apache.blur.store.blockcache_v2.cachevalue.UnsafeWrappedCacheValue;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -91,11 +96,140 @@ public class SlabAllocationCacheValueBufferPoolTest {
     for (int i = 0; i < list.size(); i++) {
       CacheValue cv1 = list.get(i);
       CacheValue cv2 = copy.get(i);
-      equals(cv1, cv2);
+      assertCacheValueEquals(cv1, cv2);
     }
   }
 
-  private void equals(CacheValue cv1, CacheValue cv2) throws EvictionException {
+  @Test
+  public void testReleasedChunksAreReused() {
+    List<CacheValue> list = new ArrayList<CacheValue>();
+    int total = 10000;
+    for (int i = 0; i < total; i++) {
+      list.add(_pool.getCacheValue(_chunkSize));
+    }
+    for (CacheValue cacheValue : list) {
+      _pool.returnToPool(cacheValue);
+    }
+    list.clear();
+    for (int i = 0; i < total; i++) {
+      list.add(_pool.getCacheValue(_chunkSize));
+    }
+    assertEquals(_slabSize, _pool.getCurrentSize());
+    for (CacheValue cacheValue : list) {
+      _pool.returnToPool(cacheValue);
+    }
+  }
+
+  @Test
+  public void testReleasedRunsAreSplit() {
+    List<CacheValue> list = new ArrayList<CacheValue>();
+    int cacheBlockSize = _chunkSize * 10;
+    for (int i = 0; i < 1000; i++) {
+      list.add(_pool.getCacheValue(cacheBlockSize));
+    }
+    for (CacheValue cacheValue : list) {
+      _pool.returnToPool(cacheValue);
+    }
+    list.clear();
+    for (int i = 0; i < 10000; i++) {
+      list.add(_pool.getCacheValue(_chunkSize));
+    }
+    assertEquals(_slabSize, _pool.getCurrentSize());
+    for (CacheValue cacheValue : list) {
+      _pool.returnToPool(cacheValue);
+    }
+  }
+
+  @Test
+  public void testAdjacentReleasedRunsAreMerged() {
+    List<CacheValue> list = new ArrayList<CacheValue>();
+    for (int i = 0; i < 10000; i++) {
+      list.add(_pool.getCacheValue(_chunkSize));
+    }
+    assertEquals(0, _pool.getLargestFreeRun());
+    // Release every other chunk first so that no two free chunks touch.
+    for (int i = 0; i < list.size(); i += 2) {
+      _pool.returnToPool(list.get(i));
+    }
+    assertEquals(1, _pool.getLargestFreeRun());
+    for (int i = 1; i < list.size(); i += 2) {
+      _pool.returnToPool(list.get(i));
+    }
+    assertEquals(10000, _pool.getLargestFreeRun());
+
+    CacheValue cacheValue = _pool.getCacheValue(_slabSize);
+    assertTrue(cacheValue instanceof UnsafeWrappedCacheValue);
+    assertEquals(_slabSize, _pool.getCurrentSize());
+    _pool.returnToPool(cacheValue);
+  }
+
+  @Test
+  public void testMixedWorkloadDoesNotFragment() {
+    Random random = new Random(1);
+    List<CacheValue> list = new ArrayList<CacheValue>();
+    for (int i = 0; i < 100000; i++) {
+      if (list.size() > 200 || (!list.isEmpty() && random.nextBoolean())) {
+        _pool.returnToPool(list.remove(random.nextInt(list.size())));
+      } else {
+        list.add(_pool.getCacheValue(1 + random.nextInt(_chunkSize * 30)));
+      }
+    }
+    // At most 201 blocks of up to 30 chunks are held at once, which always
+    // fits in one slab when free runs are merged.
+    assertEquals(_slabSize, _pool.getCurrentSize());
+    for (CacheValue cacheValue : list) {
+      assertTrue(cacheValue instanceof UnsafeWrappedCacheValue);
+      _pool.returnToPool(cacheValue);
+    }
+    assertEquals(10000, _pool.getLargestFreeRun());
+  }
+
+  @Test
+  public void testConcurrentAllocation() throws Exception {
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < 8; t++) {
+        final long seed = t;
+        futures.add(service.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            Random random = new Random(seed);
+            List<CacheValue> list = new ArrayList<CacheValue>();
+            List<CacheValue> copy = new ArrayList<CacheValue>();
+            for (int i = 0; i < 2000; i++) {
+              if (!list.isEmpty() && random.nextBoolean()) {
+                int index = random.nextInt(list.size());
+                CacheValue cacheValue = list.remove(index);
+                CacheValue copyCv = copy.remove(index);
+                assertCacheValueEquals(cacheValue, copyCv);
+                _pool.returnToPool(cacheValue);
+              } else {
+                int cacheBlockSize = 1 + random.nextInt(_chunkSize * 3);
+                CacheValue cacheValue = _pool.getCacheValue(cacheBlockSize);
+                ByteArrayCacheValue copyCv = new ByteArrayCacheValue(cacheBlockSize);
+                populate(random, cacheValue, copyCv);
+                list.add(cacheValue);
+                copy.add(copyCv);
+              }
+            }
+            for (int i = 0; i < list.size(); i++) {
+              assertCacheValueEquals(list.get(i), copy.get(i));
+              _pool.returnToPool(list.get(i));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  private void assertCacheValueEquals(CacheValue cv1, CacheValue cv2) throws EvictionException {
     int l1 = cv1.length();
     int l2 = cv2.length();
     assertEquals(l1, l2);
@@ -117,6 +251,6 @@ public class SlabAllocationCacheValueBufferPoolTest {
     random.nextBytes(buf1);
     cv1.write(0, buf1, 0, l1);
     cv2.write(0, buf1, 0, l1);
-    equals(cv1, cv2);
+    assertCacheValueEquals(cv1, cv2);
   }
 }
@@ -306,8 +306,7 @@ public class BlurClientManager {
     if (maxRetries == 0) {
       return;
     }
-    long extra = (maxBackOffTime - backOffTime) / maxRetries;
-    long sleep = backOffTime + (extra * retry);
+    long sleep = getBackOffTime(backOffTime, maxBackOffTime, retry, maxRetries);
     LOG.info("Backing off call for [{0} ms]", sleep);
     try {
       Thread.sleep(sleep);
@@ -316,6 +315,14 @@ public class BlurClientManager {
     }
   }
 
+  public static long getBackOffTime(long backOffTime, long maxBackOffTime, int retry, int maxRetries) {
+    if (maxRetries == 0) {
+      return 0L;
+    }
+    long extra = (maxBackOffTime - backOffTime) / maxRetries;
+    return backOffTime + (extra * retry);
+  }
+
   public static <CLIENT, T> T execute(String connectionStr, AbstractCommand<CLIENT, T> command, int maxRetries,
       long backOffTime, long maxBackOffTime) throws BlurException, TException, IOException {
     return execute(getConnections(connectionStr), command, maxRetries, backOffTime, maxBackOffTime);
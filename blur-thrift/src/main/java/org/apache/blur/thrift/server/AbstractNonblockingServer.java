@@ -20,6 +20,7 @@
 package org.apache.blur.thrift.server;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -28,8 +29,8 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.blur.thirdparty.thrift_0_9_0.TByteArrayOutputStream;
 import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.TProcessor;
 import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
 import org.apache.blur.thirdparty.thrift_0_9_0.server.ServerContext;
 import org.apache.blur.thirdparty.thrift_0_9_0.server.TServer;
@@ -40,6 +41,7 @@ import org.apache.blur.thirdparty.thrift_0_9_0.transport.TNonblockingServerTrans
 import org.apache.blur.thirdparty.thrift_0_9_0.transport.TNonblockingTransport;
 import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransport;
 import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransportException;
+import org.apache.blur.thrift.util.ResetableTByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +55,8 @@ public abstract class AbstractNonblockingServer extends TServer {
   public static abstract class AbstractNonblockingServerArgs<T extends AbstractNonblockingServerArgs<T>> extends
       AbstractServerArgs<T> {
     public long maxReadBufferBytes = Long.MAX_VALUE;
+    public int maxPooledResponseBuffers = 64;
+    public int maxPooledResponseBufferSize = 1024 * 1024;
 
     public AbstractNonblockingServerArgs(TNonblockingServerTransport transport) {
       super(transport);
@@ -72,9 +76,16 @@ public abstract class AbstractNonblockingServer extends TServer {
    */
   private final AtomicLong readBufferBytesAllocated = new AtomicLong(0);
 
+  /**
+   * Response buffers shared by all the connections, a buffer is only held
+   * while a response is being serialized and written.
+   */
+  private final ResponseBufferPool responseBufferPool;
+
   public AbstractNonblockingServer(AbstractNonblockingServerArgs args) {
     super(args);
     MAX_READ_BUFFER_BYTES = args.maxReadBufferBytes;
+    responseBufferPool = new ResponseBufferPool(args.maxPooledResponseBuffers, args.maxPooledResponseBufferSize);
   }
 
   /**
@@ -324,7 +335,12 @@ public abstract class AbstractNonblockingServer extends TServer {
     // the ByteBuffer we'll be using to write and read, depending on the state
     private ByteBuffer buffer_;
 
-    private final TByteArrayOutputStream response_;
+    // the response of the current call, taken from the pool on invoke and
+    // given back once it has been written.
+    private ResetableTByteArrayOutputStream response_;
+
+    // set when the responses are framed in place.
+    private final FramedResponseTransport framedOutTrans_;
 
     // the frame that the TTransport should wrap.
     private final TMemoryInputTransport frameTrans_;
@@ -351,9 +367,26 @@ public abstract class AbstractNonblockingServer extends TServer {
       buffer_ = ByteBuffer.allocate(4);
 
       frameTrans_ = new TMemoryInputTransport();
-      response_ = new TByteArrayOutputStream();
       inTrans_ = inputTransportFactory_.getTransport(frameTrans_);
-      outTrans_ = outputTransportFactory_.getTransport(new TIOStreamTransport(response_));
+      if (outputTransportFactory_.getClass() == TFramedTransport.Factory.class) {
+        // Frame the response directly in the response buffer rather than
+        // copying it out of a TFramedTransport write buffer.
+        framedOutTrans_ = new FramedResponseTransport();
+        outTrans_ = framedOutTrans_;
+      } else {
+        framedOutTrans_ = null;
+        outTrans_ = outputTransportFactory_.getTransport(new TIOStreamTransport(new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            response_.write(b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            response_.write(b, off, len);
+          }
+        }));
+      }
       inProt_ = inputProtocolFactory_.getProtocol(inTrans_);
       outProt_ = outputProtocolFactory_.getProtocol(outTrans_);
 
@@ -497,6 +530,11 @@ public abstract class AbstractNonblockingServer extends TServer {
       if (state_ == FrameBufferState.READING_FRAME || state_ == FrameBufferState.READ_FRAME_COMPLETE) {
         readBufferBytesAllocated.addAndGet(-buffer_.array().length);
       }
+      // only give the response back when no invoking thread can still be
+      // writing to it.
+      if (state_ == FrameBufferState.WRITING || state_ == FrameBufferState.AWAITING_REGISTER_WRITE) {
+        releaseResponse();
+      }
       trans_.close();
       if (eventHandler_ != null) {
         eventHandler_.deleteContext(context_, inProt_, outProt_);
@@ -524,12 +562,14 @@ public abstract class AbstractNonblockingServer extends TServer {
       // clients.
       readBufferBytesAllocated.addAndGet(-buffer_.array().length);
 
-      if (response_.len() == 0) {
+      int responseLength = framedOutTrans_ != null ? framedOutTrans_.getFramedLength() : response_.len();
+      if (responseLength == 0) {
         // go straight to reading again. this was probably an oneway method
+        releaseResponse();
         state_ = FrameBufferState.AWAITING_REGISTER_READ;
         buffer_ = null;
       } else {
-        buffer_ = ByteBuffer.wrap(response_.get(), 0, response_.len());
+        buffer_ = ByteBuffer.wrap(response_.get(), 0, responseLength);
 
         // set state that we're waiting to be switched to write. we do this
         // asynchronously through requestSelectInterestChange() because there is
@@ -546,13 +586,25 @@ public abstract class AbstractNonblockingServer extends TServer {
      */
     public void invoke() {
       frameTrans_.reset(buffer_.array());
-      response_.reset();
+      response_ = responseBufferPool.take();
+      if (framedOutTrans_ != null) {
+        framedOutTrans_.reset(response_);
+      }
 
       try {
         if (eventHandler_ != null) {
           eventHandler_.processContext(context_, inTrans_, outTrans_);
         }
-        processorFactory_.getProcessor(inTrans_).process(inProt_, outProt_);
+        TProcessor processor = processorFactory_.getProcessor(inTrans_);
+        if (processor instanceof TAsyncProcessor) {
+          if (!((TAsyncProcessor) processor).process(inProt_, outProt_, getResponseCallback())) {
+            // The response will be completed by another thread, the read
+            // interest stays off until then.
+            return;
+          }
+        } else {
+          processor.process(inProt_, outProt_);
+        }
         responseReady();
         return;
       } catch (TException te) {
@@ -561,10 +613,26 @@ public abstract class AbstractNonblockingServer extends TServer {
         LOGGER.error("Unexpected throwable while invoking!", t);
       }
       // This will only be reached when there is a throwable.
+      releaseResponse();
       state_ = FrameBufferState.AWAITING_CLOSE;
       requestSelectInterestChange();
     }
 
+    private TAsyncProcessor.ResponseCallback getResponseCallback() {
+      return new TAsyncProcessor.ResponseCallback() {
+        @Override
+        public void responseReady() {
+          FrameBuffer.this.responseReady();
+        }
+
+        @Override
+        public void close() {
+          state_ = FrameBufferState.AWAITING_CLOSE;
+          requestSelectInterestChange();
+        }
+      };
+    }
+
     /**
      * Perform a read into buffer.
      * 
@@ -588,6 +656,9 @@ public abstract class AbstractNonblockingServer extends TServer {
      * accordingly.
      */
     private void prepareRead() {
+      // the response has been written, the buffer can be reused by another
+      // connection.
+      releaseResponse();
       // we can set our interest directly without using the queue because
       // we're in the select thread.
       selectionKey_.interestOps(SelectionKey.OP_READ);
@@ -596,6 +667,12 @@ public abstract class AbstractNonblockingServer extends TServer {
       state_ = FrameBufferState.READING_FRAME_SIZE;
     }
 
+    private void releaseResponse() {
+      ResetableTByteArrayOutputStream response = response_;
+      response_ = null;
+      responseBufferPool.release(response);
+    }
+
     /**
      * When this FrameBuffer needs to change its select interests and execution
      * might not be in its select thread, then this method will make sure the
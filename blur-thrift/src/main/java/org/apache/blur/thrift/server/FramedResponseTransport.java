@@ -0,0 +1,91 @@
+package org.apache.blur.thrift.server;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TFramedTransport;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransport;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransportException;
+import org.apache.blur.thrift.util.ResetableTByteArrayOutputStream;
+
+/**
+ * Write only transport that produces the same bytes as a
+ * {@link TFramedTransport} but frames the response in place. Four bytes are
+ * reserved in front of every frame and filled in with the frame size on
+ * flush, so the response is serialized once directly into the buffer that is
+ * sent to the client instead of being copied out of a frame buffer.
+ */
+public class FramedResponseTransport extends TTransport {
+
+  private static final int FRAME_SIZE_LENGTH = 4;
+  private static final byte[] EMPTY_FRAME_SIZE = new byte[FRAME_SIZE_LENGTH];
+
+  private final byte[] _frameSize = new byte[FRAME_SIZE_LENGTH];
+  private ResetableTByteArrayOutputStream _buffer;
+  private int _frameStart;
+
+  /**
+   * Starts writing a new response into the given buffer.
+   */
+  public void reset(ResetableTByteArrayOutputStream buffer) {
+    _buffer = buffer;
+    _frameStart = buffer.len();
+    _buffer.write(EMPTY_FRAME_SIZE, 0, FRAME_SIZE_LENGTH);
+  }
+
+  /**
+   * @return the number of bytes of the buffer that hold complete frames, any
+   *         bytes written after the last flush are not counted.
+   */
+  public int getFramedLength() {
+    return _buffer == null ? 0 : _frameStart;
+  }
+
+  @Override
+  public void write(byte[] buf, int off, int len) throws TTransportException {
+    _buffer.write(buf, off, len);
+  }
+
+  @Override
+  public void flush() throws TTransportException {
+    int frameSize = _buffer.len() - _frameStart - FRAME_SIZE_LENGTH;
+    TFramedTransport.encodeFrameSize(frameSize, _frameSize);
+    System.arraycopy(_frameSize, 0, _buffer.get(), _frameStart, FRAME_SIZE_LENGTH);
+    _frameStart = _buffer.len();
+    _buffer.write(EMPTY_FRAME_SIZE, 0, FRAME_SIZE_LENGTH);
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws TTransportException {
+    throw new TTransportException("Response transport does not support reading.");
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  @Override
+  public void open() throws TTransportException {
+
+  }
+
+  @Override
+  public void close() {
+
+  }
+
+}
@@ -0,0 +1,82 @@
+package org.apache.blur.thrift.server;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.blur.thrift.util.ResetableTByteArrayOutputStream;
+
+/**
+ * A bounded pool of response buffers shared by all the connections of a
+ * server. A buffer is taken when a call is invoked and given back once the
+ * response has been written to the client, so memory is held by the calls in
+ * flight instead of by every open connection. Buffers that have grown larger
+ * than the maximum pooled size are dropped rather than pooled so that one
+ * large response does not pin its memory forever.
+ */
+public class ResponseBufferPool {
+
+  public static final int DEFAULT_INITIAL_SIZE = 1024;
+
+  private final BlockingQueue<ResetableTByteArrayOutputStream> _pool;
+  private final int _maxPooledSize;
+  private final int _initialSize;
+
+  public ResponseBufferPool(int maxPooledBuffers, int maxPooledSize) {
+    this(maxPooledBuffers, maxPooledSize, DEFAULT_INITIAL_SIZE);
+  }
+
+  public ResponseBufferPool(int maxPooledBuffers, int maxPooledSize, int initialSize) {
+    if (maxPooledBuffers > 0) {
+      _pool = new ArrayBlockingQueue<ResetableTByteArrayOutputStream>(maxPooledBuffers);
+    } else {
+      _pool = null;
+    }
+    _maxPooledSize = maxPooledSize;
+    _initialSize = initialSize;
+  }
+
+  /**
+   * @return an empty buffer, from the pool if one is available.
+   */
+  public ResetableTByteArrayOutputStream take() {
+    if (_pool != null) {
+      ResetableTByteArrayOutputStream buffer = _pool.poll();
+      if (buffer != null) {
+        buffer.resetBuffer();
+        return buffer;
+      }
+    }
+    return new ResetableTByteArrayOutputStream(_initialSize);
+  }
+
+  /**
+   * Gives a buffer back to the pool, the buffer must not be used afterwards.
+   */
+  public void release(ResetableTByteArrayOutputStream buffer) {
+    if (_pool == null || buffer == null || buffer.get().length > _maxPooledSize) {
+      return;
+    }
+    _pool.offer(buffer);
+  }
+
+  public int getPooledCount() {
+    return _pool == null ? 0 : _pool.size();
+  }
+
+}
@@ -0,0 +1,52 @@
+package org.apache.blur.thrift.server;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.TProcessor;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
+
+/**
+ * A processor that may complete a call after the invoking thread has returned.
+ * When the nonblocking server invokes a processor that implements this
+ * interface the invoking thread is released as soon as the call has been
+ * dispatched, the response is handed back to the selector through the
+ * {@link ResponseCallback} once it has been written to the output protocol.
+ */
+public interface TAsyncProcessor extends TProcessor {
+
+  public interface ResponseCallback {
+
+    /**
+     * The response has been written to the output protocol and can be sent to
+     * the client.
+     */
+    void responseReady();
+
+    /**
+     * The response could not be written, the connection will be closed.
+     */
+    void close();
+  }
+
+  /**
+   * @return true if the response has already been written to the output
+   *         protocol, false if the callback will be notified later.
+   */
+  boolean process(TProtocol in, TProtocol out, ResponseCallback callback) throws TException;
+
+}
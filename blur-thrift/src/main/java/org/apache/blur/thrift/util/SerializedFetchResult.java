@@ -0,0 +1,208 @@
+package org.apache.blur.thrift.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.blur.thirdparty.thrift_0_9_0.TApplicationException;
+import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TBinaryProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TList;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessage;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessageType;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolUtil;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TMemoryInputTransport;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransport;
+import org.apache.blur.thrift.generated.Blur.Client;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.FetchResult;
+import org.apache.blur.thrift.generated.Selector;
+
+/**
+ * A {@link FetchResult} that holds the binary protocol bytes it was received
+ * as. When written to a binary protocol the bytes are copied straight to the
+ * transport, so a controller can forward a shard server's fetchRowBatch
+ * response without deserializing and serializing every row. The struct fields
+ * are only populated once {@link #materialize()} is called, any other protocol
+ * materializes the result before writing it. Reading into the result replaces
+ * the serialized bytes with the fields that were read.
+ */
+public class SerializedFetchResult extends FetchResult {
+
+  private static final long serialVersionUID = -6375934011264718592L;
+
+  private volatile byte[] _bytes;
+  private volatile boolean _materialized;
+
+  public SerializedFetchResult(byte[] bytes) {
+    _bytes = bytes;
+  }
+
+  /**
+   * @return the binary protocol serialization of this result, or null if the
+   *         result has been read into.
+   */
+  public byte[] getBytes() {
+    return _bytes;
+  }
+
+  /**
+   * Reads the serialized bytes into the fields of this result.
+   */
+  public synchronized SerializedFetchResult materialize() throws TException {
+    if (!_materialized) {
+      super.read(new TBinaryProtocol(new TMemoryInputTransport(_bytes)));
+      _materialized = true;
+    }
+    return this;
+  }
+
+  @Override
+  public void write(TProtocol oprot) throws TException {
+    if (oprot instanceof TBinaryProtocol) {
+      byte[] bytes = _bytes;
+      if (!_materialized && bytes != null) {
+        oprot.getTransport().write(bytes, 0, bytes.length);
+        return;
+      }
+    }
+    materialize();
+    super.write(oprot);
+  }
+
+  @Override
+  public synchronized void read(TProtocol iprot) throws TException {
+    super.read(iprot);
+    _materialized = true;
+    _bytes = null;
+  }
+
+  @Override
+  public FetchResult deepCopy() {
+    try {
+      materialize();
+    } catch (TException e) {
+      throw new RuntimeException(e);
+    }
+    return new FetchResult(this);
+  }
+
+  @Override
+  public boolean equals(FetchResult that) {
+    try {
+      materialize();
+      if (that instanceof SerializedFetchResult) {
+        ((SerializedFetchResult) that).materialize();
+      }
+    } catch (TException e) {
+      throw new RuntimeException(e);
+    }
+    return super.equals(that);
+  }
+
+  @Override
+  public String toString() {
+    try {
+      materialize();
+    } catch (TException e) {
+      return "SerializedFetchResult [length=" + _bytes.length + "]";
+    }
+    return super.toString();
+  }
+
+  /**
+   * Performs a fetchRowBatch call with the given client. When the client reads
+   * binary protocol frames the response is not deserialized, each
+   * {@link FetchResult} in the list is a {@link SerializedFetchResult} holding a
+   * copy of its bytes from the frame. Otherwise this is the same as
+   * {@link Client#fetchRowBatch(String, List)}.
+   */
+  public static List<FetchResult> fetchRowBatch(Client client, String table, List<Selector> selectors)
+      throws BlurException, TException {
+    TProtocol iprot = client.getInputProtocol();
+    if (!(iprot instanceof TBinaryProtocol)) {
+      return client.fetchRowBatch(table, selectors);
+    }
+    client.send_fetchRowBatch(table, selectors);
+    // The client is not shared while a call is in progress so the response
+    // read here belongs to the call that was just sent.
+    TMessage message = iprot.readMessageBegin();
+    if (message.type == TMessageType.EXCEPTION) {
+      TApplicationException x = TApplicationException.read(iprot);
+      iprot.readMessageEnd();
+      throw x;
+    }
+    List<FetchResult> results = null;
+    BlurException blurException = null;
+    iprot.readStructBegin();
+    while (true) {
+      TField field = iprot.readFieldBegin();
+      if (field.type == TType.STOP) {
+        break;
+      }
+      if (field.id == 0 && field.type == TType.LIST) {
+        results = readSerializedList(iprot);
+      } else if (field.id == 1 && field.type == TType.STRUCT) {
+        blurException = new BlurException();
+        blurException.read(iprot);
+      } else {
+        TProtocolUtil.skip(iprot, field.type);
+      }
+      iprot.readFieldEnd();
+    }
+    iprot.readStructEnd();
+    iprot.readMessageEnd();
+    if (results != null) {
+      return results;
+    }
+    if (blurException != null) {
+      throw blurException;
+    }
+    throw new TApplicationException(TApplicationException.MISSING_RESULT, "fetchRowBatch failed: unknown result");
+  }
+
+  private static List<FetchResult> readSerializedList(TProtocol iprot) throws TException {
+    TTransport transport = iprot.getTransport();
+    TList list = iprot.readListBegin();
+    List<FetchResult> results = new ArrayList<FetchResult>(list.size);
+    for (int i = 0; i < list.size; i++) {
+      byte[] buffer = transport.getBuffer();
+      if (buffer == null) {
+        // The transport does not expose its frame, fall back to a normal read.
+        FetchResult fetchResult = new FetchResult();
+        fetchResult.read(iprot);
+        results.add(fetchResult);
+        continue;
+      }
+      int start = transport.getBufferPosition();
+      TProtocolUtil.skip(iprot, TType.STRUCT);
+      if (buffer != transport.getBuffer()) {
+        throw new TException("Fetch result spans more than one frame.");
+      }
+      int length = transport.getBufferPosition() - start;
+      byte[] bytes = new byte[length];
+      System.arraycopy(buffer, start, bytes, 0, length);
+      results.add(new SerializedFetchResult(bytes));
+    }
+    iprot.readListEnd();
+    return results;
+  }
+}
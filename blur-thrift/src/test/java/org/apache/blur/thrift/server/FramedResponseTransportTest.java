@@ -0,0 +1,95 @@
+package org.apache.blur.thrift.server;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TBinaryProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessage;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessageType;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TFramedTransport;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TMemoryBuffer;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TTransport;
+import org.apache.blur.thrift.util.ResetableTByteArrayOutputStream;
+import org.junit.Test;
+
+public class FramedResponseTransportTest {
+
+  @Test
+  public void testSameBytesAsFramedTransport() throws TException {
+    TMemoryBuffer memoryBuffer = new TMemoryBuffer(1024);
+    writeMessage(new TFramedTransport(memoryBuffer), "message");
+    byte[] expected = Arrays.copyOf(memoryBuffer.getArray(), memoryBuffer.length());
+
+    ResetableTByteArrayOutputStream buffer = new ResetableTByteArrayOutputStream(16);
+    FramedResponseTransport transport = new FramedResponseTransport();
+    transport.reset(buffer);
+    writeMessage(transport, "message");
+    assertEquals(expected.length, transport.getFramedLength());
+    assertTrue(Arrays.equals(expected, Arrays.copyOf(buffer.get(), transport.getFramedLength())));
+  }
+
+  @Test
+  public void testUnflushedIsNotFramed() throws TException {
+    ResetableTByteArrayOutputStream buffer = new ResetableTByteArrayOutputStream(16);
+    FramedResponseTransport transport = new FramedResponseTransport();
+    transport.reset(buffer);
+    assertEquals(0, transport.getFramedLength());
+    transport.write(new byte[] { 1, 2, 3 }, 0, 3);
+    assertEquals(0, transport.getFramedLength());
+    transport.flush();
+    assertEquals(7, transport.getFramedLength());
+  }
+
+  @Test
+  public void testResponseBufferPool() {
+    ResponseBufferPool pool = new ResponseBufferPool(1, 64, 16);
+    ResetableTByteArrayOutputStream buffer1 = pool.take();
+    buffer1.write(new byte[10], 0, 10);
+    pool.release(buffer1);
+    assertEquals(1, pool.getPooledCount());
+
+    ResetableTByteArrayOutputStream buffer2 = pool.take();
+    assertSame(buffer1, buffer2);
+    assertEquals(0, buffer2.len());
+
+    // Buffers that grew past the maximum pooled size are not kept.
+    buffer2.write(new byte[100], 0, 100);
+    pool.release(buffer2);
+    assertEquals(0, pool.getPooledCount());
+    assertNotSame(buffer2, pool.take());
+
+    ResponseBufferPool disabled = new ResponseBufferPool(0, 64, 16);
+    disabled.release(disabled.take());
+    assertEquals(0, disabled.getPooledCount());
+  }
+
+  private static void writeMessage(TTransport transport, String name) throws TException {
+    TProtocol protocol = new TBinaryProtocol(transport, true, true);
+    protocol.writeMessageBegin(new TMessage(name, TMessageType.REPLY, 1));
+    protocol.writeString("value");
+    protocol.writeMessageEnd();
+    transport.flush();
+  }
+}
@@ -0,0 +1,169 @@
+package org.apache.blur.thrift.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.blur.thirdparty.thrift_0_9_0.TBase;
+import org.apache.blur.thirdparty.thrift_0_9_0.TException;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TBinaryProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TCompactProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessage;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TMessageType;
+import org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TFramedTransport;
+import org.apache.blur.thirdparty.thrift_0_9_0.transport.TMemoryBuffer;
+import org.apache.blur.thrift.generated.Blur;
+import org.apache.blur.thrift.generated.Blur.Client;
+import org.apache.blur.thrift.generated.BlurException;
+import org.apache.blur.thrift.generated.ErrorType;
+import org.apache.blur.thrift.generated.FetchResult;
+import org.apache.blur.thrift.generated.FetchRowResult;
+import org.apache.blur.thrift.generated.Row;
+import org.apache.blur.thrift.generated.Selector;
+import org.junit.Test;
+
+public class SerializedFetchResultTest {
+
+  private static final List<Selector> SELECTORS = Arrays.asList(new Selector().setRowId("row-1"),
+      new Selector().setRowId("row-2"));
+
+  @Test
+  public void testFetchRowBatch() throws TException {
+    List<FetchResult> expected = newFetchResults();
+    Blur.fetchRowBatch_result result = new Blur.fetchRowBatch_result();
+    result.setSuccess(expected);
+
+    List<FetchResult> fetchResults = SerializedFetchResult.fetchRowBatch(newClient(result), "table", SELECTORS);
+    assertEquals(2, fetchResults.size());
+    for (int i = 0; i < fetchResults.size(); i++) {
+      FetchResult fetchResult = fetchResults.get(i);
+      assertTrue(fetchResult instanceof SerializedFetchResult);
+      assertTrue(fetchResult.equals(expected.get(i)));
+    }
+  }
+
+  @Test
+  public void testFetchRowBatchException() throws TException {
+    Blur.fetchRowBatch_result result = new Blur.fetchRowBatch_result();
+    result.setEx(new BlurException("table not found", null, ErrorType.UNKNOWN));
+    try {
+      SerializedFetchResult.fetchRowBatch(newClient(result), "table", SELECTORS);
+      fail();
+    } catch (BlurException e) {
+      assertEquals("table not found", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testForwardBinary() throws TException {
+    List<FetchResult> expected = newFetchResults();
+    Blur.fetchRowBatch_result result = new Blur.fetchRowBatch_result();
+    result.setSuccess(expected);
+    List<FetchResult> fetchResults = SerializedFetchResult.fetchRowBatch(newClient(result), "table", SELECTORS);
+
+    Blur.fetchRowBatch_result forwarded = new Blur.fetchRowBatch_result();
+    forwarded.setSuccess(fetchResults);
+    assertTrue(Arrays.equals(toBytes(result), toBytes(forwarded)));
+    assertFalse(fetchResults.get(0).isSetTable());
+
+    Blur.fetchRowBatch_result read = new Blur.fetchRowBatch_result();
+    TMemoryBuffer buffer = new TMemoryBuffer(1024);
+    forwarded.write(new TBinaryProtocol(buffer));
+    read.read(new TBinaryProtocol(buffer));
+    assertEquals(expected, read.getSuccess());
+  }
+
+  @Test
+  public void testForwardCompact() throws TException {
+    List<FetchResult> expected = newFetchResults();
+    Blur.fetchRowBatch_result result = new Blur.fetchRowBatch_result();
+    result.setSuccess(expected);
+    List<FetchResult> fetchResults = SerializedFetchResult.fetchRowBatch(newClient(result), "table", SELECTORS);
+
+    Blur.fetchRowBatch_result forwarded = new Blur.fetchRowBatch_result();
+    forwarded.setSuccess(fetchResults);
+    TMemoryBuffer buffer = new TMemoryBuffer(1024);
+    forwarded.write(new TCompactProtocol(buffer));
+    Blur.fetchRowBatch_result read = new Blur.fetchRowBatch_result();
+    read.read(new TCompactProtocol(buffer));
+    assertEquals(expected, read.getSuccess());
+    assertEquals("table", fetchResults.get(0).getTable());
+  }
+
+  @Test
+  public void testRead() throws TException {
+    List<FetchResult> expected = newFetchResults();
+    Blur.fetchRowBatch_result result = new Blur.fetchRowBatch_result();
+    result.setSuccess(expected);
+    List<FetchResult> fetchResults = SerializedFetchResult.fetchRowBatch(newClient(result), "table", SELECTORS);
+    SerializedFetchResult fetchResult = (SerializedFetchResult) fetchResults.get(0);
+
+    TMemoryBuffer buffer = new TMemoryBuffer(1024);
+    expected.get(1).write(new TBinaryProtocol(buffer));
+    fetchResult.read(new TBinaryProtocol(buffer));
+    assertEquals(expected.get(1).getRowResult(), fetchResult.getRowResult());
+    assertTrue(Arrays.equals(toBytes(expected.get(1)), toBytes(fetchResult)));
+  }
+
+  private static Client newClient(Blur.fetchRowBatch_result result) throws TException {
+    TMemoryBuffer response = new TMemoryBuffer(1024);
+    TFramedTransport framed = new TFramedTransport(response);
+    TProtocol protocol = new TBinaryProtocol(framed);
+    protocol.writeMessageBegin(new TMessage("fetchRowBatch", TMessageType.REPLY, 1));
+    result.write(protocol);
+    protocol.writeMessageEnd();
+    framed.flush();
+    return new Client(new TBinaryProtocol(new TFramedTransport(response)), new TBinaryProtocol(new TMemoryBuffer(
+        1024)));
+  }
+
+  private static byte[] toBytes(TBase<?, ?> base) throws TException {
+    TMemoryBuffer buffer = new TMemoryBuffer(1024);
+    base.write(new TBinaryProtocol(buffer));
+    byte[] bytes = new byte[buffer.length()];
+    buffer.readAll(bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static List<FetchResult> newFetchResults() {
+    List<FetchResult> fetchResults = new ArrayList<FetchResult>();
+    for (Selector selector : SELECTORS) {
+      Row row = new Row();
+      row.setId(selector.getRowId());
+      for (int i = 0; i < 3; i++) {
+        row.addToRecords(BlurThriftHelper.newRecord("family", "record-" + i,
+            BlurThriftHelper.newColumn("column", "value-" + i)));
+      }
+      FetchRowResult rowResult = new FetchRowResult();
+      rowResult.setRow(row);
+      FetchResult fetchResult = new FetchResult();
+      fetchResult.setExists(true);
+      fetchResult.setTable("table");
+      fetchResult.setRowResult(rowResult);
+      fetchResults.add(fetchResult);
+    }
+    return fetchResults;
+  }
+}
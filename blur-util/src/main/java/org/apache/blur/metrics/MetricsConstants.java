@@ -50,11 +50,20 @@ public class MetricsConstants {
   public static final String THRIFT_CACHE_ATTRIBUTE_MAP = "ThriftCacheAttributeMap";
   public static final String HDFS_KV = "HDFS-KV";
   public static final String DEEP_PAGING_CACHE = "DeepPagingCache";
+  public static final String SEGMENT_RESULT_CACHE = "SegmentResultCache";
+  public static final String ROW_CACHE = "RowCache";
+  public static final String PARSED_QUERY_CACHE = "ParsedQueryCache";
+  public static final String HIT_RATIO = "Hit Ratio";
+  public static final String COALESCED_QUERIES = "Coalesced Queries/s";
+  public static final String IN_FLIGHT_QUERIES = "In Flight Queries";
   public static final String CACHE_POOL = "CachePool";
+  public static final String ALLOCATION_LATENCY = "Allocation Latency";
   public static final String JVM = "JVM";
   public static final String HEAP_USED = "Heap Used";
   public static final String CPU_USED = "Cpu Used";
   public static final String EVICTION = "Eviction";
+  public static final String ADMISSION = "Admission";
+  public static final String REJECTION = "Rejection";
   public static final String TABLE_COUNT = "Table Count";
   public static final String FILES_IN_QUEUE_TO_BE_DELETED = "Files in Queue to be Deleted";
   public static final String INDEX_MEMORY_USAGE = "Index Memory Usage";
@@ -67,8 +76,27 @@ public class MetricsConstants {
   public static final String SIZE = "Size";
   public static final String LOAD_AVERAGE = "Load Average";
   public static final String SYSTEM = "System";
+  public static final String TRACE = "Trace";
+  public static final String DROPPED_TRACES = "Dropped Traces";
+  public static final String QUERY_LATENCY = "Query Latency";
+  public static final String FETCH_LATENCY = "Fetch Latency";
+  public static final String MUTATE_LATENCY = "Mutate Latency";
+  public static final String SLOW_QUERIES = "Slow Queries";
   public static final String MERGE_THROUGHPUT_BYTES = "Merge Throughput Bytes";
+  public static final String MERGE_PAUSE_TIME = "Merge Pause Time";
+  public static final String MERGE_RATE_LIMIT = "Merge Rate Limit Bytes";
+  public static final String MERGE_QUEUE_WAIT_TIME = "Merge Queue Wait Time";
+  public static final String MERGES_RUNNING = "Merges Running";
+  public static final String QUIET_HIT = "Quiet Hit";
+  public static final String QUIET_MISS = "Quiet Miss";
   public static final String GC_TIMES = "GC Times (ms)";
   public static final String OFF_HEAP_MEMORY = "Off Heap Memory";
   public static final String CACHE_VALUE_FINALIZE = "CacheValue Finalize";
+  public static final String INDEX_IMPORT_QUEUE_DEPTH = "Index Import Queue Depth";
+  public static final String INDEX_IMPORTS_IN_PROGRESS = "Index Imports In Progress";
+  public static final String INDEX_IMPORT_THROUGHPUT_BYTES = "Index Import Throughput Bytes";
+  public static final String INDEX_IMPORT_TIMER = "Index Import Timer";
+  public static final String QUERY_MEMORY_USAGE = "Query Memory Usage";
+  public static final String QUERY_ADMISSION_REJECTED = "Query Admission Rejected";
+  public static final String QUERY_BACK_PRESSURE_STOPPED = "Query Back Pressure Stopped";
 }
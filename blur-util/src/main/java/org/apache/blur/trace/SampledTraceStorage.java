@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.trace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.blur.BlurConfiguration;
+import org.json.JSONException;
+
+/**
+ * Serves the traces kept in memory by the {@link TraceSampler} next to the
+ * traces of the wrapped {@link TraceStorage}. Traces requested by clients are
+ * still stored in the wrapped storage.
+ */
+public class SampledTraceStorage extends TraceStorage {
+
+  private final TraceStorage _storage;
+  private final TraceSampler _sampler;
+
+  public SampledTraceStorage(BlurConfiguration configuration, TraceStorage storage, TraceSampler sampler) {
+    super(configuration);
+    _storage = storage;
+    _sampler = sampler;
+  }
+
+  @Override
+  public void store(TraceCollector collector) {
+    _storage.store(collector);
+  }
+
+  @Override
+  public List<String> getTraceIds() throws IOException {
+    List<String> traceIds = new ArrayList<String>(_sampler.getTraceIds());
+    try {
+      traceIds.addAll(_storage.getTraceIds());
+    } catch (RuntimeException e) {
+      // The wrapped storage may not support listing traces.
+      if (traceIds.isEmpty()) {
+        throw e;
+      }
+    }
+    return traceIds;
+  }
+
+  @Override
+  public List<String> getRequestIds(String traceId) throws IOException {
+    List<String> requestIds = _sampler.getRequestIds(traceId);
+    if (!requestIds.isEmpty()) {
+      return requestIds;
+    }
+    return _storage.getRequestIds(traceId);
+  }
+
+  @Override
+  public String getRequestContentsJson(String traceId, String requestId) throws IOException {
+    String json;
+    try {
+      json = _sampler.getRequestContentsJson(traceId, requestId);
+    } catch (JSONException e) {
+      throw new IOException(e);
+    }
+    if (json != null) {
+      return json;
+    }
+    return _storage.getRequestContentsJson(traceId, requestId);
+  }
+
+  @Override
+  public void removeTrace(String traceId) throws IOException {
+    if (!_sampler.getRequestIds(traceId).isEmpty()) {
+      _sampler.removeTrace(traceId);
+      return;
+    }
+    _storage.removeTrace(traceId);
+  }
+
+  @Override
+  public void close() throws IOException {
+    _storage.close();
+  }
+
+}
@@ -16,11 +16,17 @@
  */
 package org.apache.blur.trace;
 
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.TRACE;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -31,8 +37,19 @@ import org.apache.blur.utils.ThreadValue;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
 public class Trace {
 
+  /**
+   * Prefix of the root id of traces started by the {@link TraceSampler}. The
+   * id is passed on to the shard servers, which keep these traces in their
+   * sampled buffer instead of the configured storage.
+   */
+  public static final String SAMPLED_TRACE_PREFIX = "sampled-";
+
   private static final String REQUEST_ID = "requestId";
 
   public static class TraceId {
@@ -79,7 +96,11 @@ public class Trace {
     }
   };
   private static ThreadValue<TraceCollector> _tracer = new ThreadValue<TraceCollector>();
+  private static ThreadValue<PendingRequest> _pending = new ThreadValue<PendingRequest>();
   private static TraceStorage _storage;
+  private static volatile TraceSampler _sampler;
+  private static volatile boolean _phaseMetrics;
+  private static final ConcurrentMap<String, Timer> _phaseTimers = new ConcurrentHashMap<String, Timer>();
   private static String _nodeName;
   private static ThreadValue<Random> _random = new ThreadValue<Random>() {
     @Override
@@ -103,9 +124,36 @@ public class Trace {
   public static void setupTrace(String rootId, String requestId) {
     TraceId traceId = new TraceId(rootId, requestId);
     TraceCollector collector = new TraceCollector(_nodeName, traceId);
+    if (rootId != null && rootId.startsWith(SAMPLED_TRACE_PREFIX)) {
+      collector.setSampled(true);
+    }
     _tracer.set(collector);
   }
 
+  /**
+   * Sets up a trace for a request that the client did not ask to trace. A
+   * request picked by the sample rate of the {@link TraceSampler} is traced in
+   * full. Any other request only records its start time so that, if it turns
+   * out to be slow, a trace with its total time (but no phases) is kept.
+   * 
+   * @param requestName
+   *          the name of the request, used as the request id of the trace.
+   */
+  public static void setupSampledTrace(String requestName) {
+    TraceSampler sampler = _sampler;
+    if (sampler == null || !sampler.isEnabled()) {
+      return;
+    }
+    if (sampler.sampleHead(_random.get())) {
+      TraceId traceId = new TraceId(SAMPLED_TRACE_PREFIX + UUID.randomUUID().toString(), requestName);
+      TraceCollector collector = new TraceCollector(_nodeName, traceId);
+      collector.setSampled(true);
+      _tracer.set(collector);
+    } else if (sampler.isSlowThresholdEnabled()) {
+      _pending.set(new PendingRequest(requestName, System.nanoTime()));
+    }
+  }
+
   public static Parameter param(String name, Object value) {
     if (name == null) {
       name = "null";
@@ -136,22 +184,102 @@ public class Trace {
   public static void tearDownTrace() {
     TraceCollector collector = _tracer.get();
     _tracer.set(null);
-    if (_storage != null && collector != null) {
+    PendingRequest pending = _pending.get();
+    if (pending != null) {
+      _pending.set(null);
+      offerIfSlow(pending);
+    }
+    if (collector == null) {
+      return;
+    }
+    if (collector.isSampled()) {
+      TraceSampler sampler = _sampler;
+      if (sampler != null) {
+        collector.finished();
+        sampler.offer(collector);
+      }
+    } else if (_storage != null) {
       collector.finished();
       _storage.store(collector);
     }
   }
 
-  public static Tracer trace(String desc, Parameter... parameters) {
+  public static Tracer trace(final String desc, Parameter... parameters) {
     TraceCollector collector = _tracer.get();
     if (collector == null) {
-      return DO_NOTHING;
+      if (!_phaseMetrics) {
+        return DO_NOTHING;
+      }
+      final long start = System.nanoTime();
+      return new Tracer() {
+        @Override
+        public void done() {
+          recordPhase(desc, System.nanoTime() - start);
+        }
+      };
     }
     TracerImpl tracer = new TracerImpl(desc, parameters, collector.getNextId(), collector.getScope());
     collector.add(tracer);
     return tracer;
   }
 
+  /**
+   * Records the time spent in the named phase into the latency histogram of
+   * that phase, if phase metrics are enabled.
+   */
+  static void recordPhase(String name, long nanos) {
+    if (!_phaseMetrics) {
+      return;
+    }
+    Timer timer = _phaseTimers.get(name);
+    if (timer == null) {
+      timer = Metrics.newTimer(new MetricName(ORG_APACHE_BLUR, TRACE, name), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
+      Timer existing = _phaseTimers.putIfAbsent(name, timer);
+      if (existing != null) {
+        timer = existing;
+      }
+    }
+    timer.update(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private static void offerIfSlow(PendingRequest pending) {
+    TraceSampler sampler = _sampler;
+    if (sampler == null || !sampler.isSlow(System.nanoTime() - pending._started)) {
+      return;
+    }
+    TraceId traceId = new TraceId(SAMPLED_TRACE_PREFIX + UUID.randomUUID().toString(), pending._name);
+    TraceCollector collector = new TraceCollector(_nodeName, traceId, pending._started);
+    collector.setSampled(false);
+    collector.finished();
+    sampler.offer(collector);
+  }
+
+  private static class PendingRequest {
+    final String _name;
+    final long _started;
+
+    PendingRequest(String name, long started) {
+      _name = name;
+      _started = started;
+    }
+  }
+
+  public static TraceSampler getSampler() {
+    return _sampler;
+  }
+
+  public static void setSampler(TraceSampler sampler) {
+    _sampler = sampler;
+  }
+
+  public static boolean isPhaseMetrics() {
+    return _phaseMetrics;
+  }
+
+  public static void setPhaseMetrics(boolean phaseMetrics) {
+    _phaseMetrics = phaseMetrics;
+  }
+
   public static TraceStorage getStorage() {
     return _storage;
   }
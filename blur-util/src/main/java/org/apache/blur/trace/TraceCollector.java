@@ -34,20 +34,28 @@ public class TraceCollector {
   protected final AtomicLong _traceCounter = new AtomicLong();
   protected final AtomicInteger _scope = new AtomicInteger();
   protected final long _now = (System.currentTimeMillis() * 1000000) + (System.nanoTime() % 1000000);
-  protected final long _started = System.nanoTime();
+  protected final long _started;
   protected final String _pid;
   protected final String _threadName;
   protected final String _nodeName;
   protected long _finished;
+  protected boolean _sampled;
+  protected boolean _kept;
 
   public TraceCollector(String nodeName, TraceId id) {
+    this(nodeName, id, System.nanoTime());
+  }
+
+  TraceCollector(String nodeName, TraceId id, long started) {
     _nodeName = nodeName;
     _id = id;
+    _started = started;
     _pid = ManagementFactory.getRuntimeMXBean().getName();
     _threadName = Thread.currentThread().getName();
   }
 
   public TraceCollector(TraceCollector parentCollector, String requestId) {
+    _started = System.nanoTime();
     _nodeName = parentCollector._nodeName;
     _id = new TraceId(parentCollector._id.getRootId(), requestId);
     _pid = parentCollector._pid;
@@ -99,4 +107,28 @@ public class TraceCollector {
   public void finished() {
     _finished = System.nanoTime();
   }
+
+  public long getTotalTime() {
+    return _finished - _started;
+  }
+
+  /**
+   * Marks this collector as started by the {@link TraceSampler} rather than by
+   * the client.
+   * 
+   * @param kept
+   *          true if the trace is kept no matter how long the request takes.
+   */
+  public void setSampled(boolean kept) {
+    _sampled = true;
+    _kept = kept;
+  }
+
+  public boolean isSampled() {
+    return _sampled;
+  }
+
+  public boolean isKept() {
+    return _kept;
+  }
 }
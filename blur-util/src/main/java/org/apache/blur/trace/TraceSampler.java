@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.json.JSONException;
+
+/**
+ * Decides which requests that were not explicitly traced are traced anyway and
+ * keeps the most recent of those traces in a fixed size ring buffer. A request
+ * picked by the sample rate when it started is traced in full, on this server
+ * and on the servers it calls. Any other request that took longer than the slow
+ * threshold is kept with its total time only, its phases are not collected so
+ * that requests that are not sampled stay cheap.
+ */
+public class TraceSampler {
+
+  private final double _sampleRate;
+  private final long _slowThresholdNanos;
+  private final AtomicReferenceArray<TraceCollector> _buffer;
+  private final AtomicLong _position = new AtomicLong();
+
+  /**
+   * @param sampleRate
+   *          the fraction of requests to keep, 0 disables random sampling.
+   * @param slowThreshold
+   *          requests taking at least this long are always kept, a negative
+   *          value disables the threshold.
+   * @param unit
+   *          the unit of the slow threshold.
+   * @param bufferSize
+   *          the number of traces kept in memory.
+   */
+  public TraceSampler(double sampleRate, long slowThreshold, TimeUnit unit, int bufferSize) {
+    _sampleRate = sampleRate;
+    _slowThresholdNanos = slowThreshold < 0 ? -1L : unit.toNanos(slowThreshold);
+    _buffer = new AtomicReferenceArray<TraceCollector>(Math.max(bufferSize, 0));
+  }
+
+  public boolean isEnabled() {
+    return _buffer.length() > 0 && (_sampleRate > 0.0 || _slowThresholdNanos >= 0);
+  }
+
+  boolean isSlowThresholdEnabled() {
+    return _slowThresholdNanos >= 0;
+  }
+
+  boolean isSlow(long nanos) {
+    return _slowThresholdNanos >= 0 && nanos >= _slowThresholdNanos;
+  }
+
+  boolean sampleHead(Random random) {
+    return _sampleRate > 0.0 && random.nextDouble() < _sampleRate;
+  }
+
+  /**
+   * Called when a sampled request has finished.
+   *
+   * @return true if the trace was kept.
+   */
+  boolean offer(TraceCollector collector) {
+    if (_buffer.length() == 0) {
+      return false;
+    }
+    if (!collector.isKept() && !isSlow(collector.getTotalTime())) {
+      return false;
+    }
+    int index = (int) (_position.getAndIncrement() % _buffer.length());
+    _buffer.set(index, collector);
+    return true;
+  }
+
+  public List<TraceCollector> getCollectors() {
+    List<TraceCollector> collectors = new ArrayList<TraceCollector>();
+    for (int i = 0; i < _buffer.length(); i++) {
+      TraceCollector collector = _buffer.get(i);
+      if (collector != null) {
+        collectors.add(collector);
+      }
+    }
+    return collectors;
+  }
+
+  public List<String> getTraceIds() {
+    Set<String> traceIds = new LinkedHashSet<String>();
+    for (TraceCollector collector : getCollectors()) {
+      traceIds.add(collector.getId().getRootId());
+    }
+    return new ArrayList<String>(traceIds);
+  }
+
+  public List<String> getRequestIds(String traceId) {
+    List<String> requestIds = new ArrayList<String>();
+    for (TraceCollector collector : getCollectors()) {
+      if (collector.getId().getRootId().equals(traceId)) {
+        requestIds.add(collector.getId().getRequestId());
+      }
+    }
+    return requestIds;
+  }
+
+  /**
+   * @return the json of the request or null if the request is not in the
+   *         buffer.
+   */
+  public String getRequestContentsJson(String traceId, String requestId) throws JSONException {
+    for (TraceCollector collector : getCollectors()) {
+      if (collector.getId().getRootId().equals(traceId) && collector.getId().getRequestId().equals(requestId)) {
+        return collector.toJsonObject().toString();
+      }
+    }
+    return null;
+  }
+
+  public void removeTrace(String traceId) {
+    for (int i = 0; i < _buffer.length(); i++) {
+      TraceCollector collector = _buffer.get(i);
+      if (collector != null && collector.getId().getRootId().equals(traceId)) {
+        _buffer.compareAndSet(i, collector, null);
+      }
+    }
+  }
+}
@@ -62,6 +62,7 @@ public class TracerImpl implements Tracer {
   public void done() {
     _scope.decrementAndGet();
     _ended = System.nanoTime();
+    Trace.recordPhase(_name, _ended - _start);
   }
 
   @Override
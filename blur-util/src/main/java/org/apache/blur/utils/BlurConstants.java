@@ -56,6 +56,11 @@ public class BlurConstants {
   // public static final String BLUR_TABLE_PATH = "blur.table.path";
   public static final String BLUR_ZOOKEEPER_CONNECTION = "blur.zookeeper.connection";
   public static final String BLUR_HDFS_TRACE_PATH = "blur.hdfs.trace.path";
+  public static final String BLUR_HDFS_TRACE_QUEUE_SIZE = "blur.hdfs.trace.queue.size";
+  public static final String BLUR_TRACE_SAMPLE_RATE = "blur.trace.sample.rate";
+  public static final String BLUR_TRACE_SLOW_THRESHOLD = "blur.trace.slow.threshold";
+  public static final String BLUR_TRACE_SAMPLE_BUFFER_SIZE = "blur.trace.sample.buffer.size";
+  public static final String BLUR_TRACE_PHASE_METRICS = "blur.trace.phase.metrics";
   public static final String BLUR_ZOOKEEPER_TIMEOUT = "blur.zookeeper.timeout";
   public static final int BLUR_ZOOKEEPER_TIMEOUT_DEFAULT = 30000;
   public static final String BLUR_SHARD_HOSTNAME = "blur.shard.hostname";
@@ -79,6 +84,7 @@ public class BlurConstants {
   public static final String BLUR_SHARD_INTERNAL_SEARCH_THREAD_COUNT = "blur.shard.internal.search.thread.count";
   public static final String BLUR_SHARD_INDEX_WRITER_SORT_MEMORY = "blur.shard.index.writer.sort.memory";
   public static final String BLUR_SHARD_INDEX_WRITER_SORT_FACTOR = "blur.shard.index.writer.sort.factor";
+  public static final String BLUR_SHARD_BULK_MUTATE_SIDE_INDEX = "blur.shard.bulk.mutate.side.index";
   public static final String BLUR_SHARD_INDEX_MAX_IDLE_TIME = "blur.shard.index.max.idle.time";
   public static final String BLUR_TABLE_DISABLE_FAST_DIR = "blur.table.disable.fast.dir";
   public static final String BLUR_BULK_UPDATE_WORKING_PATH = "blur.bulk.update.working.path";
@@ -94,13 +100,20 @@ public class BlurConstants {
   public static final String BLUR_MAX_CLAUSE_COUNT = "blur.max.clause.count";
   public static final String BLUR_SHARD_CACHE_MAX_QUERYCACHE_ELEMENTS = "blur.shard.cache.max.querycache.elements";
   public static final String BLUR_SHARD_OPENER_THREAD_COUNT = "blur.shard.opener.thread.count";
+  public static final String BLUR_SHARD_OPENER_NAMESPACE_THREAD_COUNT = "blur.shard.opener.namespace.thread.count";
   public static final String BLUR_SHARD_MERGE_THREAD_COUNT = "blur.shard.merge.thread.count";
+  public static final String BLUR_SHARD_INDEX_IMPORTER_THREAD_COUNT = "blur.shard.index.importer.thread.count";
   public static final String BLUR_SHARD_INDEX_DELETION_POLICY_MAXAGE = "blur.shard.index.deletion.policy.maxage";
   public static final String BLUR_SHARD_INDEX_SIMILARITY = "blur.shard.index.similarity";
   public static final String BLUR_SHARD_THRIFT_SELECTOR_THREADS = "blur.shard.thrift.selector.threads";
   public static final String BLUR_SHARD_THRIFT_MAX_READ_BUFFER_BYTES = "blur.shard.thrift.max.read.buffer.bytes";
   public static final String BLUR_SHARD_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD = "blur.shard.thrift.accept.queue.size.per.thread";
+  public static final String BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFERS = "blur.shard.thrift.max.pooled.response.buffers";
+  public static final String BLUR_SHARD_THRIFT_MAX_POOLED_RESPONSE_BUFFER_SIZE = "blur.shard.thrift.max.pooled.response.buffer.size";
   public static final String BLUR_SHARD_DEEP_PAGING_CACHE_SIZE = "blur.shard.deep.paging.cache.size";
+  public static final String BLUR_SHARD_SEGMENT_RESULT_CACHE_SIZE = "blur.shard.segment.result.cache.size";
+  public static final String BLUR_SHARD_SEARCH_SEGMENT_RANGE_MIN_DOCS = "blur.shard.search.segment.range.min.docs";
+  public static final String BLUR_SHARD_SEARCH_SEGMENT_MAX_RANGES = "blur.shard.search.segment.max.ranges";
 
   public static final String BLUR_SHARD_BLOCK_CACHE_V2_POOL_CACHE_SIZE = "blur.shard.block.cache.v2.pool.cache.size";
   public static final String BLUR_SHARD_BLOCK_CACHE_V2_SLAB_CHUNK_SIZE = "blur.shard.block.cache.v2.slab.chunk.size";
@@ -123,9 +136,17 @@ public class BlurConstants {
   public static final String BLUR_SHARD_BLURINDEX_CLASS = "blur.shard.blurindex.class";
   public static final String BLUR_SHARD_SERVER_MINIMUM_BEFORE_SAFEMODE_EXIT = "blur.shard.server.minimum.before.safemode.exit";
   public static final String BLUR_SHARD_SMALL_MERGE_THRESHOLD = "blur.shard.small.merge.threshold";
+  public static final String BLUR_SHARD_MERGE_RATE_LIMIT_IDLE = "blur.shard.merge.rate.limit.idle";
+  public static final String BLUR_SHARD_MERGE_RATE_LIMIT_BUSY = "blur.shard.merge.rate.limit.busy";
   public static final String BLUR_SHARD_REQUEST_CACHE_SIZE = "blur.shard.request.cache.size";
+  public static final String BLUR_SHARD_ROW_CACHE_SIZE = "blur.shard.row.cache.size";
+  public static final String BLUR_SHARD_PARSED_QUERY_CACHE_SIZE = "blur.shard.parsed.query.cache.size";
+  public static final String BLUR_SHARD_SLOW_QUERY_LOG_SIZE = "blur.shard.slow.query.log.size";
   public static final String BLUR_GC_BACK_PRESSURE_HEAP_RATIO = "blur.gc.back.pressure.heap.ratio";
+  public static final String BLUR_SHARD_QUERY_MEMORY_BUDGET_HEAP_RATIO = "blur.shard.query.memory.budget.heap.ratio";
+  public static final String BLUR_SHARD_QUERY_ADMISSION_TIMEOUT = "blur.shard.query.admission.timeout";
   public static final String BLUR_SHARD_BLOCK_CACHE_V2_QUIET_MERGES = "blur.shard.block.cache.v2.quiet.merges";
+  public static final String BLUR_SHARD_BLOCK_CACHE_V2_ADMISSION_WINDOW_RATIO = "blur.shard.block.cache.v2.admission.window.ratio";
 
   public static final String BLUR_SHARD_DEFAULT_READ_SEQUENTIAL_SKIP_THRESHOLD = "blur.shard.default.read.sequential.skip.threshold";
   public static final String BLUR_SHARD_DEFAULT_READ_SEQUENTIAL_THRESHOLD = "blur.shard.default.read.sequential.threshold";
@@ -136,6 +157,11 @@ public class BlurConstants {
 
   public static final String BLUR_SHARD_TIME_BETWEEN_COMMITS = "blur.shard.time.between.commits";
   public static final String BLUR_SHARD_TIME_BETWEEN_REFRESHS = "blur.shard.time.between.refreshs";
+  public static final String BLUR_SHARD_REOPEN_WARMUP_QUERIES = "blur.shard.reopen.warmup.queries";
+  public static final String BLUR_SHARD_REOPEN_WARMUP_MAX_TIME = "blur.shard.reopen.warmup.max.time";
+  public static final String BLUR_SHARD_SUMMARY_ENABLED = "blur.shard.summary.enabled";
+  public static final String BLUR_SHARD_SUMMARY_BLOOM_MAX_TERMS = "blur.shard.summary.bloom.max.terms";
+  public static final String BLUR_SHARD_SUMMARY_PUBLISH_INTERVAL = "blur.shard.summary.publish.interval";
 
   public static final String BLUR_CONTROLLER_SERVER_THRIFT_THREAD_COUNT = "blur.controller.server.thrift.thread.count";
   public static final String BLUR_CONTROLLER_SERVER_REMOTE_THREAD_COUNT = "blur.controller.server.remote.thread.count";
@@ -154,6 +180,11 @@ public class BlurConstants {
   public static final String BLUR_CONTROLLER_THRIFT_SELECTOR_THREADS = "blur.controller.thrift.selector.threads";
   public static final String BLUR_CONTROLLER_THRIFT_MAX_READ_BUFFER_BYTES = "blur.controller.thrift.max.read.buffer.bytes";
   public static final String BLUR_CONTROLLER_THRIFT_ACCEPT_QUEUE_SIZE_PER_THREAD = "blur.controller.thrift.accept.queue.size.per.thread";
+  public static final String BLUR_CONTROLLER_THRIFT_ASYNC_PROCESSOR = "blur.controller.thrift.async.processor";
+  public static final String BLUR_CONTROLLER_QUERY_COALESCING = "blur.controller.query.coalescing";
+  public static final String BLUR_CONTROLLER_FETCH_PASS_THROUGH = "blur.controller.fetch.pass.through";
+  public static final String BLUR_CONTROLLER_SHARD_PRUNING = "blur.controller.shard.pruning";
+  public static final String BLUR_CONTROLLER_SHARD_PRUNING_SYNC_TIMEOUT = "blur.controller.shard.pruning.sync.timeout";
   public static final String BLUR_CLIENTPOOL_CLIENT_MAX_CONNECTIONS_PER_HOST = "blur.clientpool.client.max.connections.per.host";
   public static final String BLUR_CLIENTPOOL_CLIENT_STALE_THRESHOLD = "blur.clientpool.client.stale.threshold";
   public static final String BLUR_CLIENTPOOL_CLIENT_CLEAN_FREQUENCY = "blur.clientpool.client.clean.frequency";
@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the estimated number of bytes of heap held by a single query or
+ * fetch. Every change is also added to a shared running total until the
+ * counter is released, so that the heap held by everything that is running
+ * can be read without visiting each counter. The counter keeps its own value
+ * after it is released.
+ */
+public class MemoryUsageCounter {
+
+  private final AtomicLong _value = new AtomicLong();
+  private final AtomicLong _total;
+  private boolean _released;
+
+  public MemoryUsageCounter() {
+    this(new AtomicLong());
+  }
+
+  /**
+   * @param total
+   *          the running total that changes are added to until
+   *          {@link #release()} is called.
+   */
+  public MemoryUsageCounter(AtomicLong total) {
+    _total = total;
+  }
+
+  /**
+   * Adds (or removes if negative) the given number of bytes.
+   * 
+   * @return the new value of this counter.
+   */
+  public synchronized long add(long bytes) {
+    long value = _value.addAndGet(bytes);
+    if (!_released) {
+      _total.addAndGet(bytes);
+    }
+    return value;
+  }
+
+  public long get() {
+    return _value.get();
+  }
+
+  /**
+   * Removes the value of this counter from the running total, later changes
+   * are no longer added to it.
+   * 
+   * @return false if the counter was already released.
+   */
+  public synchronized boolean release() {
+    if (_released) {
+      return false;
+    }
+    _released = true;
+    _total.addAndGet(-_value.get());
+    return true;
+  }
+}
@@ -55,6 +55,10 @@ public class ZookeeperPathConstants {
     return getClusterPath(cluster) + "/shutdown";
   }
 
+  public static String getImportPath(String cluster) {
+    return getClusterPath(cluster) + "/import";
+  }
+
   public static String getShardLayoutPath(String cluster) {
     return getClusterPath(cluster) + "/layout";
   }
@@ -63,4 +67,12 @@ public class ZookeeperPathConstants {
     return getShardLayoutPath(cluster) + "/locks";
   }
 
+  public static String getShardSummariesPath(String cluster) {
+    return getClusterPath(cluster) + "/shard-summaries";
+  }
+
+  public static String getShardSummariesPath(String cluster, String table) {
+    return getShardSummariesPath(cluster) + "/" + table;
+  }
+
 }
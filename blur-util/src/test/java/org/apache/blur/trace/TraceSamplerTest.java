@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.blur.trace;
+
+import static org.apache.blur.metrics.MetricsConstants.ORG_APACHE_BLUR;
+import static org.apache.blur.metrics.MetricsConstants.TRACE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Timer;
+
+public class TraceSamplerTest {
+
+  @After
+  public void tearDown() {
+    Trace.setSampler(null);
+    Trace.setPhaseMetrics(false);
+  }
+
+  @Test
+  public void testDisabled() {
+    assertFalse(new TraceSampler(0.0, -1, TimeUnit.MILLISECONDS, 10).isEnabled());
+    assertFalse(new TraceSampler(1.0, 0, TimeUnit.MILLISECONDS, 0).isEnabled());
+    assertTrue(new TraceSampler(0.0, 0, TimeUnit.MILLISECONDS, 10).isEnabled());
+    assertTrue(new TraceSampler(0.5, -1, TimeUnit.MILLISECONDS, 10).isEnabled());
+  }
+
+  @Test
+  public void testSampleRate() throws Exception {
+    TraceSampler sampler = new TraceSampler(1.0, -1, TimeUnit.MILLISECONDS, 10);
+    Trace.setSampler(sampler);
+    runRequest("query");
+    List<String> traceIds = sampler.getTraceIds();
+    assertEquals(1, traceIds.size());
+    String traceId = traceIds.get(0);
+    assertEquals("query", sampler.getRequestIds(traceId).get(0));
+    assertNotNull(sampler.getRequestContentsJson(traceId, "query"));
+    assertNull(sampler.getRequestContentsJson(traceId, "fetchRow"));
+
+    sampler.removeTrace(traceId);
+    assertTrue(sampler.getTraceIds().isEmpty());
+  }
+
+  @Test
+  public void testSlowThreshold() throws Exception {
+    TraceSampler sampler = new TraceSampler(0.0, 1, TimeUnit.HOURS, 10);
+    Trace.setSampler(sampler);
+    runRequest("query");
+    assertTrue(sampler.getTraceIds().isEmpty());
+
+    sampler = new TraceSampler(0.0, 0, TimeUnit.MILLISECONDS, 10);
+    Trace.setSampler(sampler);
+    Trace.setupSampledTrace("query");
+    try {
+      // Only head sampled requests are traced, so nothing is passed on to the
+      // shard servers.
+      assertFalse(Trace.isTraceRunning());
+      Trace.trace("phase").done();
+    } finally {
+      Trace.tearDownTrace();
+    }
+    List<TraceCollector> collectors = sampler.getCollectors();
+    assertEquals(1, collectors.size());
+    assertEquals(0, collectors.get(0).toJsonObject().getJSONArray("traces").length());
+  }
+
+  @Test
+  public void testPropagatedSampledTrace() throws Exception {
+    TraceSampler sampler = new TraceSampler(1.0, -1, TimeUnit.MILLISECONDS, 10);
+    Trace.setSampler(sampler);
+    Trace.setupSampledTrace("query");
+    String rootId;
+    try {
+      rootId = Trace.getTraceId().getRootId();
+      assertTrue(rootId.startsWith(Trace.SAMPLED_TRACE_PREFIX));
+    } finally {
+      Trace.tearDownTrace();
+    }
+
+    TraceSampler shardSampler = new TraceSampler(0.0, -1, TimeUnit.MILLISECONDS, 10);
+    Trace.setSampler(shardSampler);
+    Trace.setupTrace(rootId, "shard-request");
+    Trace.tearDownTrace();
+    assertEquals(rootId, shardSampler.getTraceIds().get(0));
+  }
+
+  @Test
+  public void testRingBuffer() throws Exception {
+    TraceSampler sampler = new TraceSampler(1.0, -1, TimeUnit.MILLISECONDS, 2);
+    Trace.setSampler(sampler);
+    for (int i = 0; i < 5; i++) {
+      runRequest("query" + i);
+    }
+    List<TraceCollector> collectors = sampler.getCollectors();
+    assertEquals(2, collectors.size());
+    for (TraceCollector collector : collectors) {
+      String requestId = collector.getId().getRequestId();
+      assertTrue(requestId.equals("query3") || requestId.equals("query4"));
+    }
+  }
+
+  @Test
+  public void testPhaseMetrics() {
+    Trace.setPhaseMetrics(true);
+    Trace.trace("sampler test phase").done();
+    Trace.trace("sampler test phase").done();
+    Timer timer = (Timer) Metrics.defaultRegistry().allMetrics()
+        .get(new MetricName(ORG_APACHE_BLUR, TRACE, "sampler test phase"));
+    assertNotNull(timer);
+    assertEquals(2, timer.count());
+  }
+
+  private void runRequest(String name) {
+    Trace.setupSampledTrace(name);
+    try {
+      Tracer trace = Trace.trace("phase");
+      trace.done();
+    } finally {
+      Trace.tearDownTrace();
+    }
+  }
+}
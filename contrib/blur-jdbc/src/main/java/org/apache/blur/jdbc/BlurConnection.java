@@ -21,27 +21,57 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.blur.jdbc.abstractimpl.AbstractBlurConnection;
 
 public class BlurConnection extends AbstractBlurConnection {
 
+  private static final int PREFETCH_THREADS = 4;
+
   private boolean closed;
   private String connectionString;
   private String catalog;
   private String url;
   private String username;
+  private final ExecutorService prefetchService;
 
   public BlurConnection(String url, String username, String connectionString, String catalog) {
     this.connectionString = connectionString;
     this.catalog = catalog;
     this.url = url;
     this.username = username;
+    this.prefetchService = newPrefetchService();
+  }
+
+  /**
+   * The threads that fetch the next page of the open result sets of this
+   * connection. The number of threads is bounded and tasks are never queued, a
+   * prefetch that is rejected is run by the result set when it needs the page.
+   */
+  private static ExecutorService newPrefetchService() {
+    return new ThreadPoolExecutor(0, PREFETCH_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "blur-jdbc-prefetch-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
   }
 
   @Override
   public void close() throws SQLException {
-
+    closed = true;
+    prefetchService.shutdownNow();
   }
 
   @Override
@@ -103,6 +133,10 @@ public class BlurConnection extends AbstractBlurConnection {
     return connectionString;
   }
 
+  ExecutorService getPrefetchService() {
+    return prefetchService;
+  }
+
   @Override
   public int getTransactionIsolation() throws SQLException {
     return TRANSACTION_NONE;
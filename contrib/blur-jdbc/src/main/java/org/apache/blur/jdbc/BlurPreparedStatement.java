@@ -42,4 +42,14 @@ public class BlurPreparedStatement extends AbstractBlurPreparedStatement {
     return blurStatement.getResultSet();
   }
 
+  @Override
+  public int getFetchSize() throws SQLException {
+    return blurStatement.getFetchSize();
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException {
+    blurStatement.setFetchSize(rows);
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package org.apache.blur.jdbc;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.BlurResults;
+import org.apache.blur.thrift.generated.Query;
+import org.apache.blur.thrift.generated.Selector;
+
+/**
+ * Runs a query in pages of fetch size results. The {@link Selector} is sent
+ * with the query so every page carries the fetched rows or records, and the
+ * next page is fetched in the background by the prefetch service of the
+ * connection while the current page is being consumed. When the prefetch
+ * service is busy (or there is none) the next page is fetched when it is
+ * requested.
+ */
+class BlurResultPager {
+
+  static final int DEFAULT_FETCH_SIZE = 100;
+
+  private final Iface client;
+  private final ExecutorService prefetchService;
+  private final String tableName;
+  private final Query query;
+  private final Selector selector;
+  private int fetchSize;
+  private long nextStart;
+  private long totalResults = -1;
+  private Future<BlurResults> prefetch;
+
+  BlurResultPager(Iface client, String tableName, Query query, Selector selector, int fetchSize,
+      ExecutorService prefetchService) {
+    this.client = client;
+    this.prefetchService = prefetchService;
+    this.tableName = tableName;
+    this.query = query;
+    this.selector = selector;
+    setFetchSize(fetchSize);
+  }
+
+  void setFetchSize(int fetchSize) {
+    this.fetchSize = fetchSize <= 0 ? DEFAULT_FETCH_SIZE : fetchSize;
+  }
+
+  int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @return the next page of results or null if there are no more results.
+   */
+  BlurResults nextPage() throws SQLException {
+    BlurResults results;
+    if (prefetch != null) {
+      results = get(prefetch);
+      prefetch = null;
+    } else if (hasMore()) {
+      results = runQuery(nextStart, fetchSize);
+    } else {
+      return null;
+    }
+    totalResults = results.totalResults;
+    int size = results.results == null ? 0 : results.results.size();
+    if (size == 0) {
+      totalResults = nextStart;
+      return null;
+    }
+    nextStart += size;
+    if (hasMore() && prefetchService != null) {
+      final long start = nextStart;
+      final int fetch = fetchSize;
+      try {
+        prefetch = prefetchService.submit(new Callable<BlurResults>() {
+          @Override
+          public BlurResults call() throws Exception {
+            return runQuery(start, fetch);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // All the prefetch threads are busy or the connection is closed.
+        prefetch = null;
+      }
+    }
+    return results;
+  }
+
+  void close() {
+    if (prefetch != null) {
+      prefetch.cancel(true);
+      prefetch = null;
+    }
+  }
+
+  private boolean hasMore() {
+    return totalResults < 0 || nextStart < totalResults;
+  }
+
+  private BlurResults runQuery(long start, int fetch) throws SQLException {
+    BlurQuery blurQuery = new BlurQuery();
+    blurQuery.minimumNumberOfResults = Long.MAX_VALUE;
+    blurQuery.maxQueryTime = Long.MAX_VALUE;
+    blurQuery.uuid = UUID.randomUUID().toString();
+    blurQuery.fetch = fetch;
+    blurQuery.start = start;
+    blurQuery.query = new Query(query);
+    blurQuery.selector = new Selector(selector);
+    try {
+      return client.query(tableName, blurQuery);
+    } catch (Exception e) {
+      throw new SQLException(e);
+    }
+  }
+
+  private BlurResults get(Future<BlurResults> future) throws SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new SQLException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      throw new SQLException(cause);
+    }
+  }
+}
@@ -28,20 +28,18 @@ import java.sql.SQLWarning;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.blur.jdbc.abstractimpl.AbstractBlurResultSet;
 import org.apache.blur.jdbc.parser.Parser;
 import org.apache.blur.thirdparty.thrift_0_9_0.TException;
 import org.apache.blur.thrift.generated.Blur.Iface;
 import org.apache.blur.thrift.generated.BlurException;
-import org.apache.blur.thrift.generated.BlurQuery;
 import org.apache.blur.thrift.generated.BlurResult;
 import org.apache.blur.thrift.generated.BlurResults;
 import org.apache.blur.thrift.generated.Column;
 import org.apache.blur.thrift.generated.ColumnDefinition;
 import org.apache.blur.thrift.generated.FetchRecordResult;
-import org.apache.blur.thrift.generated.FetchResult;
 import org.apache.blur.thrift.generated.Query;
 import org.apache.blur.thrift.generated.Record;
 import org.apache.blur.thrift.generated.Schema;
@@ -55,22 +53,29 @@ public class BlurResultSetRecords extends AbstractBlurResultSet {
   private int resultPosition = -1;
   private int size;
   private String tableName;
-  private FetchResult fetchResult;
   private BlurResultSetMetaData blurResultSetMetaData;
   private String lastValue;
   private List<List<String>> displayRows = new ArrayList<List<String>>();
   private int displayRowsPosition;
   private Schema schema;
   private final Iface client;
-  private long totalResults;
   private int overallRowPosition;
-  private int currentFetch;
-  private int currentStart;
   private Parser parser;
   private List<String> columnNames;
   private String columnFamily;
+  private BlurResultPager pager;
 
   public BlurResultSetRecords(Iface client, Parser parser) throws SQLException {
+    this(client, parser, BlurResultPager.DEFAULT_FETCH_SIZE, null);
+  }
+
+  /**
+   * @param prefetchService
+   *          the executor that fetches the next page in the background, null
+   *          to only fetch a page when it is needed.
+   */
+  public BlurResultSetRecords(Iface client, Parser parser, int fetchSize, ExecutorService prefetchService)
+      throws SQLException {
     this.client = client;
     this.parser = parser;
     String tName = parser.getTableName();
@@ -78,21 +83,13 @@ public class BlurResultSetRecords extends AbstractBlurResultSet {
     tableName = tName.substring(0, lastIndexOf);
     columnFamily = tName.substring(lastIndexOf + 1);
     columnNames = parser.getColumnNames();
-    runSearch(0, 100);
+    runSearch(fetchSize, prefetchService);
   }
 
-  private void runSearch(int start, int fetch) throws SQLException {
-    currentStart = start;
-    currentFetch = fetch;
-    BlurQuery blurQuery = new BlurQuery();
-    blurQuery.minimumNumberOfResults = Long.MAX_VALUE;
-    blurQuery.maxQueryTime = Long.MAX_VALUE;
-    blurQuery.uuid = UUID.randomUUID().toString();
-    blurQuery.fetch = fetch;
-    blurQuery.start = start;
-    blurQuery.query = new Query();
-    blurQuery.query.query = parser.getWhere();
-    blurQuery.query.rowQuery = false;
+  private void runSearch(int fetchSize, ExecutorService prefetchService) throws SQLException {
+    Query query = new Query();
+    query.query = parser.getWhere();
+    query.rowQuery = false;
 
     try {
       schema = client.schema(tableName);
@@ -106,25 +103,27 @@ public class BlurResultSetRecords extends AbstractBlurResultSet {
 
     selector = new Selector();
     setupSelector(selector, schema, columnNames);
-    selector.recordOnly = !blurQuery.query.rowQuery;
+    selector.recordOnly = !query.rowQuery;
     Map<String, Map<String, ColumnDefinition>> columnFamilies = schema.getFamilies();
     Map<String, ColumnDefinition> cfSet = columnFamilies.get(columnFamily);
     columnFamilies.clear();
     columnFamilies.put(columnFamily, cfSet);
     blurResultSetMetaData = new BlurResultSetMetaData(columnNames, columnFamilies);
-    try {
-      results = client.query(tableName, blurQuery);
-    } catch (BlurException e) {
-      e.printStackTrace();
-      throw new SQLException(e);
-    } catch (TException e) {
-      e.printStackTrace();
-      throw new SQLException(e);
-    }
-    if (results.totalResults > 0) {
-      size = results.results.size();
+    pager = new BlurResultPager(client, tableName, query, selector, fetchSize, prefetchService);
+    nextPage();
+  }
+
+  private boolean nextPage() throws SQLException {
+    results = pager.nextPage();
+    resultPosition = -1;
+    displayRows.clear();
+    displayRowsPosition = 0;
+    if (results == null) {
+      size = 0;
+      return false;
     }
-    totalResults = results.totalResults;
+    size = results.results.size();
+    return true;
   }
 
   private void setupSelector(Selector selector, Schema schema, List<String> columnNames) {
@@ -142,43 +141,38 @@ public class BlurResultSetRecords extends AbstractBlurResultSet {
       overallRowPosition++;
       displayRowsPosition++;
       return true;
-    } else if (resultPosition + 1 < size) {
-      INNER: while (resultPosition + 1 < size) {
+    }
+    do {
+      while (resultPosition + 1 < size) {
         displayRows.clear();
         resultPosition++;
         displayRowsPosition = 0;
         overallRowPosition++;
 
         final BlurResult result = results.results.get(resultPosition);
-        try {
-          FetchRecordResult recordResult = result.getFetchResult().getRecordResult();
-          selector.setRowId(recordResult.getRowid());
-          selector.setRecordId(recordResult.getRecord().getRecordId());
-          fetchResult = client.fetchRow(tableName, selector);
-          Record record = fetchResult.recordResult.record;
-          if (!record.family.equals(columnFamily)) {
-            continue INNER;
-          }
-          String rowId = fetchResult.recordResult.rowid;
-          displayRows.add(addColumns(result.getScore(), result.getLocationId(), rowId, record.family, record));
-          return true;
-
-        } catch (Exception e) {
-          e.printStackTrace();
-          throw new SQLException(e);
+        FetchRecordResult recordResult = result.getFetchResult().getRecordResult();
+        Record record = recordResult.getRecord();
+        if (!record.family.equals(columnFamily)) {
+          continue;
         }
+        String rowId = recordResult.getRowid();
+        displayRows.add(addColumns(result.getScore(), result.getLocationId(), rowId, record.family, record));
+        return true;
       }
-      return next();
-    } else if (overallRowPosition < totalResults) {
-      currentStart += currentFetch;
-      runSearch(currentStart, currentFetch);
-      displayRowsPosition = 0;
-      resultPosition = -1;
-      return next();
-    }
+    } while (nextPage());
     return false;
   }
 
+  @Override
+  public int getFetchSize() throws SQLException {
+    return pager.getFetchSize();
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException {
+    pager.setFetchSize(rows);
+  }
+
   private List<String> addColumns(double score, String locationId, String rowId, String family, Record record) throws SQLException {
     int columnCount = blurResultSetMetaData.getColumnCount();
     List<String> result = new ArrayList<String>(columnCount + 1);
@@ -240,7 +234,7 @@ public class BlurResultSetRecords extends AbstractBlurResultSet {
 
   @Override
   public void close() throws SQLException {
-
+    pager.close();
   }
 
   @Override
@@ -27,18 +27,16 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.blur.jdbc.abstractimpl.AbstractBlurResultSet;
 import org.apache.blur.jdbc.parser.Parser;
 import org.apache.blur.thirdparty.thrift_0_9_0.TException;
 import org.apache.blur.thrift.generated.Blur.Iface;
 import org.apache.blur.thrift.generated.BlurException;
-import org.apache.blur.thrift.generated.BlurQuery;
 import org.apache.blur.thrift.generated.BlurResult;
 import org.apache.blur.thrift.generated.BlurResults;
 import org.apache.blur.thrift.generated.Column;
-import org.apache.blur.thrift.generated.FetchResult;
 import org.apache.blur.thrift.generated.Query;
 import org.apache.blur.thrift.generated.Record;
 import org.apache.blur.thrift.generated.Row;
@@ -53,41 +51,39 @@ public class BlurResultSetRows extends AbstractBlurResultSet {
   private int resultPosition = -1;
   private int size;
   private String tableName;
-  private FetchResult fetchResult;
   private BlurResultSetMetaData blurResultSetMetaData;
   private String lastValue;
   private List<List<String>> displayRows = new ArrayList<List<String>>();
   private int displayRowsPosition;
   private Schema schema;
   private final Iface client;
-  private long totalResults;
   private int overallRowPosition;
-  private int currentFetch;
-  private int currentStart;
   private Parser parser;
   private List<String> columnNames;
+  private BlurResultPager pager;
 
   public BlurResultSetRows(Iface client, Parser parser) throws SQLException {
+    this(client, parser, BlurResultPager.DEFAULT_FETCH_SIZE, null);
+  }
+
+  /**
+   * @param prefetchService
+   *          the executor that fetches the next page in the background, null
+   *          to only fetch a page when it is needed.
+   */
+  public BlurResultSetRows(Iface client, Parser parser, int fetchSize, ExecutorService prefetchService)
+      throws SQLException {
     this.client = client;
     this.parser = parser;
     tableName = parser.getTableName();
     columnNames = parser.getColumnNames();
-    System.out.println(columnNames);
-    runSearch(0, 100);
+    runSearch(fetchSize, prefetchService);
   }
 
-  private void runSearch(int start, int fetch) throws SQLException {
-    currentStart = start;
-    currentFetch = fetch;
-    BlurQuery blurQuery = new BlurQuery();
-    blurQuery.minimumNumberOfResults = Long.MAX_VALUE;
-    blurQuery.maxQueryTime = Long.MAX_VALUE;
-    blurQuery.uuid = UUID.randomUUID().toString();
-    blurQuery.fetch = fetch;
-    blurQuery.start = start;
-    blurQuery.query = new Query();
-    blurQuery.query.query = parser.getWhere();
-    blurQuery.query.rowQuery = true;
+  private void runSearch(int fetchSize, ExecutorService prefetchService) throws SQLException {
+    Query query = new Query();
+    query.query = parser.getWhere();
+    query.rowQuery = true;
 
     try {
       schema = client.schema(tableName);
@@ -98,24 +94,25 @@ public class BlurResultSetRows extends AbstractBlurResultSet {
       e.printStackTrace();
       throw new SQLException(e);
     }
-System.out.println(schema);
     selector = new Selector();
     setupSelector(selector, schema, columnNames);
-    selector.recordOnly = !blurQuery.query.rowQuery;
+    selector.recordOnly = !query.rowQuery;
     blurResultSetMetaData = new BlurResultSetMetaData(columnNames, schema.getFamilies());
-    try {
-      results = client.query(tableName, blurQuery);
-    } catch (BlurException e) {
-      e.printStackTrace();
-      throw new SQLException(e);
-    } catch (TException e) {
-      e.printStackTrace();
-      throw new SQLException(e);
-    }
-    if (results.totalResults > 0) {
-      size = results.results.size();
+    pager = new BlurResultPager(client, tableName, query, selector, fetchSize, prefetchService);
+    nextPage();
+  }
+
+  private boolean nextPage() throws SQLException {
+    results = pager.nextPage();
+    resultPosition = -1;
+    displayRows.clear();
+    displayRowsPosition = 0;
+    if (results == null) {
+      size = 0;
+      return false;
     }
-    totalResults = results.totalResults;
+    size = results.results.size();
+    return true;
   }
 
   private void setupSelector(Selector selector, Schema schema, List<String> columnNames) {
@@ -133,15 +130,14 @@ System.out.println(schema);
       overallRowPosition++;
       displayRowsPosition++;
       return true;
-    } else if (resultPosition + 1 < size) {
-      displayRows.clear();
-      resultPosition++;
-      displayRowsPosition = 0;
-      final BlurResult result = results.results.get(resultPosition);
-      try {
-        selector.setRowId(result.getFetchResult().getRowResult().getRow().getId());
-        fetchResult = client.fetchRow(tableName, selector);
-        Row row = fetchResult.rowResult.row;
+    }
+    do {
+      if (resultPosition + 1 < size) {
+        displayRows.clear();
+        resultPosition++;
+        displayRowsPosition = 0;
+        final BlurResult result = results.results.get(resultPosition);
+        Row row = result.getFetchResult().getRowResult().getRow();
         String rowId = row.id;
         List<Record> records = row.records;
         for (Record record : records) {
@@ -149,20 +145,21 @@ System.out.println(schema);
         }
         overallRowPosition++;
         return true;
-      } catch (Exception e) {
-        e.printStackTrace();
-        throw new SQLException(e);
       }
-    } else if (overallRowPosition < totalResults) {
-      currentStart += currentFetch;
-      runSearch(currentStart, currentFetch);
-      displayRowsPosition = 0;
-      resultPosition = -1;
-      return next();
-    }
+    } while (nextPage());
     return false;
   }
 
+  @Override
+  public int getFetchSize() throws SQLException {
+    return pager.getFetchSize();
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException {
+    pager.setFetchSize(rows);
+  }
+
   private List<String> addColumns(double score, String locationId, String rowId, String family, Record record) throws SQLException {
     int columnCount = blurResultSetMetaData.getColumnCount();
     List<String> result = new ArrayList<String>(columnCount + 1);
@@ -224,7 +221,7 @@ System.out.println(schema);
 
   @Override
   public void close() throws SQLException {
-
+    pager.close();
   }
 
   @Override
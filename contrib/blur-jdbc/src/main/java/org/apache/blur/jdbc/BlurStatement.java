@@ -34,6 +34,7 @@ public class BlurStatement extends AbstractBlurStatement {
 
   private BlurConnection connection;
   private int maxRows;
+  private int fetchSize = BlurResultPager.DEFAULT_FETCH_SIZE;
   private String sql;
 
   public BlurStatement(BlurConnection connection) {
@@ -48,6 +49,19 @@ public class BlurStatement extends AbstractBlurStatement {
     this.maxRows = maxRows;
   }
 
+  @Override
+  public int getFetchSize() throws SQLException {
+    return fetchSize;
+  }
+
+  @Override
+  public void setFetchSize(int rows) throws SQLException {
+    if (rows < 0) {
+      throw new SQLException("Fetch size [" + rows + "] can not be negative.");
+    }
+    this.fetchSize = rows == 0 ? BlurResultPager.DEFAULT_FETCH_SIZE : rows;
+  }
+
   public int getUpdateCount() throws SQLException {
     return -1;
   }
@@ -71,9 +85,9 @@ public class BlurStatement extends AbstractBlurStatement {
       parser.parse(sql);
       if (isSuperQuery(parser, client)) {
         System.out.println("super");
-        return new BlurResultSetRows(client, parser);
+        return new BlurResultSetRows(client, parser, fetchSize, connection.getPrefetchService());
       } else {
-        return new BlurResultSetRecords(client, parser);
+        return new BlurResultSetRecords(client, parser, fetchSize, connection.getPrefetchService());
       }
 
     } catch (Exception e) {
@@ -0,0 +1,168 @@
+package org.apache.blur.jdbc;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.blur.thrift.generated.Blur.Iface;
+import org.apache.blur.thrift.generated.BlurQuery;
+import org.apache.blur.thrift.generated.BlurResult;
+import org.apache.blur.thrift.generated.BlurResults;
+import org.apache.blur.thrift.generated.Query;
+import org.apache.blur.thrift.generated.Selector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlurResultPagerTest {
+
+  private ExecutorService prefetchService;
+  private final List<Long> starts = new ArrayList<Long>();
+  private volatile CountDownLatch block;
+  private final AtomicBoolean interrupted = new AtomicBoolean();
+
+  @Before
+  public void setup() {
+    prefetchService = Executors.newFixedThreadPool(2);
+    block = null;
+  }
+
+  @After
+  public void teardown() {
+    prefetchService.shutdownNow();
+  }
+
+  @Test
+  public void testPageBoundaries() throws Exception {
+    BlurResultPager pager = newPager(250, 100, null);
+    assertEquals(100, pager.nextPage().getResults().size());
+    assertEquals(100, pager.nextPage().getResults().size());
+    assertEquals(50, pager.nextPage().getResults().size());
+    assertNull(pager.nextPage());
+    assertEquals(Arrays.asList(0L, 100L, 200L), getStarts());
+  }
+
+  @Test
+  public void testLastPageIsFull() throws Exception {
+    BlurResultPager pager = newPager(200, 100, prefetchService);
+    assertEquals(100, pager.nextPage().getResults().size());
+    assertEquals(100, pager.nextPage().getResults().size());
+    assertNull(pager.nextPage());
+    // No query is run past the total number of results.
+    assertEquals(Arrays.asList(0L, 100L), getStarts());
+  }
+
+  @Test
+  public void testNextPageIsPrefetched() throws Exception {
+    BlurResultPager pager = newPager(250, 100, prefetchService);
+    assertEquals(100, pager.nextPage().getResults().size());
+    // The second page is requested before it is needed.
+    waitForStarts(2);
+    assertEquals(Arrays.asList(0L, 100L), getStarts());
+    assertEquals(100, pager.nextPage().getResults().size());
+    waitForStarts(3);
+    assertEquals(50, pager.nextPage().getResults().size());
+    assertNull(pager.nextPage());
+    assertEquals(Arrays.asList(0L, 100L, 200L), getStarts());
+  }
+
+  @Test
+  public void testCloseCancelsPrefetch() throws Exception {
+    BlurResultPager pager = newPager(250, 100, prefetchService);
+    block = new CountDownLatch(1);
+    pager.nextPage();
+    waitForStarts(2);
+    pager.close();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!interrupted.get()) {
+      assertTrue("Prefetch was not cancelled.", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testRejectedPrefetchFetchesOnDemand() throws Exception {
+    prefetchService.shutdown();
+    BlurResultPager pager = newPager(150, 100, prefetchService);
+    assertEquals(100, pager.nextPage().getResults().size());
+    assertEquals(Arrays.asList(0L), getStarts());
+    assertEquals(50, pager.nextPage().getResults().size());
+    assertNull(pager.nextPage());
+    assertEquals(Arrays.asList(0L, 100L), getStarts());
+  }
+
+  private BlurResultPager newPager(final long totalResults, int fetchSize, ExecutorService service) {
+    Iface client = (Iface) Proxy.newProxyInstance(Iface.class.getClassLoader(), new Class<?>[] { Iface.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().equals("query")) {
+              throw new UnsupportedOperationException(method.getName());
+            }
+            BlurQuery blurQuery = (BlurQuery) args[1];
+            synchronized (starts) {
+              starts.add(blurQuery.start);
+            }
+            CountDownLatch latch = block;
+            if (latch != null && blurQuery.start > 0) {
+              try {
+                latch.await();
+              } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+              }
+            }
+            BlurResults results = new BlurResults();
+            results.setTotalResults(totalResults);
+            long count = Math.max(0, Math.min(blurQuery.fetch, totalResults - blurQuery.start));
+            for (long i = 0; i < count; i++) {
+              results.addToResults(new BlurResult());
+            }
+            return results;
+          }
+        });
+    return new BlurResultPager(client, "table", new Query(), new Selector(), fetchSize, service);
+  }
+
+  private List<Long> getStarts() {
+    synchronized (starts) {
+      return new ArrayList<Long>(starts);
+    }
+  }
+
+  private void waitForStarts(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+    while (getStarts().size() < count) {
+      assertTrue("Next page was not prefetched.", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -659,7 +659,13 @@ struct BlurQueryStatus {
   /**
    * The user executing the given query.
    */
-  8:User user
+  8:User user,
+  /**
+   * The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+   * fetch buffers.  The shard server will respond with the usage on that server, while the
+   * controller will aggregate all the shard server usages together.
+   */
+  9:i64 memoryUsage
 }
 
 /**
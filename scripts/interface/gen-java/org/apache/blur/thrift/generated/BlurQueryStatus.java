@@ -65,6 +65,7 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
   private static final org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField UUID_FIELD_DESC = new org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField("uuid", org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.STRING, (short)6);
   private static final org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField STATUS_FIELD_DESC = new org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField("status", org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.I32, (short)7);
   private static final org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField USER_FIELD_DESC = new org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField("user", org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.STRUCT, (short)8);
+  private static final org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField MEMORY_USAGE_FIELD_DESC = new org.apache.blur.thirdparty.thrift_0_9_0.protocol.TField("memoryUsage", org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.I64, (short)9);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -112,6 +113,12 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
    * The user executing the given query.
    */
   public User user; // required
+  /**
+   * The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+   * fetch buffers.  The shard server will respond with the usage on that server, while the
+   * controller will aggregate all the shard server usages together.
+   */
+  public long memoryUsage; // required
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.blur.thirdparty.thrift_0_9_0.TFieldIdEnum {
@@ -154,7 +161,13 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     /**
      * The user executing the given query.
      */
-    USER((short)8, "user");
+    USER((short)8, "user"),
+    /**
+     * The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+     * fetch buffers.  The shard server will respond with the usage on that server, while the
+     * controller will aggregate all the shard server usages together.
+     */
+    MEMORY_USAGE((short)9, "memoryUsage");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -185,6 +198,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
           return STATUS;
         case 8: // USER
           return USER;
+        case 9: // MEMORY_USAGE
+          return MEMORY_USAGE;
         default:
           return null;
       }
@@ -227,6 +242,7 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
   // isset id assignments
   private static final int __COMPLETESHARDS_ISSET_ID = 0;
   private static final int __TOTALSHARDS_ISSET_ID = 1;
+  private static final int __MEMORYUSAGE_ISSET_ID = 2;
   private byte __isset_bitfield = 0;
   public static final Map<_Fields, org.apache.blur.thirdparty.thrift_0_9_0.meta_data.FieldMetaData> metaDataMap;
   static {
@@ -249,6 +265,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
         new org.apache.blur.thirdparty.thrift_0_9_0.meta_data.EnumMetaData(org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.ENUM, Status.class)));
     tmpMap.put(_Fields.USER, new org.apache.blur.thirdparty.thrift_0_9_0.meta_data.FieldMetaData("user", org.apache.blur.thirdparty.thrift_0_9_0.TFieldRequirementType.DEFAULT, 
         new org.apache.blur.thirdparty.thrift_0_9_0.meta_data.StructMetaData(org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.STRUCT, User.class)));
+    tmpMap.put(_Fields.MEMORY_USAGE, new org.apache.blur.thirdparty.thrift_0_9_0.meta_data.FieldMetaData("memoryUsage", org.apache.blur.thirdparty.thrift_0_9_0.TFieldRequirementType.DEFAULT, 
+        new org.apache.blur.thirdparty.thrift_0_9_0.meta_data.FieldValueMetaData(org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.I64)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.blur.thirdparty.thrift_0_9_0.meta_data.FieldMetaData.addStructMetaDataMap(BlurQueryStatus.class, metaDataMap);
   }
@@ -264,7 +282,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     QueryState state,
     String uuid,
     Status status,
-    User user)
+    User user,
+    long memoryUsage)
   {
     this();
     this.query = query;
@@ -277,6 +296,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     this.uuid = uuid;
     this.status = status;
     this.user = user;
+    this.memoryUsage = memoryUsage;
+    setMemoryUsageIsSet(true);
   }
 
   /**
@@ -316,6 +337,7 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     if (other.isSetUser()) {
       this.user = new User(other.user);
     }
+    this.memoryUsage = other.memoryUsage;
   }
 
   public BlurQueryStatus deepCopy() {
@@ -334,6 +356,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     this.uuid = null;
     this.status = null;
     this.user = null;
+    setMemoryUsageIsSet(false);
+    this.memoryUsage = 0;
   }
 
   /**
@@ -601,6 +625,39 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     }
   }
 
+  /**
+   * The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+   * fetch buffers.  The shard server will respond with the usage on that server, while the
+   * controller will aggregate all the shard server usages together.
+   */
+  public long getMemoryUsage() {
+    return this.memoryUsage;
+  }
+
+  /**
+   * The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+   * fetch buffers.  The shard server will respond with the usage on that server, while the
+   * controller will aggregate all the shard server usages together.
+   */
+  public BlurQueryStatus setMemoryUsage(long memoryUsage) {
+    this.memoryUsage = memoryUsage;
+    setMemoryUsageIsSet(true);
+    return this;
+  }
+
+  public void unsetMemoryUsage() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __MEMORYUSAGE_ISSET_ID);
+  }
+
+  /** Returns true if field memoryUsage is set (has been assigned a value) and false otherwise */
+  public boolean isSetMemoryUsage() {
+    return EncodingUtils.testBit(__isset_bitfield, __MEMORYUSAGE_ISSET_ID);
+  }
+
+  public void setMemoryUsageIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __MEMORYUSAGE_ISSET_ID, value);
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case QUERY:
@@ -667,6 +724,14 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
       }
       break;
 
+    case MEMORY_USAGE:
+      if (value == null) {
+        unsetMemoryUsage();
+      } else {
+        setMemoryUsage((Long)value);
+      }
+      break;
+
     }
   }
 
@@ -696,6 +761,9 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
     case USER:
       return getUser();
 
+    case MEMORY_USAGE:
+      return Long.valueOf(getMemoryUsage());
+
     }
     throw new IllegalStateException();
   }
@@ -723,6 +791,8 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
       return isSetStatus();
     case USER:
       return isSetUser();
+    case MEMORY_USAGE:
+      return isSetMemoryUsage();
     }
     throw new IllegalStateException();
   }
@@ -812,6 +882,15 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
         return false;
     }
 
+    boolean this_present_memoryUsage = true;
+    boolean that_present_memoryUsage = true;
+    if (this_present_memoryUsage || that_present_memoryUsage) {
+      if (!(this_present_memoryUsage && that_present_memoryUsage))
+        return false;
+      if (this.memoryUsage != that.memoryUsage)
+        return false;
+    }
+
     return true;
   }
 
@@ -908,6 +987,16 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetMemoryUsage()).compareTo(typedOther.isSetMemoryUsage());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetMemoryUsage()) {
+      lastComparison = org.apache.blur.thirdparty.thrift_0_9_0.TBaseHelper.compareTo(this.memoryUsage, typedOther.memoryUsage);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -983,6 +1072,10 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
       sb.append(this.user);
     }
     first = false;
+    if (!first) sb.append(", ");
+    sb.append("memoryUsage:");
+    sb.append(this.memoryUsage);
+    first = false;
     sb.append(")");
     return sb.toString();
   }
@@ -1113,6 +1206,14 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
               org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 9: // MEMORY_USAGE
+            if (schemeField.type == org.apache.blur.thirdparty.thrift_0_9_0.protocol.TType.I64) {
+              struct.memoryUsage = iprot.readI64();
+              struct.setMemoryUsageIsSet(true);
+            } else { 
+              org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -1172,6 +1273,9 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
         struct.user.write(oprot);
         oprot.writeFieldEnd();
       }
+      oprot.writeFieldBegin(MEMORY_USAGE_FIELD_DESC);
+      oprot.writeI64(struct.memoryUsage);
+      oprot.writeFieldEnd();
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -1214,7 +1318,10 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
       if (struct.isSetUser()) {
         optionals.set(7);
       }
-      oprot.writeBitSet(optionals, 8);
+      if (struct.isSetMemoryUsage()) {
+        optionals.set(8);
+      }
+      oprot.writeBitSet(optionals, 9);
       if (struct.isSetQuery()) {
         struct.query.write(oprot);
       }
@@ -1246,12 +1353,15 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
       if (struct.isSetUser()) {
         struct.user.write(oprot);
       }
+      if (struct.isSetMemoryUsage()) {
+        oprot.writeI64(struct.memoryUsage);
+      }
     }
 
     @Override
     public void read(org.apache.blur.thirdparty.thrift_0_9_0.protocol.TProtocol prot, BlurQueryStatus struct) throws org.apache.blur.thirdparty.thrift_0_9_0.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(8);
+      BitSet incoming = iprot.readBitSet(9);
       if (incoming.get(0)) {
         struct.query = new BlurQuery();
         struct.query.read(iprot);
@@ -1298,6 +1408,10 @@ public class BlurQueryStatus implements org.apache.blur.thirdparty.thrift_0_9_0.
         struct.user.read(iprot);
         struct.setUserIsSet(true);
       }
+      if (incoming.get(8)) {
+        struct.memoryUsage = iprot.readI64();
+        struct.setMemoryUsageIsSet(true);
+      }
     }
   }
 
@@ -2550,6 +2550,7 @@ BlurQueryStatus = function(args) {
   this.uuid = null;
   this.status = null;
   this.user = null;
+  this.memoryUsage = null;
   if (args) {
     if (args.query !== undefined) {
       this.query = args.query;
@@ -2575,6 +2576,9 @@ BlurQueryStatus = function(args) {
     if (args.user !== undefined) {
       this.user = args.user;
     }
+    if (args.memoryUsage !== undefined) {
+      this.memoryUsage = args.memoryUsage;
+    }
   }
 };
 BlurQueryStatus.prototype = {};
@@ -2672,6 +2676,13 @@ BlurQueryStatus.prototype.read = function(input) {
         input.skip(ftype);
       }
       break;
+      case 9:
+      if (ftype == Thrift.Type.I64) {
+        this.memoryUsage = input.readI64().value;
+      } else {
+        input.skip(ftype);
+      }
+      break;
       default:
         input.skip(ftype);
     }
@@ -2733,6 +2744,11 @@ BlurQueryStatus.prototype.write = function(output) {
     this.user.write(output);
     output.writeFieldEnd();
   }
+  if (this.memoryUsage !== null && this.memoryUsage !== undefined) {
+    output.writeFieldBegin('memoryUsage', Thrift.Type.I64, 9);
+    output.writeI64(this.memoryUsage);
+    output.writeFieldEnd();
+  }
   output.writeFieldStop();
   output.writeStructEnd();
   return;
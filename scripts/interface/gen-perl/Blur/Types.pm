@@ -2730,7 +2730,7 @@ sub write {
 
 package Blur::BlurQueryStatus;
 use base qw(Class::Accessor);
-Blur::BlurQueryStatus->mk_accessors( qw( query cpuTimes completeShards totalShards state uuid status user ) );
+Blur::BlurQueryStatus->mk_accessors( qw( query cpuTimes completeShards totalShards state uuid status user memoryUsage ) );
 
 sub new {
   my $classname = shift;
@@ -2744,6 +2744,7 @@ sub new {
   $self->{uuid} = undef;
   $self->{status} = undef;
   $self->{user} = undef;
+  $self->{memoryUsage} = undef;
   if (UNIVERSAL::isa($vals,'HASH')) {
     if (defined $vals->{query}) {
       $self->{query} = $vals->{query};
@@ -2769,6 +2770,9 @@ sub new {
     if (defined $vals->{user}) {
       $self->{user} = $vals->{user};
     }
+    if (defined $vals->{memoryUsage}) {
+      $self->{memoryUsage} = $vals->{memoryUsage};
+    }
   }
   return bless ($self, $classname);
 }
@@ -2857,6 +2861,12 @@ sub read {
       } else {
         $xfer += $input->skip($ftype);
       }
+      last; };
+      /^9$/ && do{      if ($ftype == TType::I64) {
+        $xfer += $input->readI64(\$self->{memoryUsage});
+      } else {
+        $xfer += $input->skip($ftype);
+      }
       last; };
         $xfer += $input->skip($ftype);
     }
@@ -2920,6 +2930,11 @@ sub write {
     $xfer += $self->{user}->write($output);
     $xfer += $output->writeFieldEnd();
   }
+  if (defined $self->{memoryUsage}) {
+    $xfer += $output->writeFieldBegin('memoryUsage', TType::I64, 9);
+    $xfer += $output->writeI64($self->{memoryUsage});
+    $xfer += $output->writeFieldEnd();
+  }
   $xfer += $output->writeFieldStop();
   $xfer += $output->writeStructEnd();
   return $xfer;
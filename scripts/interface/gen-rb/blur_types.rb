@@ -749,6 +749,7 @@ module Blur
     UUID = 6
     STATUS = 7
     USER = 8
+    MEMORYUSAGE = 9
 
     FIELDS = {
       # The original query.
@@ -770,7 +771,11 @@ module Blur
       # The status of the query NOT_FOUND if uuid is not found else FOUND
       STATUS => {:type => ::Thrift::Types::I32, :name => 'status', :enum_class => ::Blur::Status},
       # The user executing the given query.
-      USER => {:type => ::Thrift::Types::STRUCT, :name => 'user', :class => ::Blur::User}
+      USER => {:type => ::Thrift::Types::STRUCT, :name => 'user', :class => ::Blur::User},
+      # The estimated heap in bytes that the query is holding for collectors, facet bitsets and
+# fetch buffers.  The shard server will respond with the usage on that server, while the
+# controller will aggregate all the shard server usages together.
+      MEMORYUSAGE => {:type => ::Thrift::Types::I64, :name => 'memoryUsage'}
     }
 
     def struct_fields; FIELDS; end